@@ -1,11 +1,18 @@
 package de.uniluebeck.itm.wsn.drivers.core;
 
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 import de.uniluebeck.itm.wsn.drivers.core.io.HasInputStream;
 import de.uniluebeck.itm.wsn.drivers.core.io.HasOutputStream;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationPlan;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationScheduler;
 
 import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 
 /**
@@ -63,6 +70,55 @@ public interface Device extends HasInputStream, HasOutputStream, Connectable {
 	 */
 	OperationFuture<Void> program(byte[] data, long timeoutMillis, @Nullable OperationListener<Void> listener);
 
+	/**
+	 * Programs the device with the given image without removing the current MAC address. The image is not modified,
+	 * so the same instance can be used to program many devices at the same time.
+	 *
+	 * @param image
+	 * 		The image that has to be flashed on the device.
+	 * @param timeoutMillis
+	 * 		Maximum operation time before the method will be canceled in milliseconds.
+	 * @param listener
+	 * 		Interface that is called on successfully or failed method execution.
+	 *
+	 * @return Returns a <code>OperationFuture</code> for controlling the async operation.
+	 */
+	OperationFuture<Void> program(FirmwareImage image, long timeoutMillis, @Nullable OperationListener<Void> listener);
+
+	/**
+	 * Programs the device with the content of the given file. The file is mapped read-only into memory instead of
+	 * being loaded into the heap.
+	 *
+	 * @param file
+	 * 		The image file that has to be flashed on the device.
+	 * @param timeoutMillis
+	 * 		Maximum operation time before the method will be canceled in milliseconds.
+	 * @param listener
+	 * 		Interface that is called on successfully or failed method execution.
+	 *
+	 * @return Returns a <code>OperationFuture</code> for controlling the async operation.
+	 *
+	 * @throws IOException
+	 * 		if the file can not be mapped
+	 */
+	OperationFuture<Void> program(File file, long timeoutMillis, @Nullable OperationListener<Void> listener)
+			throws IOException;
+
+	/**
+	 * Programs the device with the remaining bytes of the given buffer. The bytes are not copied, so the buffer must
+	 * not be modified until the operation has finished.
+	 *
+	 * @param data
+	 * 		The image that has to be flashed on the device.
+	 * @param timeoutMillis
+	 * 		Maximum operation time before the method will be canceled in milliseconds.
+	 * @param listener
+	 * 		Interface that is called on successfully or failed method execution.
+	 *
+	 * @return Returns a <code>OperationFuture</code> for controlling the async operation.
+	 */
+	OperationFuture<Void> program(ByteBuffer data, long timeoutMillis, @Nullable OperationListener<Void> listener);
+
 	/**
 	 * Remove all data from the flash memory.
 	 *
@@ -149,4 +205,36 @@ public interface Device extends HasInputStream, HasOutputStream, Connectable {
 	 * @return Returns a <code>OperationFuture</code> for controlling the async operation.
 	 */
 	OperationFuture<Void> reset(long timeoutMillis, @Nullable OperationListener<Void> listener);
+
+	/**
+	 * Executes all steps of the given plan one after another within a single programming mode session.
+	 *
+	 * @param plan
+	 * 		The plan that has to be executed.
+	 * @param timeoutMillis
+	 * 		Maximum operation time for the whole plan before the method will be canceled in milliseconds.
+	 * @param listener
+	 * 		Interface that is called on successfully or failed method execution.
+	 *
+	 * @return Returns a <code>OperationFuture</code> for controlling the async operation. Its result contains the
+	 *         results of the individual steps in the order of the plan.
+	 */
+	OperationFuture<List<Object>> execute(OperationPlan plan, long timeoutMillis,
+										  @Nullable OperationListener<List<Object>> listener);
+
+	/**
+	 * Returns the scheduler that executes the operations of this device. The scheduler can be used to change the
+	 * priorities of operation types and to monitor the queue.
+	 *
+	 * @return the scheduler of this device
+	 */
+	OperationScheduler getOperationScheduler();
+
+	/**
+	 * Returns the cache for chip type, flash type and MAC address of this device. The cache is disabled by default
+	 * and exposes hit and miss counters.
+	 *
+	 * @return the session cache of this device
+	 */
+	DeviceSessionCache getSessionCache();
 }
@@ -0,0 +1,223 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Persists identification results of devices (e.g. the chip type, the flash type or the MAC address) in a properties
+ * file so that they survive a restart of the application.
+ * <p/>
+ * Devices are identified by the name of their link in <code>/dev/serial/by-id</code> which contains the serial number
+ * of the USB to serial converter. If no such link exists for a port the port name itself is used. The stored values
+ * are not trusted blindly: the {@link DeviceSessionCache} hands them to the driver which has to confirm them with a
+ * cheap probe before they are used.
+ * <p/>
+ * Several devices may share a store. Use {@link #forFile(java.io.File)} to obtain the shared instance for a file.
+ */
+public class DeviceMetadataStore {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceMetadataStore.class);
+
+	public static final String DEFAULT_BY_ID_DIRECTORY = "/dev/serial/by-id";
+
+	private static final String USB_KEY_PREFIX = "usb:";
+
+	private static final String PORT_KEY_PREFIX = "port:";
+
+	private static final Map<File, DeviceMetadataStore> sharedStores = Maps.newHashMap();
+
+	private final File file;
+
+	private final File byIdDirectory;
+
+	private Properties properties;
+
+	public DeviceMetadataStore(final File file) {
+		this(file, new File(DEFAULT_BY_ID_DIRECTORY));
+	}
+
+	public DeviceMetadataStore(final File file, final File byIdDirectory) {
+		this.file = checkNotNull(file, "Null file is not allowed.");
+		this.byIdDirectory = checkNotNull(byIdDirectory, "Null directory is not allowed.");
+	}
+
+	/**
+	 * Returns the store for the given file. All callers that pass the same file share one instance, so that
+	 * devices running in the same process do not overwrite each other's entries.
+	 *
+	 * @param file
+	 * 		the properties file
+	 *
+	 * @return the shared store for the file
+	 */
+	public static DeviceMetadataStore forFile(final File file) {
+		synchronized (sharedStores) {
+			final File key = file.getAbsoluteFile();
+			DeviceMetadataStore store = sharedStores.get(key);
+			if (store == null) {
+				store = new DeviceMetadataStore(key);
+				sharedStores.put(key, store);
+			}
+			return store;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the key under which the metadata of the device connected to the given port is stored. If a link in
+	 * the by-id directory points to the port the key contains the name of the link, otherwise the port name.
+	 *
+	 * @param port
+	 * 		the port the device is connected to
+	 *
+	 * @return the key of the device
+	 */
+	public String resolveDeviceKey(final String port) {
+
+		final File[] links = byIdDirectory.listFiles();
+		if (links != null) {
+			try {
+				final String portPath = new File(port).getCanonicalPath();
+				for (File link : links) {
+					if (portPath.equals(link.getCanonicalPath())) {
+						return USB_KEY_PREFIX + link.getName();
+					}
+				}
+			} catch (IOException e) {
+				log.warn("Unable to resolve the device identity of port {}: {}", port, e.getMessage());
+			}
+		}
+
+		return PORT_KEY_PREFIX + port;
+	}
+
+	/**
+	 * Returns all stored values of a device.
+	 *
+	 * @param deviceKey
+	 * 		the key of the device
+	 *
+	 * @return the stored values indexed by name, empty if nothing is stored for the device
+	 */
+	public synchronized Map<String, String> get(final String deviceKey) {
+
+		final String prefix = deviceKey + ".";
+		final ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+
+		for (String name : getProperties().stringPropertyNames()) {
+			if (name.startsWith(prefix)) {
+				values.put(name.substring(prefix.length()), getProperties().getProperty(name));
+			}
+		}
+
+		return values.build();
+	}
+
+	/**
+	 * Stores a value of a device. The file is only written if the value has changed.
+	 *
+	 * @param deviceKey
+	 * 		the key of the device
+	 * @param name
+	 * 		the name of the value
+	 * @param value
+	 * 		the value
+	 */
+	public synchronized void put(final String deviceKey, final String name, final String value) {
+		final Object previous = getProperties().setProperty(deviceKey + "." + name, value);
+		if (!value.equals(previous)) {
+			save();
+		}
+	}
+
+	/**
+	 * Removes all values of a device.
+	 *
+	 * @param deviceKey
+	 * 		the key of the device
+	 */
+	public synchronized void remove(final String deviceKey) {
+
+		final String prefix = deviceKey + ".";
+		boolean changed = false;
+
+		for (String name : getProperties().stringPropertyNames()) {
+			if (name.startsWith(prefix)) {
+				getProperties().remove(name);
+				changed = true;
+			}
+		}
+
+		if (changed) {
+			save();
+		}
+	}
+
+	private Properties getProperties() {
+
+		if (properties == null) {
+
+			properties = new Properties();
+
+			if (file.exists()) {
+				try {
+					final InputStream inputStream = new FileInputStream(file);
+					try {
+						properties.load(inputStream);
+					} finally {
+						Closeables.close(inputStream, true);
+					}
+				} catch (IOException e) {
+					log.warn("Unable to load device metadata from {}: {}", file, e.getMessage());
+				}
+			}
+		}
+
+		return properties;
+	}
+
+	private void save() {
+
+		final File tempFile = new File(file.getPath() + ".tmp");
+
+		try {
+
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists() && !parent.mkdirs()) {
+				throw new IOException("Unable to create directory " + parent);
+			}
+
+			final OutputStream outputStream = new FileOutputStream(tempFile);
+			try {
+				properties.store(outputStream, "Device metadata");
+			} finally {
+				Closeables.close(outputStream, false);
+			}
+
+			// renameTo does not replace existing files on all platforms
+			if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+				throw new IOException("Unable to replace " + file);
+			}
+
+		} catch (IOException e) {
+			log.warn("Unable to save device metadata to {}: {}", file, e.getMessage());
+		}
+	}
+}
@@ -21,10 +21,20 @@ import java.util.concurrent.Executors;
  */
 public class DeviceModule extends AbstractModule {
 
+	/**
+	 * Name of the executor that reads images in the background while they are written to the device, see
+	 * {@link de.uniluebeck.itm.wsn.drivers.core.image.PrefetchingBlockReader}.
+	 */
+	public static final String PREFETCH_EXECUTOR_SERVICE = "prefetchExecutorService";
+
 	private static final int DEFAULT_POOL_SIZE = 3;
 
 	private final ExecutorService executorService;
 
+	private final ExecutorService prefetchExecutorService = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setNameFormat("PrefetchingBlockReader-Thread %d").setDaemon(true).build()
+	);
+
 	public DeviceModule() {
 		executorService = Executors.newScheduledThreadPool(DEFAULT_POOL_SIZE,
 				new ThreadFactoryBuilder().setNameFormat("DeviceModule-Thread %d").build()
@@ -64,6 +74,9 @@ public class DeviceModule extends AbstractModule {
 				.toInstance(pipedInputStreamFromDriverOutputStream);
 
 		bind(ExecutorService.class).toInstance(executorService);
+		bind(ExecutorService.class)
+				.annotatedWith(Names.named(PREFETCH_EXECUTOR_SERVICE))
+				.toInstance(prefetchExecutorService);
 		bind(TimeLimiter.class).toInstance(new SimpleTimeLimiter(executorService));
 		bind(OutputStream.class).to(SendOutputStreamWrapper.class);
 	}
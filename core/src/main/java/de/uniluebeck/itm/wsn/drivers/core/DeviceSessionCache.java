@@ -0,0 +1,265 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caches results of device queries that do not change as long as a device stays connected (e.g. the chip type, the
+ * flash type or the MAC address) so that operations which repeatedly need them do not have to ask the device again.
+ * <p/>
+ * The cache is disabled by default. It can be enabled by setting the configuration key {@link #OPTION_SESSION_CACHE}
+ * to <code>true</code> or by calling {@link #setEnabled(boolean)}. All entries are dropped when the device is
+ * connected or closed. Operations that modify a cached value are responsible for invalidating or updating the
+ * corresponding entry.
+ * <p/>
+ * If a {@link DeviceMetadataStore} is attached (configuration key {@link #OPTION_METADATA_STORE} or
+ * {@link #setMetadataStore(DeviceMetadataStore)}) all cached values are persisted. When the device is connected again
+ * the persisted values are offered to the driver by {@link #takeUnvalidatedMetadata()}. The driver has to confirm
+ * them with a cheap probe (e.g. by comparing the MAC address in the flash header) before it puts them into the cache.
+ */
+@Singleton
+public class DeviceSessionCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceSessionCache.class);
+
+	public static final String OPTION_SESSION_CACHE = "device.session.cache";
+
+	public static final String OPTION_METADATA_STORE = "device.metadata.store";
+
+	public static final String CHIP_TYPE = "chipType";
+
+	public static final String FLASH_TYPE = "flashType";
+
+	public static final String MAC_ADDRESS = "macAddress";
+
+	private final Map<String, Object> entries = Maps.newHashMap();
+
+	private boolean enabled;
+
+	private long hits;
+
+	private long misses;
+
+	@Nullable
+	private DeviceMetadataStore metadataStore;
+
+	@Nullable
+	private String deviceKey;
+
+	@Nullable
+	private Map<String, String> unvalidatedMetadata;
+
+	public DeviceSessionCache() {
+		this(false);
+	}
+
+	public DeviceSessionCache(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Inject
+	public DeviceSessionCache(@Named("configuration") final Map<String, String> configuration) {
+		this(Boolean.parseBoolean(configuration.get(OPTION_SESSION_CACHE)));
+		final String metadataStoreFile = configuration.get(OPTION_METADATA_STORE);
+		if (metadataStoreFile != null) {
+			setMetadataStore(DeviceMetadataStore.forFile(new File(metadataStoreFile)));
+		}
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the cache. Disabling the cache drops all entries.
+	 *
+	 * @param enabled
+	 * 		<code>true</code> to enable the cache
+	 */
+	public synchronized void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Attaches a store that persists the cached values. Attaching a store enables the cache.
+	 *
+	 * @param metadataStore
+	 * 		the store or <code>null</code> to detach the current store
+	 */
+	public synchronized void setMetadataStore(@Nullable final DeviceMetadataStore metadataStore) {
+		this.metadataStore = metadataStore;
+		if (metadataStore != null) {
+			enabled = true;
+		}
+	}
+
+	@Nullable
+	public synchronized DeviceMetadataStore getMetadataStore() {
+		return metadataStore;
+	}
+
+	/**
+	 * Called when the device has been connected to the given port. Drops all entries and loads the persisted values
+	 * of the device if a store is attached.
+	 *
+	 * @param port
+	 * 		the port the device is connected to
+	 */
+	public synchronized void connected(final String port) {
+
+		invalidateAll();
+
+		if (metadataStore != null) {
+			deviceKey = metadataStore.resolveDeviceKey(port);
+			final Map<String, String> metadata = metadataStore.get(deviceKey);
+			unvalidatedMetadata = metadata.isEmpty() ? null : metadata;
+			log.debug("Persisted metadata for {}: {}", deviceKey, metadata);
+		}
+	}
+
+	/**
+	 * Called when the device has been closed. Drops all entries.
+	 */
+	public synchronized void disconnected() {
+		invalidateAll();
+		deviceKey = null;
+		unvalidatedMetadata = null;
+	}
+
+	/**
+	 * Returns the persisted values of the connected device, indexed by the cache keys. The values are returned only
+	 * once per connection, as the caller is responsible to validate them and to put the valid ones into the cache.
+	 *
+	 * @return the persisted values or <code>null</code> if nothing is persisted or the values have already been taken
+	 */
+	@Nullable
+	public synchronized Map<String, String> takeUnvalidatedMetadata() {
+		final Map<String, String> metadata = enabled ? unvalidatedMetadata : null;
+		unvalidatedMetadata = null;
+		return metadata;
+	}
+
+	/**
+	 * Returns the cached value for the given key.
+	 *
+	 * @param key
+	 * 		the key of the value
+	 * @param type
+	 * 		the type of the value
+	 *
+	 * @return the cached value or <code>null</code> if the cache is disabled or does not contain the key
+	 */
+	@Nullable
+	public synchronized <T> T get(final String key, final Class<T> type) {
+
+		if (!enabled) {
+			return null;
+		}
+
+		final Object value = entries.get(key);
+		if (value == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		log.trace("Session cache hit for {}: {}", key, value);
+		return type.cast(value);
+	}
+
+	/**
+	 * Returns the cached value for the given key like {@link #get(String, Class)}, but without counting the lookup as
+	 * a hit or a miss. Used for entries that only mark whether state held elsewhere is still valid.
+	 *
+	 * @param key
+	 * 		the key of the value
+	 * @param type
+	 * 		the type of the value
+	 *
+	 * @return the cached value or <code>null</code> if the cache is disabled or does not contain the key
+	 */
+	@Nullable
+	public synchronized <T> T peek(final String key, final Class<T> type) {
+		return enabled ? type.cast(entries.get(key)) : null;
+	}
+
+	/**
+	 * Stores a value and persists it if a store is attached. Nothing is stored if the cache is disabled.
+	 *
+	 * @param key
+	 * 		the key of the value
+	 * @param value
+	 * 		the value to store
+	 */
+	public synchronized void put(final String key, final Object value) {
+		checkNotNull(value, "Null values are not allowed.");
+		if (enabled) {
+			entries.put(key, value);
+			if (metadataStore != null && deviceKey != null) {
+				final String persistedValue = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+				metadataStore.put(deviceKey, key, persistedValue);
+			}
+		}
+	}
+
+	/**
+	 * Stores a value for the current connection only. The value is never persisted, so it may be of any type.
+	 * Nothing is stored if the cache is disabled.
+	 *
+	 * @param key
+	 * 		the key of the value
+	 * @param value
+	 * 		the value to store
+	 */
+	public synchronized void putTransient(final String key, final Object value) {
+		checkNotNull(value, "Null values are not allowed.");
+		if (enabled) {
+			entries.put(key, value);
+		}
+	}
+
+	public synchronized void invalidate(final String key) {
+		entries.remove(key);
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of lookups that were answered from the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups of an enabled cache that had to be answered by the device.
+	 *
+	 * @return the number of cache misses
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DeviceSessionCache{enabled=" + enabled + ", hits=" + hits + ", misses=" + misses + ", entries="
+				+ entries + "}";
+	}
+}
@@ -5,12 +5,15 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -44,7 +47,9 @@ public class SerialPortDevice implements Device {
 
 	protected final OperationFactory operationFactory;
 
-	protected ExecutorService operationExecutor;
+	protected final OperationScheduler operationScheduler;
+
+	protected final DeviceSessionCache sessionCache;
 
 	protected final Monitor deviceMonitor = new Monitor();
 
@@ -143,7 +148,9 @@ public class SerialPortDevice implements Device {
 							@Named("pipedInputStreamFromDriverOutputStream")
 							final PipedInputStream pipedInputStreamFromDriverOutputStream,
 							final Connection deviceConnection,
-							final OperationFactory operationFactory) {
+							final OperationFactory operationFactory,
+							final OperationScheduler operationScheduler,
+							final DeviceSessionCache sessionCache) {
 
 		this.driverInputStream = driverInputStream;
 		this.driverOutputStream = driverOutputStream;
@@ -151,6 +158,8 @@ public class SerialPortDevice implements Device {
 		this.pipedInputStreamFromDriverOutputStream = pipedInputStreamFromDriverOutputStream;
 		this.connection = deviceConnection;
 		this.operationFactory = operationFactory;
+		this.operationScheduler = operationScheduler;
+		this.sessionCache = sessionCache;
 	}
 
 	@Override
@@ -174,8 +183,26 @@ public class SerialPortDevice implements Device {
 
 	@Override
 	public OperationFuture<Void> program(byte[] data, long timeoutMillis, @Nullable OperationListener<Void> listener) {
+		return program(FirmwareImage.wrap(data), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(File file, long timeoutMillis, @Nullable OperationListener<Void> listener)
+			throws IOException {
+		return program(FirmwareImage.map(file), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(ByteBuffer data, long timeoutMillis,
+										 @Nullable OperationListener<Void> listener) {
+		return program(FirmwareImage.wrap(data), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(FirmwareImage image, long timeoutMillis,
+										 @Nullable OperationListener<Void> listener) {
 		log.trace("Programming (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createProgramOperation(data, timeoutMillis, listener));
+		return executeOperation(operationFactory.createProgramOperation(image, timeoutMillis, listener));
 	}
 
 	@Override
@@ -219,6 +246,14 @@ public class SerialPortDevice implements Device {
 		return executeOperation(operationFactory.createWriteMacAddressOperation(macAddress, timeoutMillis, listener));
 	}
 
+	@Override
+	public OperationFuture<List<Object>> execute(OperationPlan plan, long timeoutMillis,
+												 @Nullable OperationListener<List<Object>> listener) {
+		log.trace("Executing plan (plan: " + plan + ", timeout: " + timeoutMillis + "ms)");
+		checkNotNull(plan, "Null plan is not allowed.");
+		return executeOperation(operationFactory.createOperationPlanOperation(plan, timeoutMillis, listener));
+	}
+
 	@Override
 	public InputStream getInputStream() {
 		return driverInputStream;
@@ -244,17 +279,17 @@ public class SerialPortDevice implements Device {
 			ExecutorUtils.shutdown(driverToDeviceStreamDataCopyExecutor, 1, TimeUnit.SECONDS);
 		}
 
-		if (operationExecutor != null) {
-			ExecutorUtils.shutdown(operationExecutor, 1, TimeUnit.SECONDS);
-		}
+		operationScheduler.shutdown();
+		sessionCache.disconnected();
 	}
 
 	@Override
 	public void connect(String uri) throws IOException {
 
 		connection.connect(uri);
+		sessionCache.connected(uri);
 
-		operationExecutor = Executors.newSingleThreadExecutor();
+		operationScheduler.start();
 		driverToDeviceStreamDataCopyExecutor = Executors.newSingleThreadExecutor();
 
 		startStreamDataCopy();
@@ -288,6 +323,16 @@ public class SerialPortDevice implements Device {
 		return connection;
 	}
 
+	@Override
+	public OperationScheduler getOperationScheduler() {
+		return operationScheduler;
+	}
+
+	@Override
+	public DeviceSessionCache getSessionCache() {
+		return sessionCache;
+	}
+
 	private void startStreamDataCopy() {
 
 		try {
@@ -347,22 +392,6 @@ public class SerialPortDevice implements Device {
 	}
 
 	private <T> OperationFuture<T> executeOperation(final Operation<T> operation) {
-		final OperationFutureImpl<T> operationFuture = new OperationFutureImpl<T>(operation);
-		operation.addListener(
-				new OperationAdapter<T>() {
-
-					@Override
-					public void onFailure(final Throwable throwable) {
-						operationFuture.setException(throwable);
-					}
-
-					@Override
-					public void onSuccess(final T result) {
-						operationFuture.set(result);
-					}
-				}
-		);
-		operationExecutor.submit(operation);
-		return operationFuture;
+		return operationScheduler.submit(operation);
 	}
 }
@@ -0,0 +1,28 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import javax.annotation.Nullable;
+
+/**
+ * Limits the number of nodes of a {@link DeviceGroup} that are programmed at the same time in addition to the
+ * concurrency of the group. Implementations must not block, nodes that can not be started yet are tried again
+ * whenever another node has finished.
+ */
+public interface ConcurrencyLimiter {
+
+	/**
+	 * Tries to acquire a permit for programming the given node.
+	 *
+	 * @param nodeId the node to program
+	 *
+	 * @return <code>true</code> if the node may be started
+	 */
+	boolean tryAcquire(String nodeId);
+
+	/**
+	 * Returns the permit of a node whose attempt has finished.
+	 *
+	 * @param nodeId the node
+	 * @param failure the exception of the attempt or <code>null</code> if it succeeded
+	 */
+	void release(String nodeId, @Nullable Throwable failure);
+}
@@ -0,0 +1,246 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A set of devices that are programmed or provisioned together. At most {@link #getConcurrency()} devices are programmed at the
+ * same time, failed nodes are retried according to the {@link RetryPolicy} and the progress of all nodes is
+ * aggregated into a single {@link DeviceGroupProgress}.
+ * <p/>
+ * The devices have to be connected before a group is programmed:
+ * <pre>
+ * DeviceGroup group = new DeviceGroup(executorService);
+ * group.add("urn:node:0x1234", device);
+ * group.setConcurrency(16);
+ * group.setRetryPolicy(RetryPolicy.attempts(3, 1000));
+ * DeviceGroupResult result = group.program(image, 120000, listener).get();
+ * </pre>
+ */
+public class DeviceGroup {
+
+	private static final int DEFAULT_CONCURRENCY = 8;
+
+	private final ScheduledExecutorService executorService;
+
+	private final Map<String, Device> devices = Maps.newLinkedHashMap();
+
+	private int concurrency = DEFAULT_CONCURRENCY;
+
+	private RetryPolicy retryPolicy = RetryPolicy.none();
+
+	@Nullable
+	private ConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param executorService
+	 * 		executor used to delay retries
+	 */
+	public DeviceGroup(final ScheduledExecutorService executorService) {
+		this.executorService = checkNotNull(executorService, "Null executor is not allowed.");
+	}
+
+	public synchronized void add(final String nodeId, final Device device) {
+		checkNotNull(nodeId, "Null node id is not allowed.");
+		checkNotNull(device, "Null device is not allowed.");
+		checkArgument(!devices.containsKey(nodeId), "Node " + nodeId + " is already part of the group.");
+		devices.put(nodeId, device);
+	}
+
+	@Nullable
+	public synchronized Device remove(final String nodeId) {
+		return devices.remove(nodeId);
+	}
+
+	public synchronized Map<String, Device> getDevices() {
+		return ImmutableMap.copyOf(devices);
+	}
+
+	public synchronized int size() {
+		return devices.size();
+	}
+
+	public synchronized int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Sets the maximum number of devices that are programmed at the same time.
+	 *
+	 * @param concurrency
+	 * 		the maximum number of concurrently programmed devices
+	 */
+	public synchronized void setConcurrency(final int concurrency) {
+		checkArgument(concurrency > 0, "Concurrency must be larger than zero.");
+		this.concurrency = concurrency;
+	}
+
+	public synchronized RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public synchronized void setRetryPolicy(final RetryPolicy retryPolicy) {
+		this.retryPolicy = checkNotNull(retryPolicy, "Null retry policy is not allowed.");
+	}
+
+	@Nullable
+	public synchronized ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Sets an additional limit for the number of devices that are programmed at the same time, e.g. a
+	 * {@link TopologyConcurrencyLimiter} for devices that share USB hubs.
+	 *
+	 * @param concurrencyLimiter
+	 * 		the limiter or <code>null</code> to only use the concurrency of the group
+	 */
+	public synchronized void setConcurrencyLimiter(@Nullable final ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * Programs all devices of the group with the same image.
+	 *
+	 * @param image
+	 * 		the image to program
+	 * @param timeoutMillis
+	 * 		the timeout of a single program attempt
+	 * @param listener
+	 * 		listener for the progress of the run
+	 *
+	 * @return a future for the run
+	 */
+	public DeviceGroupFuture program(final byte[] image, final long timeoutMillis,
+									 @Nullable final DeviceGroupListener listener) {
+		checkNotNull(image, "Null image is not allowed.");
+		return program(FirmwareImage.wrap(image), timeoutMillis, listener);
+	}
+
+	/**
+	 * Programs all devices of the group with the same image. The image is shared by all devices, device specific
+	 * changes are applied as patches by the drivers.
+	 *
+	 * @param image
+	 * 		the image to program
+	 * @param timeoutMillis
+	 * 		the timeout of a single program attempt
+	 * @param listener
+	 * 		listener for the progress of the run
+	 *
+	 * @return a future for the run
+	 */
+	public DeviceGroupFuture program(final FirmwareImage image, final long timeoutMillis,
+									 @Nullable final DeviceGroupListener listener) {
+
+		checkNotNull(image, "Null image is not allowed.");
+
+		final Map<String, FirmwareImage> images = Maps.newLinkedHashMap();
+		for (String nodeId : getDevices().keySet()) {
+			images.put(nodeId, image);
+		}
+
+		return program(images, timeoutMillis, listener);
+	}
+
+	/**
+	 * Programs the given devices of the group, each with its own image.
+	 *
+	 * @param images
+	 * 		the images indexed by the id of the node they are programmed on
+	 * @param timeoutMillis
+	 * 		the timeout of a single program attempt
+	 * @param listener
+	 * 		listener for the progress of the run
+	 *
+	 * @return a future for the run
+	 */
+	public DeviceGroupFuture program(final Map<String, FirmwareImage> images, final long timeoutMillis,
+									 @Nullable final DeviceGroupListener listener) {
+
+		checkNotNull(images, "Null images are not allowed.");
+
+		final Map<String, DeviceGroupTask> tasks = Maps.newLinkedHashMap();
+		for (Map.Entry<String, FirmwareImage> entry : images.entrySet()) {
+			final FirmwareImage image = entry.getValue();
+			tasks.put(entry.getKey(), new DeviceGroupTask() {
+				@Override
+				public OperationFuture<Void> start(final Device device, final long timeoutMillis,
+												   final OperationListener<Void> listener) {
+					return device.program(image, timeoutMillis, listener);
+				}
+			}
+			);
+		}
+
+		return start(tasks, timeoutMillis, listener);
+	}
+
+	/**
+	 * Writes the MAC addresses of the given devices of the group, e.g. while provisioning new nodes. The nodes are
+	 * started, retried and observed like in a programming run.
+	 *
+	 * @param macAddresses
+	 * 		the MAC addresses indexed by the id of the node they are written to
+	 * @param timeoutMillis
+	 * 		the timeout of a single write attempt
+	 * @param listener
+	 * 		listener for the progress of the run
+	 *
+	 * @return a future for the run
+	 */
+	public DeviceGroupFuture writeMacAddresses(final Map<String, MacAddress> macAddresses, final long timeoutMillis,
+											   @Nullable final DeviceGroupListener listener) {
+
+		checkNotNull(macAddresses, "Null MAC addresses are not allowed.");
+
+		final Map<String, DeviceGroupTask> tasks = Maps.newLinkedHashMap();
+		for (Map.Entry<String, MacAddress> entry : macAddresses.entrySet()) {
+			final MacAddress macAddress = entry.getValue();
+			tasks.put(entry.getKey(), new DeviceGroupTask() {
+				@Override
+				public OperationFuture<Void> start(final Device device, final long timeoutMillis,
+												   final OperationListener<Void> listener) {
+					return device.writeMac(macAddress, timeoutMillis, listener);
+				}
+			}
+			);
+		}
+
+		return start(tasks, timeoutMillis, listener);
+	}
+
+	private DeviceGroupFuture start(final Map<String, DeviceGroupTask> tasks, final long timeoutMillis,
+									@Nullable final DeviceGroupListener listener) {
+
+		checkArgument(timeoutMillis > 0, "Timeout must be larger than zero milliseconds!");
+
+		final DeviceGroupRun run;
+		synchronized (this) {
+
+			for (String nodeId : tasks.keySet()) {
+				checkArgument(devices.containsKey(nodeId), "Node " + nodeId + " is not part of the group.");
+			}
+
+			run = new DeviceGroupRun(executorService, ImmutableMap.copyOf(devices), tasks, timeoutMillis,
+					concurrency, retryPolicy, concurrencyLimiter, listener
+			);
+		}
+
+		return run.start();
+	}
+}
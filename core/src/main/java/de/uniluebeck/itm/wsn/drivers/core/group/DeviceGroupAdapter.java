@@ -0,0 +1,19 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+/**
+ * Empty implementation of the {@link DeviceGroupListener}.
+ */
+public class DeviceGroupAdapter implements DeviceGroupListener {
+
+	@Override
+	public void onProgress(final DeviceGroupProgress progress) {
+	}
+
+	@Override
+	public void onRetry(final String nodeId, final int attempts, final Throwable failure) {
+	}
+
+	@Override
+	public void onNodeFinished(final NodeResult result) {
+	}
+}
@@ -0,0 +1,39 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+/**
+ * Future of a {@link DeviceGroup} programming run. Cancelling the future cancels all running node operations and
+ * drops the nodes that have not been started yet.
+ */
+public class DeviceGroupFuture extends AbstractFuture<DeviceGroupResult> {
+
+	private final DeviceGroupRun run;
+
+	DeviceGroupFuture(final DeviceGroupRun run) {
+		this.run = run;
+	}
+
+	/**
+	 * Returns the current progress of the run.
+	 *
+	 * @return a snapshot of the progress
+	 */
+	public DeviceGroupProgress getProgress() {
+		return run.getProgress();
+	}
+
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		if (super.cancel(mayInterruptIfRunning)) {
+			run.cancel();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected boolean set(final DeviceGroupResult value) {
+		return super.set(value);
+	}
+}
@@ -0,0 +1,30 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+/**
+ * Listener for observing a {@link DeviceGroup} programming run.
+ */
+public interface DeviceGroupListener {
+
+	/**
+	 * Method is called whenever the progress of a node changes.
+	 *
+	 * @param progress the progress of all nodes
+	 */
+	void onProgress(DeviceGroupProgress progress);
+
+	/**
+	 * Method is called when a node attempt failed and the node will be programmed again.
+	 *
+	 * @param nodeId the node that will be retried
+	 * @param attempts the number of attempts made so far
+	 * @param failure the exception of the failed attempt
+	 */
+	void onRetry(String nodeId, int attempts, Throwable failure);
+
+	/**
+	 * Method is called when a node has been programmed successfully or failed finally.
+	 *
+	 * @param result the result of the node
+	 */
+	void onNodeFinished(NodeResult result);
+}
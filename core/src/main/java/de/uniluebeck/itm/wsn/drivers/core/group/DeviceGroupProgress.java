@@ -0,0 +1,120 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+/**
+ * Snapshot of the progress of a {@link DeviceGroup} programming run.
+ */
+public class DeviceGroupProgress {
+
+	/**
+	 * Value of {@link #getEtaMillis()} if no estimation is possible yet.
+	 */
+	public static final long UNKNOWN_ETA = -1;
+
+	private final int nodesTotal;
+
+	private final int nodesRunning;
+
+	private final int nodesSucceeded;
+
+	private final int nodesFailed;
+
+	private final float fraction;
+
+	private final long bytesDone;
+
+	private final long bytesTotal;
+
+	private final long elapsedMillis;
+
+	private final long etaMillis;
+
+	public DeviceGroupProgress(final int nodesTotal, final int nodesRunning, final int nodesSucceeded,
+							   final int nodesFailed, final float fraction, final long bytesDone,
+							   final long bytesTotal, final long elapsedMillis, final long etaMillis) {
+		this.nodesTotal = nodesTotal;
+		this.nodesRunning = nodesRunning;
+		this.nodesSucceeded = nodesSucceeded;
+		this.nodesFailed = nodesFailed;
+		this.fraction = fraction;
+		this.bytesDone = bytesDone;
+		this.bytesTotal = bytesTotal;
+		this.elapsedMillis = elapsedMillis;
+		this.etaMillis = etaMillis;
+	}
+
+	public int getNodesTotal() {
+		return nodesTotal;
+	}
+
+	/**
+	 * Returns the number of nodes that are currently programmed.
+	 *
+	 * @return the number of running nodes
+	 */
+	public int getNodesRunning() {
+		return nodesRunning;
+	}
+
+	public int getNodesSucceeded() {
+		return nodesSucceeded;
+	}
+
+	/**
+	 * Returns the number of nodes that failed and will not be retried.
+	 *
+	 * @return the number of failed nodes
+	 */
+	public int getNodesFailed() {
+		return nodesFailed;
+	}
+
+	/**
+	 * Returns the progress of all nodes, i.e. the average of the progress of the individual nodes.
+	 *
+	 * @return the overall progress between zero and one
+	 */
+	public float getFraction() {
+		return fraction;
+	}
+
+	public long getBytesDone() {
+		return bytesDone;
+	}
+
+	/**
+	 * Returns the number of bytes of all nodes that reported a transfer so far.
+	 *
+	 * @return the total number of bytes known so far
+	 */
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Returns the estimated time until all nodes are done, extrapolated from the overall progress so far.
+	 *
+	 * @return the estimated remaining time in milliseconds or {@link #UNKNOWN_ETA}
+	 */
+	public long getEtaMillis() {
+		return etaMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceGroupProgress{" +
+				"nodesTotal=" + nodesTotal +
+				", nodesRunning=" + nodesRunning +
+				", nodesSucceeded=" + nodesSucceeded +
+				", nodesFailed=" + nodesFailed +
+				", fraction=" + fraction +
+				", bytesDone=" + bytesDone +
+				", bytesTotal=" + bytesTotal +
+				", elapsedMillis=" + elapsedMillis +
+				", etaMillis=" + etaMillis +
+				'}';
+	}
+}
@@ -0,0 +1,65 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a {@link DeviceGroup} programming run.
+ */
+public class DeviceGroupResult {
+
+	private final Map<String, NodeResult> results;
+
+	private final long durationMillis;
+
+	public DeviceGroupResult(final Map<String, NodeResult> results, final long durationMillis) {
+		this.results = ImmutableMap.copyOf(results);
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Returns the results of all nodes in the order in which the nodes finished.
+	 *
+	 * @return the node results indexed by node id
+	 */
+	public Map<String, NodeResult> getResults() {
+		return results;
+	}
+
+	public List<NodeResult> getSucceeded() {
+		final List<NodeResult> succeeded = Lists.newArrayList();
+		for (NodeResult result : results.values()) {
+			if (result.isSuccess()) {
+				succeeded.add(result);
+			}
+		}
+		return succeeded;
+	}
+
+	public List<NodeResult> getFailed() {
+		final List<NodeResult> failed = Lists.newArrayList();
+		for (NodeResult result : results.values()) {
+			if (!result.isSuccess()) {
+				failed.add(result);
+			}
+		}
+		return failed;
+	}
+
+	public boolean isSuccess() {
+		return getFailed().isEmpty();
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceGroupResult{succeeded=" + getSucceeded().size() + ", failed=" + getFailed().size()
+				+ ", durationMillis=" + durationMillis + "}";
+	}
+}
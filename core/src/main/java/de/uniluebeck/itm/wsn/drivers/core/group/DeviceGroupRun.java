@@ -0,0 +1,436 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.TransferProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single run of a {@link DeviceGroup}. Nodes are started in the order of the task map as long as less
+ * than <code>concurrency</code> nodes are running. Every finished node starts the next waiting one. Nodes that are
+ * rejected by the {@link ConcurrencyLimiter} stay in the queue without blocking the nodes behind them.
+ */
+class DeviceGroupRun {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceGroupRun.class);
+
+	private class Node {
+
+		private final String id;
+
+		private final Device device;
+
+		private final DeviceGroupTask task;
+
+		private int attempts;
+
+		private long firstStartMillis;
+
+		private float fraction;
+
+		private long bytesDone;
+
+		private long bytesTotal;
+
+		/**
+		 * The attempt that is currently being started or running, <code>0</code> if the node is not running. Events of
+		 * other attempts are ignored.
+		 */
+		private int runningAttempt;
+
+		@Nullable
+		private OperationFuture<Void> future;
+
+		private Node(final String id, final Device device, final DeviceGroupTask task) {
+			this.id = id;
+			this.device = device;
+			this.task = task;
+		}
+	}
+
+	private class NodeOperationListener extends OperationAdapter<Void> {
+
+		private final Node node;
+
+		private final int attempt;
+
+		private NodeOperationListener(final Node node, final int attempt) {
+			this.node = node;
+			this.attempt = attempt;
+		}
+
+		@Override
+		public void onProgressChange(final float fraction) {
+			final DeviceGroupProgress progress;
+			synchronized (DeviceGroupRun.this) {
+				if (node.runningAttempt != attempt) {
+					return;
+				}
+				fractionSum += fraction - node.fraction;
+				node.fraction = fraction;
+				progress = getProgress();
+			}
+			notifyProgress(progress);
+		}
+
+		@Override
+		public void onTransferProgress(final TransferProgress transferProgress) {
+			synchronized (DeviceGroupRun.this) {
+				if (node.runningAttempt != attempt) {
+					return;
+				}
+				bytesDone += transferProgress.getBytesDone() - node.bytesDone;
+				bytesTotal += transferProgress.getBytesTotal() - node.bytesTotal;
+				node.bytesDone = transferProgress.getBytesDone();
+				node.bytesTotal = transferProgress.getBytesTotal();
+			}
+		}
+	}
+
+	private final ScheduledExecutorService executorService;
+
+	private final long timeoutMillis;
+
+	private final int concurrency;
+
+	private final RetryPolicy retryPolicy;
+
+	@Nullable
+	private final ConcurrencyLimiter concurrencyLimiter;
+
+	@Nullable
+	private final DeviceGroupListener listener;
+
+	private final DeviceGroupFuture future = new DeviceGroupFuture(this);
+
+	private final List<Node> nodes = Lists.newArrayList();
+
+	private final Queue<Node> waiting = new LinkedList<Node>();
+
+	private final Map<String, NodeResult> results = Maps.newLinkedHashMap();
+
+	private int running;
+
+	private int succeeded;
+
+	private int failed;
+
+	private float fractionSum;
+
+	private long bytesDone;
+
+	private long bytesTotal;
+
+	private long startMillis;
+
+	private boolean cancelled;
+
+	DeviceGroupRun(final ScheduledExecutorService executorService,
+				   final Map<String, Device> devices,
+				   final Map<String, DeviceGroupTask> tasks,
+				   final long timeoutMillis,
+				   final int concurrency,
+				   final RetryPolicy retryPolicy,
+				   @Nullable final ConcurrencyLimiter concurrencyLimiter,
+				   @Nullable final DeviceGroupListener listener) {
+
+		this.executorService = executorService;
+		this.timeoutMillis = timeoutMillis;
+		this.concurrency = concurrency;
+		this.retryPolicy = retryPolicy;
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.listener = listener;
+
+		for (Map.Entry<String, DeviceGroupTask> entry : tasks.entrySet()) {
+			nodes.add(new Node(entry.getKey(), devices.get(entry.getKey()), entry.getValue()));
+		}
+	}
+
+	DeviceGroupFuture start() {
+
+		log.debug("Starting {} nodes with a concurrency of {}", nodes.size(), concurrency);
+
+		synchronized (this) {
+			startMillis = System.currentTimeMillis();
+			waiting.addAll(nodes);
+		}
+
+		if (nodes.isEmpty()) {
+			future.set(new DeviceGroupResult(results, 0));
+		} else {
+			startWaitingNodes();
+		}
+
+		return future;
+	}
+
+	synchronized DeviceGroupProgress getProgress() {
+
+		final long elapsedMillis = System.currentTimeMillis() - startMillis;
+		final float fraction = nodes.isEmpty() ? 1 : Math.min(1, fractionSum / nodes.size());
+		final long etaMillis = fraction > 0 && fraction < 1 ?
+				(long) (elapsedMillis * (1 - fraction) / fraction) :
+				fraction >= 1 ? 0 : DeviceGroupProgress.UNKNOWN_ETA;
+
+		return new DeviceGroupProgress(nodes.size(), running, succeeded, failed, fraction, bytesDone, bytesTotal,
+				elapsedMillis, etaMillis
+		);
+	}
+
+	void cancel() {
+
+		final List<OperationFuture<Void>> runningFutures = Lists.newArrayList();
+		final List<NodeResult> cancelledResults = Lists.newArrayList();
+		final DeviceGroupProgress progress;
+		final DeviceGroupResult groupResult;
+
+		synchronized (this) {
+
+			cancelled = true;
+			waiting.clear();
+
+			for (Node node : nodes) {
+				if (node.future != null) {
+					runningFutures.add(node.future);
+				} else if (node.runningAttempt == 0 && !results.containsKey(node.id)) {
+					// the node is waiting for its first start or for a retry that will not happen anymore
+					cancelledResults.add(recordResult(node, new CancellationException()));
+				}
+			}
+
+			progress = getProgress();
+			groupResult = getGroupResult();
+		}
+
+		// Operation.cancel() blocks until the operation has stopped, so the nodes are cancelled in parallel
+		for (OperationFuture<Void> runningFuture : runningFutures) {
+			cancelOperation(runningFuture);
+		}
+
+		if (listener != null) {
+			for (NodeResult result : cancelledResults) {
+				listener.onNodeFinished(result);
+			}
+		}
+		notifyProgress(progress);
+
+		if (groupResult != null) {
+			future.set(groupResult);
+		}
+	}
+
+	private void startWaitingNodes() {
+		while (true) {
+
+			final Node node;
+			synchronized (this) {
+				if (cancelled || running >= concurrency) {
+					return;
+				}
+				node = pollStartableNode();
+				if (node == null) {
+					return;
+				}
+				running++;
+				node.attempts++;
+				node.runningAttempt = node.attempts;
+				if (node.attempts == 1) {
+					node.firstStartMillis = System.currentTimeMillis();
+				}
+			}
+
+			startNode(node);
+		}
+	}
+
+	@Nullable
+	private Node pollStartableNode() {
+		for (Iterator<Node> iterator = waiting.iterator(); iterator.hasNext(); ) {
+			final Node node = iterator.next();
+			if (concurrencyLimiter == null || concurrencyLimiter.tryAcquire(node.id)) {
+				iterator.remove();
+				return node;
+			}
+		}
+		return null;
+	}
+
+	private void startNode(final Node node) {
+
+		log.trace("Starting node {} (attempt {})", node.id, node.attempts);
+
+		final OperationFuture<Void> operationFuture;
+		try {
+			operationFuture = node.task.start(node.device, timeoutMillis,
+					new NodeOperationListener(node, node.attempts)
+			);
+		} catch (RuntimeException e) {
+			attemptFinished(node, e);
+			return;
+		}
+
+		// a cancel() while the task was starting did not see the future yet and has to be applied here
+		final boolean cancelledWhileStarting;
+		synchronized (this) {
+			node.future = operationFuture;
+			cancelledWhileStarting = cancelled;
+		}
+
+		Futures.addCallback(operationFuture, new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(@Nullable final Void result) {
+				attemptFinished(node, null);
+			}
+
+			@Override
+			public void onFailure(final Throwable t) {
+				attemptFinished(node, t);
+			}
+		}
+		);
+
+		if (cancelledWhileStarting && !operationFuture.isDone()) {
+			log.trace("Cancelling node {} that was started concurrently to the cancellation", node.id);
+			cancelOperation(operationFuture);
+		}
+	}
+
+	private void cancelOperation(final OperationFuture<Void> operationFuture) {
+		executorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				operationFuture.getOperation().cancel();
+			}
+		}
+		);
+	}
+
+	private void attemptFinished(final Node node, @Nullable final Throwable failure) {
+
+		final boolean retry;
+		final NodeResult result;
+		final DeviceGroupProgress progress;
+		final DeviceGroupResult groupResult;
+
+		synchronized (this) {
+
+			running--;
+			node.runningAttempt = 0;
+			node.future = null;
+			bytesDone -= node.bytesDone;
+			bytesTotal -= node.bytesTotal;
+			node.bytesDone = 0;
+			node.bytesTotal = 0;
+
+			try {
+				retry = failure != null && !cancelled && retryPolicy.shouldRetry(failure, node.attempts);
+			} finally {
+				if (concurrencyLimiter != null) {
+					concurrencyLimiter.release(node.id, failure);
+				}
+			}
+
+			if (retry) {
+				fractionSum -= node.fraction;
+				node.fraction = 0;
+				result = null;
+			} else {
+				result = recordResult(node, failure);
+			}
+
+			progress = getProgress();
+			groupResult = getGroupResult();
+		}
+
+		if (retry) {
+			scheduleRetry(node, failure);
+		} else if (failure != null) {
+			log.warn("Node {} failed after {} attempts: {}",
+					new Object[]{node.id, node.attempts, failure}
+			);
+		}
+
+		if (listener != null) {
+			if (retry) {
+				listener.onRetry(node.id, node.attempts, failure);
+			} else {
+				listener.onNodeFinished(result);
+			}
+		}
+		notifyProgress(progress);
+
+		if (groupResult != null) {
+			future.set(groupResult);
+		} else {
+			startWaitingNodes();
+		}
+	}
+
+	private NodeResult recordResult(final Node node, @Nullable final Throwable failure) {
+
+		fractionSum += 1 - node.fraction;
+		node.fraction = 1;
+
+		final long durationMillis = node.attempts == 0 ? 0 : System.currentTimeMillis() - node.firstStartMillis;
+		final NodeResult result = new NodeResult(node.id, node.attempts, durationMillis, failure);
+		results.put(node.id, result);
+
+		if (failure == null) {
+			succeeded++;
+		} else {
+			failed++;
+		}
+		return result;
+	}
+
+	@Nullable
+	private DeviceGroupResult getGroupResult() {
+		return results.size() == nodes.size() ?
+				new DeviceGroupResult(results, System.currentTimeMillis() - startMillis) :
+				null;
+	}
+
+	private void scheduleRetry(final Node node, final Throwable failure) {
+
+		final long delayMillis = retryPolicy.getDelayMillis(node.attempts);
+		log.debug("Retrying node {} in {} ms after attempt {} failed: {}",
+				new Object[]{node.id, delayMillis, node.attempts, failure}
+		);
+
+		executorService.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (DeviceGroupRun.this) {
+					if (cancelled) {
+						return;
+					}
+					waiting.add(node);
+				}
+				startWaitingNodes();
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS
+		);
+	}
+
+	private void notifyProgress(final DeviceGroupProgress progress) {
+		if (listener != null) {
+			listener.onProgress(progress);
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+
+/**
+ * The operation that a {@link DeviceGroupRun} starts for a single node, e.g. programming it.
+ */
+interface DeviceGroupTask {
+
+	OperationFuture<Void> start(Device device, long timeoutMillis, OperationListener<Void> listener);
+}
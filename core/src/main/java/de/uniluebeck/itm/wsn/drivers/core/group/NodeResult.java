@@ -0,0 +1,68 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of programming a single node of a {@link DeviceGroup}.
+ */
+public class NodeResult {
+
+	private final String nodeId;
+
+	private final int attempts;
+
+	private final long durationMillis;
+
+	@Nullable
+	private final Throwable failure;
+
+	public NodeResult(final String nodeId, final int attempts, final long durationMillis,
+					  @Nullable final Throwable failure) {
+		this.nodeId = nodeId;
+		this.attempts = attempts;
+		this.durationMillis = durationMillis;
+		this.failure = failure;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	/**
+	 * Returns the number of attempts including retries.
+	 *
+	 * @return the number of attempts
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Returns the time from the start of the first attempt to the end of the last attempt.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Returns the exception of the last attempt.
+	 *
+	 * @return the exception or <code>null</code> if the node has been programmed successfully
+	 */
+	@Nullable
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return "NodeResult{nodeId=" + nodeId + ", success=" + isSuccess() + ", attempts=" + attempts
+				+ ", durationMillis=" + durationMillis + (failure != null ? ", failure=" + failure : "") + "}";
+	}
+}
@@ -0,0 +1,120 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import de.uniluebeck.itm.wsn.drivers.core.exception.ProgramChipMismatchException;
+
+import java.util.concurrent.CancellationException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides whether and when a node of a {@link DeviceGroup} is programmed again after a failed attempt. The delay
+ * before a retry grows exponentially with the number of failed attempts.
+ */
+public class RetryPolicy {
+
+	private static final RetryPolicy NONE = new RetryPolicy(1, 0, 1);
+
+	private final int maxAttempts;
+
+	private final long delayMillis;
+
+	private final double backoffFactor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxAttempts
+	 * 		the maximum number of attempts per node including the first one
+	 * @param delayMillis
+	 * 		the delay before the first retry
+	 * @param backoffFactor
+	 * 		the factor the delay is multiplied with after each further failed attempt
+	 */
+	public RetryPolicy(final int maxAttempts, final long delayMillis, final double backoffFactor) {
+		checkArgument(maxAttempts > 0, "At least one attempt is required.");
+		checkArgument(delayMillis >= 0, "Negative delay is not allowed.");
+		checkArgument(backoffFactor >= 1, "Backoff factor must be at least one.");
+		this.maxAttempts = maxAttempts;
+		this.delayMillis = delayMillis;
+		this.backoffFactor = backoffFactor;
+	}
+
+	/**
+	 * Returns a policy that never retries.
+	 *
+	 * @return a policy without retries
+	 */
+	public static RetryPolicy none() {
+		return NONE;
+	}
+
+	/**
+	 * Returns a policy that retries failed nodes after a fixed delay.
+	 *
+	 * @param maxAttempts
+	 * 		the maximum number of attempts per node including the first one
+	 * @param delayMillis
+	 * 		the delay between two attempts
+	 *
+	 * @return the policy
+	 */
+	public static RetryPolicy attempts(final int maxAttempts, final long delayMillis) {
+		return new RetryPolicy(maxAttempts, delayMillis, 1);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Returns if a node that failed with the given exception is programmed again.
+	 *
+	 * @param failure
+	 * 		the exception of the failed attempt
+	 * @param attempts
+	 * 		the number of attempts made so far
+	 *
+	 * @return <code>true</code> if the node has to be programmed again
+	 */
+	public boolean shouldRetry(final Throwable failure, final int attempts) {
+		return attempts < maxAttempts && isRetryable(failure);
+	}
+
+	/**
+	 * Returns the delay before the next attempt.
+	 *
+	 * @param attempts
+	 * 		the number of attempts made so far
+	 *
+	 * @return the delay in milliseconds
+	 */
+	public long getDelayMillis(final int attempts) {
+		return (long) (delayMillis * Math.pow(backoffFactor, attempts - 1));
+	}
+
+	/**
+	 * Returns if an attempt that failed with the given exception may succeed when repeated. Cancellations and images
+	 * that do not fit the chip are not retried.
+	 *
+	 * @param failure
+	 * 		the exception of the failed attempt
+	 *
+	 * @return <code>true</code> if the failure may be temporary
+	 */
+	protected boolean isRetryable(final Throwable failure) {
+		Throwable cause = failure;
+		while (cause != null) {
+			if (cause instanceof ProgramChipMismatchException || cause instanceof CancellationException) {
+				return false;
+			}
+			cause = cause.getCause();
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy{maxAttempts=" + maxAttempts + ", delayMillis=" + delayMillis + ", backoffFactor="
+				+ backoffFactor + "}";
+	}
+}
@@ -0,0 +1,211 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link ConcurrencyLimiter} for devices behind shared USB hubs. Nodes are grouped by the hub their port is attached
+ * to (see {@link UsbTopology}) and the number of concurrently programmed nodes is limited per hub and globally.
+ * <p/>
+ * Both limits adapt to the observed behaviour: a timeout halves the limit of the hub it occurred on and reduces the
+ * global limit by one, every successful attempt raises the limits again by one per limit's worth of successes
+ * (additive increase, multiplicative decrease) up to the configured maximum.
+ * <p/>
+ * Nodes that have not been added to the limiter are only subject to the global limit.
+ */
+public class TopologyConcurrencyLimiter implements ConcurrencyLimiter {
+
+	private static final Logger log = LoggerFactory.getLogger(TopologyConcurrencyLimiter.class);
+
+	private static class Limit {
+
+		private final int max;
+
+		private double current;
+
+		private int inUse;
+
+		private Limit(final int max) {
+			this.max = max;
+			this.current = max;
+		}
+
+		private boolean isAvailable() {
+			return inUse < (int) current;
+		}
+
+		private void increase() {
+			current = Math.min(max, current + 1 / current);
+		}
+
+		@Override
+		public String toString() {
+			return inUse + "/" + (int) current + " (max " + max + ")";
+		}
+	}
+
+	private final UsbTopology topology;
+
+	private final int maxPerHub;
+
+	private final Limit global;
+
+	private final Map<String, String> hubs = Maps.newHashMap();
+
+	private final Map<String, Limit> hubLimits = Maps.newHashMap();
+
+	private long timeouts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param topology
+	 * 		used to resolve the hub of a port
+	 * @param maxGlobal
+	 * 		the maximum number of nodes programmed at the same time
+	 * @param maxPerHub
+	 * 		the maximum number of nodes behind the same hub programmed at the same time
+	 */
+	public TopologyConcurrencyLimiter(final UsbTopology topology, final int maxGlobal, final int maxPerHub) {
+		checkArgument(maxGlobal > 0, "Global limit must be larger than zero.");
+		checkArgument(maxPerHub > 0, "Hub limit must be larger than zero.");
+		this.topology = checkNotNull(topology, "Null topology is not allowed.");
+		this.global = new Limit(maxGlobal);
+		this.maxPerHub = maxPerHub;
+	}
+
+	/**
+	 * Registers the port of a node.
+	 *
+	 * @param nodeId
+	 * 		the id of the node in the {@link DeviceGroup}
+	 * @param port
+	 * 		the serial port of the node
+	 *
+	 * @return the id of the hub the node is attached to
+	 */
+	public String addNode(final String nodeId, final String port) {
+		final String hubId = topology.getHubId(port);
+		synchronized (this) {
+			hubs.put(nodeId, hubId);
+		}
+		log.debug("Node {} on port {} is attached to hub {}", new Object[]{nodeId, port, hubId});
+		return hubId;
+	}
+
+	@Override
+	public synchronized boolean tryAcquire(final String nodeId) {
+
+		final Limit hubLimit = getNodeHubLimit(nodeId);
+		if (!global.isAvailable() || (hubLimit != null && !hubLimit.isAvailable())) {
+			return false;
+		}
+
+		global.inUse++;
+		if (hubLimit != null) {
+			hubLimit.inUse++;
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized void release(final String nodeId, @Nullable final Throwable failure) {
+
+		final Limit hubLimit = getNodeHubLimit(nodeId);
+
+		global.inUse--;
+		if (hubLimit != null) {
+			hubLimit.inUse--;
+		}
+
+		if (isTimeout(failure)) {
+
+			timeouts++;
+			global.current = Math.max(1, global.current - 1);
+			if (hubLimit != null) {
+				hubLimit.current = Math.max(1, hubLimit.current / 2);
+			}
+			log.debug("Timeout on node {}, reduced limits to global {} and hub {}",
+					new Object[]{nodeId, global, hubLimit}
+			);
+
+		} else if (failure == null) {
+
+			global.increase();
+			if (hubLimit != null) {
+				hubLimit.increase();
+			}
+		}
+	}
+
+	/**
+	 * Returns the current global limit.
+	 *
+	 * @return the number of nodes that may be programmed at the same time
+	 */
+	public synchronized int getGlobalLimit() {
+		return (int) global.current;
+	}
+
+	/**
+	 * Returns the current limit of a hub.
+	 *
+	 * @param hubId
+	 * 		the id of the hub as returned by {@link #addNode(String, String)}
+	 *
+	 * @return the number of nodes behind the hub that may be programmed at the same time
+	 */
+	public synchronized int getHubLimit(final String hubId) {
+		final Limit limit = hubLimits.get(hubId);
+		return limit == null ? maxPerHub : (int) limit.current;
+	}
+
+	/**
+	 * Returns the number of timeouts observed so far.
+	 *
+	 * @return the number of timeouts
+	 */
+	public synchronized long getTimeoutCount() {
+		return timeouts;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TopologyConcurrencyLimiter{global=" + global + ", hubs=" + hubLimits + "}";
+	}
+
+	@Nullable
+	private Limit getNodeHubLimit(final String nodeId) {
+
+		final String hubId = hubs.get(nodeId);
+		if (hubId == null) {
+			return null;
+		}
+
+		Limit limit = hubLimits.get(hubId);
+		if (limit == null) {
+			limit = new Limit(maxPerHub);
+			hubLimits.put(hubId, limit);
+		}
+		return limit;
+	}
+
+	private static boolean isTimeout(@Nullable final Throwable failure) {
+		Throwable cause = failure;
+		while (cause != null) {
+			if (cause instanceof java.util.concurrent.TimeoutException
+					|| cause instanceof de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+		return false;
+	}
+}
@@ -0,0 +1,92 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the physical USB location of serial ports using the Linux sysfs. The sysfs entry of a tty
+ * (<code>/sys/class/tty/ttyUSB0</code>) links to the device tree, e.g.
+ * <code>/sys/devices/pci0000:00/0000:00:14.0/usb1/1-2/1-2.3/1-2.3:1.0/ttyUSB0/tty/ttyUSB0</code>. The USB device
+ * closest to the tty (<code>1-2.3</code>, bus 1, port 2 of the root hub, port 3 of the hub behind it) is the physical
+ * path of the port, the device it is attached to (<code>1-2</code>) is its hub.
+ * <p/>
+ * Tests may pass the root of a fake sysfs directory tree.
+ */
+public class UsbTopology {
+
+	private static final Logger log = LoggerFactory.getLogger(UsbTopology.class);
+
+	public static final String DEFAULT_SYSFS_ROOT = "/sys";
+
+	private static final Pattern USB_DEVICE = Pattern.compile("\\d+-\\d+(\\.\\d+)*");
+
+	private final File sysfsRoot;
+
+	public UsbTopology() {
+		this(new File(DEFAULT_SYSFS_ROOT));
+	}
+
+	public UsbTopology(final File sysfsRoot) {
+		this.sysfsRoot = sysfsRoot;
+	}
+
+	/**
+	 * Returns the physical USB path of the given port (e.g. <code>1-2.3</code>).
+	 *
+	 * @param port
+	 * 		the serial port, symbolic links like <code>/dev/serial/by-id/...</code> are resolved
+	 *
+	 * @return the USB path or <code>null</code> if the port is not a USB device or the sysfs is not available
+	 */
+	@Nullable
+	public String getPhysicalPath(final String port) {
+
+		try {
+
+			final String ttyName = new File(port).getCanonicalFile().getName();
+			final File root = sysfsRoot.getCanonicalFile();
+			File file = new File(root, "class/tty/" + ttyName).getCanonicalFile();
+
+			while (file != null && !file.equals(root)) {
+				if (USB_DEVICE.matcher(file.getName()).matches()) {
+					return file.getName();
+				}
+				file = file.getParentFile();
+			}
+
+		} catch (IOException e) {
+			log.warn("Unable to resolve the USB path of port {}: {}", port, e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the id of the hub the given port is attached to. The id of a root hub is <code>usb&lt;bus&gt;</code>.
+	 * Ports whose location is unknown are treated as if they had a hub of their own.
+	 *
+	 * @param port
+	 * 		the serial port
+	 *
+	 * @return the id of the hub
+	 */
+	public String getHubId(final String port) {
+
+		final String physicalPath = getPhysicalPath(port);
+		if (physicalPath == null) {
+			return "port:" + port;
+		}
+
+		final int lastDot = physicalPath.lastIndexOf('.');
+		if (lastDot >= 0) {
+			return physicalPath.substring(0, lastDot);
+		}
+
+		return "usb" + physicalPath.substring(0, physicalPath.indexOf('-'));
+	}
+}
@@ -0,0 +1,105 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Support for gzip compressed firmware images. Compressed images are recognized by their magic number and are either
+ * decompressed block by block while programming (see {@link PrefetchingBlockReader}) or as a whole.
+ */
+public final class CompressedImages {
+
+	private static final int GZIP_MAGIC_1 = 0x1F;
+
+	private static final int GZIP_MAGIC_2 = 0x8B;
+
+	private static final int GZIP_MIN_LENGTH = 18;
+
+	private CompressedImages() {
+	}
+
+	/**
+	 * Checks whether the given image is gzip compressed.
+	 *
+	 * @param image
+	 * 		the image
+	 *
+	 * @return <code>true</code> if the image starts with the gzip magic number
+	 */
+	public static boolean isGzip(final FirmwareImage image) {
+		return image.getLength() >= GZIP_MIN_LENGTH
+				&& (image.getByte(0) & 0xFF) == GZIP_MAGIC_1
+				&& (image.getByte(1) & 0xFF) == GZIP_MAGIC_2;
+	}
+
+	/**
+	 * Returns the length of the decompressed image as stored in the trailer of the gzip file. The length is only
+	 * correct for images that consist of a single gzip member, which is the case for all files created by gzip.
+	 *
+	 * @param image
+	 * 		the compressed image
+	 *
+	 * @return the length of the decompressed image
+	 */
+	public static int getUncompressedLength(final FirmwareImage image) {
+		final int end = image.getLength();
+		return (image.getByte(end - 4) & 0xFF)
+				| (image.getByte(end - 3) & 0xFF) << 8
+				| (image.getByte(end - 2) & 0xFF) << 16
+				| (image.getByte(end - 1) & 0xFF) << 24;
+	}
+
+	/**
+	 * Opens a stream that decompresses the image.
+	 *
+	 * @param image
+	 * 		the compressed image
+	 *
+	 * @return the stream of the decompressed image
+	 *
+	 * @throws IOException
+	 * 		if the image is not a valid gzip file
+	 */
+	public static InputStream openStream(final FirmwareImage image) throws IOException {
+		return new GZIPInputStream(image.openStream());
+	}
+
+	/**
+	 * Decompresses the whole image.
+	 *
+	 * @param image
+	 * 		the compressed image
+	 *
+	 * @return the decompressed image
+	 *
+	 * @throws IOException
+	 * 		if the image is not a valid gzip file
+	 */
+	public static byte[] decompress(final FirmwareImage image) throws IOException {
+		final InputStream inputStream = openStream(image);
+		try {
+			return ByteStreams.toByteArray(inputStream);
+		} finally {
+			Closeables.close(inputStream, true);
+		}
+	}
+
+	/**
+	 * Returns the decompressed image if the given image is gzip compressed and the image itself otherwise.
+	 *
+	 * @param image
+	 * 		the image
+	 *
+	 * @return an image that is not compressed
+	 *
+	 * @throws IOException
+	 * 		if the image is not a valid gzip file
+	 */
+	public static FirmwareImage uncompressed(final FirmwareImage image) throws IOException {
+		return isGzip(image) ? FirmwareImage.wrap(decompress(image)) : image;
+	}
+}
@@ -0,0 +1,439 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An immutable firmware image that can be shared by all devices that are programmed with it.
+ * <p/>
+ * Device specific changes (e.g. the MAC address in the flash header of Jennic devices) are not written into the
+ * content but added as small patches with {@link #withPatch(int, byte[])}. The patched image shares the content with
+ * the original one and applies the patches whenever bytes are copied out of it.
+ * <p/>
+ * The results of parsing or validating an image can be cached with {@link #getParsed(String, Function)}. The cache
+ * belongs to the content, so an image and all its patched copies are parsed only once without hashing the content.
+ * The SHA-1 hash of the content (see {@link #getContentHash()}) is only calculated when it is asked for, e.g. to
+ * compare images that have been loaded separately.
+ * <p/>
+ * Images can be backed by an array, by any {@link ByteBuffer} or by a read-only memory mapped file (see
+ * {@link #map(java.io.File)}). Blocks are always copied directly out of the backing buffer, so a mapped image is never
+ * loaded into the heap as a whole.
+ */
+public final class FirmwareImage {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static class Patch {
+
+		private final int address;
+
+		private final byte[] data;
+
+		private Patch(final int address, final byte[] data) {
+			this.address = address;
+			this.data = data;
+		}
+	}
+
+	private final ByteBuffer content;
+
+	private final List<Patch> patches;
+
+	@Nullable
+	private final File file;
+
+	/**
+	 * Results of {@link #getParsed(String, Function)}, shared with all patched copies of the content.
+	 */
+	private final ConcurrentMap<String, Object> parsed;
+
+	private volatile HashCode contentHash;
+
+	private FirmwareImage(final ByteBuffer content, final List<Patch> patches, @Nullable final File file,
+						  final ConcurrentMap<String, Object> parsed, @Nullable final HashCode contentHash) {
+		this.content = content;
+		this.patches = patches;
+		this.file = file;
+		this.parsed = parsed;
+		this.contentHash = contentHash;
+	}
+
+	private FirmwareImage(final ByteBuffer content, @Nullable final File file) {
+		this(content, ImmutableList.<Patch>of(), file, Maps.<String, Object>newConcurrentMap(), null);
+	}
+
+	/**
+	 * Creates an image from a copy of the given bytes.
+	 *
+	 * @param data
+	 * 		the content of the image
+	 *
+	 * @return the image
+	 */
+	public static FirmwareImage of(final byte[] data) {
+		checkNotNull(data, "Null data is not allowed.");
+		return wrap(data.clone());
+	}
+
+	/**
+	 * Creates an image that uses the given array as its content. The array must not be modified as long as the image
+	 * is in use.
+	 *
+	 * @param data
+	 * 		the content of the image
+	 *
+	 * @return the image
+	 */
+	public static FirmwareImage wrap(final byte[] data) {
+		checkNotNull(data, "Null data is not allowed.");
+		return new FirmwareImage(ByteBuffer.wrap(data).asReadOnlyBuffer(), null);
+	}
+
+	/**
+	 * Creates an image from the remaining bytes of the given buffer without copying them. The position of the buffer
+	 * is not changed. The content of the buffer must not be modified as long as the image is in use.
+	 *
+	 * @param buffer
+	 * 		the content of the image
+	 *
+	 * @return the image
+	 */
+	public static FirmwareImage wrap(final ByteBuffer buffer) {
+		checkNotNull(buffer, "Null buffer is not allowed.");
+		return new FirmwareImage(buffer.slice().asReadOnlyBuffer(), null);
+	}
+
+	/**
+	 * Creates an image from a file by mapping it read-only into memory. The pages of the file are loaded by the
+	 * operating system when they are accessed and are shared by all devices that are programmed with the image.
+	 * <p/>
+	 * The file must not be modified or truncated as long as the image is in use. Changes to the file show through the
+	 * mapping, but neither the content hash nor the parsed results of the image are calculated again. Write a new
+	 * image to a new file and map that one instead.
+	 *
+	 * @param file
+	 * 		the image file
+	 *
+	 * @return the image
+	 *
+	 * @throws IOException
+	 * 		if the file can not be mapped
+	 */
+	public static FirmwareImage map(final File file) throws IOException {
+
+		checkNotNull(file, "Null file is not allowed.");
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+
+			final FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Image file " + file + " is too large: " + channel.size() + " bytes");
+			}
+
+			// the mapping stays valid after the channel has been closed
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new FirmwareImage(buffer, file);
+
+		} finally {
+			Closeables.close(randomAccessFile, true);
+		}
+	}
+
+	public int getLength() {
+		return content.capacity();
+	}
+
+	/**
+	 * Returns the byte at the given address with all patches applied.
+	 *
+	 * @param address
+	 * 		the address within the image
+	 *
+	 * @return the byte
+	 */
+	public byte getByte(final int address) {
+		for (int i = patches.size() - 1; i >= 0; i--) {
+			final Patch patch = patches.get(i);
+			if (address >= patch.address && address < patch.address + patch.data.length) {
+				return patch.data[address - patch.address];
+			}
+		}
+		return content.get(address);
+	}
+
+	/**
+	 * Copies a range of the image with all patches applied.
+	 *
+	 * @param address
+	 * 		the address of the first byte to copy
+	 * @param target
+	 * 		the array the bytes are copied to
+	 * @param offset
+	 * 		the index in the target of the first byte
+	 * @param length
+	 * 		the number of bytes to copy
+	 */
+	public void copyTo(final int address, final byte[] target, final int offset, final int length) {
+
+		checkPositionIndexes(address, address + length, getLength());
+		checkPositionIndexes(offset, offset + length, target.length);
+
+		final ByteBuffer buffer = content.duplicate();
+		buffer.position(address);
+		buffer.get(target, offset, length);
+
+		for (Patch patch : patches) {
+			final int start = Math.max(address, patch.address);
+			final int end = Math.min(address + length, patch.address + patch.data.length);
+			if (start < end) {
+				System.arraycopy(patch.data, start - patch.address, target, offset + start - address, end - start);
+			}
+		}
+	}
+
+	/**
+	 * Returns a range of the image with all patches applied.
+	 *
+	 * @param address
+	 * 		the address of the first byte
+	 * @param length
+	 * 		the number of bytes
+	 *
+	 * @return a new array containing the bytes
+	 */
+	public byte[] getBytes(final int address, final int length) {
+		final byte[] bytes = new byte[length];
+		copyTo(address, bytes, 0, length);
+		return bytes;
+	}
+
+	/**
+	 * Returns the whole image with all patches applied.
+	 *
+	 * @return a new array containing the image
+	 */
+	public byte[] toByteArray() {
+		return getBytes(0, getLength());
+	}
+
+	/**
+	 * Writes the whole image with all patches applied to the given stream. The image is copied in small chunks.
+	 *
+	 * @param outputStream
+	 * 		the stream to write to
+	 *
+	 * @throws IOException
+	 * 		if writing fails
+	 */
+	public void writeTo(final OutputStream outputStream) throws IOException {
+		final byte[] chunk = new byte[Math.min(CHUNK_SIZE, getLength())];
+		for (int address = 0; address < getLength(); address += chunk.length) {
+			final int length = Math.min(chunk.length, getLength() - address);
+			copyTo(address, chunk, 0, length);
+			outputStream.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Returns a stream that reads the whole image with all patches applied.
+	 *
+	 * @return a new stream
+	 */
+	public InputStream openStream() {
+		return new InputStream() {
+
+			private int position;
+
+			@Override
+			public int read() throws IOException {
+				return position < getLength() ? getByte(position++) & 0xFF : -1;
+			}
+
+			@Override
+			public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+				if (length == 0) {
+					return 0;
+				}
+				final int count = Math.min(length, getLength() - position);
+				if (count <= 0) {
+					return -1;
+				}
+				copyTo(position, bytes, offset, count);
+				position += count;
+				return count;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return getLength() - position;
+			}
+		};
+	}
+
+	/**
+	 * Returns the file this image has been mapped from. The file does not contain the patches of this image.
+	 *
+	 * @return the file or <code>null</code> if the image has not been mapped from a file
+	 */
+	@Nullable
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns a copy of this image that has the given bytes at the given address. The content is shared with this
+	 * image, only the patch is stored.
+	 *
+	 * @param address
+	 * 		the address of the patch
+	 * @param data
+	 * 		the bytes of the patch
+	 *
+	 * @return the patched image
+	 */
+	public FirmwareImage withPatch(final int address, final byte[] data) {
+
+		checkNotNull(data, "Null data is not allowed.");
+		checkArgument(address >= 0 && address + data.length <= getLength(),
+				"Patch of " + data.length + " bytes at " + address + " exceeds the image length of " + getLength()
+		);
+
+		final List<Patch> patched = ImmutableList.<Patch>builder()
+				.addAll(patches)
+				.add(new Patch(address, data.clone()))
+				.build();
+
+		return new FirmwareImage(content, patched, file, parsed, contentHash);
+	}
+
+	/**
+	 * Returns a range of this image as an image of its own. The content is shared, not copied.
+	 *
+	 * @param address
+	 * 		the address of the first byte of the range
+	 * @param length
+	 * 		the length of the range
+	 *
+	 * @return the image of the range
+	 */
+	public FirmwareImage slice(final int address, final int length) {
+
+		checkState(!isPatched(), "Patched images can not be sliced.");
+		checkPositionIndexes(address, address + length, getLength());
+
+		final ByteBuffer buffer = content.duplicate();
+		buffer.position(address);
+		buffer.limit(address + length);
+
+		return new FirmwareImage(buffer.slice(), null);
+	}
+
+	public boolean isPatched() {
+		return !patches.isEmpty();
+	}
+
+	/**
+	 * Returns this image without any patches.
+	 *
+	 * @return the unpatched image
+	 */
+	public FirmwareImage getBase() {
+		return isPatched() ? new FirmwareImage(content, ImmutableList.<Patch>of(), file, parsed, contentHash) : this;
+	}
+
+	/**
+	 * Returns the SHA-1 hash of the unpatched content. The hash is calculated when it is first asked for and shared
+	 * with the patched copies of this image. As it reads the whole content, prefer
+	 * {@link #hasSameContent(FirmwareImage)} for comparisons.
+	 *
+	 * @return the hash of the content
+	 */
+	public HashCode getContentHash() {
+
+		if (contentHash == null) {
+
+			final Hasher hasher = Hashing.sha1().newHasher();
+			final ByteBuffer buffer = content.duplicate();
+			final byte[] chunk = new byte[Math.min(CHUNK_SIZE, getLength())];
+
+			buffer.position(0);
+			while (buffer.hasRemaining()) {
+				final int length = Math.min(chunk.length, buffer.remaining());
+				buffer.get(chunk, 0, length);
+				hasher.putBytes(chunk, 0, length);
+			}
+
+			contentHash = hasher.hash();
+		}
+
+		return contentHash;
+	}
+
+	/**
+	 * Checks whether the unpatched content of the given image equals the one of this image. Images that share their
+	 * content, e.g. patched copies, are compared without reading the content. Otherwise the content hashes are
+	 * compared.
+	 *
+	 * @param other
+	 * 		the other image
+	 *
+	 * @return <code>true</code> if both images have the same unpatched content
+	 */
+	public boolean hasSameContent(final FirmwareImage other) {
+		return content == other.content
+				|| getLength() == other.getLength() && getContentHash().equals(other.getContentHash());
+	}
+
+	/**
+	 * Returns the result of parsing or validating the unpatched content with the given parser. Results are cached
+	 * with the content by the name of the parser, so the content of an image and its patched copies is parsed only
+	 * once.
+	 *
+	 * @param name
+	 * 		a name that is unique for the parser
+	 * @param parser
+	 * 		the parser, called with the unpatched image, must not return <code>null</code>
+	 *
+	 * @return the result of the parser
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getParsed(final String name, final Function<FirmwareImage, T> parser) {
+		Object result = parsed.get(name);
+		if (result == null) {
+			result = checkNotNull(parser.apply(getBase()), "Parser " + name + " returned null.");
+			final Object previous = parsed.putIfAbsent(name, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return (T) result;
+	}
+
+	@Override
+	public String toString() {
+		return "FirmwareImage{length=" + getLength() + ", patches=" + patches.size() + ", hash="
+				+ (contentHash == null ? "?" : contentHash.toString()) + "}";
+	}
+}
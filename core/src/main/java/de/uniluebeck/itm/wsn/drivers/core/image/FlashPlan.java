@@ -0,0 +1,385 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * A firmware image that has been preprocessed for a platform, so that programming a device does not have to parse,
+ * split or analyze the image again. A plan contains the target platform, the blocks in the order they are written
+ * together with their flash addresses and CRC32 checksums, and values the driver would otherwise calculate before
+ * every flash (e.g. the flash CRC of Pacemate devices).
+ * <p/>
+ * Plans are created by the {@link FlashPlanCompiler} of a driver (see {@link FlashPlanTool}) and are usually memory
+ * mapped from a file. The file consists of a header followed by the data of all blocks:
+ * <pre>
+ * int    magic ("WSNP")
+ * short  version
+ * short  reserved
+ * int    header length
+ * UTF    platform (name of the {@link ChipType})
+ * int    number of attributes, followed by (UTF name, long value) for each attribute
+ * int    number of blocks, followed by (int address, int offset, int length, int crc32) for each block
+ * byte[] block data, the offsets are relative to the end of the header
+ * </pre>
+ * All numbers are big-endian.
+ */
+public class FlashPlan {
+
+	public static final int MAGIC = 0x57534E50;
+
+	public static final int VERSION = 1;
+
+	private static final int PREAMBLE_LENGTH = 12;
+
+	/**
+	 * A single block of a {@link FlashPlan}.
+	 */
+	public static class Block {
+
+		private final int address;
+
+		private final int offset;
+
+		private final int length;
+
+		private final int checksum;
+
+		public Block(final int address, final int offset, final int length, final int checksum) {
+			this.address = address;
+			this.offset = offset;
+			this.length = length;
+			this.checksum = checksum;
+		}
+
+		public int getAddress() {
+			return address;
+		}
+
+		/**
+		 * Returns the offset of the block data in {@link FlashPlan#getData()}.
+		 *
+		 * @return the offset of the data
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the CRC32 checksum of the block data.
+		 *
+		 * @return the checksum
+		 */
+		public int getChecksum() {
+			return checksum;
+		}
+
+		@Override
+		public String toString() {
+			return "Block{address=0x" + Integer.toHexString(address) + ", length=" + length + "}";
+		}
+	}
+
+	/**
+	 * Builds a plan block by block.
+	 */
+	public static class Builder {
+
+		private final ChipType platform;
+
+		private final ImmutableMap.Builder<String, Long> attributes = ImmutableMap.builder();
+
+		private final ImmutableList.Builder<Block> blocks = ImmutableList.builder();
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+		private Builder(final ChipType platform) {
+			this.platform = checkNotNull(platform, "Null platform is not allowed.");
+		}
+
+		public Builder attribute(final String name, final long value) {
+			attributes.put(name, value);
+			return this;
+		}
+
+		public Builder block(final int address, final byte[] bytes) {
+			return block(address, bytes, 0, bytes.length);
+		}
+
+		public Builder block(final int address, final byte[] bytes, final int offset, final int length) {
+			checkPositionIndexes(offset, offset + length, bytes.length);
+			blocks.add(new Block(address, data.size(), length, checksum(bytes, offset, length)));
+			data.write(bytes, offset, length);
+			return this;
+		}
+
+		public FlashPlan build() {
+			return new FlashPlan(platform, attributes.build(), blocks.build(), FirmwareImage.wrap(data.toByteArray()));
+		}
+	}
+
+	private final ChipType platform;
+
+	private final Map<String, Long> attributes;
+
+	private final List<Block> blocks;
+
+	private final FirmwareImage data;
+
+	private FlashPlan(final ChipType platform, final Map<String, Long> attributes, final List<Block> blocks,
+					  final FirmwareImage data) {
+		this.platform = platform;
+		this.attributes = attributes;
+		this.blocks = blocks;
+		this.data = data;
+	}
+
+	public static Builder builder(final ChipType platform) {
+		return new Builder(platform);
+	}
+
+	/**
+	 * Checks whether the given image is a flash plan.
+	 *
+	 * @param image
+	 * 		the image
+	 *
+	 * @return <code>true</code> if the image starts with the magic number of flash plans
+	 */
+	public static boolean isFlashPlan(final FirmwareImage image) {
+		return image.getLength() >= PREAMBLE_LENGTH
+				&& ((image.getByte(0) & 0xFF) << 24 | (image.getByte(1) & 0xFF) << 16
+				| (image.getByte(2) & 0xFF) << 8 | (image.getByte(3) & 0xFF)) == MAGIC;
+	}
+
+	/**
+	 * Reads a plan. Only the header is parsed, the block data stays in the given image.
+	 *
+	 * @param image
+	 * 		the plan, usually mapped from a file
+	 *
+	 * @return the plan
+	 *
+	 * @throws IOException
+	 * 		if the image is not a valid flash plan
+	 */
+	public static FlashPlan parse(final FirmwareImage image) throws IOException {
+
+		if (!isFlashPlan(image)) {
+			throw new IOException("Image is not a flash plan");
+		}
+
+		final DataInputStream preamble = new DataInputStream(
+				new ByteArrayInputStream(image.getBytes(0, PREAMBLE_LENGTH))
+		);
+		preamble.readInt();
+		final int version = preamble.readShort();
+		preamble.readShort();
+		final int headerLength = preamble.readInt();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported flash plan version " + version);
+		}
+		if (headerLength < PREAMBLE_LENGTH || headerLength > image.getLength()) {
+			throw new IOException("Invalid flash plan header length " + headerLength);
+		}
+
+		final DataInputStream header = new DataInputStream(new ByteArrayInputStream(
+				image.getBytes(PREAMBLE_LENGTH, headerLength - PREAMBLE_LENGTH)
+		)
+		);
+
+		final ChipType platform;
+		try {
+			platform = ChipType.valueOf(header.readUTF());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown flash plan platform", e);
+		}
+
+		final ImmutableMap.Builder<String, Long> attributes = ImmutableMap.builder();
+		final int attributeCount = header.readInt();
+		for (int i = 0; i < attributeCount; i++) {
+			attributes.put(header.readUTF(), header.readLong());
+		}
+
+		final FirmwareImage data = image.slice(headerLength, image.getLength() - headerLength);
+
+		final ImmutableList.Builder<Block> blocks = ImmutableList.builder();
+		final int blockCount = header.readInt();
+		for (int i = 0; i < blockCount; i++) {
+			final Block block = new Block(header.readInt(), header.readInt(), header.readInt(), header.readInt());
+			if (block.getOffset() < 0 || block.getLength() < 0
+					|| block.getOffset() + block.getLength() > data.getLength()) {
+				throw new IOException("Flash plan block " + i + " exceeds the plan data");
+			}
+			blocks.add(block);
+		}
+
+		return new FlashPlan(platform, attributes.build(), blocks.build(), data);
+	}
+
+	/**
+	 * Maps a plan file into memory and reads it.
+	 *
+	 * @param file
+	 * 		the plan file
+	 *
+	 * @return the plan
+	 *
+	 * @throws IOException
+	 * 		if the file can not be mapped or is not a valid flash plan
+	 */
+	public static FlashPlan map(final File file) throws IOException {
+		return parse(FirmwareImage.map(file));
+	}
+
+	public ChipType getPlatform() {
+		return platform;
+	}
+
+	public Map<String, Long> getAttributes() {
+		return attributes;
+	}
+
+	@Nullable
+	public Long getAttribute(final String name) {
+		return attributes.get(name);
+	}
+
+	public List<Block> getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Returns the data of all blocks.
+	 *
+	 * @return the block data
+	 */
+	public FirmwareImage getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the number of bytes of all blocks.
+	 *
+	 * @return the number of bytes written by the plan
+	 */
+	public int getLength() {
+		int length = 0;
+		for (Block block : blocks) {
+			length += block.getLength();
+		}
+		return length;
+	}
+
+	/**
+	 * Copies the data of a block out of the plan.
+	 *
+	 * @param block
+	 * 		the block
+	 *
+	 * @return the data of the block
+	 */
+	public byte[] getBlockData(final Block block) {
+		return data.getBytes(block.getOffset(), block.getLength());
+	}
+
+	/**
+	 * Checks the data of all blocks against their checksums. This reads the whole plan and is therefore not done
+	 * when a plan is loaded.
+	 *
+	 * @return <code>true</code> if all blocks are intact
+	 */
+	public boolean verify() {
+		for (Block block : blocks) {
+			final byte[] bytes = getBlockData(block);
+			if (checksum(bytes, 0, bytes.length) != block.getChecksum()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the plan in the format described above.
+	 *
+	 * @param outputStream
+	 * 		the stream to write to
+	 *
+	 * @throws IOException
+	 * 		if writing fails
+	 */
+	public void writeTo(final OutputStream outputStream) throws IOException {
+
+		final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		final DataOutputStream header = new DataOutputStream(headerBytes);
+
+		header.writeUTF(platform.name());
+		header.writeInt(attributes.size());
+		for (Map.Entry<String, Long> attribute : attributes.entrySet()) {
+			header.writeUTF(attribute.getKey());
+			header.writeLong(attribute.getValue());
+		}
+		header.writeInt(blocks.size());
+		for (Block block : blocks) {
+			header.writeInt(block.getAddress());
+			header.writeInt(block.getOffset());
+			header.writeInt(block.getLength());
+			header.writeInt(block.getChecksum());
+		}
+		header.flush();
+
+		final DataOutputStream output = new DataOutputStream(outputStream);
+		output.writeInt(MAGIC);
+		output.writeShort(VERSION);
+		output.writeShort(0);
+		output.writeInt(PREAMBLE_LENGTH + headerBytes.size());
+		headerBytes.writeTo(output);
+		output.flush();
+
+		data.writeTo(outputStream);
+	}
+
+	/**
+	 * Calculates the CRC32 checksum that is stored for each block.
+	 *
+	 * @param bytes
+	 * 		the data
+	 * @param offset
+	 * 		the index of the first byte
+	 * @param length
+	 * 		the number of bytes
+	 *
+	 * @return the checksum
+	 */
+	public static int checksum(final byte[] bytes, final int offset, final int length) {
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	@Override
+	public String toString() {
+		return "FlashPlan{platform=" + platform + ", blocks=" + blocks.size() + ", length=" + getLength()
+				+ ", attributes=" + attributes + "}";
+	}
+}
@@ -0,0 +1,28 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+/**
+ * Service provider interface of drivers that can preprocess images into a {@link FlashPlan}. Implementations are
+ * registered in <code>META-INF/services/de.uniluebeck.itm.wsn.drivers.core.image.FlashPlanCompiler</code>.
+ */
+public interface FlashPlanCompiler {
+
+	/**
+	 * Returns the name of the driver, e.g. <code>jennic</code>.
+	 *
+	 * @return the name of the driver
+	 */
+	String getName();
+
+	/**
+	 * Creates the plan for an image in the format the driver is usually programmed with.
+	 *
+	 * @param image
+	 * 		the image
+	 *
+	 * @return the plan
+	 *
+	 * @throws Exception
+	 * 		if the image is not valid for the platform
+	 */
+	FlashPlan compile(FirmwareImage image) throws Exception;
+}
@@ -0,0 +1,55 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.io.Closeables;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+
+/**
+ * Command line tool that compiles an image into a {@link FlashPlan} using the {@link FlashPlanCompiler}s on the
+ * class path.
+ * <p/>
+ * Usage: <code>FlashPlanTool &lt;driver&gt; &lt;image&gt; &lt;plan&gt;</code>
+ */
+public final class FlashPlanTool {
+
+	private FlashPlanTool() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length != 3) {
+			System.err.println("Usage: FlashPlanTool <driver> <image> <plan>");
+			System.err.println("Available drivers:");
+			for (FlashPlanCompiler compiler : ServiceLoader.load(FlashPlanCompiler.class)) {
+				System.err.println("  " + compiler.getName());
+			}
+			System.exit(1);
+		}
+
+		FlashPlanCompiler compiler = null;
+		for (FlashPlanCompiler candidate : ServiceLoader.load(FlashPlanCompiler.class)) {
+			if (candidate.getName().equalsIgnoreCase(args[0])) {
+				compiler = candidate;
+			}
+		}
+		if (compiler == null) {
+			System.err.println("Unknown driver: " + args[0]);
+			System.exit(1);
+		}
+
+		final FlashPlan plan = compiler.compile(FirmwareImage.map(new File(args[1])));
+
+		final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(args[2]));
+		try {
+			plan.writeTo(outputStream);
+		} finally {
+			Closeables.close(outputStream, false);
+		}
+
+		System.out.println(plan);
+	}
+}
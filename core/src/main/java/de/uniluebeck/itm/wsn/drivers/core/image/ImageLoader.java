@@ -0,0 +1,50 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Service provider interface for parsers of firmware image formats. Implementations are registered in
+ * <code>META-INF/services/de.uniluebeck.itm.wsn.drivers.core.image.ImageLoader</code> and looked up by
+ * {@link ImageLoaders}.
+ * <p/>
+ * Loaders parse the stream in a single pass and must be thread-safe.
+ */
+public interface ImageLoader {
+
+	/**
+	 * Returns the name of the format, e.g. <code>ihex</code>.
+	 *
+	 * @return the name of the format
+	 */
+	String getName();
+
+	/**
+	 * Checks whether the given start of a file is in this format. Loaders should validate as much of the header as
+	 * possible (e.g. the first record including its checksum), as files that are not accepted by any loader are loaded
+	 * as raw binaries.
+	 *
+	 * @param header
+	 * 		the first bytes of the file
+	 * @param length
+	 * 		the number of valid bytes in the header
+	 *
+	 * @return <code>true</code> if the file can be parsed by this loader
+	 */
+	boolean accepts(byte[] header, int length);
+
+	/**
+	 * Parses an image. The stream is not closed.
+	 *
+	 * @param inputStream
+	 * 		the image
+	 *
+	 * @return the segments of the image in the order they appear in the file, adjacent data is merged into one
+	 * segment
+	 *
+	 * @throws IOException
+	 * 		if reading fails or the image is malformed
+	 */
+	List<ImageSegment> load(InputStream inputStream) throws IOException;
+}
@@ -0,0 +1,119 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Registry of all {@link ImageLoader}s found on the class path. Formats can be selected by name or detected from the
+ * start of a file:
+ * <pre>
+ * List&lt;ImageSegment&gt; segments = ImageLoaders.load(inputStream);
+ * List&lt;ImageSegment&gt; segments = ImageLoaders.forName("ihex").load(inputStream);
+ * </pre>
+ */
+public final class ImageLoaders {
+
+	/**
+	 * Number of bytes passed to {@link ImageLoader#accepts(byte[], int)}, enough for a text record of 255 data bytes.
+	 */
+	private static final int HEADER_LENGTH = 1024;
+
+	private static final ImageLoader RAW_BINARY_LOADER = new RawBinaryImageLoader();
+
+	private static volatile List<ImageLoader> loaders;
+
+	private ImageLoaders() {
+	}
+
+	/**
+	 * Returns all registered loaders.
+	 *
+	 * @return the loaders
+	 */
+	public static List<ImageLoader> getLoaders() {
+		if (loaders == null) {
+			loaders = ImmutableList.copyOf(ServiceLoader.load(ImageLoader.class, ImageLoader.class.getClassLoader()));
+		}
+		return loaders;
+	}
+
+	/**
+	 * Returns the loader for the given format.
+	 *
+	 * @param name
+	 * 		the name of the format (see {@link ImageLoader#getName()})
+	 *
+	 * @return the loader
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if no loader for the format is registered
+	 */
+	public static ImageLoader forName(final String name) {
+		for (ImageLoader loader : getLoaders()) {
+			if (loader.getName().equalsIgnoreCase(name)) {
+				return loader;
+			}
+		}
+		checkArgument(RAW_BINARY_LOADER.getName().equalsIgnoreCase(name), "Unknown image format: " + name);
+		return RAW_BINARY_LOADER;
+	}
+
+	/**
+	 * Returns the first loader that accepts the given start of a file.
+	 *
+	 * @param header
+	 * 		the first bytes of the file
+	 * @param length
+	 * 		the number of valid bytes in the header
+	 *
+	 * @return the loader or <code>null</code> if the file seems to be a raw binary
+	 */
+	@Nullable
+	public static ImageLoader detect(final byte[] header, final int length) {
+		for (ImageLoader loader : getLoaders()) {
+			if (loader.accepts(header, length)) {
+				return loader;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Detects the format of the image and parses it. Files that are not accepted by any loader are loaded as raw
+	 * binaries. The stream is not closed.
+	 *
+	 * @param inputStream
+	 * 		the image
+	 *
+	 * @return the segments of the image
+	 *
+	 * @throws IOException
+	 * 		if reading fails or the image is malformed
+	 */
+	public static List<ImageSegment> load(final InputStream inputStream) throws IOException {
+
+		final InputStream bufferedInputStream = inputStream.markSupported() ?
+				inputStream :
+				new BufferedInputStream(inputStream);
+
+		final byte[] header = new byte[HEADER_LENGTH];
+		bufferedInputStream.mark(HEADER_LENGTH);
+		int length = 0;
+		int read;
+		while (length < header.length && (read = bufferedInputStream.read(header, length, header.length - length)) > 0) {
+			length += read;
+		}
+		bufferedInputStream.reset();
+
+		final ImageLoader loader = detect(header, length);
+		return (loader == null ? RAW_BINARY_LOADER : loader).load(bufferedInputStream);
+	}
+}
@@ -0,0 +1,44 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A continuous range of bytes of a firmware image together with the address it has to be written to.
+ */
+public class ImageSegment {
+
+	private final int address;
+
+	private final byte[] data;
+
+	public ImageSegment(final int address, final byte[] data) {
+		this.address = address;
+		this.data = checkNotNull(data, "Null data is not allowed.");
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getLength() {
+		return data.length;
+	}
+
+	/**
+	 * Returns the address behind the last byte of the segment.
+	 *
+	 * @return the end address (exclusive)
+	 */
+	public int getEndAddress() {
+		return address + data.length;
+	}
+
+	@Override
+	public String toString() {
+		return "ImageSegment{address=0x" + Integer.toHexString(address) + ", length=" + data.length + "}";
+	}
+}
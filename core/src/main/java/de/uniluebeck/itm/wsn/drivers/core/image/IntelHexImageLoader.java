@@ -0,0 +1,129 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loader for images in the Intel HEX format. Data records are placed at the address given by the last extended
+ * segment address (type 02) or extended linear address (type 04) record. Start address records are ignored.
+ */
+public class IntelHexImageLoader implements ImageLoader {
+
+	public static final String NAME = "ihex";
+
+	private static final int DATA = 0x00;
+
+	private static final int END_OF_FILE = 0x01;
+
+	private static final int EXTENDED_SEGMENT_ADDRESS = 0x02;
+
+	private static final int START_SEGMENT_ADDRESS = 0x03;
+
+	private static final int EXTENDED_LINEAR_ADDRESS = 0x04;
+
+	private static final int START_LINEAR_ADDRESS = 0x05;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Accepts the header only if its first line is a complete record with a valid checksum, so that raw binaries that
+	 * happen to start with ':' are not taken for Intel HEX files.
+	 */
+	@Override
+	public boolean accepts(final byte[] header, final int length) {
+		final RecordReader reader = new RecordReader(new ByteArrayInputStream(header, 0, length));
+		try {
+			if (!reader.nextLine()) {
+				return false;
+			}
+			readRecord(reader, new byte[255]);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public List<ImageSegment> load(final InputStream inputStream) throws IOException {
+
+		final RecordReader reader = new RecordReader(inputStream);
+		final SegmentCollector collector = new SegmentCollector();
+		final byte[] data = new byte[255];
+		long baseAddress = 0;
+
+		while (reader.nextLine()) {
+
+			final int type = readRecord(reader, data);
+			final int dataLength = reader.byteAt(1);
+			final int address = (reader.byteAt(3) << 8) | reader.byteAt(5);
+
+			switch (type) {
+				case DATA:
+					collector.add(baseAddress + address, data, 0, dataLength);
+					break;
+				case END_OF_FILE:
+					return collector.finish();
+				case EXTENDED_SEGMENT_ADDRESS:
+					baseAddress = (long) readAddress(reader, data, dataLength) << 4;
+					break;
+				case EXTENDED_LINEAR_ADDRESS:
+					baseAddress = (long) readAddress(reader, data, dataLength) << 16;
+					break;
+				case START_SEGMENT_ADDRESS:
+				case START_LINEAR_ADDRESS:
+					break;
+			}
+		}
+
+		return collector.finish();
+	}
+
+	/**
+	 * Checks the syntax and the checksum of the current line and copies the data bytes of the record.
+	 *
+	 * @return the type of the record
+	 */
+	private static int readRecord(final RecordReader reader, final byte[] data) throws IOException {
+
+		if (reader.charAt(0) != ':') {
+			throw reader.error("Record does not start with ':'");
+		}
+
+		final int dataLength = reader.byteAt(1);
+		final int address = (reader.byteAt(3) << 8) | reader.byteAt(5);
+		final int type = reader.byteAt(7);
+
+		if (reader.getLineLength() != 11 + 2 * dataLength) {
+			throw reader.error("Record length does not match the byte count " + dataLength);
+		}
+		if (type > START_LINEAR_ADDRESS) {
+			throw reader.error("Unknown record type " + type);
+		}
+
+		int checksum = dataLength + (address >> 8) + (address & 0xFF) + type;
+		for (int i = 0; i < dataLength; i++) {
+			data[i] = (byte) reader.byteAt(9 + 2 * i);
+			checksum += data[i] & 0xFF;
+		}
+		checksum += reader.byteAt(9 + 2 * dataLength);
+
+		if ((checksum & 0xFF) != 0) {
+			throw reader.error("Invalid checksum");
+		}
+
+		return type;
+	}
+
+	private static int readAddress(final RecordReader reader, final byte[] data, final int dataLength)
+			throws IOException {
+		if (dataLength != 2) {
+			throw reader.error("Address record must contain 2 bytes");
+		}
+		return ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+	}
+}
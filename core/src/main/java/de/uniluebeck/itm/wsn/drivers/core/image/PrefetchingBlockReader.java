@@ -0,0 +1,164 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits a stream into blocks of a fixed size. The blocks are read by a background task that stays a few blocks
+ * ahead of the consumer, so that reading the stream (e.g. decompressing an image) overlaps with writing the blocks
+ * to a device. Only the prefetched blocks are held in memory.
+ */
+public class PrefetchingBlockReader implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(PrefetchingBlockReader.class);
+
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private final InputStream inputStream;
+
+	private final int blockSize;
+
+	private final BlockingQueue<byte[]> blocks;
+
+	private final Future<?> task;
+
+	/**
+	 * Set by the first of the background task and {@link #close()}, the stream is closed by the task if it starts.
+	 */
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private volatile IOException failure;
+
+	private volatile boolean closed;
+
+	private boolean endOfStream;
+
+	/**
+	 * Constructor. Starts reading the stream immediately.
+	 *
+	 * @param executorService
+	 * 		the executor the stream is read in, it is occupied until the stream has been read or the reader is closed
+	 * @param inputStream
+	 * 		the stream, closed by {@link #close()}
+	 * @param blockSize
+	 * 		the size of the blocks, only the last block may be smaller
+	 * @param prefetchBlocks
+	 * 		the maximum number of blocks that are read ahead
+	 */
+	public PrefetchingBlockReader(final ExecutorService executorService, final InputStream inputStream,
+								  final int blockSize, final int prefetchBlocks) {
+
+		this.inputStream = inputStream;
+		this.blockSize = blockSize;
+		this.blocks = new ArrayBlockingQueue<byte[]>(prefetchBlocks);
+
+		this.task = executorService.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (started.compareAndSet(false, true)) {
+					readBlocks();
+				}
+			}
+		}
+		);
+	}
+
+	/**
+	 * Returns the next block, waiting for it if it has not been read yet.
+	 *
+	 * @return the block or <code>null</code> at the end of the stream
+	 *
+	 * @throws IOException
+	 * 		if reading the stream failed
+	 */
+	@Nullable
+	public byte[] nextBlock() throws IOException {
+
+		if (endOfStream) {
+			return null;
+		}
+
+		final byte[] block;
+		try {
+			block = blocks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the next block");
+		}
+
+		if (block == END_OF_STREAM) {
+			endOfStream = true;
+			if (failure != null) {
+				throw failure;
+			}
+			return null;
+		}
+
+		return block;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		task.cancel(true);
+		blocks.clear();
+		if (started.compareAndSet(false, true)) {
+			closeInputStream();
+		}
+	}
+
+	private void readBlocks() {
+		try {
+
+			try {
+
+				while (!closed) {
+
+					final byte[] block = new byte[blockSize];
+					int length = 0;
+					int read;
+					while (length < blockSize && (read = inputStream.read(block, length, blockSize - length)) > 0) {
+						length += read;
+					}
+
+					if (length > 0) {
+						blocks.put(length == blockSize ? block : Arrays.copyOf(block, length));
+					}
+					if (length < blockSize) {
+						break;
+					}
+				}
+
+			} catch (IOException e) {
+				failure = e;
+			}
+
+			blocks.put(END_OF_STREAM);
+
+		} catch (InterruptedException e) {
+			log.trace("Prefetching has been interrupted");
+		} finally {
+			closeInputStream();
+		}
+	}
+
+	private void closeInputStream() {
+		try {
+			Closeables.close(inputStream, true);
+		} catch (IOException e) {
+			// never thrown as exceptions are swallowed
+		}
+	}
+}
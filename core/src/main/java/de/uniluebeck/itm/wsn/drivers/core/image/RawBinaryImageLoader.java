@@ -0,0 +1,36 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loader for raw binary images. The whole file is a single segment starting at address 0. As every file is a valid
+ * raw binary this loader is not used for format detection, {@link ImageLoaders} falls back to it if no other loader
+ * accepts a file.
+ */
+public class RawBinaryImageLoader implements ImageLoader {
+
+	public static final String NAME = "raw";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean accepts(final byte[] header, final int length) {
+		return false;
+	}
+
+	@Override
+	public List<ImageSegment> load(final InputStream inputStream) throws IOException {
+		final byte[] data = ByteStreams.toByteArray(inputStream);
+		return data.length == 0 ?
+				ImmutableList.<ImageSegment>of() :
+				ImmutableList.of(new ImageSegment(0, data));
+	}
+}
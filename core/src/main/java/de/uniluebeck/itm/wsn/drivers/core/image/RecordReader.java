@@ -0,0 +1,125 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a text based image format (Intel HEX, Motorola S-record) into a reusable buffer and decodes the
+ * hexadecimal digits of a record without creating strings.
+ */
+class RecordReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final byte[] HEX_VALUES = new byte[128];
+
+	static {
+		Arrays.fill(HEX_VALUES, (byte) -1);
+		for (int i = 0; i < 10; i++) {
+			HEX_VALUES['0' + i] = (byte) i;
+		}
+		for (int i = 0; i < 6; i++) {
+			HEX_VALUES['a' + i] = (byte) (10 + i);
+			HEX_VALUES['A' + i] = (byte) (10 + i);
+		}
+	}
+
+	private final InputStream inputStream;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int position;
+
+	private int limit;
+
+	private byte[] line = new byte[128];
+
+	private int lineLength;
+
+	private int lineNumber;
+
+	RecordReader(final InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+
+	/**
+	 * Reads the next non-empty line. Spaces, tabs and carriage returns are dropped.
+	 *
+	 * @return <code>false</code> if the end of the stream has been reached
+	 */
+	boolean nextLine() throws IOException {
+
+		lineLength = 0;
+
+		while (true) {
+
+			if (position == limit) {
+				limit = inputStream.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					if (lineLength > 0) {
+						lineNumber++;
+						return true;
+					}
+					return false;
+				}
+			}
+
+			final byte b = buffer[position++];
+
+			if (b == '\n') {
+				lineNumber++;
+				if (lineLength > 0) {
+					return true;
+				}
+			} else if (b != '\r' && b != ' ' && b != '\t') {
+				if (lineLength == line.length) {
+					line = Arrays.copyOf(line, line.length * 2);
+				}
+				line[lineLength++] = b;
+			}
+		}
+	}
+
+	int getLineLength() {
+		return lineLength;
+	}
+
+	int getLineNumber() {
+		return lineNumber;
+	}
+
+	byte charAt(final int index) {
+		return line[index];
+	}
+
+	/**
+	 * Decodes the two hexadecimal digits at the given position of the line.
+	 *
+	 * @param index
+	 * 		the position of the first digit
+	 *
+	 * @return the value of the byte (0 - 255)
+	 */
+	int byteAt(final int index) throws IOException {
+
+		if (index + 1 >= lineLength) {
+			throw error("Record is truncated");
+		}
+
+		final int high = line[index] >= 0 ? HEX_VALUES[line[index]] : -1;
+		final int low = line[index + 1] >= 0 ? HEX_VALUES[line[index + 1]] : -1;
+
+		if (high < 0 || low < 0) {
+			throw error("Invalid hexadecimal digits \"" + (char) line[index] + (char) line[index + 1] + "\"");
+		}
+
+		return (high << 4) | low;
+	}
+
+	IOException error(final String message) {
+		return new IOException(message + " in line " + lineNumber);
+	}
+}
@@ -0,0 +1,120 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loader for images in the Motorola S-record format. The data records S1, S2 and S3 are loaded, header, count and
+ * termination records are ignored.
+ */
+public class SRecordImageLoader implements ImageLoader {
+
+	public static final String NAME = "srec";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Accepts the header only if its first line is a complete record with a valid checksum, so that raw binaries that
+	 * happen to start with 'S' are not taken for S-record files.
+	 */
+	@Override
+	public boolean accepts(final byte[] header, final int length) {
+		final RecordReader reader = new RecordReader(new ByteArrayInputStream(header, 0, length));
+		try {
+			if (!reader.nextLine()) {
+				return false;
+			}
+			readRecord(reader, new byte[255], null);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public List<ImageSegment> load(final InputStream inputStream) throws IOException {
+
+		final RecordReader reader = new RecordReader(inputStream);
+		final SegmentCollector collector = new SegmentCollector();
+		final byte[] data = new byte[255];
+
+		while (reader.nextLine()) {
+			readRecord(reader, data, collector);
+		}
+
+		return collector.finish();
+	}
+
+	/**
+	 * Checks the syntax and the checksum of the current line and adds the data of S1, S2 and S3 records to the
+	 * collector.
+	 */
+	private static void readRecord(final RecordReader reader, final byte[] data,
+									  @Nullable final SegmentCollector collector) throws IOException {
+
+		if (reader.getLineLength() < 4 || reader.charAt(0) != 'S') {
+			throw reader.error("Record does not start with 'S'");
+		}
+
+		final int type = reader.charAt(1) - '0';
+		final int count = reader.byteAt(2);
+
+		if (reader.getLineLength() != 4 + 2 * count) {
+			throw reader.error("Record length does not match the byte count " + count);
+		}
+
+		final int addressLength;
+		switch (type) {
+			case 0:
+			case 1:
+			case 5:
+			case 9:
+				addressLength = 2;
+				break;
+			case 2:
+			case 6:
+			case 8:
+				addressLength = 3;
+				break;
+			case 3:
+			case 7:
+				addressLength = 4;
+				break;
+			default:
+				throw reader.error("Unknown record type S" + (char) reader.charAt(1));
+		}
+
+		if (count < addressLength + 1) {
+			throw reader.error("Record is too short");
+		}
+
+		int checksum = count;
+		long address = 0;
+		for (int i = 0; i < addressLength; i++) {
+			final int b = reader.byteAt(4 + 2 * i);
+			address = (address << 8) | b;
+			checksum += b;
+		}
+
+		final int dataLength = count - addressLength - 1;
+		final int dataStart = 4 + 2 * addressLength;
+		for (int i = 0; i < dataLength; i++) {
+			data[i] = (byte) reader.byteAt(dataStart + 2 * i);
+			checksum += data[i] & 0xFF;
+		}
+
+		if (((~checksum) & 0xFF) != reader.byteAt(dataStart + 2 * dataLength)) {
+			throw reader.error("Invalid checksum");
+		}
+
+		if (collector != null && type >= 1 && type <= 3) {
+			collector.add(address, data, 0, dataLength);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the data records of an image into segments. A new segment is started whenever a record does not continue
+ * the previous one.
+ */
+class SegmentCollector {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final List<ImageSegment> segments = Lists.newArrayList();
+
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+	private int length;
+
+	private long startAddress;
+
+	private long nextAddress;
+
+	void add(final long address, final byte[] data, final int offset, final int dataLength) {
+
+		if (dataLength == 0) {
+			return;
+		}
+
+		if (length > 0 && address != nextAddress) {
+			flush();
+		}
+
+		if (length == 0) {
+			startAddress = address;
+		}
+
+		if (length + dataLength > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + dataLength));
+		}
+
+		System.arraycopy(data, offset, buffer, length, dataLength);
+		length += dataLength;
+		nextAddress = address + dataLength;
+	}
+
+	List<ImageSegment> finish() {
+		flush();
+		return segments;
+	}
+
+	private void flush() {
+		if (length > 0) {
+			segments.add(new ImageSegment((int) startAddress, Arrays.copyOf(buffer, length)));
+			length = 0;
+		}
+	}
+}
@@ -2,12 +2,16 @@ package de.uniluebeck.itm.wsn.drivers.core.operation;
 
 
 import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.image.CompressedImages;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 
 /**
  * Abstract implementation of a program operation.
- * The binary image will be stored as byte arraw.
+ * The binary image will be stored as an immutable {@link FirmwareImage} that may be shared with other devices.
  *
  * @author Malte Legenhausen
  */
@@ -16,22 +20,56 @@ public abstract class AbstractProgramOperation extends TimeLimitedOperation<Void
 	/**
 	 * The image that has to be flashed.
 	 */
-	private final byte[] binaryImage;
+	private final FirmwareImage firmwareImage;
 
 	public AbstractProgramOperation(final TimeLimiter timeLimiter,
-									final byte[] binaryImage,
+									final FirmwareImage firmwareImage,
 									final long timeoutMillis,
 									@Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
-		this.binaryImage = binaryImage;
+		this.firmwareImage = firmwareImage;
+	}
+
+	public AbstractProgramOperation(final TimeLimiter timeLimiter,
+									final byte[] binaryImage,
+									final long timeoutMillis,
+									@Nullable final OperationListener<Void> operationCallback) {
+		this(timeLimiter, FirmwareImage.wrap(binaryImage), timeoutMillis, operationCallback);
+	}
+
+	/**
+	 * Getter for the image that has to be flashed.
+	 *
+	 * @return The shared image.
+	 */
+	public FirmwareImage getFirmwareImage() {
+		return firmwareImage;
 	}
 
 	/**
 	 * Getter for the binary image.
 	 *
-	 * @return Binary image as byte array.
+	 * @return A copy of the binary image as byte array, decompressed if the image is gzip compressed.
+	 *
+	 * @throws IOException if a compressed image can not be decompressed.
+	 */
+	public byte[] getBinaryImage() throws IOException {
+		return CompressedImages.uncompressed(firmwareImage).toByteArray();
+	}
+
+	/**
+	 * Reads the image as a {@link FlashPlan} and checks the data of all its blocks. Drivers call this before the flash
+	 * memory is erased, so that a damaged plan file fails the operation without leaving an erased device behind.
+	 *
+	 * @return the verified plan
+	 *
+	 * @throws IOException if the image is not a valid flash plan or the data of a block does not match its checksum.
 	 */
-	public byte[] getBinaryImage() {
-		return binaryImage;
+	protected FlashPlan getVerifiedFlashPlan() throws IOException {
+		final FlashPlan plan = FlashPlan.parse(firmwareImage);
+		if (!plan.verify()) {
+			throw new IOException("Flash plan is damaged, a block does not match its checksum: " + plan);
+		}
+		return plan;
 	}
 }
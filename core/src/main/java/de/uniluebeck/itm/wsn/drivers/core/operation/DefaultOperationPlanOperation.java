@@ -0,0 +1,75 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Executes the steps of an {@link OperationPlan} one after another within a single programming mode session. The
+ * steps are executed in the thread of the plan instead of a thread of the time limiter each, so a plan needs no more
+ * threads than a single operation. The timeouts of the steps are not enforced individually, the timeout of the plan
+ * (usually {@link OperationPlan#getTotalTimeoutMillis()}) bounds all of them. The plan stops at the first step that
+ * fails and returns the results of the steps in their order.
+ */
+public class DefaultOperationPlanOperation extends TimeLimitedOperation<List<Object>>
+		implements OperationPlanOperation {
+
+	private static final Logger log = LoggerFactory.getLogger(DefaultOperationPlanOperation.class);
+
+	/**
+	 * Fraction of the progress that is distributed over the steps, the rest is reported when the plan is done.
+	 */
+	private static final float FRACTION_STEPS = 0.99f;
+
+	private final OperationFactory operationFactory;
+
+	private final OperationPlan plan;
+
+	@Inject
+	public DefaultOperationPlanOperation(final TimeLimiter timeLimiter,
+										 final OperationFactory operationFactory,
+										 @Assisted final OperationPlan plan,
+										 @Assisted final long timeoutMillis,
+										 @Assisted @Nullable final OperationListener<List<Object>> listener) {
+		super(timeLimiter, timeoutMillis, listener);
+		this.operationFactory = operationFactory;
+		this.plan = plan;
+	}
+
+	@Override
+	public OperationPlan getPlan() {
+		return plan;
+	}
+
+	@Override
+	@SerialPortProgrammingMode
+	protected List<Object> callInternal() throws Exception {
+
+		final List<Object> results = Lists.newArrayListWithCapacity(plan.getSteps().size());
+		final float totalTimeoutMillis = plan.getTotalTimeoutMillis();
+
+		for (OperationPlan.Step step : plan.getSteps()) {
+
+			if (isCanceled()) {
+				return null;
+			}
+
+			log.trace("Executing step {} of {}", step, plan);
+			final float fraction = FRACTION_STEPS * (step.getTimeoutMillis() / totalTimeoutMillis);
+			final Operation<?> operation = step.createOperation(operationFactory);
+			if (operation instanceof TimeLimitedOperation) {
+				((TimeLimitedOperation<?>) operation).runInCurrentThread();
+			}
+			results.add(runSubOperation(operation, fraction));
+		}
+
+		return results;
+	}
+}
@@ -46,4 +46,11 @@ public interface Operation<ResultType> extends Callable<ResultType> {
 	 * 		The <code>OperationListener</code> that has to be removed.
 	 */
 	void removeListener(OperationListener<ResultType> listener);
+
+	/**
+	 * Returns the trace containing the timing spans of this operation, its phases and its sub operations.
+	 *
+	 * @return The trace of this operation.
+	 */
+	OperationTrace getTrace();
 }
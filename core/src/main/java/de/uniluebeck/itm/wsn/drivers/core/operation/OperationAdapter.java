@@ -45,4 +45,9 @@ public class OperationAdapter<T> implements OperationListener<T> {
 	public void onProgressChange(final float fraction) {
 
 	}
+
+	@Override
+	public void onTransferProgress(final TransferProgress progress) {
+
+	}
 }
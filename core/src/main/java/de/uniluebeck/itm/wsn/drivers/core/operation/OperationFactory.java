@@ -3,8 +3,10 @@ package de.uniluebeck.itm.wsn.drivers.core.operation;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * The factory for creating all kinds of operation to run on the device.
@@ -40,8 +42,8 @@ public interface OperationFactory {
 	/**
 	 * Creates a new {@link ProgramOperation} instance
 	 *
-	 * @param data
-	 * 		The binary image as byte array
+	 * @param image
+	 * 		The binary image
 	 * @param timeoutMillis
 	 * 		the number of milliseconds the operation is allowed to run before a timeout is assumed
 	 * @param listener
@@ -49,7 +51,7 @@ public interface OperationFactory {
 	 *
 	 * @return a newly created {@link ProgramOperation} instance
 	 */
-	ProgramOperation createProgramOperation(byte[] data, long timeoutMillis,
+	ProgramOperation createProgramOperation(FirmwareImage image, long timeoutMillis,
 											@Nullable OperationListener<Void> listener);
 
 	/**
@@ -140,4 +142,19 @@ public interface OperationFactory {
 	 * @return a newly created {@link IsNodeAliveOperation} instance
 	 */
 	IsNodeAliveOperation createIsNodeAliveOperation(long timeoutMillis, OperationListener<Boolean> listener);
+
+	/**
+	 * Creates a new {@link OperationPlanOperation} instance
+	 *
+	 * @param plan
+	 * 		the plan that has to be executed
+	 * @param timeoutMillis
+	 * 		the number of milliseconds the operation is allowed to run before a timeout is assumed
+	 * @param listener
+	 * 		an {@link OperationListener} instance to indicate operation progress
+	 *
+	 * @return a newly created {@link OperationPlanOperation} instance
+	 */
+	OperationPlanOperation createOperationPlanOperation(OperationPlan plan, long timeoutMillis,
+														@Nullable OperationListener<List<Object>> listener);
 }
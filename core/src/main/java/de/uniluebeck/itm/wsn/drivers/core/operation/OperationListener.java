@@ -57,4 +57,11 @@ public interface OperationListener<T> {
 	 * @param fraction Progress amount done.
 	 */
 	void onProgressChange(float fraction);
+
+	/**
+	 * Method is called whenever an operation that transfers data to or from the device has transferred another block.
+	 *
+	 * @param progress Bytes done and total, the current transfer rate and the estimated remaining time.
+	 */
+	void onTransferProgress(TransferProgress progress);
 }
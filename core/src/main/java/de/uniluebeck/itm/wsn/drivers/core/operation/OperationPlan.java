@@ -0,0 +1,212 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An ordered list of device operations that are executed one after another within a single programming mode session
+ * (see {@link de.uniluebeck.itm.wsn.drivers.core.Device#execute(OperationPlan, long, OperationListener)}). Entering
+ * the bootloader and stopping the stream copying is therefore done only once for the whole plan instead of once per
+ * operation.
+ * <p/>
+ * Plans are created using a {@link Builder}:
+ * <pre>
+ * OperationPlan plan = OperationPlan.builder()
+ *         .program(image, 120000)
+ *         .writeMac(macAddress, 30000)
+ *         .reset(1000)
+ *         .build();
+ * </pre>
+ */
+public class OperationPlan {
+
+	/**
+	 * A single step of an {@link OperationPlan}.
+	 */
+	public static abstract class Step {
+
+		private final String name;
+
+		private final long timeoutMillis;
+
+		protected Step(final String name, final long timeoutMillis) {
+			checkArgument(timeoutMillis > 0, "Timeout must be larger than zero milliseconds!");
+			this.name = name;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getTimeoutMillis() {
+			return timeoutMillis;
+		}
+
+		/**
+		 * Creates the operation that executes this step.
+		 *
+		 * @param operationFactory
+		 * 		the factory of the device that executes the plan
+		 *
+		 * @return the operation to execute
+		 */
+		public abstract Operation<?> createOperation(OperationFactory operationFactory);
+
+		@Override
+		public String toString() {
+			return name + "(" + timeoutMillis + " ms)";
+		}
+	}
+
+	/**
+	 * Builder for {@link OperationPlan} instances. The steps are executed in the order they are added.
+	 */
+	public static class Builder {
+
+		private final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+
+		private Builder() {
+		}
+
+		public Builder step(final Step step) {
+			steps.add(checkNotNull(step, "Null steps are not allowed"));
+			return this;
+		}
+
+		public Builder eraseFlash(final long timeoutMillis) {
+			return step(new Step("eraseFlash", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createEraseFlashOperation(getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder program(final byte[] data, final long timeoutMillis) {
+			checkNotNull(data, "Null data is not allowed.");
+			return program(FirmwareImage.wrap(data), timeoutMillis);
+		}
+
+		public Builder program(final FirmwareImage image, final long timeoutMillis) {
+			checkNotNull(image, "Null image is not allowed.");
+			return step(new Step("program", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createProgramOperation(image, getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder writeFlash(final int address, final byte[] data, final int length, final long timeoutMillis) {
+			checkArgument(address >= 0, "Negative address is not allowed.");
+			checkNotNull(data, "Null data is not allowed.");
+			checkArgument(length >= 0, "Negative length is not allowed.");
+			return step(new Step("writeFlash", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createWriteFlashOperation(address, data, length, getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder readFlash(final int address, final int length, final long timeoutMillis) {
+			checkArgument(address >= 0, "Negative address is not allowed.");
+			checkArgument(length >= 0, "Negative length is not allowed.");
+			return step(new Step("readFlash", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createReadFlashOperation(address, length, getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder getChipType(final long timeoutMillis) {
+			return step(new Step("getChipType", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createGetChipTypeOperation(getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder readMac(final long timeoutMillis) {
+			return step(new Step("readMac", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createReadMacAddressOperation(getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder writeMac(final MacAddress macAddress, final long timeoutMillis) {
+			checkNotNull(macAddress, "Null MAC address is not allowed.");
+			return step(new Step("writeMac", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createWriteMacAddressOperation(macAddress, getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public Builder reset(final long timeoutMillis) {
+			return step(new Step("reset", timeoutMillis) {
+				@Override
+				public Operation<?> createOperation(final OperationFactory operationFactory) {
+					return operationFactory.createResetOperation(getTimeoutMillis(), null);
+				}
+			}
+			);
+		}
+
+		public OperationPlan build() {
+			return new OperationPlan(steps.build());
+		}
+	}
+
+	private final ImmutableList<Step> steps;
+
+	private OperationPlan(final ImmutableList<Step> steps) {
+		checkArgument(!steps.isEmpty(), "An operation plan must contain at least one step");
+		this.steps = steps;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the sum of the timeouts of all steps.
+	 *
+	 * @return the sum of the step timeouts in milliseconds
+	 */
+	public long getTotalTimeoutMillis() {
+		long total = 0;
+		for (Step step : steps) {
+			total += step.getTimeoutMillis();
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return "OperationPlan" + steps;
+	}
+}
@@ -0,0 +1,18 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import java.util.List;
+
+/**
+ * An operation that executes all steps of an {@link OperationPlan} within a single programming mode session. The
+ * result contains the results of the individual steps in the order of the plan (<code>null</code> for steps without
+ * a result).
+ */
+public interface OperationPlanOperation extends Operation<List<Object>> {
+
+	/**
+	 * Returns the plan that is executed by this operation.
+	 *
+	 * @return the executed plan
+	 */
+	OperationPlan getPlan();
+}
@@ -0,0 +1,23 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+/**
+ * Priorities used by the {@link OperationScheduler} to order the operations that are waiting for execution on a
+ * device.
+ */
+public enum OperationPriority {
+
+	/**
+	 * Bulk operations that may wait until everything else is done (e.g. large flash reads).
+	 */
+	LOW,
+
+	/**
+	 * Default priority for operations that modify the device state (e.g. programming, erasing).
+	 */
+	NORMAL,
+
+	/**
+	 * Short, interactive operations (e.g. reading the MAC address or the chip type, resetting the node).
+	 */
+	HIGH
+}
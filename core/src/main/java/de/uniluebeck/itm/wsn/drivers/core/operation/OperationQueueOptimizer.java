@@ -0,0 +1,192 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Optional optimizer that is consulted by the {@link OperationScheduler} whenever an operation is submitted. It
+ * removes redundant work from the queue of a device:
+ * <ul>
+ * <li>Read-only operations (isNodeAlive, getChipType, readMac and readFlash of the same address range) that are
+ * submitted while an identical operation is still waiting are merged, i.e. the new operation is not executed but
+ * reports the progress and result of the waiting one.</li>
+ * <li>An eraseFlash operation that is directly followed by a program operation that erases the whole flash memory
+ * (see {@link ProgramOperation#isErasingWholeFlash()}) is dropped. The erase operation completes together with the
+ * program operation. Program operations that only erase the parts of the flash memory covered by the image keep the
+ * erase operation in front of them.</li>
+ * </ul>
+ * Canceling a merged or dropped operation only cancels that operation. If the operation that is executed in its
+ * place is canceled, the merged or dropped operation is enqueued again and executed on its own.
+ * Use {@link OperationScheduler#setOptimizer(OperationQueueOptimizer)} to enable the optimizer for a device.
+ */
+public class OperationQueueOptimizer {
+
+	private static final Logger log = LoggerFactory.getLogger(OperationQueueOptimizer.class);
+
+	private static final Class<?>[] MERGEABLE_TYPES = {
+			IsNodeAliveOperation.class,
+			GetChipTypeOperation.class,
+			ReadMacAddressOperation.class,
+			ReadFlashOperation.class
+	};
+
+	/**
+	 * Operations that are waiting for their execution and may be merged, indexed by {@link #getMergeKey(Operation)}.
+	 */
+	private final Map<Object, OperationScheduler.ScheduledOperation<?>> mergeCandidates = Maps.newHashMap();
+
+	/**
+	 * The last submitted operation as long as its execution has not been started.
+	 */
+	private OperationScheduler.ScheduledOperation<?> lastSubmitted;
+
+	private boolean mergeReadOperations = true;
+
+	private boolean elideEraseBeforeProgram = true;
+
+	private long mergedOperations;
+
+	private long elidedErases;
+
+	public synchronized void setMergeReadOperations(final boolean mergeReadOperations) {
+		this.mergeReadOperations = mergeReadOperations;
+	}
+
+	public synchronized void setElideEraseBeforeProgram(final boolean elideEraseBeforeProgram) {
+		this.elideEraseBeforeProgram = elideEraseBeforeProgram;
+	}
+
+	/**
+	 * Returns the number of operations that were not executed because an identical operation was waiting.
+	 *
+	 * @return the number of merged operations
+	 */
+	public synchronized long getMergedOperationCount() {
+		return mergedOperations;
+	}
+
+	/**
+	 * Returns the number of erase operations that were dropped because a program operation erasing the whole flash
+	 * memory followed.
+	 *
+	 * @return the number of elided erase operations
+	 */
+	public synchronized long getElidedEraseCount() {
+		return elidedErases;
+	}
+
+	/**
+	 * Returns the total number of device operations that were saved by this optimizer.
+	 *
+	 * @return the number of saved operations
+	 */
+	public synchronized long getSavedOperationCount() {
+		return mergedOperations + elidedErases;
+	}
+
+	/**
+	 * Called before a newly submitted operation is added to the queue.
+	 *
+	 * @param submitted
+	 * 		the newly submitted operation
+	 * @param scheduler
+	 * 		the scheduler the operation has been submitted to
+	 *
+	 * @return <code>true</code> if the submitted operation has been merged into a waiting operation and must not be
+	 *         added to the queue
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized boolean optimize(final OperationScheduler.ScheduledOperation<?> submitted,
+								  final OperationScheduler scheduler) {
+
+		final Operation<?> operation = submitted.getOperation();
+
+		if (elideEraseBeforeProgram && operation instanceof ProgramOperation
+				&& ((ProgramOperation) operation).isErasingWholeFlash() && lastSubmitted != null
+				&& !lastSubmitted.isCanceled()
+				&& lastSubmitted.getOperation() instanceof EraseFlashOperation
+				&& lastSubmitted.getOperation() instanceof TimeLimitedOperation
+				&& scheduler.remove(lastSubmitted)) {
+
+			log.debug("Dropping erase operation that is directly followed by a program operation");
+			((TimeLimitedOperation<Void>) lastSubmitted.getOperation())
+					.follow((Operation<Void>) operation, createResubmission(lastSubmitted, scheduler));
+			elidedErases++;
+		}
+
+		final Object mergeKey = getMergeKey(operation);
+		if (mergeReadOperations && mergeKey != null && operation instanceof TimeLimitedOperation) {
+
+			final OperationScheduler.ScheduledOperation<?> leader = mergeCandidates.get(mergeKey);
+			if (leader != null && !leader.isCanceled()) {
+
+				log.debug("Merging {} into waiting identical operation", operation.getClass().getSimpleName());
+				((TimeLimitedOperation<Object>) operation)
+						.follow((Operation<Object>) leader.getOperation(), createResubmission(submitted, scheduler));
+				mergedOperations++;
+				return true;
+			}
+
+			mergeCandidates.put(mergeKey, submitted);
+		}
+
+		lastSubmitted = submitted;
+		return false;
+	}
+
+	/**
+	 * Called right before the execution of an operation is started. From now on the operation can not be merged or
+	 * elided anymore.
+	 *
+	 * @param started
+	 * 		the operation that is about to be executed
+	 */
+	synchronized void started(final OperationScheduler.ScheduledOperation<?> started) {
+
+		final Object mergeKey = getMergeKey(started.getOperation());
+		if (mergeKey != null && mergeCandidates.get(mergeKey) == started) {
+			mergeCandidates.remove(mergeKey);
+		}
+
+		if (lastSubmitted == started) {
+			lastSubmitted = null;
+		}
+	}
+
+	/**
+	 * Forgets all waiting operations, e.g. because the scheduler has dropped them from its queue.
+	 */
+	synchronized void reset() {
+		mergeCandidates.clear();
+		lastSubmitted = null;
+	}
+
+	private Runnable createResubmission(final OperationScheduler.ScheduledOperation<?> follower,
+										final OperationScheduler scheduler) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				scheduler.resubmit(follower);
+			}
+		};
+	}
+
+	private Object getMergeKey(final Operation<?> operation) {
+		for (Class<?> mergeableType : MERGEABLE_TYPES) {
+			if (mergeableType.isInstance(operation)) {
+				if (operation instanceof AbstractReadFlashOperation) {
+					final AbstractReadFlashOperation readFlashOperation = (AbstractReadFlashOperation) operation;
+					return Arrays.<Object>asList(
+							operation.getClass(), readFlashOperation.getAddress(), readFlashOperation.getLength()
+					);
+				}
+				return operation instanceof ReadFlashOperation ? null : operation.getClass();
+			}
+		}
+		return null;
+	}
+}
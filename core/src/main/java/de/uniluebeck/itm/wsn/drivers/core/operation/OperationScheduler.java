@@ -0,0 +1,470 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Executes the operations of a single device one after another. Waiting operations are ordered by their
+ * {@link OperationPriority} and, within the same priority, by the order of their submission.
+ * <p/>
+ * Long running operations (e.g. programming) can offer preemption points by calling
+ * {@link TimeLimitedOperation#preemptionPoint()}. If an operation of a higher priority that is marked as preempting
+ * (see {@link #setPreempting(Class, boolean)}) is waiting at this point it is executed immediately, i.e. inside the
+ * device session and thread of the long running operation, which then continues where it stopped. Only operations
+ * that neither change the state of the device nor depend on the contents of its flash memory should be marked as
+ * preempting, as the flash memory may be partially erased or written at a preemption point. By default only
+ * isNodeAlive and getChipType operations preempt; readMac and readFlash operations wait until the running operation
+ * has finished.
+ */
+@Singleton
+public class OperationScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(OperationScheduler.class);
+
+	static class ScheduledOperation<T> implements Comparable<ScheduledOperation<?>> {
+
+		private final Operation<T> operation;
+
+		private final OperationFutureImpl<T> future;
+
+		private final OperationPriority priority;
+
+		private final long sequenceNumber;
+
+		private final long submittedNanos = System.nanoTime();
+
+		private ScheduledOperation(final Operation<T> operation, final OperationFutureImpl<T> future,
+								   final OperationPriority priority, final long sequenceNumber) {
+			this.operation = operation;
+			this.future = future;
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+		Operation<T> getOperation() {
+			return operation;
+		}
+
+		boolean isCanceled() {
+			return future.isCancelled()
+					|| (operation instanceof TimeLimitedOperation && ((TimeLimitedOperation<T>) operation).isCanceled());
+		}
+
+		void cancel() {
+			if (operation instanceof TimeLimitedOperation) {
+				((TimeLimitedOperation<T>) operation).cancelWithoutExecution();
+			}
+			future.cancel(false);
+		}
+
+		@Override
+		public int compareTo(final ScheduledOperation<?> other) {
+			if (priority != other.priority) {
+				return other.priority.compareTo(priority);
+			}
+			return sequenceNumber < other.sequenceNumber ? -1 : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+		}
+	}
+
+	private final PriorityBlockingQueue<ScheduledOperation<?>> queue = new PriorityBlockingQueue<ScheduledOperation<?>>();
+
+	private final Map<Class<?>, OperationPriority> priorities = Maps.newLinkedHashMap();
+
+	private final Set<Class<?>> preemptingTypes = Sets.newHashSet();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final Object statisticsLock = new Object();
+
+	private long executedOperations;
+
+	private long preemptions;
+
+	private long totalWaitNanos;
+
+	private long maxWaitNanos;
+
+	private long lastWaitNanos;
+
+	private volatile OperationPriority runningPriority;
+
+	private volatile OperationQueueOptimizer optimizer;
+
+	private volatile ExecutorService executor;
+
+	private volatile boolean workerIdle;
+
+	private final Runnable worker = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					workerIdle = true;
+					final ScheduledOperation<?> scheduledOperation = queue.take();
+					workerIdle = false;
+					execute(scheduledOperation, false);
+				}
+			} catch (InterruptedException e) {
+				// expected when shutting down
+			}
+		}
+	};
+
+	@Inject
+	public OperationScheduler() {
+
+		setPriority(IsNodeAliveOperation.class, OperationPriority.HIGH);
+		setPriority(GetChipTypeOperation.class, OperationPriority.HIGH);
+		setPriority(ReadMacAddressOperation.class, OperationPriority.HIGH);
+		setPriority(ResetOperation.class, OperationPriority.HIGH);
+		setPriority(ReadFlashOperation.class, OperationPriority.LOW);
+
+		setPreempting(IsNodeAliveOperation.class, true);
+		setPreempting(GetChipTypeOperation.class, true);
+	}
+
+	/**
+	 * Starts the worker thread that executes the submitted operations.
+	 */
+	public synchronized void start() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(
+					new ThreadFactoryBuilder().setNameFormat("OperationScheduler-Thread %d").build()
+			);
+			executor.submit(worker);
+		}
+	}
+
+	/**
+	 * Stops the worker thread and cancels all operations that are still waiting for their execution.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			// an idle worker is blocked on the queue and would otherwise delay the shutdown by the full timeout
+			if (workerIdle) {
+				executor.shutdownNow();
+			}
+			ExecutorUtils.shutdown(executor, 1, TimeUnit.SECONDS);
+			executor = null;
+		}
+		ScheduledOperation<?> scheduledOperation;
+		while ((scheduledOperation = queue.poll()) != null) {
+			log.debug("Canceling {} as the scheduler is shutting down",
+					scheduledOperation.operation.getClass().getSimpleName()
+			);
+			scheduledOperation.cancel();
+		}
+		final OperationQueueOptimizer currentOptimizer = optimizer;
+		if (currentOptimizer != null) {
+			currentOptimizer.reset();
+		}
+	}
+
+	/**
+	 * Enqueues the operation with the priority configured for its type.
+	 *
+	 * @param operation
+	 * 		the operation to execute
+	 * @param <T>
+	 * 		the result type of the operation
+	 *
+	 * @return a future that is completed as soon as the operation is done
+	 */
+	public <T> OperationFuture<T> submit(final Operation<T> operation) {
+		return submit(operation, getPriority(operation));
+	}
+
+	/**
+	 * Enqueues the operation with the given priority.
+	 *
+	 * @param operation
+	 * 		the operation to execute
+	 * @param priority
+	 * 		the priority of the operation
+	 * @param <T>
+	 * 		the result type of the operation
+	 *
+	 * @return a future that is completed as soon as the operation is done
+	 */
+	public <T> OperationFuture<T> submit(final Operation<T> operation, final OperationPriority priority) {
+
+		checkNotNull(operation, "Null operations are not allowed");
+		checkNotNull(priority, "Null priority is not allowed");
+		checkState(executor != null, "The scheduler is not running. Is the device connected?");
+
+		final OperationFutureImpl<T> operationFuture = new OperationFutureImpl<T>(operation);
+		operation.addListener(
+				new OperationAdapter<T>() {
+
+					@Override
+					public void onFailure(final Throwable throwable) {
+						operationFuture.setException(throwable);
+					}
+
+					@Override
+					public void onSuccess(final T result) {
+						operationFuture.set(result);
+					}
+
+					@Override
+					public void onCancel() {
+						operationFuture.cancel(false);
+					}
+				}
+		);
+
+		if (operation instanceof TimeLimitedOperation) {
+			((TimeLimitedOperation<?>) operation).setScheduler(this);
+		}
+
+		final ScheduledOperation<T> scheduledOperation =
+				new ScheduledOperation<T>(operation, operationFuture, priority, sequence.getAndIncrement());
+
+		final OperationQueueOptimizer currentOptimizer = optimizer;
+		if (currentOptimizer != null && currentOptimizer.optimize(scheduledOperation, this)) {
+			return operationFuture;
+		}
+
+		log.trace("Enqueuing {} with priority {}", operation.getClass().getSimpleName(), priority);
+		queue.add(scheduledOperation);
+
+		return operationFuture;
+	}
+
+	/**
+	 * Removes a waiting operation from the queue.
+	 *
+	 * @param scheduledOperation
+	 * 		the operation to remove
+	 *
+	 * @return <code>true</code> if the operation was still waiting
+	 */
+	boolean remove(final ScheduledOperation<?> scheduledOperation) {
+		return queue.remove(scheduledOperation);
+	}
+
+	/**
+	 * Enqueues an operation again that has been merged into another one which has been canceled meanwhile. The
+	 * operation keeps its position in the queue.
+	 *
+	 * @param scheduledOperation
+	 * 		the operation to execute on its own
+	 */
+	void resubmit(final ScheduledOperation<?> scheduledOperation) {
+		log.debug("Enqueuing {} again as the operation it was merged into has been canceled",
+				scheduledOperation.operation.getClass().getSimpleName()
+		);
+		queue.add(scheduledOperation);
+		if (executor == null && queue.remove(scheduledOperation)) {
+			scheduledOperation.cancel();
+		}
+	}
+
+	/**
+	 * Sets the optimizer that removes redundant operations from the queue.
+	 *
+	 * @param optimizer
+	 * 		the optimizer to use or <code>null</code> to disable the optimization
+	 */
+	public void setOptimizer(@Nullable final OperationQueueOptimizer optimizer) {
+		this.optimizer = optimizer;
+	}
+
+	@Nullable
+	public OperationQueueOptimizer getOptimizer() {
+		return optimizer;
+	}
+
+	/**
+	 * Sets the priority for all operations that implement the given type.
+	 *
+	 * @param operationType
+	 * 		the operation interface or class, e.g. <code>ReadFlashOperation.class</code>
+	 * @param priority
+	 * 		the priority to use
+	 */
+	public void setPriority(final Class<?> operationType, final OperationPriority priority) {
+		checkNotNull(operationType);
+		checkNotNull(priority);
+		synchronized (priorities) {
+			priorities.put(operationType, priority);
+		}
+	}
+
+	/**
+	 * Returns the priority an operation will be scheduled with.
+	 *
+	 * @param operation
+	 * 		the operation
+	 *
+	 * @return the configured priority or {@link OperationPriority#NORMAL} if no priority is configured
+	 */
+	public OperationPriority getPriority(final Operation<?> operation) {
+		synchronized (priorities) {
+			for (Map.Entry<Class<?>, OperationPriority> entry : priorities.entrySet()) {
+				if (entry.getKey().isInstance(operation)) {
+					return entry.getValue();
+				}
+			}
+		}
+		return OperationPriority.NORMAL;
+	}
+
+	/**
+	 * Defines if operations of the given type may be executed at the preemption point of a running operation of lower
+	 * priority. Operations that read the flash memory, e.g. readMac, must not be marked as preempting, as they would
+	 * see and cache the flash memory while it is being programmed.
+	 *
+	 * @param operationType
+	 * 		the operation interface or class
+	 * @param preempting
+	 * 		<code>true</code> if the operations are allowed to preempt others
+	 */
+	public void setPreempting(final Class<?> operationType, final boolean preempting) {
+		checkNotNull(operationType);
+		synchronized (preemptingTypes) {
+			if (preempting) {
+				preemptingTypes.add(operationType);
+			} else {
+				preemptingTypes.remove(operationType);
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getQueueDepth(final OperationPriority priority) {
+		int depth = 0;
+		for (ScheduledOperation<?> scheduledOperation : queue) {
+			if (scheduledOperation.priority == priority) {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+	public long getExecutedOperationCount() {
+		synchronized (statisticsLock) {
+			return executedOperations;
+		}
+	}
+
+	public long getPreemptionCount() {
+		synchronized (statisticsLock) {
+			return preemptions;
+		}
+	}
+
+	public long getLastWaitMillis() {
+		synchronized (statisticsLock) {
+			return TimeUnit.NANOSECONDS.toMillis(lastWaitNanos);
+		}
+	}
+
+	public long getMaxWaitMillis() {
+		synchronized (statisticsLock) {
+			return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+		}
+	}
+
+	public long getAverageWaitMillis() {
+		synchronized (statisticsLock) {
+			return executedOperations == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / executedOperations);
+		}
+	}
+
+	/**
+	 * Called by a running operation at one of its preemption points. Executes all waiting operations that are allowed
+	 * to preempt the running operation, i.e. those with a higher priority that are marked as preempting.
+	 */
+	void runPreemptingOperations() {
+		ScheduledOperation<?> scheduledOperation;
+		while ((scheduledOperation = pollPreemptingOperation()) != null) {
+			log.debug("Running {} at preemption point of {} operation",
+					scheduledOperation.operation.getClass().getSimpleName(), runningPriority
+			);
+			synchronized (statisticsLock) {
+				preemptions++;
+			}
+			execute(scheduledOperation, true);
+		}
+	}
+
+	private synchronized ScheduledOperation<?> pollPreemptingOperation() {
+
+		final OperationPriority currentPriority = runningPriority;
+		final ScheduledOperation<?> head = queue.peek();
+
+		if (head == null || currentPriority == null || head.priority.compareTo(currentPriority) <= 0) {
+			return null;
+		}
+
+		synchronized (preemptingTypes) {
+			boolean preempting = false;
+			for (Class<?> preemptingType : preemptingTypes) {
+				preempting |= preemptingType.isInstance(head.operation);
+			}
+			if (!preempting) {
+				return null;
+			}
+		}
+
+		return queue.remove(head) ? head : null;
+	}
+
+	private void execute(final ScheduledOperation<?> scheduledOperation, final boolean preempting) {
+
+		final long startNanos = System.nanoTime();
+		final long waitNanos = startNanos - scheduledOperation.submittedNanos;
+		scheduledOperation.operation.getTrace().addSpan(
+				"queued", OperationSpan.CATEGORY_PHASE, scheduledOperation.submittedNanos, startNanos
+		);
+		synchronized (statisticsLock) {
+			executedOperations++;
+			totalWaitNanos += waitNanos;
+			lastWaitNanos = waitNanos;
+			maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+		}
+
+		final OperationQueueOptimizer currentOptimizer = optimizer;
+		if (currentOptimizer != null) {
+			currentOptimizer.started(scheduledOperation);
+		}
+
+		final OperationPriority previousPriority = runningPriority;
+		runningPriority = scheduledOperation.priority;
+		try {
+			// a preempting operation runs in the thread of the preempted one, which is blocked meanwhile anyway
+			if (preempting && scheduledOperation.operation instanceof TimeLimitedOperation) {
+				((TimeLimitedOperation<?>) scheduledOperation.operation).callInCurrentThread();
+			} else {
+				scheduledOperation.operation.call();
+			}
+		} catch (Exception e) {
+			// already propagated to the listeners and the future
+			log.trace("{} failed: {}", scheduledOperation.operation.getClass().getSimpleName(), e);
+		} finally {
+			runningPriority = previousPriority;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+/**
+ * A timed section of an operation, e.g. the operation itself or one of its phases like erasing the flash or writing
+ * the image. Spans are created by {@link OperationTrace#startSpan(String, String)} and have to be closed by calling
+ * {@link #end()}, typically in a <code>finally</code> block.
+ */
+public class OperationSpan {
+
+	public static final String CATEGORY_OPERATION = "operation";
+
+	public static final String CATEGORY_PHASE = "phase";
+
+	private final String name;
+
+	private final String category;
+
+	private final String threadName;
+
+	private final long startNanos;
+
+	private long endNanos = -1;
+
+	private long bytes;
+
+	private int retries;
+
+	OperationSpan(final String name, final String category, final long startNanos) {
+		this.name = name;
+		this.category = category;
+		this.threadName = Thread.currentThread().getName();
+		this.startNanos = startNanos;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public String getThreadName() {
+		return threadName;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Returns the end of this span or <code>-1</code> if the span has not been ended yet.
+	 *
+	 * @return the end of the span as returned by {@link System#nanoTime()}
+	 */
+	public synchronized long getEndNanos() {
+		return endNanos;
+	}
+
+	public synchronized boolean isEnded() {
+		return endNanos >= 0;
+	}
+
+	public synchronized long getDurationNanos() {
+		return (endNanos >= 0 ? endNanos : System.nanoTime()) - startNanos;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * Adds the number of bytes that were transferred within this span.
+	 *
+	 * @param count
+	 * 		the number of transferred bytes
+	 */
+	public synchronized void addBytes(final long count) {
+		bytes += count;
+	}
+
+	/**
+	 * Counts a retry of a request within this span, e.g. a failed synchronisation attempt.
+	 */
+	public synchronized void addRetry() {
+		retries++;
+	}
+
+	/**
+	 * Ends this span. Subsequent calls are ignored.
+	 */
+	public synchronized void end() {
+		if (endNanos < 0) {
+			endNanos = System.nanoTime();
+		}
+	}
+
+	synchronized void end(final long endNanos) {
+		this.endNanos = endNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return name + "[" + category + ", " + (getDurationNanos() / 1000000) + " ms"
+				+ (bytes > 0 ? ", " + bytes + " bytes" : "")
+				+ (retries > 0 ? ", " + retries + " retries" : "") + "]";
+	}
+}
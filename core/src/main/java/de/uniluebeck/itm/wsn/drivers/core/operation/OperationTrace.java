@@ -0,0 +1,89 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Collects the {@link OperationSpan}s of an operation and all of its sub operations. The trace of an operation is
+ * available via {@link Operation#getTrace()} and can be exported using {@link TraceEventWriter}.
+ */
+public class OperationTrace {
+
+	private final List<OperationSpan> spans = Lists.newArrayList();
+
+	/**
+	 * Starts a new span.
+	 *
+	 * @param name
+	 * 		the name of the span, e.g. <code>"eraseSectors"</code>
+	 * @param category
+	 * 		the category, usually {@link OperationSpan#CATEGORY_OPERATION} or {@link OperationSpan#CATEGORY_PHASE}
+	 *
+	 * @return the started span
+	 */
+	public OperationSpan startSpan(final String name, final String category) {
+		return addSpan(new OperationSpan(checkNotNull(name), checkNotNull(category), System.nanoTime()));
+	}
+
+	/**
+	 * Adds a span that has already been completed.
+	 *
+	 * @param name
+	 * 		the name of the span
+	 * @param category
+	 * 		the category of the span
+	 * @param startNanos
+	 * 		the start of the span as returned by {@link System#nanoTime()}
+	 * @param endNanos
+	 * 		the end of the span as returned by {@link System#nanoTime()}
+	 *
+	 * @return the added span
+	 */
+	public OperationSpan addSpan(final String name, final String category, final long startNanos,
+								 final long endNanos) {
+		final OperationSpan span = new OperationSpan(checkNotNull(name), checkNotNull(category), startNanos);
+		span.end(endNanos);
+		return addSpan(span);
+	}
+
+	/**
+	 * Returns a snapshot of all spans in the order they were started.
+	 *
+	 * @return the spans of this trace
+	 */
+	public synchronized List<OperationSpan> getSpans() {
+		return ImmutableList.copyOf(spans);
+	}
+
+	/**
+	 * Returns the sum of the durations of all spans with the given name.
+	 *
+	 * @param name
+	 * 		the name of the spans
+	 *
+	 * @return the total duration in nanoseconds
+	 */
+	public synchronized long getTotalNanos(final String name) {
+		long total = 0;
+		for (OperationSpan span : spans) {
+			if (span.getName().equals(name)) {
+				total += span.getDurationNanos();
+			}
+		}
+		return total;
+	}
+
+	private synchronized OperationSpan addSpan(final OperationSpan span) {
+		spans.add(span);
+		return span;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OperationTrace" + spans;
+	}
+}
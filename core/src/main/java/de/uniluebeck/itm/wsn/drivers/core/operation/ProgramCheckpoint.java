@@ -0,0 +1,130 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The progress of a program operation on a single device: the image that is written, the flash sectors that have
+ * been erased for it and the last block that has been acknowledged by the device. Drivers may attach additional
+ * values that are needed to continue the operation (e.g. the flash header of the device) as attributes.
+ * <p/>
+ * Checkpoints are immutable, every step of the operation creates a new one.
+ */
+public final class ProgramCheckpoint {
+
+	/**
+	 * Sector number that denotes an erase of the whole flash memory.
+	 */
+	public static final int ALL_SECTORS = -1;
+
+	/**
+	 * The unpatched image, its hash is only calculated if the checkpoint is compared with a separately loaded image.
+	 */
+	private final FirmwareImage image;
+
+	private final ImmutableSet<Integer> erasedSectors;
+
+	private final int lastAcknowledgedBlock;
+
+	private final ImmutableMap<String, String> attributes;
+
+	private ProgramCheckpoint(final FirmwareImage image, final ImmutableSet<Integer> erasedSectors,
+							  final int lastAcknowledgedBlock, final ImmutableMap<String, String> attributes) {
+		this.image = image;
+		this.erasedSectors = erasedSectors;
+		this.lastAcknowledgedBlock = lastAcknowledgedBlock;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Creates the checkpoint of an operation that has erased the given sectors but not written any block yet.
+	 *
+	 * @param image
+	 * 		the image that is written
+	 * @param erasedSectors
+	 * 		the numbers of the erased sectors, {@link #ALL_SECTORS} for a mass erase
+	 *
+	 * @return the checkpoint
+	 */
+	public static ProgramCheckpoint erased(final FirmwareImage image, final Set<Integer> erasedSectors) {
+		return new ProgramCheckpoint(
+				image.getBase(),
+				ImmutableSet.copyOf(erasedSectors),
+				-1,
+				ImmutableMap.<String, String>of()
+		);
+	}
+
+	public String getImageHash() {
+		return image.getContentHash().toString();
+	}
+
+	/**
+	 * Checks if this checkpoint has been recorded while writing the given image.
+	 *
+	 * @param image
+	 * 		the image
+	 *
+	 * @return <code>true</code> if the content of the image is the same
+	 */
+	public boolean isFor(final FirmwareImage image) {
+		return this.image.hasSameContent(image);
+	}
+
+	public Set<Integer> getErasedSectors() {
+		return erasedSectors;
+	}
+
+	/**
+	 * Checks if the given sector has been erased, either on its own or by a mass erase.
+	 *
+	 * @param sector
+	 * 		the number of the sector
+	 *
+	 * @return <code>true</code> if the sector has been erased
+	 */
+	public boolean isErased(final int sector) {
+		return erasedSectors.contains(sector) || erasedSectors.contains(ALL_SECTORS);
+	}
+
+	/**
+	 * Returns the index of the last block that has been written and acknowledged by the device.
+	 *
+	 * @return the block index or <code>-1</code> if no block has been acknowledged yet
+	 */
+	public int getLastAcknowledgedBlock() {
+		return lastAcknowledgedBlock;
+	}
+
+	public ProgramCheckpoint withAcknowledgedBlock(final int block) {
+		checkArgument(block >= 0, "Block index must not be negative.");
+		return new ProgramCheckpoint(image, erasedSectors, block, attributes);
+	}
+
+	@Nullable
+	public String getAttribute(final String name) {
+		return attributes.get(name);
+	}
+
+	public ProgramCheckpoint withAttribute(final String name, final String value) {
+		checkNotNull(value, "Null values are not allowed.");
+		final Map<String, String> copy = Maps.newHashMap(attributes);
+		copy.put(name, value);
+		return new ProgramCheckpoint(image, erasedSectors, lastAcknowledgedBlock, ImmutableMap.copyOf(copy));
+	}
+
+	@Override
+	public String toString() {
+		return "ProgramCheckpoint{image=" + image + ", erasedSectors=" + erasedSectors
+				+ ", lastAcknowledgedBlock=" + lastAcknowledgedBlock + ", attributes=" + attributes.keySet() + "}";
+	}
+}
@@ -0,0 +1,90 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the {@link ProgramCheckpoint} of the last program operation of a device. Program operations record a
+ * checkpoint after erasing the flash and after every acknowledged block, and remove it when they have finished.
+ * <p/>
+ * The checkpoint is kept when the device is disconnected, so that a program operation that failed because of an
+ * unstable connection can be continued after reconnecting. Continuing is only done in resume mode, which is enabled
+ * by setting the configuration key {@link #OPTION_RESUME} to <code>true</code> or by calling
+ * {@link #setResumeEnabled(boolean)}. Before continuing, drivers have to check cheaply that the device still contains
+ * what the checkpoint claims, e.g. by reading back the last acknowledged block.
+ */
+@Singleton
+public class ProgramCheckpointStore {
+
+	private static final Logger log = LoggerFactory.getLogger(ProgramCheckpointStore.class);
+
+	public static final String OPTION_RESUME = "program.resume";
+
+	private boolean resumeEnabled;
+
+	@Nullable
+	private ProgramCheckpoint checkpoint;
+
+	public ProgramCheckpointStore() {
+		this(false);
+	}
+
+	public ProgramCheckpointStore(final boolean resumeEnabled) {
+		this.resumeEnabled = resumeEnabled;
+	}
+
+	@Inject
+	public ProgramCheckpointStore(@Named("configuration") final Map<String, String> configuration) {
+		this(Boolean.parseBoolean(configuration.get(OPTION_RESUME)));
+	}
+
+	public synchronized boolean isResumeEnabled() {
+		return resumeEnabled;
+	}
+
+	public synchronized void setResumeEnabled(final boolean resumeEnabled) {
+		this.resumeEnabled = resumeEnabled;
+	}
+
+	/**
+	 * Returns the checkpoint a program operation may continue from.
+	 *
+	 * @return the checkpoint or <code>null</code> if resume mode is disabled or no checkpoint has been recorded
+	 */
+	@Nullable
+	public synchronized ProgramCheckpoint getResumableCheckpoint() {
+		return resumeEnabled ? checkpoint : null;
+	}
+
+	/**
+	 * Returns the last recorded checkpoint, regardless of the resume mode.
+	 *
+	 * @return the checkpoint or <code>null</code> if none has been recorded
+	 */
+	@Nullable
+	public synchronized ProgramCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	public synchronized void record(final ProgramCheckpoint checkpoint) {
+		this.checkpoint = checkNotNull(checkpoint, "Null checkpoint is not allowed.");
+	}
+
+	/**
+	 * Removes the checkpoint. Has to be called whenever the flash is modified outside of the recorded operation.
+	 */
+	public synchronized void clear() {
+		if (checkpoint != null) {
+			log.trace("Dropping {}", checkpoint);
+			checkpoint = null;
+		}
+	}
+}
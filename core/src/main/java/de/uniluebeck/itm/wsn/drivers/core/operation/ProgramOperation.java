@@ -8,4 +8,12 @@ package de.uniluebeck.itm.wsn.drivers.core.operation;
  */
 public interface ProgramOperation extends Operation<Void> {
 
+	/**
+	 * Returns whether this operation erases the whole flash memory of the device before writing the image. Only then
+	 * an erase operation that is directly followed by this operation can be dropped, see
+	 * {@link OperationQueueOptimizer}.
+	 *
+	 * @return <code>true</code> if the whole flash memory is erased
+	 */
+	boolean isErasingWholeFlash();
 }
@@ -29,6 +29,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public abstract class TimeLimitedOperation<ResultType> implements Operation<ResultType> {
 
+	/**
+	 * Weight of the most recent measurement in the smoothed transfer rate.
+	 */
+	private static final double TRANSFER_RATE_SMOOTHING = 0.3;
+
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
 	/**
@@ -69,6 +74,47 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 
 	private float progress = 0f;
 
+	private long lastTransferNanos = -1;
+
+	private long lastTransferBytes;
+
+	private double bytesPerSecond;
+
+	/**
+	 * Time the execution of this operation has started at, see {@link #getRemainingMillis()}.
+	 */
+	private volatile long startNanos = -1;
+
+	/**
+	 * The scheduler that executes this operation or <code>null</code> if the operation is executed directly.
+	 */
+	private volatile OperationScheduler scheduler;
+
+	/**
+	 * The trace the spans of this operation are recorded in. Shared with the parent operation if this is a sub
+	 * operation.
+	 */
+	private volatile OperationTrace trace = new OperationTrace();
+
+	/**
+	 * <code>true</code> if {@link #callInternal()} is executed in the calling thread instead of a thread of the time
+	 * limiter, see {@link #callInCurrentThread()}.
+	 */
+	private volatile boolean runInCurrentThread;
+
+	/**
+	 * Guards {@link #leader} and {@link #leaderListener}.
+	 */
+	private final Object followLock = new Object();
+
+	/**
+	 * The operation this one mirrors instead of being executed itself (see {@link #follow(Operation, Runnable)}) or
+	 * <code>null</code>.
+	 */
+	private Operation<ResultType> leader;
+
+	private OperationListener<ResultType> leaderListener;
+
 	public TimeLimitedOperation(final TimeLimiter timeLimiter, final long timeoutMillis,
 								@Nullable final OperationListener<ResultType> listener) {
 
@@ -86,9 +132,17 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 	@Override
 	public void cancel() {
 		canceled = true;
+		if (unfollow()) {
+			// only this operation is canceled, the leader keeps running for everyone else that waits for it
+			setState(State.CANCELED);
+			listeners.fire().onCancel();
+			return;
+		}
 		stateLock.lock();
 		try {
-			operationDone.await();
+			while (!State.isFinishState(state)) {
+				operationDone.await();
+			}
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		} finally {
@@ -98,6 +152,38 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 
 	@Override
 	public final ResultType call() throws Exception {
+		final OperationSpan span = trace.startSpan(getOperationName(), OperationSpan.CATEGORY_OPERATION);
+		try {
+			return callAndNotify();
+		} finally {
+			span.end();
+		}
+	}
+
+	/**
+	 * Executes this operation in the calling thread instead of a thread of the time limiter. Used for operations that
+	 * are executed at the preemption point of a running operation, whose own time limit bounds the execution, so that
+	 * preempting operations do not need an additional thread.
+	 *
+	 * @return the result of the operation
+	 *
+	 * @throws Exception
+	 * 		if the operation failed
+	 */
+	ResultType callInCurrentThread() throws Exception {
+		runInCurrentThread();
+		return call();
+	}
+
+	/**
+	 * Makes {@link #call()} execute this operation in the calling thread instead of a thread of the time limiter. The
+	 * time limit of this operation is not enforced anymore, the caller has to be bounded by a time limit of its own.
+	 */
+	void runInCurrentThread() {
+		runInCurrentThread = true;
+	}
+
+	private ResultType callAndNotify() throws Exception {
 
 		setState(State.RUNNING);
 		listeners.fire().onExecute();
@@ -109,13 +195,18 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 			if (!canceled) {
 				progress(0f);
 				log.trace("Running {} operation with {} ms timeout", this.getClass().getSimpleName(), timeoutMillis);
-				result = timeLimiter.callWithTimeout(new Callable<ResultType>() {
-														 @Override
-														 public ResultType call() throws Exception {
-															 return callInternal();
-														 }
-													 }, timeoutMillis, TimeUnit.MILLISECONDS, false
-				);
+				startNanos = System.nanoTime();
+				if (runInCurrentThread) {
+					result = callInternal();
+				} else {
+					result = timeLimiter.callWithTimeout(new Callable<ResultType>() {
+															 @Override
+															 public ResultType call() throws Exception {
+																 return callInternal();
+															 }
+														 }, timeoutMillis, TimeUnit.MILLISECONDS, false
+					);
+				}
 				progress(1f);
 			}
 
@@ -180,12 +271,56 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 		listeners.removeListener(listener);
 	}
 
+	@Override
+	public OperationTrace getTrace() {
+		return trace;
+	}
+
 	protected boolean isCanceled() {
 		return canceled;
 	}
 
+	/**
+	 * Returns the time that is left until this operation times out. Loops that wait for the device should end when
+	 * no time is left, as the thread executing the operation is not necessarily stopped by the timeout.
+	 *
+	 * @return the remaining time in milliseconds, <code>0</code> if the operation has timed out
+	 */
+	protected long getRemainingMillis() {
+		if (startNanos < 0) {
+			return timeoutMillis;
+		}
+		final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		return Math.max(0, timeoutMillis - elapsedMillis);
+	}
+
+	/**
+	 * Starts a span for a phase of this operation, e.g. erasing the flash. The returned span has to be ended by the
+	 * caller:
+	 * <pre>
+	 * final OperationSpan span = startPhase("eraseSectors");
+	 * try {
+	 *     ...
+	 * } finally {
+	 *     span.end();
+	 * }
+	 * </pre>
+	 *
+	 * @param name
+	 * 		the name of the phase
+	 *
+	 * @return the started span
+	 */
+	protected OperationSpan startPhase(final String name) {
+		return trace.startSpan(name, OperationSpan.CATEGORY_PHASE);
+	}
+
 	protected <R> R runSubOperation(final Operation<R> subOperation, final float subFraction) throws Exception {
 		checkNotNull(subOperation, "Null operations are not allowed");
+		if (subOperation instanceof TimeLimitedOperation) {
+			((TimeLimitedOperation<R>) subOperation).setScheduler(scheduler);
+			((TimeLimitedOperation<R>) subOperation).trace = trace;
+		}
 		subOperation.addListener(new OperationAdapter<R>() {
 
 									 private final float initialParentOperationProgress =
@@ -202,11 +337,177 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 										 );
 										 progress(initialParentOperationProgress + subFraction * fraction);
 									 }
+
+									 @Override
+									 public void onTransferProgress(final TransferProgress transferProgress) {
+										 listeners.fire().onTransferProgress(new TransferProgress(
+												 TimeLimitedOperation.this.progress,
+												 transferProgress.getBytesDone(),
+												 transferProgress.getBytesTotal(),
+												 transferProgress.getBytesPerSecond(),
+												 transferProgress.getEtaMillis()
+										 )
+										 );
+									 }
 								 }
 		);
 		return subOperation.call();
 	}
 
+	/**
+	 * Marks a point at which this operation can be interrupted safely, e.g. between two blocks written to the flash.
+	 * Waiting operations of a higher priority that are allowed to preempt this operation are executed before this
+	 * method returns. Long running operations should call this method regularly.
+	 *
+	 * @see OperationScheduler
+	 */
+	protected void preemptionPoint() {
+		final OperationScheduler currentScheduler = scheduler;
+		if (currentScheduler != null && !canceled) {
+			currentScheduler.runPreemptingOperations();
+		}
+	}
+
+	void setScheduler(@Nullable final OperationScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Cancels this operation without executing it, e.g. because it is dropped from the queue of a scheduler that is
+	 * shutting down. Does nothing if the execution has already been started.
+	 */
+	void cancelWithoutExecution() {
+		canceled = true;
+		final boolean detached = unfollow();
+		stateLock.lock();
+		try {
+			if (!detached && state != State.WAITING) {
+				return;
+			}
+			setState(State.CANCELED);
+		} finally {
+			stateLock.unlock();
+		}
+		listeners.fire().onCancel();
+	}
+
+	/**
+	 * Lets this operation mirror the execution of an equivalent operation instead of being executed itself. All state
+	 * changes, progress updates and the result of <code>leader</code> are reported to the listeners of this operation.
+	 * <p/>
+	 * Canceling this operation detaches it from <code>leader</code> without affecting the leader. If the leader is
+	 * canceled instead, this operation is detached and <code>leaderCanceled</code> is run, so that it can be executed
+	 * on its own.
+	 *
+	 * @param leader
+	 * 		the operation that is executed in place of this one
+	 * @param leaderCanceled
+	 * 		called if <code>leader</code> is canceled while this operation is still waiting for its result
+	 */
+	void follow(final Operation<ResultType> leader, final Runnable leaderCanceled) {
+		synchronized (followLock) {
+			this.leader = leader;
+			this.leaderListener = new OperationListener<ResultType>() {
+
+				@Override
+				public void beforeStateChanged(final StateChangedEvent<ResultType> event) {
+					// fired by setState() in afterStateChanged()
+				}
+
+				@Override
+				public void afterStateChanged(final StateChangedEvent<ResultType> event) {
+					if (event.getNewState() == State.CANCELED) {
+						if (unfollow(this)) {
+							leaderCanceled.run();
+						}
+						return;
+					}
+					synchronized (followLock) {
+						if (leaderListener == this) {
+							setState(event.getNewState());
+						}
+					}
+				}
+
+				@Override
+				public void onExecute() {
+					synchronized (followLock) {
+						if (leaderListener == this) {
+							listeners.fire().onExecute();
+						}
+					}
+				}
+
+				@Override
+				public void onSuccess(final ResultType result) {
+					if (unfollow(this)) {
+						listeners.fire().onSuccess(result);
+					}
+				}
+
+				@Override
+				public void onCancel() {
+					// handled in afterStateChanged()
+				}
+
+				@Override
+				public void onFailure(final Throwable throwable) {
+					if (unfollow(this)) {
+						listeners.fire().onFailure(throwable);
+					}
+				}
+
+				@Override
+				public void onProgressChange(final float fraction) {
+					synchronized (followLock) {
+						if (leaderListener == this && fraction >= progress) {
+							progress(fraction);
+						}
+					}
+				}
+
+				@Override
+				public void onTransferProgress(final TransferProgress transferProgress) {
+					synchronized (followLock) {
+						if (leaderListener == this) {
+							listeners.fire().onTransferProgress(transferProgress);
+						}
+					}
+				}
+			};
+			leader.addListener(leaderListener);
+		}
+	}
+
+	/**
+	 * Detaches this operation from its leader unless the leader has already finished.
+	 *
+	 * @return <code>true</code> if this operation was following a leader
+	 */
+	private boolean unfollow() {
+		synchronized (followLock) {
+			return leaderListener != null && !State.isFinishState(state) && unfollow(leaderListener);
+		}
+	}
+
+	private boolean unfollow(final OperationListener<ResultType> listener) {
+		synchronized (followLock) {
+			if (leaderListener != listener) {
+				return false;
+			}
+			leader.removeListener(leaderListener);
+			leader = null;
+			leaderListener = null;
+			return true;
+		}
+	}
+
+	private String getOperationName() {
+		final String name = getClass().getSimpleName();
+		final int enhancerIndex = name.indexOf("$$");
+		return enhancerIndex > 0 ? name.substring(0, enhancerIndex) : name;
+	}
+
 	/**
 	 * Use this method to set the progress of work that was already done.
 	 * The amount of work starts at 0.0f and goes up to 1.0f.
@@ -230,6 +531,47 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 		this.listeners.fire().onProgressChange(progress);
 	}
 
+	/**
+	 * Reports the progress of a data transfer to or from the device. The transfer rate is measured between
+	 * subsequent calls and used to estimate the remaining time. Call this method with <code>bytesDone = 0</code> when
+	 * a transfer starts and after every transferred block.
+	 *
+	 * @param bytesDone
+	 * 		The number of bytes that have already been transferred.
+	 * @param bytesTotal
+	 * 		The total number of bytes of the transfer.
+	 */
+	protected void transferProgress(final long bytesDone, final long bytesTotal) {
+
+		final long now = System.nanoTime();
+
+		if (lastTransferNanos < 0 || bytesDone < lastTransferBytes) {
+			bytesPerSecond = 0;
+		} else if (now > lastTransferNanos) {
+			final double currentBytesPerSecond =
+					(bytesDone - lastTransferBytes) * 1000000000d / (now - lastTransferNanos);
+			bytesPerSecond = bytesPerSecond == 0 ?
+					currentBytesPerSecond :
+					TRANSFER_RATE_SMOOTHING * currentBytesPerSecond + (1 - TRANSFER_RATE_SMOOTHING) * bytesPerSecond;
+		}
+
+		lastTransferNanos = now;
+		lastTransferBytes = bytesDone;
+
+		final long etaMillis;
+		if (bytesDone >= bytesTotal) {
+			etaMillis = 0;
+		} else if (bytesPerSecond > 0) {
+			etaMillis = (long) ((bytesTotal - bytesDone) * 1000 / bytesPerSecond);
+		} else {
+			etaMillis = TransferProgress.UNKNOWN_ETA;
+		}
+
+		listeners.fire().onTransferProgress(
+				new TransferProgress(progress, bytesDone, bytesTotal, bytesPerSecond, etaMillis)
+		);
+	}
+
 	/**
 	 * Thread safe state change function.
 	 *
@@ -0,0 +1,119 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link OperationTrace}s in the JSON based Trace Event Format that can be loaded into trace viewers like
+ * <code>chrome://tracing</code>, Perfetto or Trace Compass. Every trace is shown as a separate process (e.g. one per
+ * device) and all spans are written as complete (<code>"X"</code>) events with bytes, retries and the executing
+ * thread as arguments.
+ */
+public class TraceEventWriter {
+
+	private TraceEventWriter() {
+	}
+
+	public static void write(final OperationTrace trace, final File file) throws IOException {
+		write(ImmutableMap.of("device", trace), file);
+	}
+
+	public static void write(final Map<String, OperationTrace> traces, final File file) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			write(traces, writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the given traces to the writer.
+	 *
+	 * @param traces
+	 * 		the traces to write, indexed by the name of the process (e.g. the port of the device) they are shown as
+	 * @param writer
+	 * 		the writer to write to
+	 *
+	 * @throws IOException
+	 * 		if writing fails
+	 */
+	public static void write(final Map<String, OperationTrace> traces, final Writer writer) throws IOException {
+
+		long originNanos = Long.MAX_VALUE;
+		for (OperationTrace trace : traces.values()) {
+			for (OperationSpan span : trace.getSpans()) {
+				originNanos = Math.min(originNanos, span.getStartNanos());
+			}
+		}
+
+		writer.write("{\"traceEvents\":[");
+
+		boolean first = true;
+		int pid = 0;
+		for (Map.Entry<String, OperationTrace> entry : traces.entrySet()) {
+
+			pid++;
+			first = writeSeparator(writer, first);
+			writer.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":1,\"args\":{\"name\":");
+			writeString(writer, entry.getKey());
+			writer.write("}}");
+
+			final List<OperationSpan> spans = entry.getValue().getSpans();
+			for (OperationSpan span : spans) {
+				first = writeSeparator(writer, first);
+				writeSpan(writer, span, originNanos, pid);
+			}
+		}
+
+		writer.write("],\"displayTimeUnit\":\"ms\"}");
+		writer.flush();
+	}
+
+	private static void writeSpan(final Writer writer, final OperationSpan span, final long originNanos,
+								  final int pid) throws IOException {
+		writer.write("{\"name\":");
+		writeString(writer, span.getName());
+		writer.write(",\"cat\":");
+		writeString(writer, span.getCategory());
+		writer.write(",\"ph\":\"X\",\"ts\":" + toMicros(span.getStartNanos() - originNanos));
+		writer.write(",\"dur\":" + toMicros(span.getDurationNanos()));
+		writer.write(",\"pid\":" + pid + ",\"tid\":1,\"args\":{\"thread\":");
+		writeString(writer, span.getThreadName());
+		writer.write(",\"bytes\":" + span.getBytes() + ",\"retries\":" + span.getRetries());
+		if (!span.isEnded()) {
+			writer.write(",\"unfinished\":true");
+		}
+		writer.write("}}");
+	}
+
+	private static boolean writeSeparator(final Writer writer, final boolean first) throws IOException {
+		if (!first) {
+			writer.write(",\n");
+		}
+		return false;
+	}
+
+	private static String toMicros(final long nanos) {
+		return (nanos / 1000) + "." + String.valueOf(1000 + nanos % 1000).substring(1);
+	}
+
+	private static void writeString(final Writer writer, final String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", (int) c));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+}
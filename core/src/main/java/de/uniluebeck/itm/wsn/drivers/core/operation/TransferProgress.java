@@ -0,0 +1,80 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+/**
+ * Detailed progress information of an operation that transfers data to or from a device.
+ *
+ * @see OperationListener#onTransferProgress(TransferProgress)
+ */
+public class TransferProgress {
+
+	/**
+	 * Value of {@link #getEtaMillis()} if no estimation is possible yet.
+	 */
+	public static final long UNKNOWN_ETA = -1;
+
+	private final float fraction;
+
+	private final long bytesDone;
+
+	private final long bytesTotal;
+
+	private final double bytesPerSecond;
+
+	private final long etaMillis;
+
+	public TransferProgress(final float fraction, final long bytesDone, final long bytesTotal,
+							final double bytesPerSecond, final long etaMillis) {
+		this.fraction = fraction;
+		this.bytesDone = bytesDone;
+		this.bytesTotal = bytesTotal;
+		this.bytesPerSecond = bytesPerSecond;
+		this.etaMillis = etaMillis;
+	}
+
+	/**
+	 * Returns the overall progress of the operation (the value passed to
+	 * {@link OperationListener#onProgressChange(float)}).
+	 *
+	 * @return the overall progress between zero and one
+	 */
+	public float getFraction() {
+		return fraction;
+	}
+
+	public long getBytesDone() {
+		return bytesDone;
+	}
+
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	/**
+	 * Returns the current transfer rate, smoothed over the last transferred blocks.
+	 *
+	 * @return the transfer rate in bytes per second
+	 */
+	public double getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Returns the estimated time until the transfer is complete, based on the current transfer rate.
+	 *
+	 * @return the estimated remaining time in milliseconds or {@link #UNKNOWN_ETA}
+	 */
+	public long getEtaMillis() {
+		return etaMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "TransferProgress{" +
+				"fraction=" + fraction +
+				", bytesDone=" + bytesDone +
+				", bytesTotal=" + bytesTotal +
+				", bytesPerSecond=" + (long) bytesPerSecond +
+				", etaMillis=" + etaMillis +
+				'}';
+	}
+}
@@ -3,6 +3,9 @@ package de.uniluebeck.itm.wsn.drivers.core.serialport;
 import com.google.inject.Inject;
 import de.uniluebeck.itm.wsn.drivers.core.SerialPortDevice;
 import de.uniluebeck.itm.wsn.drivers.core.exception.EnterProgrammingModeException;
+import de.uniluebeck.itm.wsn.drivers.core.operation.Operation;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationSpan;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationTrace;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection.SerialPortMode;
 import gnu.io.SerialPort;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -41,18 +44,26 @@ public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
 
 		Object result = null;
 
+		final OperationTrace trace = invocation.getThis() instanceof Operation ?
+				((Operation<?>) invocation.getThis()).getTrace() :
+				new OperationTrace();
+
+		OperationSpan span = trace.startSpan("enterProgrammingMode", OperationSpan.CATEGORY_PHASE);
 		device.acquireLockOnDevice();
 		try {
 			enterProgrammingMode();
+			span.end();
 			alreadyInProgrammingMode = true;
 			try {
 				result = invocation.proceed();
 			} finally {
+				span = trace.startSpan("leaveProgrammingMode", OperationSpan.CATEGORY_PHASE);
 				leaveProgrammingMode();
 				alreadyInProgrammingMode = false;
 			}
 		} finally {
 			device.releaseLockOnDeviceStreams();
+			span.end();
 		}
 		return result;
 	}
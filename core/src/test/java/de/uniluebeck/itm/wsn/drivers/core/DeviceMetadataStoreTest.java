@@ -0,0 +1,77 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceMetadataStoreTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File byIdDirectory;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		byIdDirectory = temporaryFolder.newFolder("by-id");
+		file = new File(temporaryFolder.getRoot(), "metadata.properties");
+	}
+
+	@Test
+	public void deviceKeyUsesByIdLinkIfAvailable() throws IOException {
+
+		final File link = new File(byIdDirectory, "usb-FTDI_FT232R_USB_UART_A900XYZ-if00-port0");
+		Files.touch(link);
+
+		final DeviceMetadataStore store = new DeviceMetadataStore(file, byIdDirectory);
+		assertEquals("usb:" + link.getName(), store.resolveDeviceKey(link.getPath()));
+		assertEquals("port:/dev/ttyUSB7", store.resolveDeviceKey("/dev/ttyUSB7"));
+	}
+
+	@Test
+	public void valuesSurviveRestart() {
+
+		final DeviceMetadataStore store = new DeviceMetadataStore(file, byIdDirectory);
+		store.put("port:/dev/ttyUSB0", DeviceSessionCache.CHIP_TYPE, ChipType.JN5148.name());
+		store.put("port:/dev/ttyUSB1", DeviceSessionCache.CHIP_TYPE, ChipType.JN513X.name());
+
+		final DeviceMetadataStore reloaded = new DeviceMetadataStore(file, byIdDirectory);
+		assertEquals("JN5148", reloaded.get("port:/dev/ttyUSB0").get(DeviceSessionCache.CHIP_TYPE));
+		assertEquals(1, reloaded.get("port:/dev/ttyUSB1").size());
+
+		reloaded.remove("port:/dev/ttyUSB0");
+		assertTrue(new DeviceMetadataStore(file, byIdDirectory).get("port:/dev/ttyUSB0").isEmpty());
+	}
+
+	@Test
+	public void sessionCachePersistsAndOffersValuesOnce() {
+
+		final DeviceSessionCache cache = new DeviceSessionCache();
+		cache.setMetadataStore(new DeviceMetadataStore(file, byIdDirectory));
+		cache.connected("/dev/ttyUSB0");
+		assertNull(cache.takeUnvalidatedMetadata());
+
+		cache.put(DeviceSessionCache.CHIP_TYPE, ChipType.JN513X);
+		cache.put(DeviceSessionCache.MAC_ADDRESS, new MacAddress(0x1234));
+		cache.disconnected();
+
+		final DeviceSessionCache restarted = new DeviceSessionCache();
+		restarted.setMetadataStore(new DeviceMetadataStore(file, byIdDirectory));
+		restarted.connected("/dev/ttyUSB0");
+
+		assertNull(restarted.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+		assertEquals("JN513X", restarted.takeUnvalidatedMetadata().get(DeviceSessionCache.CHIP_TYPE));
+		assertNull(restarted.takeUnvalidatedMetadata());
+	}
+}
@@ -0,0 +1,108 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DeviceSessionCacheTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private DeviceSessionCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new DeviceSessionCache(true);
+		cache.put(DeviceSessionCache.CHIP_TYPE, ChipType.JN5148);
+		cache.put(DeviceSessionCache.MAC_ADDRESS, new MacAddress(0x1234));
+	}
+
+	@Test
+	public void invalidateDropsOnlyTheGivenKey() {
+
+		cache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+
+		assertNull(cache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+		assertEquals(ChipType.JN5148, cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+	}
+
+	@Test
+	public void invalidateAllDropsEverything() {
+
+		cache.invalidateAll();
+
+		assertNull(cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+		assertNull(cache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+	}
+
+	@Test
+	public void connectingAndDisconnectingDropsEverything() {
+
+		cache.connected("/dev/ttyUSB0");
+		assertNull(cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+
+		cache.put(DeviceSessionCache.CHIP_TYPE, ChipType.JN5148);
+		cache.disconnected();
+		assertNull(cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+	}
+
+	@Test
+	public void disablingDropsEverythingAndStopsCaching() {
+
+		cache.setEnabled(false);
+		cache.put(DeviceSessionCache.FLASH_TYPE, "STM25P40");
+
+		cache.setEnabled(true);
+		assertNull(cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+		assertNull(cache.get(DeviceSessionCache.FLASH_TYPE, String.class));
+	}
+
+	@Test
+	public void countsHitsAndMissesOfTheEnabledCache() {
+
+		cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class);
+		cache.get(DeviceSessionCache.FLASH_TYPE, String.class);
+		cache.invalidate(DeviceSessionCache.CHIP_TYPE);
+		cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class);
+
+		cache.setEnabled(false);
+		cache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class);
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void peekingIsNotCounted() {
+
+		assertEquals(ChipType.JN5148, cache.peek(DeviceSessionCache.CHIP_TYPE, ChipType.class));
+		assertNull(cache.peek(DeviceSessionCache.FLASH_TYPE, String.class));
+
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void transientValuesAreNotPersisted() {
+
+		final DeviceMetadataStore store = new DeviceMetadataStore(
+				new File(temporaryFolder.getRoot(), "metadata.properties"), temporaryFolder.getRoot()
+		);
+		cache.setMetadataStore(store);
+		cache.connected("/dev/ttyUSB0");
+
+		cache.put(DeviceSessionCache.CHIP_TYPE, ChipType.JN5148);
+		cache.putTransient("flashContents", new byte[16]);
+
+		assertNotNull(cache.get("flashContents", byte[].class));
+		assertEquals(1, store.get(store.resolveDeviceKey("/dev/ttyUSB0")).size());
+	}
+}
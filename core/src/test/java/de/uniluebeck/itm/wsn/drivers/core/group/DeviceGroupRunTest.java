@@ -0,0 +1,175 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationScheduler;
+import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceGroupRunTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private final List<NodeResult> finished = new CopyOnWriteArrayList<NodeResult>();
+
+	private final CountDownLatch started = new CountDownLatch(2);
+
+	private final CountDownLatch retrying = new CountDownLatch(1);
+
+	private final AtomicInteger permits = new AtomicInteger();
+
+	private ScheduledExecutorService executorService;
+
+	private TimeLimiter timeLimiter;
+
+	private final List<OperationScheduler> schedulers = new CopyOnWriteArrayList<OperationScheduler>();
+
+	/**
+	 * Operation that runs until it is canceled.
+	 */
+	private class EndlessOperation extends TimeLimitedOperation<Void> {
+
+		private EndlessOperation(final OperationListener<Void> listener) {
+			super(DeviceGroupRunTest.this.timeLimiter, TIMEOUT, listener);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			started.countDown();
+			while (!isCanceled()) {
+				Thread.sleep(1);
+			}
+			return null;
+		}
+	}
+
+	private final DeviceGroupTask endlessTask = new DeviceGroupTask() {
+		@Override
+		public OperationFuture<Void> start(final Device device, final long timeoutMillis,
+										   final OperationListener<Void> listener) {
+			final OperationScheduler scheduler = new OperationScheduler();
+			schedulers.add(scheduler);
+			scheduler.start();
+			return scheduler.submit(new EndlessOperation(listener));
+		}
+	};
+
+	private final ConcurrencyLimiter countingLimiter = new ConcurrencyLimiter() {
+		@Override
+		public boolean tryAcquire(final String nodeId) {
+			permits.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public void release(final String nodeId, @Nullable final Throwable failure) {
+			permits.decrementAndGet();
+		}
+	};
+
+	@Before
+	public void setUp() {
+		executorService = Executors.newScheduledThreadPool(4);
+		timeLimiter = new SimpleTimeLimiter(executorService);
+	}
+
+	@After
+	public void tearDown() {
+		for (OperationScheduler scheduler : schedulers) {
+			scheduler.shutdown();
+		}
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void cancelFinishesRunningAndWaitingNodes() throws Exception {
+
+		final Map<String, DeviceGroupTask> tasks = Maps.newLinkedHashMap();
+		tasks.put("a", endlessTask);
+		tasks.put("b", endlessTask);
+		tasks.put("c", endlessTask);
+
+		final CountDownLatch allFinished = new CountDownLatch(3);
+		final DeviceGroupRun run = createRun(tasks, RetryPolicy.none(), allFinished);
+		final DeviceGroupFuture future = run.start();
+		assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		assertTrue(future.cancel(false));
+		assertTrue(allFinished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		for (NodeResult result : finished) {
+			assertTrue(result.getFailure() instanceof CancellationException);
+		}
+		assertEquals(0, permits.get());
+		assertEquals(0, run.getProgress().getNodesRunning());
+		assertEquals(3, run.getProgress().getNodesFailed());
+	}
+
+	@Test
+	public void cancelFinishesNodeWaitingForRetry() throws Exception {
+
+		final Map<String, DeviceGroupTask> tasks = Maps.newLinkedHashMap();
+		tasks.put("a", new DeviceGroupTask() {
+			@Override
+			public OperationFuture<Void> start(final Device device, final long timeoutMillis,
+											   final OperationListener<Void> listener) {
+				throw new IllegalStateException("device not connected");
+			}
+		}
+		);
+
+		final CountDownLatch allFinished = new CountDownLatch(1);
+		final RetryPolicy retryPolicy = RetryPolicy.attempts(3, TimeUnit.MINUTES.toMillis(1));
+		final DeviceGroupRun run = createRun(tasks, retryPolicy, allFinished);
+		final DeviceGroupFuture future = run.start();
+		assertTrue(retrying.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		future.cancel(false);
+		assertTrue(allFinished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		assertEquals(1, finished.get(0).getAttempts());
+		assertTrue(finished.get(0).getFailure() instanceof CancellationException);
+		assertEquals(0, permits.get());
+	}
+
+	private DeviceGroupRun createRun(final Map<String, DeviceGroupTask> tasks, final RetryPolicy retryPolicy,
+									 final CountDownLatch allFinished) {
+
+		final DeviceGroupListener listener = new DeviceGroupAdapter() {
+			@Override
+			public void onRetry(final String nodeId, final int attempts, final Throwable failure) {
+				retrying.countDown();
+			}
+
+			@Override
+			public void onNodeFinished(final NodeResult result) {
+				finished.add(result);
+				allFinished.countDown();
+			}
+		};
+
+		return new DeviceGroupRun(executorService, Maps.<String, Device>newHashMap(), tasks, TIMEOUT, 2,
+				retryPolicy, countingLimiter, listener
+		);
+	}
+}
@@ -0,0 +1,102 @@
+package de.uniluebeck.itm.wsn.drivers.core.group;
+
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class TopologyConcurrencyLimiterTest {
+
+	private static final String USB_DEVICES = "devices/pci0000:00/0000:00:14.0/usb1";
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File sysfsRoot;
+
+	private UsbTopology topology;
+
+	@Before
+	public void setUp() throws Exception {
+		sysfsRoot = temporaryFolder.newFolder("sys");
+		assumeTrue(new File(sysfsRoot, "class/tty").mkdirs());
+		addTty("ttyUSB0", "1-2/1-2.1");
+		addTty("ttyUSB1", "1-2/1-2.2");
+		addTty("ttyUSB2", "1-3");
+		topology = new UsbTopology(sysfsRoot);
+	}
+
+	@Test
+	public void resolvesHubsFromSysfs() {
+		assertEquals("1-2.1", topology.getPhysicalPath("/dev/ttyUSB0"));
+		assertEquals("1-2", topology.getHubId("/dev/ttyUSB0"));
+		assertEquals("1-2", topology.getHubId("/dev/ttyUSB1"));
+		assertEquals("usb1", topology.getHubId("/dev/ttyUSB2"));
+		assertNull(topology.getPhysicalPath("/dev/ttyS0"));
+		assertEquals("port:/dev/ttyS0", topology.getHubId("/dev/ttyS0"));
+	}
+
+	@Test
+	public void limitsNodesPerHub() {
+
+		final TopologyConcurrencyLimiter limiter = new TopologyConcurrencyLimiter(topology, 10, 1);
+		limiter.addNode("a", "/dev/ttyUSB0");
+		limiter.addNode("b", "/dev/ttyUSB1");
+		limiter.addNode("c", "/dev/ttyUSB2");
+
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("b"));
+		assertTrue(limiter.tryAcquire("c"));
+
+		limiter.release("a", null);
+		assertTrue(limiter.tryAcquire("b"));
+	}
+
+	@Test
+	public void timeoutsReduceLimits() {
+
+		final TopologyConcurrencyLimiter limiter = new TopologyConcurrencyLimiter(topology, 4, 4);
+		limiter.addNode("a", "/dev/ttyUSB0");
+
+		assertTrue(limiter.tryAcquire("a"));
+		limiter.release("a", new RuntimeException(new TimeoutException()));
+		assertEquals(2, limiter.getHubLimit("1-2"));
+		assertEquals(3, limiter.getGlobalLimit());
+		assertEquals(1, limiter.getTimeoutCount());
+
+		assertTrue(limiter.tryAcquire("a"));
+		limiter.release("a", new IllegalStateException());
+		assertEquals(2, limiter.getHubLimit("1-2"));
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire("a"));
+			limiter.release("a", null);
+		}
+		assertEquals(4, limiter.getHubLimit("1-2"));
+		assertEquals(4, limiter.getGlobalLimit());
+	}
+
+	private void addTty(final String name, final String usbPath) throws IOException, InterruptedException {
+
+		final File device = new File(sysfsRoot, USB_DEVICES + "/" + usbPath + "/" + usbPath.substring(
+				usbPath.lastIndexOf('/') + 1) + ":1.0/" + name + "/tty/" + name
+		);
+		assumeTrue(device.mkdirs());
+
+		final File link = new File(sysfsRoot, "class/tty/" + name);
+		final Process process = Runtime.getRuntime().exec(
+				new String[]{"ln", "-s", device.getAbsolutePath(), link.getAbsolutePath()}
+		);
+		assumeTrue(process.waitFor() == 0);
+	}
+}
@@ -0,0 +1,101 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedImagesTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void gzipImagesAreRecognizedAndDecompressed() throws IOException {
+
+		final byte[] data = createData(10000);
+		final FirmwareImage compressed = FirmwareImage.wrap(gzip(data));
+
+		assertTrue(CompressedImages.isGzip(compressed));
+		assertFalse(CompressedImages.isGzip(FirmwareImage.wrap(data)));
+		assertEquals(data.length, CompressedImages.getUncompressedLength(compressed));
+		assertArrayEquals(data, CompressedImages.decompress(compressed));
+		assertArrayEquals(data, CompressedImages.uncompressed(compressed).toByteArray());
+	}
+
+	@Test
+	public void blocksAreReadAhead() throws IOException {
+
+		final byte[] data = createData(1000);
+		final PrefetchingBlockReader reader = new PrefetchingBlockReader(executorService,
+				CompressedImages.openStream(FirmwareImage.wrap(gzip(data))), 128, 2
+		);
+
+		try {
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			int blocks = 0;
+			for (byte[] block = reader.nextBlock(); block != null; block = reader.nextBlock()) {
+				assertEquals(blocks < 7 ? 128 : 1000 - 7 * 128, block.length);
+				outputStream.write(block);
+				blocks++;
+			}
+
+			assertEquals(8, blocks);
+			assertArrayEquals(data, outputStream.toByteArray());
+			assertNull(reader.nextBlock());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void readErrorsArePassedToTheReader() throws IOException {
+
+		final byte[] compressed = gzip(createData(1000));
+		final byte[] truncated = new byte[compressed.length / 2];
+		System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+
+		final PrefetchingBlockReader reader = new PrefetchingBlockReader(executorService,
+				CompressedImages.openStream(FirmwareImage.wrap(truncated)), 128, 2
+		);
+		try {
+			while (reader.nextBlock() != null) {
+				// drain
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static byte[] createData(final int length) {
+		final byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		for (int i = 0; i < length; i += 4) {
+			data[i] = 0;
+		}
+		return data;
+	}
+
+	private static byte[] gzip(final byte[] data) throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+		gzipOutputStream.write(data);
+		gzipOutputStream.close();
+		return outputStream.toByteArray();
+	}
+}
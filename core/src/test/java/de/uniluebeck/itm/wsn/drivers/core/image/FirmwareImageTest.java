@@ -0,0 +1,107 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import com.google.common.base.Function;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FirmwareImageTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void patchesDoNotModifyTheSharedContent() {
+
+		final byte[] data = new byte[]{0, 1, 2, 3, 4, 5, 6, 7};
+		final FirmwareImage image = FirmwareImage.wrap(data);
+		final FirmwareImage patched = image.withPatch(2, new byte[]{9, 9}).withPatch(3, new byte[]{8, 8});
+
+		assertArrayEquals(new byte[]{0, 1, 9, 8, 8, 5, 6, 7}, patched.toByteArray());
+		assertArrayEquals(new byte[]{1, 9, 8}, patched.getBytes(1, 3));
+		assertEquals(8, patched.getByte(4));
+		assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7}, data);
+		assertArrayEquals(data, image.toByteArray());
+
+		assertTrue(patched.isPatched());
+		assertFalse(patched.getBase().isPatched());
+		assertEquals(image.getContentHash(), patched.getContentHash());
+	}
+
+	@Test
+	public void parsedResultsAreSharedWithPatchedCopies() {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final Function<FirmwareImage, Integer> parser = new Function<FirmwareImage, Integer>() {
+			@Override
+			public Integer apply(final FirmwareImage image) {
+				calls.incrementAndGet();
+				return (int) image.getByte(0);
+			}
+		};
+
+		final byte[] data = new byte[]{42, 1, 2, 3};
+		final FirmwareImage first = FirmwareImage.of(data);
+		final FirmwareImage patched = first.withPatch(0, new byte[]{7});
+		final FirmwareImage second = FirmwareImage.of(data);
+
+		assertEquals(Integer.valueOf(42), first.getParsed("test.first", parser));
+		assertEquals(Integer.valueOf(42), patched.getParsed("test.first", parser));
+		assertEquals(1, calls.get());
+
+		// separately loaded images are parsed on their own instead of hashing the content
+		assertEquals(Integer.valueOf(42), second.getParsed("test.first", parser));
+		assertEquals(2, calls.get());
+		assertTrue(first.toString().endsWith("hash=?}"));
+
+		assertTrue(first.hasSameContent(patched));
+		assertTrue(first.hasSameContent(second));
+		assertFalse(first.hasSameContent(FirmwareImage.of(new byte[]{43, 1, 2, 3})));
+
+		assertSame(first, first.getBase());
+	}
+
+	@Test
+	public void mappedAndBufferImagesHaveTheSameContent() throws IOException {
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+
+		final File file = temporaryFolder.newFile("image.bin");
+		Files.write(data, file);
+
+		final FirmwareImage mapped = FirmwareImage.map(file);
+		assertEquals(file, mapped.getFile());
+		assertArrayEquals(data, mapped.toByteArray());
+		assertEquals(FirmwareImage.wrap(data).getContentHash(), mapped.getContentHash());
+
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(100);
+		final FirmwareImage sliced = FirmwareImage.wrap(buffer);
+		assertEquals(data.length - 100, sliced.getLength());
+		assertEquals(data[100], sliced.getByte(0));
+		assertEquals(100, buffer.position());
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		mapped.withPatch(10000, new byte[]{1, 2}).writeTo(outputStream);
+		final byte[] written = outputStream.toByteArray();
+		assertEquals(data.length, written.length);
+		assertEquals(2, written[10001]);
+		assertEquals(data[10002], written[10002]);
+	}
+}
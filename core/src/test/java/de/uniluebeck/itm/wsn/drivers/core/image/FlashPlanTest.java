@@ -0,0 +1,58 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlashPlanTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void planSurvivesRoundTripThroughFile() throws IOException {
+
+		final FlashPlan plan = FlashPlan.builder(ChipType.LPC2136)
+				.attribute("crc", 0xBEEF)
+				.block(0x3000, new byte[]{1, 2, 3})
+				.block(0x4000, new byte[]{9, 8, 7, 6, 5}, 1, 3)
+				.build();
+
+		final File file = temporaryFolder.newFile("image.plan");
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			plan.writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
+
+		final FlashPlan mapped = FlashPlan.map(file);
+		assertEquals(ChipType.LPC2136, mapped.getPlatform());
+		assertEquals(Long.valueOf(0xBEEF), mapped.getAttribute("crc"));
+		assertEquals(2, mapped.getBlocks().size());
+		assertEquals(0x4000, mapped.getBlocks().get(1).getAddress());
+		assertArrayEquals(new byte[]{8, 7, 6}, mapped.getBlockData(mapped.getBlocks().get(1)));
+		assertEquals(6, mapped.getLength());
+		assertTrue(mapped.verify());
+	}
+
+	@Test
+	public void rawImagesAreNotPlans() {
+		assertFalse(FlashPlan.isFlashPlan(FirmwareImage.wrap(new byte[]{0, 0, (byte) 0xE0, (byte) 0xE0, 0, 0, 0, 0,
+				0, 0, 0, 0}
+		)
+		)
+		);
+	}
+}
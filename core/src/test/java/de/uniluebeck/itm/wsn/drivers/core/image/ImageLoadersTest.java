@@ -0,0 +1,110 @@
+package de.uniluebeck.itm.wsn.drivers.core.image;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImageLoadersTest {
+
+	private static final String INTEL_HEX = ""
+			+ ":020000040001F9\n"
+			+ ":0400000001020304F2\r\n"
+			+ ":02000400 0506 EF\n"
+			+ ":020000021000EC\n"
+			+ ":01000000AA55\n"
+			+ ":00000001FF\n";
+
+	private static final String S_RECORD = ""
+			+ "S00600004844521B\n"
+			+ "S10500000102F7\n"
+			+ "S10500020304F1\n"
+			+ "S3060001000011E7\n"
+			+ "S9030000FC\n";
+
+	@Test
+	public void loadsIntelHexWithExtendedAddresses() throws IOException {
+
+		final List<ImageSegment> segments = load(INTEL_HEX);
+
+		assertEquals(2, segments.size());
+		assertEquals(0x10000, segments.get(0).getAddress());
+		assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, segments.get(0).getData());
+		assertEquals(0x10000, segments.get(1).getAddress());
+		assertArrayEquals(new byte[]{(byte) 0xAA}, segments.get(1).getData());
+	}
+
+	@Test
+	public void loadsSRecords() throws IOException {
+
+		final List<ImageSegment> segments = load(S_RECORD);
+
+		assertEquals(2, segments.size());
+		assertEquals(0, segments.get(0).getAddress());
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, segments.get(0).getData());
+		assertEquals(0x10000, segments.get(1).getAddress());
+		assertArrayEquals(new byte[]{0x11}, segments.get(1).getData());
+	}
+
+	@Test
+	public void loadsUnknownFormatsAsRawBinary() throws IOException {
+
+		final byte[] data = new byte[]{0, (byte) 0xE0, (byte) 0xE0, 0x3A};
+		final List<ImageSegment> segments = ImageLoaders.load(new ByteArrayInputStream(data));
+
+		assertEquals(1, segments.size());
+		assertEquals(0, segments.get(0).getAddress());
+		assertArrayEquals(data, segments.get(0).getData());
+	}
+
+	@Test
+	public void loadsBinariesThatStartLikeRecordsAsRawBinary() throws IOException {
+		assertLoadedAsRawBinary(":0400000001020304F3\n");
+		assertLoadedAsRawBinary(":04000000\u0001\u0002\n");
+		assertLoadedAsRawBinary("S10500000102F8\n");
+		assertLoadedAsRawBinary("S1\u00e0\u00e0\u0000");
+	}
+
+	@Test
+	public void detectsRecordsLongerThanTypicalHeaders() throws IOException {
+
+		final StringBuilder record = new StringBuilder(":20000000");
+		int checksum = 0x20;
+		for (int i = 0; i < 32; i++) {
+			record.append(String.format("%02X", i));
+			checksum += i;
+		}
+		record.append(String.format("%02X", -checksum & 0xFF)).append("\n:00000001FF\n");
+
+		final List<ImageSegment> segments = load(record.toString());
+
+		assertEquals(1, segments.size());
+		assertEquals(32, segments.get(0).getData().length);
+	}
+
+	@Test
+	public void rejectsInvalidChecksums() {
+		try {
+			load(":0100000000FF\n:0400000001020304F3\n");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("line 2"));
+			return;
+		}
+		throw new AssertionError("Invalid checksum not detected");
+	}
+
+	private static void assertLoadedAsRawBinary(final String image) throws IOException {
+		final List<ImageSegment> segments = load(image);
+		assertEquals(1, segments.size());
+		assertArrayEquals(image.getBytes("ISO-8859-1"), segments.get(0).getData());
+	}
+
+	private static List<ImageSegment> load(final String image) throws IOException {
+		return ImageLoaders.load(new ByteArrayInputStream(image.getBytes("ISO-8859-1")));
+	}
+}
@@ -0,0 +1,280 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.google.inject.matcher.Matchers;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultOperationPlanOperationTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private static final List<String> events = Collections.synchronizedList(Lists.<String>newArrayList());
+
+	private ExecutorService executorService;
+
+	private PlanOperationFactory planOperationFactory;
+
+	interface PlanOperationFactory {
+
+		OperationPlanOperation create(OperationPlan plan, long timeoutMillis,
+									  @Nullable OperationListener<List<Object>> listener);
+	}
+
+	/**
+	 * Records the programming mode sessions. Like the serial port interceptor, calls within a running session do not
+	 * start a new one.
+	 */
+	private static class SessionRecorder implements MethodInterceptor {
+
+		private boolean inSession;
+
+		@Override
+		public Object invoke(final MethodInvocation invocation) throws Throwable {
+			if (inSession) {
+				return invocation.proceed();
+			}
+			events.add("enter");
+			inSession = true;
+			try {
+				return invocation.proceed();
+			} finally {
+				inSession = false;
+				events.add("leave");
+			}
+		}
+	}
+
+	static class RecordingReadMacAddressOperation extends TimeLimitedOperation<MacAddress>
+			implements ReadMacAddressOperation {
+
+		@Inject
+		RecordingReadMacAddressOperation(final TimeLimiter timeLimiter) {
+			super(timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		@SerialPortProgrammingMode
+		protected MacAddress callInternal() throws Exception {
+			events.add("readMac");
+			return new MacAddress(1);
+		}
+	}
+
+	static class RecordingResetOperation extends TimeLimitedOperation<Void> implements ResetOperation {
+
+		@Inject
+		RecordingResetOperation(final TimeLimiter timeLimiter) {
+			super(timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		@SerialPortProgrammingMode
+		protected Void callInternal() throws Exception {
+			events.add("reset");
+			return null;
+		}
+	}
+
+	static class FailingEraseFlashOperation extends TimeLimitedOperation<Void> implements EraseFlashOperation {
+
+		@Inject
+		FailingEraseFlashOperation(final TimeLimiter timeLimiter) {
+			super(timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		@SerialPortProgrammingMode
+		protected Void callInternal() throws Exception {
+			events.add("eraseFlash");
+			throw new IOException("Erasing failed");
+		}
+	}
+
+	static class RecordingOperationFactory implements OperationFactory {
+
+		@Inject
+		private Provider<RecordingReadMacAddressOperation> readMacAddressOperationProvider;
+
+		@Inject
+		private Provider<RecordingResetOperation> resetOperationProvider;
+
+		@Inject
+		private Provider<FailingEraseFlashOperation> eraseFlashOperationProvider;
+
+		@Override
+		public EraseFlashOperation createEraseFlashOperation(final long timeoutMillis,
+															 @Nullable final OperationListener<Void> listener) {
+			return eraseFlashOperationProvider.get();
+		}
+
+		@Override
+		public ReadMacAddressOperation createReadMacAddressOperation(final long timeoutMillis,
+																	 @Nullable final OperationListener<MacAddress> listener) {
+			return readMacAddressOperationProvider.get();
+		}
+
+		@Override
+		public ResetOperation createResetOperation(final long timeoutMillis,
+												   @Nullable final OperationListener<Void> listener) {
+			return resetOperationProvider.get();
+		}
+
+		@Override
+		public GetChipTypeOperation createGetChipTypeOperation(final long timeoutMillis,
+															   @Nullable final OperationListener<ChipType> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ProgramOperation createProgramOperation(final FirmwareImage image, final long timeoutMillis,
+													   @Nullable final OperationListener<Void> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ReadFlashOperation createReadFlashOperation(final int address, final int length,
+														   final long timeoutMillis,
+														   @Nullable final OperationListener<byte[]> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public WriteFlashOperation createWriteFlashOperation(final int address, final byte[] data, final int length,
+															 final long timeoutMillis,
+															 @Nullable final OperationListener<Void> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public WriteMacAddressOperation createWriteMacAddressOperation(final MacAddress macAddress,
+																	   final long timeoutMillis,
+																	   @Nullable final OperationListener<Void> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public IsNodeAliveOperation createIsNodeAliveOperation(final long timeoutMillis,
+															   final OperationListener<Boolean> listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OperationPlanOperation createOperationPlanOperation(final OperationPlan plan, final long timeoutMillis,
+																   @Nullable final OperationListener<List<Object>> listener) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		events.clear();
+		executorService = Executors.newCachedThreadPool();
+		planOperationFactory = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(TimeLimiter.class).toInstance(new SimpleTimeLimiter(executorService));
+				bind(OperationFactory.class).to(RecordingOperationFactory.class);
+				bindInterceptor(Matchers.any(), Matchers.annotatedWith(SerialPortProgrammingMode.class),
+						new SessionRecorder()
+				);
+				install(new FactoryModuleBuilder()
+						.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
+						.build(PlanOperationFactory.class)
+				);
+			}
+		}
+		).getInstance(PlanOperationFactory.class);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void executesAllStepsInOneSession() throws Exception {
+
+		final OperationPlan plan = OperationPlan.builder().readMac(1000).reset(2000).readMac(1000).build();
+		final List<Float> progress = Lists.newArrayList();
+
+		final List<Object> results = planOperationFactory.create(plan, TIMEOUT, new OperationAdapter<List<Object>>() {
+			@Override
+			public void onProgressChange(final float fraction) {
+				progress.add(fraction);
+			}
+		}
+		).call();
+
+		assertEquals(Lists.newArrayList("enter", "readMac", "reset", "readMac", "leave"), events);
+		assertEquals(Lists.<Object>newArrayList(new MacAddress(1), null, new MacAddress(1)), results);
+
+		for (int i = 1; i < progress.size(); i++) {
+			assertTrue("Progress decreased: " + progress, progress.get(i) >= progress.get(i - 1));
+		}
+		assertEquals(1f, progress.get(progress.size() - 1), 0f);
+	}
+
+	@Test
+	public void stepsAreExecutedInTheThreadOfThePlan() throws Exception {
+
+		final OperationPlan plan = OperationPlan.builder().readMac(1000).reset(1000).readMac(1000).build();
+
+		planOperationFactory.create(plan, TIMEOUT, null).call();
+
+		assertEquals(1, ((ThreadPoolExecutor) executorService).getLargestPoolSize());
+	}
+
+	@Test
+	public void failingStepEndsTheSession() throws Exception {
+
+		final OperationPlan plan = OperationPlan.builder().readMac(1000).eraseFlash(1000).reset(1000).build();
+		final OperationPlanOperation operation = planOperationFactory.create(plan, TIMEOUT, null);
+
+		try {
+			operation.call();
+			fail("Failing step has not been reported");
+		} catch (IOException expected) {
+			// expected
+		}
+
+		assertEquals(Lists.newArrayList("enter", "readMac", "eraseFlash", "leave"), events);
+		assertEquals(State.FAILED, operation.getState());
+	}
+
+	@Test
+	public void totalTimeoutIsTheSumOfTheSteps() {
+		assertEquals(4000, OperationPlan.builder().readMac(1000).reset(3000).build().getTotalTimeoutMillis());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyPlansAreRejected() {
+		OperationPlan.builder().build();
+	}
+}
@@ -0,0 +1,384 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationSchedulerTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private final List<String> executionOrder = Collections.synchronizedList(Lists.<String>newArrayList());
+
+	private ExecutorService executorService;
+
+	private TimeLimiter timeLimiter;
+
+	private OperationScheduler scheduler;
+
+	private class BlockingProgramOperation extends TimeLimitedOperation<Void> implements ProgramOperation {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private final int blocks;
+
+		private final boolean erasingWholeFlash;
+
+		private volatile Thread thread;
+
+		private BlockingProgramOperation(final int blocks) {
+			this(blocks, true);
+		}
+
+		private BlockingProgramOperation(final int blocks, final boolean erasingWholeFlash) {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+			this.blocks = blocks;
+			this.erasingWholeFlash = erasingWholeFlash;
+		}
+
+		@Override
+		public boolean isErasingWholeFlash() {
+			return erasingWholeFlash;
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			thread = Thread.currentThread();
+			started.countDown();
+			release.await();
+			for (int i = 0; i < blocks; i++) {
+				executionOrder.add("program-block");
+				preemptionPoint();
+			}
+			executionOrder.add("program");
+			return null;
+		}
+	}
+
+	private class RecordingResetOperation extends TimeLimitedOperation<Void> implements ResetOperation {
+
+		private RecordingResetOperation() {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			executionOrder.add("reset");
+			return null;
+		}
+	}
+
+	private class RecordingReadMacAddressOperation extends TimeLimitedOperation<MacAddress>
+			implements ReadMacAddressOperation {
+
+		private RecordingReadMacAddressOperation() {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		protected MacAddress callInternal() throws Exception {
+			executionOrder.add("readMac");
+			return new MacAddress(1);
+		}
+	}
+
+	private class RecordingIsNodeAliveOperation extends TimeLimitedOperation<Boolean> implements IsNodeAliveOperation {
+
+		private volatile Thread thread;
+
+		private RecordingIsNodeAliveOperation() {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		protected Boolean callInternal() throws Exception {
+			thread = Thread.currentThread();
+			executionOrder.add("isNodeAlive");
+			return true;
+		}
+	}
+
+	private class RecordingReadFlashOperation extends TimeLimitedOperation<byte[]> implements ReadFlashOperation {
+
+		private RecordingReadFlashOperation() {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		protected byte[] callInternal() throws Exception {
+			executionOrder.add("readFlash");
+			return new byte[0];
+		}
+	}
+
+	private class RecordingEraseFlashOperation extends TimeLimitedOperation<Void> implements EraseFlashOperation {
+
+		private RecordingEraseFlashOperation() {
+			super(OperationSchedulerTest.this.timeLimiter, TIMEOUT, null);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			executionOrder.add("erase");
+			return null;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		executorService = Executors.newCachedThreadPool();
+		timeLimiter = new SimpleTimeLimiter(executorService);
+		scheduler = new OperationScheduler();
+		scheduler.start();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdown();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void waitingOperationsAreExecutedByPriority() throws Exception {
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(0);
+		final OperationFuture<Void> programFuture = scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<byte[]> readFlashFuture = scheduler.submit(new RecordingReadFlashOperation());
+		final OperationFuture<Void> resetFuture = scheduler.submit(new RecordingResetOperation());
+		assertEquals(2, scheduler.getQueueDepth());
+
+		program.release.countDown();
+		programFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		resetFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		readFlashFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		assertEquals(Lists.newArrayList("program", "reset", "readFlash"), executionOrder);
+		assertEquals(3, scheduler.getExecutedOperationCount());
+	}
+
+	@Test
+	public void preemptingOperationsRunAtPreemptionPoints() throws Exception {
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(2);
+		final OperationFuture<Void> programFuture = scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<Void> resetFuture = scheduler.submit(new RecordingResetOperation());
+		final OperationFuture<Boolean> isNodeAliveFuture = scheduler.submit(new RecordingIsNodeAliveOperation());
+
+		program.release.countDown();
+		programFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		resetFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertTrue(isNodeAliveFuture.get(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		// reset is not allowed to preempt and blocks the isNodeAlive operation that was enqueued after it
+		assertEquals(Lists.newArrayList("program-block", "program-block", "program", "reset", "isNodeAlive"),
+				executionOrder
+		);
+
+		executionOrder.clear();
+
+		final BlockingProgramOperation secondProgram = new BlockingProgramOperation(2);
+		final OperationFuture<Void> secondProgramFuture = scheduler.submit(secondProgram);
+		assertTrue(secondProgram.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final RecordingIsNodeAliveOperation isNodeAlive = new RecordingIsNodeAliveOperation();
+		scheduler.submit(isNodeAlive);
+
+		secondProgram.release.countDown();
+		secondProgramFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		assertEquals(Lists.newArrayList("program-block", "isNodeAlive", "program-block", "program"), executionOrder);
+		assertEquals(1, scheduler.getPreemptionCount());
+		// executed in the thread of the preempted operation instead of an additional one of the time limiter
+		assertEquals(secondProgram.thread, isNodeAlive.thread);
+	}
+
+	@Test
+	public void flashReadingOperationsDoNotPreempt() throws Exception {
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(2);
+		final OperationFuture<Void> programFuture = scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<MacAddress> readMacFuture = scheduler.submit(new RecordingReadMacAddressOperation());
+		final OperationFuture<byte[]> readFlashFuture = scheduler.submit(new RecordingReadFlashOperation());
+
+		program.release.countDown();
+		programFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		readMacFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		readFlashFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		assertEquals(Lists.newArrayList("program-block", "program-block", "program", "readMac", "readFlash"),
+				executionOrder
+		);
+		assertEquals(0, scheduler.getPreemptionCount());
+	}
+
+	@Test
+	public void optimizerMergesIdenticalReadOperations() throws Exception {
+
+		final OperationQueueOptimizer optimizer = new OperationQueueOptimizer();
+		scheduler.setOptimizer(optimizer);
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(0);
+		scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final RecordingReadMacAddressOperation mergedOperation = new RecordingReadMacAddressOperation();
+		final OperationFuture<MacAddress> first = scheduler.submit(new RecordingReadMacAddressOperation());
+		final OperationFuture<MacAddress> second = scheduler.submit(mergedOperation);
+		assertEquals(1, scheduler.getQueueDepth());
+
+		program.release.countDown();
+		assertEquals(new MacAddress(1), first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(new MacAddress(1), second.get(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		assertEquals(Lists.newArrayList("program", "readMac"), executionOrder);
+		assertEquals(State.DONE, mergedOperation.getState());
+		assertEquals(1, optimizer.getMergedOperationCount());
+	}
+
+	@Test
+	public void cancelingMergedOperationKeepsWaitingOperation() throws Exception {
+
+		scheduler.setOptimizer(new OperationQueueOptimizer());
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(0);
+		scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<MacAddress> first = scheduler.submit(new RecordingReadMacAddressOperation());
+		final RecordingReadMacAddressOperation mergedOperation = new RecordingReadMacAddressOperation();
+		final OperationFuture<MacAddress> second = scheduler.submit(mergedOperation);
+
+		mergedOperation.cancel();
+		assertTrue(second.isCancelled());
+		assertEquals(State.CANCELED, mergedOperation.getState());
+
+		program.release.countDown();
+		assertEquals(new MacAddress(1), first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(Lists.newArrayList("program", "readMac"), executionOrder);
+		assertEquals(State.CANCELED, mergedOperation.getState());
+	}
+
+	@Test
+	public void cancelingWaitingOperationExecutesMergedOperation() throws Exception {
+
+		scheduler.setOptimizer(new OperationQueueOptimizer());
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(0);
+		scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final RecordingReadMacAddressOperation leader = new RecordingReadMacAddressOperation();
+		final OperationFuture<MacAddress> first = scheduler.submit(leader);
+		final OperationFuture<MacAddress> second = scheduler.submit(new RecordingReadMacAddressOperation());
+
+		// cancel() blocks until the scheduler reaches the canceled operation
+		executorService.submit(new Runnable() {
+			@Override
+			public void run() {
+				leader.cancel();
+			}
+		}
+		);
+		while (!leader.isCanceled()) {
+			Thread.sleep(1);
+		}
+
+		program.release.countDown();
+		assertEquals(new MacAddress(1), second.get(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertTrue(first.isCancelled());
+		assertEquals(Lists.newArrayList("program", "readMac"), executionOrder);
+	}
+
+	@Test
+	public void submitAfterShutdownIsNotMergedIntoDroppedOperation() throws Exception {
+
+		scheduler.setOptimizer(new OperationQueueOptimizer());
+
+		final BlockingProgramOperation program = new BlockingProgramOperation(0);
+		scheduler.submit(program);
+		assertTrue(program.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final RecordingReadMacAddressOperation droppedOperation = new RecordingReadMacAddressOperation();
+		final OperationFuture<MacAddress> first = scheduler.submit(droppedOperation);
+		final OperationFuture<MacAddress> second = scheduler.submit(new RecordingReadMacAddressOperation());
+
+		scheduler.shutdown();
+		assertTrue(first.isCancelled());
+		assertTrue(second.isCancelled());
+		assertEquals(State.CANCELED, droppedOperation.getState());
+
+		scheduler.start();
+		final OperationFuture<MacAddress> third = scheduler.submit(new RecordingReadMacAddressOperation());
+		assertEquals(new MacAddress(1), third.get(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(Lists.newArrayList("readMac"), executionOrder);
+	}
+
+	@Test
+	public void optimizerDropsEraseFollowedByProgram() throws Exception {
+
+		final OperationQueueOptimizer optimizer = new OperationQueueOptimizer();
+		scheduler.setOptimizer(optimizer);
+
+		final BlockingProgramOperation firstProgram = new BlockingProgramOperation(0);
+		scheduler.submit(firstProgram);
+		assertTrue(firstProgram.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<Void> eraseFuture = scheduler.submit(new RecordingEraseFlashOperation());
+		final BlockingProgramOperation secondProgram = new BlockingProgramOperation(0);
+		secondProgram.release.countDown();
+		final OperationFuture<Void> secondProgramFuture = scheduler.submit(secondProgram);
+
+		firstProgram.release.countDown();
+		secondProgramFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		eraseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		assertEquals(Lists.newArrayList("program", "program"), executionOrder);
+		assertEquals(1, optimizer.getElidedEraseCount());
+		assertEquals(1, optimizer.getSavedOperationCount());
+	}
+
+	@Test
+	public void optimizerKeepsEraseFollowedByPartiallyErasingProgram() throws Exception {
+
+		final OperationQueueOptimizer optimizer = new OperationQueueOptimizer();
+		scheduler.setOptimizer(optimizer);
+
+		final BlockingProgramOperation firstProgram = new BlockingProgramOperation(0);
+		scheduler.submit(firstProgram);
+		assertTrue(firstProgram.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		final OperationFuture<Void> eraseFuture = scheduler.submit(new RecordingEraseFlashOperation());
+		final BlockingProgramOperation secondProgram = new BlockingProgramOperation(0, false);
+		secondProgram.release.countDown();
+		final OperationFuture<Void> secondProgramFuture = scheduler.submit(secondProgram);
+
+		firstProgram.release.countDown();
+		eraseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		secondProgramFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		assertEquals(Lists.newArrayList("program", "erase", "program"), executionOrder);
+		assertEquals(0, optimizer.getElidedEraseCount());
+	}
+}
@@ -0,0 +1,75 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceEventWriterTest {
+
+	private static final long ORIGIN_NANOS = 5000000000L;
+
+	@Test
+	public void writesProcessesAndCompleteEvents() throws Exception {
+
+		final OperationTrace first = new OperationTrace();
+		final OperationSpan program = first.addSpan("program", OperationSpan.CATEGORY_OPERATION, ORIGIN_NANOS,
+				ORIGIN_NANOS + 2500123
+		);
+		program.addBytes(4096);
+		program.addRetry();
+
+		final OperationTrace second = new OperationTrace();
+		second.addSpan("reset", OperationSpan.CATEGORY_PHASE, ORIGIN_NANOS + 1000000, ORIGIN_NANOS + 1000999);
+
+		final String thread = Thread.currentThread().getName();
+		assertEquals("{\"traceEvents\":["
+				+ "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"/dev/ttyUSB0\"}},\n"
+				+ "{\"name\":\"program\",\"cat\":\"operation\",\"ph\":\"X\",\"ts\":0.000,\"dur\":2500.123,\"pid\":1,"
+				+ "\"tid\":1,\"args\":{\"thread\":\"" + thread + "\",\"bytes\":4096,\"retries\":1}},\n"
+				+ "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":2,\"tid\":1,\"args\":{\"name\":\"/dev/ttyUSB1\"}},\n"
+				+ "{\"name\":\"reset\",\"cat\":\"phase\",\"ph\":\"X\",\"ts\":1000.000,\"dur\":0.999,\"pid\":2,"
+				+ "\"tid\":1,\"args\":{\"thread\":\"" + thread + "\",\"bytes\":0,\"retries\":0}}"
+				+ "],\"displayTimeUnit\":\"ms\"}",
+				write(ImmutableMap.of("/dev/ttyUSB0", first, "/dev/ttyUSB1", second))
+		);
+	}
+
+	@Test
+	public void escapesNames() throws Exception {
+
+		final OperationTrace trace = new OperationTrace();
+		trace.addSpan("a\"b\\c\nd", OperationSpan.CATEGORY_PHASE, ORIGIN_NANOS, ORIGIN_NANOS);
+
+		final String json = write(ImmutableMap.of("device", trace));
+		assertTrue(json, json.contains("{\"name\":\"a\\\"b\\\\c\\u000ad\","));
+	}
+
+	@Test
+	public void marksUnfinishedSpans() throws Exception {
+
+		final OperationTrace trace = new OperationTrace();
+		trace.startSpan("readFlash", OperationSpan.CATEGORY_OPERATION);
+
+		final String json = write(ImmutableMap.of("device", trace));
+		assertTrue(json, json.contains(",\"retries\":0,\"unfinished\":true}}"));
+	}
+
+	@Test
+	public void writesEmptyTraces() throws Exception {
+		assertEquals("{\"traceEvents\":["
+				+ "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"device\"}}"
+				+ "],\"displayTimeUnit\":\"ms\"}",
+				write(ImmutableMap.of("device", new OperationTrace()))
+		);
+	}
+
+	private static String write(final ImmutableMap<String, OperationTrace> traces) throws Exception {
+		final StringWriter writer = new StringWriter();
+		TraceEventWriter.write(traces, writer);
+		return writer.toString();
+	}
+}
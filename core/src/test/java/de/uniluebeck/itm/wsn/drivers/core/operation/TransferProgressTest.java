@@ -0,0 +1,104 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransferProgressTest {
+
+	private static final long TOTAL = 10000;
+
+	private final List<TransferProgress> reported = Lists.newArrayList();
+
+	private TransferringOperation operation;
+
+	private static class TransferringOperation extends TimeLimitedOperation<Void> {
+
+		TransferringOperation(final OperationListener<Void> listener) {
+			super(new SimpleTimeLimiter(), 1000, listener);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			return null;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		operation = new TransferringOperation(new OperationAdapter<Void>() {
+			@Override
+			public void onTransferProgress(final TransferProgress progress) {
+				reported.add(progress);
+			}
+		}
+		);
+	}
+
+	@Test
+	public void etaIsUnknownUntilTheRateIsMeasured() {
+
+		final TransferProgress progress = transfer(0);
+
+		assertEquals(0, progress.getBytesDone());
+		assertEquals(TOTAL, progress.getBytesTotal());
+		assertEquals(0d, progress.getBytesPerSecond(), 0d);
+		assertEquals(TransferProgress.UNKNOWN_ETA, progress.getEtaMillis());
+	}
+
+	@Test
+	public void etaIsDerivedFromTheMeasuredRate() throws Exception {
+
+		transfer(0);
+		Thread.sleep(20);
+		final TransferProgress progress = transfer(1000);
+
+		assertTrue(progress.toString(), progress.getBytesPerSecond() > 0);
+		assertEquals((long) ((TOTAL - 1000) * 1000 / progress.getBytesPerSecond()), progress.getEtaMillis());
+	}
+
+	@Test
+	public void rateIsSmoothed() throws Exception {
+
+		transfer(0);
+		Thread.sleep(20);
+		final double measured = transfer(1000).getBytesPerSecond();
+
+		// nothing has been transferred since, so only the weighted previous rate remains
+		Thread.sleep(20);
+		final double smoothed = transfer(1000).getBytesPerSecond();
+
+		assertEquals(0.7 * measured, smoothed, measured * 1e-9);
+	}
+
+	@Test
+	public void etaIsZeroWhenDone() throws Exception {
+
+		transfer(0);
+		Thread.sleep(20);
+		assertEquals(0, transfer(TOTAL).getEtaMillis());
+	}
+
+	@Test
+	public void rateIsResetWhenTransferRestarts() throws Exception {
+
+		transfer(0);
+		Thread.sleep(20);
+		transfer(5000);
+
+		final TransferProgress restarted = transfer(0);
+		assertEquals(0d, restarted.getBytesPerSecond(), 0d);
+		assertEquals(TransferProgress.UNKNOWN_ETA, restarted.getEtaMillis());
+	}
+
+	private TransferProgress transfer(final long bytesDone) {
+		operation.transferProgress(bytesDone, TOTAL);
+		return reported.get(reported.size() - 1);
+	}
+}
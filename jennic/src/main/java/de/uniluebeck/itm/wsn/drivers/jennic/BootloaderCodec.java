@@ -0,0 +1,226 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static de.uniluebeck.itm.util.StringUtils.toHexString;
+
+/**
+ * Encodes boot loader requests and decodes replies using two buffers that are reused for every message of a
+ * connection. A frame consists of a length byte (the number of following bytes), the message type, the payload and
+ * an XOR checksum over all preceding bytes.
+ * <p/>
+ * Requests are built with {@link #begin(int)} and the <code>put</code> methods and written with
+ * {@link #send(OutputStream)}. {@link #receive(Connection, int, int)} reads a whole reply with one length read and
+ * one bulk read. The reply stays in the buffer until the next reply is received.
+ * <p/>
+ * Instances are not thread safe.
+ */
+final class BootloaderCodec {
+
+	/**
+	 * Maximum length of a frame including the length byte.
+	 */
+	static final int MAX_FRAME_LENGTH = 256;
+
+	private final byte[] request = new byte[MAX_FRAME_LENGTH];
+
+	private int requestLength;
+
+	private final byte[] reply = new byte[MAX_FRAME_LENGTH];
+
+	private int replyLength;
+
+	/**
+	 * Starts a new request.
+	 *
+	 * @param type
+	 * 		the message type
+	 *
+	 * @return this codec
+	 */
+	BootloaderCodec begin(final int type) {
+		request[1] = (byte) type;
+		requestLength = 2;
+		return this;
+	}
+
+	BootloaderCodec putByte(final int value) {
+		ensureCapacity(1);
+		request[requestLength++] = (byte) value;
+		return this;
+	}
+
+	/**
+	 * Appends a 16 bit value in little endian byte order.
+	 */
+	BootloaderCodec putShort(final int value) {
+		ensureCapacity(2);
+		request[requestLength++] = (byte) value;
+		request[requestLength++] = (byte) (value >> 8);
+		return this;
+	}
+
+	/**
+	 * Appends a 32 bit address in little endian byte order.
+	 */
+	BootloaderCodec putAddress(final int address) {
+		ensureCapacity(4);
+		request[requestLength++] = (byte) address;
+		request[requestLength++] = (byte) (address >> 8);
+		request[requestLength++] = (byte) (address >> 16);
+		request[requestLength++] = (byte) (address >>> 24);
+		return this;
+	}
+
+	BootloaderCodec putBytes(final byte[] data, final int offset, final int length) {
+		ensureCapacity(length);
+		System.arraycopy(data, offset, request, requestLength, length);
+		requestLength += length;
+		return this;
+	}
+
+	/**
+	 * Replaces the current request with a message that consists of the type and the payload.
+	 */
+	BootloaderCodec message(final byte[] message) {
+		requestLength = 1;
+		return putBytes(message, 0, message.length);
+	}
+
+	private void ensureCapacity(final int length) {
+		// one byte is needed for the checksum
+		if (requestLength + length + 1 > MAX_FRAME_LENGTH) {
+			throw new IllegalArgumentException("Boot loader message exceeds " + MAX_FRAME_LENGTH + " bytes");
+		}
+	}
+
+	/**
+	 * Completes the current request with its length and checksum and writes it.
+	 *
+	 * @param outputStream
+	 * 		the stream to write to
+	 *
+	 * @throws IOException
+	 * 		if writing fails
+	 */
+	void send(final OutputStream outputStream) throws IOException {
+		write(outputStream);
+		outputStream.flush();
+	}
+
+	/**
+	 * Like {@link #send(OutputStream)} but without flushing the stream, for requests that are streamed back to back.
+	 */
+	void write(final OutputStream outputStream) throws IOException {
+		request[0] = (byte) requestLength;
+		request[requestLength] = Messages.calculateChecksum(request, 0, requestLength);
+		outputStream.write(request, 0, requestLength + 1);
+	}
+
+	/**
+	 * Returns the current request without length and checksum, for logging.
+	 */
+	String requestToString() {
+		return toHexString(Arrays.copyOfRange(request, 1, requestLength));
+	}
+
+	/**
+	 * Reads a reply and checks its checksum and type.
+	 *
+	 * @param connection
+	 * 		the connection to read from
+	 * @param expectedType
+	 * 		the expected message type
+	 * @param timeoutMillis
+	 * 		the time to wait for each chunk of the reply
+	 *
+	 * @return the length of the reply, i.e. the number of bytes of the message type and the payload
+	 *
+	 * @throws TimeoutException
+	 * 		if the reply does not arrive in time
+	 * @throws InvalidChecksumException
+	 * 		if the checksum of the reply is wrong
+	 * @throws UnexpectedResponseException
+	 * 		if the reply has another type
+	 * @throws IOException
+	 * 		if reading fails
+	 */
+	int receive(final Connection connection, final int expectedType, final int timeoutMillis)
+			throws TimeoutException, InvalidChecksumException, UnexpectedResponseException, IOException {
+
+		final InputStream inputStream = connection.getInputStream();
+
+		replyLength = 0;
+		connection.waitDataAvailable(timeoutMillis);
+		final int frameLength = inputStream.read();
+		if (frameLength < 0) {
+			throw new IOException("End of stream while waiting for a boot loader reply");
+		}
+		if (frameLength < 2) {
+			throw new UnexpectedResponseException(expectedType, -1);
+		}
+
+		// type, payload and checksum
+		int offset = 0;
+		while (offset < frameLength) {
+			if (inputStream.available() <= 0) {
+				connection.waitDataAvailable(timeoutMillis);
+			}
+			final int read = inputStream.read(reply, offset, frameLength - offset);
+			if (read < 0) {
+				throw new IOException("End of stream while reading a boot loader reply");
+			}
+			offset += read;
+		}
+
+		final byte checksum = (byte) (Messages.calculateChecksum(reply, 0, frameLength - 1) ^ frameLength);
+		if (checksum != reply[frameLength - 1]) {
+			throw new InvalidChecksumException("Bootloader reply checksum mismatch (received "
+					+ toHexString(reply[frameLength - 1]) + ", calculated " + toHexString(checksum) + ")"
+			);
+		}
+
+		replyLength = frameLength - 1;
+		if ((reply[0] & 0xFF) != expectedType) {
+			throw new UnexpectedResponseException(expectedType, (int) reply[0]);
+		}
+		return replyLength;
+	}
+
+	int getReplyLength() {
+		return replyLength;
+	}
+
+	/**
+	 * Returns a byte of the last reply, index <code>0</code> is the message type.
+	 */
+	byte getReplyByte(final int index) {
+		return reply[index];
+	}
+
+	/**
+	 * Copies the payload of the last reply, starting at the given index of the reply.
+	 */
+	byte[] copyReply(final int from) {
+		return Arrays.copyOfRange(reply, from, replyLength);
+	}
+
+	/**
+	 * Copies a part of the last reply into the given buffer.
+	 */
+	void copyReply(final int from, final byte[] buffer, final int offset, final int length) {
+		System.arraycopy(reply, from, buffer, offset, length);
+	}
+
+	String replyToString() {
+		return toHexString(Arrays.copyOf(reply, replyLength));
+	}
+}
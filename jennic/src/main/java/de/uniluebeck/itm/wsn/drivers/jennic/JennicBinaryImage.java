@@ -23,32 +23,160 @@
 
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
+import com.google.common.base.Function;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.exception.ProgramChipMismatchException;
+import de.uniluebeck.itm.wsn.drivers.core.image.CompressedImages;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.image.PrefetchingBlockReader;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkState;
+
 /**
+ * Splits a {@link FirmwareImage} into the blocks that are written to the flash of a Jennic device. The image itself
+ * is never modified, the flash header of the device is added as a patch.
+ * <p/>
+ * Gzip compressed images are decompressed block by block while they are written (see
+ * {@link #decompressing(FirmwareImage, ExecutorService)}). Such images have to be closed after use.
+ *
  * @author Malte Legenhausen
  * @author dp
  */
-public class JennicBinaryImage {
+public class JennicBinaryImage implements Closeable {
 
 	private static final Logger log = LoggerFactory.getLogger(JennicBinaryImage.class);
 
-	private static final int BLOCK_SIZE = 128;
+	static final int BLOCK_SIZE = 128;
+
+	private static final int PREFETCH_BLOCKS = 64;
+
+	/**
+	 * Chip types of Jennic devices, flash plans of other platforms are rejected.
+	 */
+	private static final Set<ChipType> PLATFORMS = EnumSet.of(
+			ChipType.JN5121, ChipType.JN513X, ChipType.JN513XR1, ChipType.JN5148
+	);
+
+	/**
+	 * Number of bytes at the start of an image that are needed to detect its chip type.
+	 */
+	private static final int CHIP_TYPE_DETECTION_LENGTH = 0x24 + 8 + 4 + 32;
+
+	private static final Function<FirmwareImage, ChipType> CHIP_TYPE_PARSER = new Function<FirmwareImage, ChipType>() {
+		@Override
+		public ChipType apply(final FirmwareImage image) {
+			return detectChipType(image.getBytes(0, Math.min(CHIP_TYPE_DETECTION_LENGTH, image.getLength())));
+		}
+	};
 
-	private final byte[] bytes;
+	private FirmwareImage image;
 
 	private final int length;
 
+	private final ChipType plannedChipType;
+
+	/**
+	 * Source of the blocks of a compressed image, <code>null</code> if the blocks are taken from {@link #image}.
+	 */
+	private final PrefetchingBlockReader reader;
+
+	private byte[] firstBlock;
+
+	private int headerAddress = -1;
+
+	private byte[] header;
+
 	private int blockIterator = 0;
 
 	public JennicBinaryImage(byte[] bytes) {
-		this.bytes = bytes;
-		this.length = bytes.length;
+		this(FirmwareImage.wrap(bytes));
+	}
+
+	public JennicBinaryImage(FirmwareImage image) {
+		this.image = image;
+		this.length = image.getLength();
+		this.plannedChipType = null;
+		this.reader = null;
+	}
+
+	private JennicBinaryImage(PrefetchingBlockReader reader, int length) throws IOException {
+		this.image = null;
+		this.length = length;
+		this.plannedChipType = null;
+		this.reader = reader;
+		this.firstBlock = reader.nextBlock();
+		if (firstBlock == null) {
+			throw new IOException("Image is empty");
+		}
+	}
+
+	/**
+	 * Creates an image that decompresses a gzip compressed image while its blocks are written. Only the blocks that
+	 * have been read ahead are held in memory.
+	 *
+	 * @param compressedImage
+	 * 		the gzip compressed image
+	 * @param executorService
+	 * 		the executor the image is decompressed in
+	 *
+	 * @return the image
+	 *
+	 * @throws IOException
+	 * 		if the image can not be decompressed
+	 */
+	public static JennicBinaryImage decompressing(FirmwareImage compressedImage, ExecutorService executorService)
+			throws IOException {
+		final PrefetchingBlockReader reader = new PrefetchingBlockReader(
+				executorService, CompressedImages.openStream(compressedImage), BLOCK_SIZE, PREFETCH_BLOCKS
+		);
+		try {
+			return new JennicBinaryImage(reader, CompressedImages.getUncompressedLength(compressedImage));
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the image from a precompiled plan. The chip type is taken from the plan instead of being detected.
+	 *
+	 * @param plan
+	 * 		a plan created by {@link #toFlashPlan()}
+	 *
+	 * @throws IOException
+	 * 		if the plan has not been created for a Jennic device
+	 */
+	public JennicBinaryImage(FlashPlan plan) throws IOException {
+
+		if (!PLATFORMS.contains(plan.getPlatform())) {
+			throw new IOException("Flash plan has not been created for a Jennic device: " + plan);
+		}
+
+		int nextAddress = 0;
+		for (FlashPlan.Block block : plan.getBlocks()) {
+			if (block.getAddress() != nextAddress || block.getOffset() != nextAddress) {
+				throw new IOException("Flash plan is not a continuous Jennic image");
+			}
+			nextAddress += block.getLength();
+		}
+
+		this.image = plan.getData();
+		this.length = image.getLength();
+		this.plannedChipType = plan.getPlatform();
+		this.reader = null;
 	}
 
 	/**
@@ -76,7 +204,7 @@ public class JennicBinaryImage {
 		return block * BLOCK_SIZE;
 	}
 
-	private byte[] getBlock(int block) {
+	private byte[] getBlock(int block) throws IOException {
 		int maxBlocks = getBlockCount();
 
 		if (block >= maxBlocks) {
@@ -86,13 +214,31 @@ public class JennicBinaryImage {
 
 		int offset = getBlockOffset(block);
 		int length = (getResidue() != 0 && block == maxBlocks - 1) ? getResidue() : BLOCK_SIZE;
-		byte b[] = new byte[length];
 		// log.debug("Returning block #" + block + " (" + length + " bytes at position " + offset);
-		System.arraycopy(bytes, offset, b, 0, length);
-		return b;
+
+		if (reader == null) {
+			return image.getBytes(offset, length);
+		}
+
+		final byte[] data = block == 0 ? firstBlock : reader.nextBlock();
+		if (data == null || data.length != length) {
+			throw new IOException("Decompressed image does not match its length of " + this.length + " bytes");
+		}
+
+		if (header != null && headerAddress < offset + length && headerAddress + header.length > offset) {
+			final int start = Math.max(offset, headerAddress);
+			final int end = Math.min(offset + length, headerAddress + header.length);
+			System.arraycopy(header, start - headerAddress, data, start - offset, end - start);
+		}
+
+		return data;
 	}
 
-	private boolean hasRepeatedPattern(byte b[], int offset, int repeat, byte pattern) {
+	private static boolean hasRepeatedPattern(byte b[], int offset, int repeat, byte pattern) {
+
+		if (offset + repeat > b.length) {
+			return false;
+		}
 
 		for (int i = 0; i < repeat; ++i) {
 			if (b[offset + i] != pattern) {
@@ -104,7 +250,8 @@ public class JennicBinaryImage {
 	}
 
 	/**
-	 * Insert flash header of a jennic device into bin file.
+	 * Insert flash header of a jennic device into bin file. The header is added as a patch, the underlying image
+	 * stays unchanged.
 	 *
 	 * @param b
 	 * 		the bytes
@@ -123,11 +270,62 @@ public class JennicBinaryImage {
 	}
 
 	private void insertAt(int address, int len, byte[] b) {
-		System.arraycopy(b, 0, bytes, address, len);
+		if (reader == null) {
+			image = image.withPatch(address, Arrays.copyOf(b, len));
+		} else {
+			headerAddress = address;
+			header = Arrays.copyOf(b, len);
+		}
+	}
+
+	/**
+	 * Returns the image including the inserted header.
+	 *
+	 * @return the patched image or <code>null</code> if the image is decompressed while it is written
+	 */
+	@Nullable
+	public FirmwareImage getImage() {
+		return image;
 	}
 
+	/**
+	 * Returns the chip type the image has been built for. The result is cached by the content hash of the image.
+	 *
+	 * @return the chip type of the image
+	 */
 	public ChipType getChipType() {
-		if (bytes[0] == (byte) 0xE1) {
+		if (plannedChipType != null) {
+			return plannedChipType;
+		}
+		if (reader != null) {
+			return detectChipType(firstBlock);
+		}
+		return image.getParsed("jennic.chipType", CHIP_TYPE_PARSER);
+	}
+
+	/**
+	 * Creates a plan containing the blocks of the unpatched image and its chip type.
+	 *
+	 * @return the plan
+	 */
+	public FlashPlan toFlashPlan() {
+		checkState(reader == null, "Compressed images can not be compiled into a flash plan.");
+		final FlashPlan.Builder builder = FlashPlan.builder(getChipType());
+		final FirmwareImage base = image.getBase();
+		for (int block = 0; block < getBlockCount(); block++) {
+			final int offset = getBlockOffset(block);
+			final int blockLength = Math.min(BLOCK_SIZE, length - offset);
+			builder.block(offset, base.getBytes(offset, blockLength));
+		}
+		return builder.build();
+	}
+
+	private static ChipType detectChipType(final byte[] bytes) {
+		if (bytes.length < 4) {
+			log.error("Chip type is UNKNOWN");
+			return ChipType.UNKNOWN;
+
+		} else if (bytes[0] == (byte) 0xE1) {
 			log.debug("File type is JN5121");
 			return ChipType.JN5121;
 
@@ -185,7 +383,18 @@ public class JennicBinaryImage {
 		return ChipType.UNKNOWN;
 	}
 
-	public BinaryImageBlock getNextBlock() {
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the flash sectors that are written by this image.
+	 */
+	public Set<Sector> getSectors() {
+		return Sector.spanning(0, length);
+	}
+
+	public BinaryImageBlock getNextBlock() throws IOException {
 
 		if (hasNextBlock()) {
 
@@ -211,7 +420,7 @@ public class JennicBinaryImage {
 				"blockSize=" + BLOCK_SIZE +
 				", blockIterator=" + blockIterator +
 				", length=" + length +
-				", bytes=" + StringUtils.toHexString(bytes) +
+				", bytes=" + (image == null ? "<compressed>" : StringUtils.toHexString(image.toByteArray())) +
 				'}';
 	}
 
@@ -229,4 +438,14 @@ public class JennicBinaryImage {
 		return b;
 	}
 
+	/**
+	 * Stops the decompression of a compressed image.
+	 */
+	@Override
+	public void close() {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package de.uniluebeck.itm.wsn.drivers.jennic;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.exception.FlashEraseFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.EraseFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import org.slf4j.Logger;
@@ -22,12 +24,20 @@ public class JennicEraseFlashOperation extends TimeLimitedOperation<Void> implem
 
 	private final JennicHelper helper;
 
+	private final DeviceSessionCache sessionCache;
+
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public JennicEraseFlashOperation(final TimeLimiter timeLimiter, final JennicHelper helper,
+									 final DeviceSessionCache sessionCache,
+									 final ProgramCheckpointStore checkpointStore,
 									 @Assisted final long timeoutMillis,
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.sessionCache = sessionCache;
+		this.checkpointStore = checkpointStore;
 	}
 
 	@Override
@@ -50,6 +60,8 @@ public class JennicEraseFlashOperation extends TimeLimitedOperation<Void> implem
 
 		progress(0.25f);
 		log.trace("Erasing flash");
+		sessionCache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+		checkpointStore.clear();
 		helper.sendBootloaderMessage(Messages.flashEraseRequestMessage());
 		response = helper.receiveBootloaderReply(Messages.FLASH_ERASE_RESPONSE);
 
@@ -0,0 +1,170 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * What is known about the flash memory of a connected device: the CRC32 checksum of every
+ * {@link JennicBinaryImage#BLOCK_SIZE} byte block that has been erased or written since the device has been
+ * connected. Blocks are padded with <code>0xFF</code>, the value of erased flash memory. The data of the blocks in
+ * the first sector, which holds the flash header, is kept as well.
+ */
+class JennicFlashContents {
+
+	static final int FLASH_SIZE = Sector.FOURTH.getEnd() + 1;
+
+	private static final int BLOCK_SIZE = JennicBinaryImage.BLOCK_SIZE;
+
+	private static final long UNKNOWN = -1;
+
+	private static final long ERASED = checksum(new byte[0], 0, 0);
+
+	private static final int RETAINED_BLOCKS = (Sector.FIRST.getEnd() + 1) / BLOCK_SIZE;
+
+	private final long[] checksums = new long[FLASH_SIZE / BLOCK_SIZE];
+
+	private final byte[][] retainedBlocks = new byte[RETAINED_BLOCKS][];
+
+	JennicFlashContents() {
+		Arrays.fill(checksums, UNKNOWN);
+	}
+
+	/**
+	 * Forgets everything that is known about the flash memory.
+	 */
+	synchronized void clear() {
+		Arrays.fill(checksums, UNKNOWN);
+		Arrays.fill(retainedBlocks, null);
+	}
+
+	synchronized void erased(final Sector sector) {
+		for (int block = sector.getStart() / BLOCK_SIZE; block < (sector.getEnd() + 1) / BLOCK_SIZE; block++) {
+			setBlock(block, ERASED, null, 0, 0);
+		}
+	}
+
+	/**
+	 * Records data that has been written. Only whole blocks written into erased flash memory have a known content
+	 * afterwards.
+	 */
+	synchronized void written(final int address, final byte[] data) {
+
+		final int first = address / BLOCK_SIZE;
+		final int last = Math.min((address + Math.max(data.length, 1) - 1) / BLOCK_SIZE, checksums.length - 1);
+
+		if (address % BLOCK_SIZE == 0 && data.length <= BLOCK_SIZE && first < checksums.length
+				&& checksums[first] == ERASED) {
+			setBlock(first, checksum(data, 0, data.length), data, 0, data.length);
+			return;
+		}
+
+		for (int block = first; block <= last; block++) {
+			setBlock(block, UNKNOWN, null, 0, 0);
+		}
+	}
+
+	/**
+	 * Records data that has been read from the flash memory. Only the blocks that have been read completely become
+	 * known.
+	 */
+	synchronized void read(final int address, final byte[] data) {
+		final int first = (address + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final int end = Math.min((address + data.length) / BLOCK_SIZE, checksums.length);
+		for (int block = first; block < end; block++) {
+			final int offset = block * BLOCK_SIZE - address;
+			setBlock(block, checksum(data, offset, BLOCK_SIZE), data, offset, BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Returns the data of a block in the first sector.
+	 *
+	 * @param address
+	 * 		the address of the block
+	 *
+	 * @return a copy of the data or <code>null</code> if the content of the block is not known
+	 */
+	@Nullable
+	synchronized byte[] getBlock(final int address) {
+
+		final int block = address / BLOCK_SIZE;
+		if (block >= RETAINED_BLOCKS || checksums[block] == UNKNOWN) {
+			return null;
+		}
+
+		final byte[] data = new byte[BLOCK_SIZE];
+		if (retainedBlocks[block] == null) {
+			Arrays.fill(data, (byte) 0xFF);
+		} else {
+			System.arraycopy(retainedBlocks[block], 0, data, 0, BLOCK_SIZE);
+		}
+		return data;
+	}
+
+	/**
+	 * Returns <code>true</code> if the contents of all blocks in the given range are known.
+	 */
+	synchronized boolean isKnown(final int address, final int length) {
+		for (int block = address / BLOCK_SIZE; block <= (address + length - 1) / BLOCK_SIZE; block++) {
+			if (checksums[block] == UNKNOWN) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the block at the given address is known to contain the given data.
+	 */
+	synchronized boolean contains(final int address, final byte[] data, final int offset, final int length) {
+		final long expected = checksums[address / BLOCK_SIZE];
+		return expected != UNKNOWN && expected == checksum(data, offset, length);
+	}
+
+	private void setBlock(final int block, final long checksum, @Nullable final byte[] data, final int offset,
+						  final int length) {
+
+		checksums[block] = checksum;
+
+		if (block < RETAINED_BLOCKS) {
+			if (data == null || checksum == ERASED) {
+				retainedBlocks[block] = null;
+			} else {
+				final byte[] retained = new byte[BLOCK_SIZE];
+				Arrays.fill(retained, length, BLOCK_SIZE, (byte) 0xFF);
+				System.arraycopy(data, offset, retained, 0, length);
+				retainedBlocks[block] = retained;
+			}
+		}
+	}
+
+	static boolean isErased(final byte[] data, final int offset, final int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (data[i] != (byte) 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long checksum(final byte[] data, final int offset, final int length) {
+		final CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		for (int i = length; i < BLOCK_SIZE; i++) {
+			crc.update(0xFF);
+		}
+		return crc.getValue();
+	}
+
+	@Override
+	public synchronized String toString() {
+		int known = 0;
+		for (long checksum : checksums) {
+			if (checksum != UNKNOWN) {
+				known++;
+			}
+		}
+		return "JennicFlashContents{knownBlocks=" + known + "/" + checksums.length + "}";
+	}
+}
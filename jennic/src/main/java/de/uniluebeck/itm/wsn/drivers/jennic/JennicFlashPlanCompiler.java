@@ -0,0 +1,26 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlanCompiler;
+
+/**
+ * Compiles raw Jennic images into {@link FlashPlan}s.
+ */
+public class JennicFlashPlanCompiler implements FlashPlanCompiler {
+
+	@Override
+	public String getName() {
+		return "jennic";
+	}
+
+	@Override
+	public FlashPlan compile(final FirmwareImage image) throws Exception {
+		final JennicBinaryImage binaryImage = new JennicBinaryImage(image);
+		if (binaryImage.getChipType() == ChipType.UNKNOWN) {
+			throw new IllegalArgumentException("Image is not a Jennic image");
+		}
+		return binaryImage.toFlashPlan();
+	}
+}
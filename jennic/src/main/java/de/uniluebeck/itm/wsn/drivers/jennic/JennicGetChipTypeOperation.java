@@ -5,6 +5,8 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.exception.RamReadFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.GetChipTypeOperation;
@@ -15,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Map;
 
 import static de.uniluebeck.itm.util.StringUtils.toHexString;
 
@@ -22,15 +25,21 @@ public class JennicGetChipTypeOperation extends TimeLimitedOperation<ChipType> i
 
 	private static final Logger log = LoggerFactory.getLogger(JennicGetChipTypeOperation.class);
 
+	private static final int MAC_ADDRESS_LENGTH = 8;
+
 	private final JennicHelper helper;
 
+	private final DeviceSessionCache sessionCache;
+
 	@Inject
 	public JennicGetChipTypeOperation(final TimeLimiter timeLimiter,
 									  final JennicHelper helper,
+									  final DeviceSessionCache sessionCache,
 									  @Assisted final long timeoutMillis,
 									  @Assisted @Nullable final OperationListener<ChipType> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.sessionCache = sessionCache;
 	}
 
 	private ChipType determineChipType(byte s, byte t) {
@@ -48,9 +57,28 @@ public class JennicGetChipTypeOperation extends TimeLimitedOperation<ChipType> i
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected ChipType callInternal() throws Exception {
 
+		final ChipType cachedChipType = sessionCache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class);
+		if (cachedChipType != null) {
+			return cachedChipType;
+		}
+
+		final ChipType chipType = readChipType();
+		if (chipType != ChipType.UNKNOWN) {
+			sessionCache.put(DeviceSessionCache.CHIP_TYPE, chipType);
+		}
+		return chipType;
+	}
+
+	@SerialPortProgrammingMode
+	protected ChipType readChipType() throws Exception {
+
+		final ChipType persistedChipType = validatePersistedMetadata();
+		if (persistedChipType != null) {
+			return persistedChipType;
+		}
+
 		log.trace("Getting ChipType...");
 
 		ChipType chipType = ChipType.UNKNOWN;
@@ -114,4 +142,52 @@ public class JennicGetChipTypeOperation extends TimeLimitedOperation<ChipType> i
 		}
 		return chipType;
 	}
+
+	/**
+	 * Checks the persisted identification of the device by reading the MAC address from the flash header location of
+	 * the persisted chip type. If it matches the persisted MAC address the persisted values are put into the cache.
+	 *
+	 * @return the persisted chip type or <code>null</code> if nothing was persisted or the values are outdated
+	 */
+	@Nullable
+	private ChipType validatePersistedMetadata() throws Exception {
+
+		final Map<String, String> metadata = sessionCache.takeUnvalidatedMetadata();
+		if (metadata == null || !metadata.containsKey(DeviceSessionCache.CHIP_TYPE)
+				|| !metadata.containsKey(DeviceSessionCache.MAC_ADDRESS)) {
+			return null;
+		}
+
+		final ChipType chipType;
+		final MacAddress macAddress;
+		try {
+			chipType = ChipType.valueOf(metadata.get(DeviceSessionCache.CHIP_TYPE));
+			macAddress = new MacAddress(metadata.get(DeviceSessionCache.MAC_ADDRESS));
+		} catch (IllegalArgumentException e) {
+			log.warn("Ignoring invalid persisted metadata {}: {}", metadata, e.getMessage());
+			return null;
+		}
+
+		if (chipType == ChipType.UNKNOWN || !JennicHelper.isCacheableMacAddress(macAddress)
+				|| !macAddress.equals(new MacAddress(helper.readFlash(
+				chipType.getMacInFlashStart(), MAC_ADDRESS_LENGTH
+		)))) {
+			log.debug("Persisted metadata {} does not match the device", metadata);
+			return null;
+		}
+
+		log.debug("Using validated persisted metadata {}", metadata);
+		sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+
+		final String flashType = metadata.get(DeviceSessionCache.FLASH_TYPE);
+		if (flashType != null) {
+			try {
+				sessionCache.put(DeviceSessionCache.FLASH_TYPE, FlashType.valueOf(flashType));
+			} catch (IllegalArgumentException e) {
+				log.warn("Ignoring invalid persisted flash type {}", flashType);
+			}
+		}
+
+		return chipType;
+	}
 }
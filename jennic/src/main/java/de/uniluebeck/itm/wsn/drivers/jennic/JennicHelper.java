@@ -1,40 +1,302 @@
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.exception.*;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import de.uniluebeck.itm.wsn.drivers.isense.exception.FlashTypeReadFailedException;
 import de.uniluebeck.itm.wsn.drivers.jennic.exception.SectorEraseException;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static de.uniluebeck.itm.util.StringUtils.toHexString;
 
 
+@Singleton
 public class JennicHelper {
 
 	private static final Logger log = LoggerFactory.getLogger(JennicHelper.class);
 
+	/**
+	 * Configuration key for the highest baud rate that is used while programming. Set it to <code>0</code> to keep the
+	 * initial baud rate of the boot loader.
+	 */
+	public static final String OPTION_MAX_BAUD_RATE = "jennic.maxBaudRate";
+
+	private static final int DEFAULT_MAX_BAUD_RATE = 500000;
+
+	/**
+	 * Divisors of {@link Messages#BAUD_RATE_CLOCK} that are tried, fastest first.
+	 */
+	private static final int[] BAUD_RATE_DIVISORS = {1, 2, 4};
+
+	private static final int BAUD_RATE_SWITCH_DELAY_MILLIS = 10;
+
 	private static final int TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS = 2500;
 
+	/**
+	 * Largest length of a flash read: the reply frame holds at most 255 bytes including type, status and checksum.
+	 */
+	static final int MAX_READ_LENGTH = BootloaderCodec.MAX_FRAME_LENGTH - 4;
+
+	/**
+	 * Read length that is supported by all boot loader versions.
+	 */
+	private static final int MIN_READ_LENGTH = 32;
+
+	/**
+	 * Number of successful reads after which a read length that has been lowered is doubled again. The interval
+	 * doubles whenever the longer reads are rejected again.
+	 */
+	private static final int READ_LENGTH_GROWTH_INTERVAL = 16;
+
+	private static final int MAX_CHECKSUM_ERRORS = 3;
+
+	private static final int MAX_RAM_WRITE_LENGTH = 128;
+
+	/**
+	 * Timeout of the first synchronisation probe. Every unanswered probe doubles it up to
+	 * {@link #SYNC_MAX_PROBE_TIMEOUT_MILLIS}.
+	 */
+	private static final int SYNC_PROBE_TIMEOUT_MILLIS = 50;
+
+	private static final int SYNC_MAX_PROBE_TIMEOUT_MILLIS = 400;
+
+	/**
+	 * Number of different lengths the synchronisation probes read, so that the replies to consecutive probes can be
+	 * told apart.
+	 */
+	private static final int SYNC_PROBE_LENGTHS = 16;
+
+	/**
+	 * Session cache key of the {@link JennicFlashContents}.
+	 */
+	private static final String FLASH_CONTENTS = "jennic.flashContents";
+
+	/**
+	 * Baud rate of the local end of the connection to the boot loader. Connections that implement it can be switched
+	 * to a faster baud rate in addition to serial port connections.
+	 */
+	interface BaudRateControl {
+
+		int getBaudRate();
+
+		/**
+		 * @throws IOException
+		 * 		if the baud rate is not supported
+		 */
+		void setBaudRate(int baudRate) throws IOException;
+	}
+
+	private static class SerialPortBaudRateControl implements BaudRateControl {
+
+		private final SerialPort serialPort;
+
+		private SerialPortBaudRateControl(final SerialPort serialPort) {
+			this.serialPort = serialPort;
+		}
+
+		@Override
+		public int getBaudRate() {
+			return serialPort.getBaudRate();
+		}
+
+		@Override
+		public void setBaudRate(final int baudRate) throws IOException {
+			try {
+				serialPort.setSerialPortParams(
+						baudRate, serialPort.getDataBits(), serialPort.getStopBits(), serialPort.getParity()
+				);
+			} catch (UnsupportedCommOperationException e) {
+				throw new IOException("Unable to set baud rate to " + baudRate, e);
+			}
+		}
+	}
+
 	private final Connection connection;
 
+	private final DeviceSessionCache sessionCache;
+
+	private final BootloaderCodec codec = new BootloaderCodec();
+
+	private JennicFlashContents flashContents = new JennicFlashContents();
+
+	/**
+	 * The highest baud rate that is tried, lowered whenever a faster baud rate did not work.
+	 */
+	private int maxBaudRate;
+
+	/**
+	 * The length of the next flash reads, lowered whenever the boot loader rejects a read and raised again after
+	 * {@link #readLengthGrowthInterval} successful reads.
+	 */
+	private int readLength = MAX_READ_LENGTH;
+
+	/**
+	 * The largest read length the boot loader has answered, longer reads are probes.
+	 */
+	private int confirmedReadLength;
+
+	private int readLengthGrowthInterval = READ_LENGTH_GROWTH_INTERVAL;
+
+	private int readsUntilGrowth;
+
+	private long synchronizations;
+
+	private long synchronizationNanos;
+
 	@Inject
-	public JennicHelper(Connection connection) {
+	public JennicHelper(Connection connection, DeviceSessionCache sessionCache,
+						@Named("configuration") Map<String, String> configuration) {
 		this.connection = connection;
+		this.sessionCache = sessionCache;
+		final String maxBaudRate = configuration.get(OPTION_MAX_BAUD_RATE);
+		this.maxBaudRate = maxBaudRate == null ? DEFAULT_MAX_BAUD_RATE : Integer.parseInt(maxBaudRate);
+	}
+
+	/**
+	 * Switches the boot loader and the serial port to the fastest baud rate that both support. Each baud rate is
+	 * checked with a flash read after switching. If it does not work, the boot loader is switched back and the next
+	 * slower baud rate is tried. Baud rates that did not work are not tried again for this device.
+	 * <p/>
+	 * The boot loader keeps the baud rate until the device is reset, the serial port is restored when the programming
+	 * mode is left.
+	 *
+	 * @return the baud rate in use or <code>-1</code> if the baud rate of the connection can not be changed
+	 *
+	 * @throws IOException
+	 * 		if the connection to the boot loader has been lost while switching
+	 */
+	public int negotiateBaudRate() throws Exception {
+
+		final BaudRateControl baudRateControl;
+		if (connection instanceof SerialPortConnection) {
+			baudRateControl = new SerialPortBaudRateControl(((SerialPortConnection) connection).getSerialPort());
+		} else if (connection instanceof BaudRateControl) {
+			baudRateControl = (BaudRateControl) connection;
+		} else {
+			return -1;
+		}
+
+		final int initialBaudRate = baudRateControl.getBaudRate();
+
+		for (int divisor : BAUD_RATE_DIVISORS) {
+
+			final int baudRate = Messages.BAUD_RATE_CLOCK / divisor;
+			if (baudRate > maxBaudRate || baudRate <= initialBaudRate || !isSupported(baudRateControl, baudRate)) {
+				continue;
+			}
+
+			if (!requestBaudRate(divisor)) {
+				maxBaudRate = baudRate - 1;
+				continue;
+			}
+
+			baudRateControl.setBaudRate(baudRate);
+			if (isConnected()) {
+				log.debug("Switched boot loader to {} baud", baudRate);
+				return baudRate;
+			}
+
+			log.debug("Boot loader does not respond at {} baud, falling back to {} baud", baudRate, initialBaudRate);
+			maxBaudRate = baudRate - 1;
+			try {
+				send(codec.begin(Messages.CHANGE_BAUD_RATE_REQUEST).putByte(Messages.BAUD_RATE_CLOCK / initialBaudRate));
+			} finally {
+				Thread.sleep(BAUD_RATE_SWITCH_DELAY_MILLIS);
+				baudRateControl.setBaudRate(initialBaudRate);
+				connection.clear();
+			}
+
+			if (!isConnected()) {
+				throw new IOException("Lost connection to the boot loader while switching to " + baudRate + " baud");
+			}
+		}
+
+		return initialBaudRate;
+	}
+
+	private boolean requestBaudRate(final int divisor) throws Exception {
+		send(codec.begin(Messages.CHANGE_BAUD_RATE_REQUEST).putByte(divisor));
+		try {
+			receive(Messages.CHANGE_BAUD_RATE_RESPONSE);
+			if (codec.getReplyByte(1) != 0x00) {
+				log.debug("Boot loader rejected baud rate divisor {}: {}", divisor, toHexString(codec.getReplyByte(1)));
+				return false;
+			}
+		} catch (TimeoutException e) {
+			log.debug("Boot loader does not support changing the baud rate");
+			connection.clear();
+			return false;
+		} catch (UnexpectedResponseException e) {
+			log.debug("Boot loader does not support changing the baud rate: {}", e.getMessage());
+			connection.clear();
+			return false;
+		}
+		// give the boot loader some time to switch after sending its response
+		Thread.sleep(BAUD_RATE_SWITCH_DELAY_MILLIS);
+		return true;
+	}
+
+	private boolean isSupported(final BaudRateControl baudRateControl, final int baudRate) {
+		final int currentBaudRate = baudRateControl.getBaudRate();
+		try {
+			baudRateControl.setBaudRate(baudRate);
+			baudRateControl.setBaudRate(currentBaudRate);
+			return true;
+		} catch (IOException e) {
+			log.debug("Serial port does not support {} baud", baudRate);
+			return false;
+		}
+	}
+
+	private boolean isConnected() throws IOException {
+		for (int i = 0; i < 2; i++) {
+			try {
+				if (waitForConnection()) {
+					return true;
+				}
+			} catch (RuntimeException e) {
+				// garbled replies if both sides do not use the same baud rate
+				log.trace("Invalid reply from boot loader", e);
+				connection.clear();
+			}
+		}
+		return false;
 	}
 
 	public FlashType getFlashType() throws Exception {
+
+		FlashType flashType = sessionCache.get(DeviceSessionCache.FLASH_TYPE, FlashType.class);
+		if (flashType == null) {
+			flashType = readFlashType();
+			if (flashType != FlashType.Unknown) {
+				sessionCache.put(DeviceSessionCache.FLASH_TYPE, flashType);
+			}
+		}
+		return flashType;
+	}
+
+	private FlashType readFlashType() throws Exception {
 		// Send flash type read request
-		sendBootloaderMessage(Messages.flashTypeReadRequestMessage());
+		send(codec.begin(Messages.FLASH_TYPE_READ_REQUEST));
 
 		// Read flash type read response
-		byte[] response = receiveBootloaderReply(Messages.FLASH_TYPE_READ_RESPONSE);
+		receive(Messages.FLASH_TYPE_READ_RESPONSE);
+		final byte[] response = codec.copyReply(0);
 
 		// Throw error if reading failed
 		if (response[1] != 0x00) {
@@ -60,32 +322,125 @@ public class JennicHelper {
 	}
 
 	void enableFlashErase() throws Exception {
-		// log.debug("Setting FLASH status register to zero");
-		sendBootloaderMessage(Messages.statusRegisterWriteMessage((byte) 0x00)); // see
-		// AN
-		// -
-		// 1007
+		// see AN-1007
+		send(codec.begin(Messages.WRITE_SR_REQUEST).putByte(0x00));
+		receive(Messages.WRITE_SR_RESPONSE);
 
-		byte[] response = receiveBootloaderReply(Messages.WRITE_SR_RESPONSE);
-
-		if (response[1] != 0x0) {
+		if (codec.getReplyByte(1) != 0x0) {
 			log.error(String.format("Failed to write status register."));
 			throw new FlashEraseFailedException();
 		}
 	}
 
 	public void eraseFlash(Sector sector) throws Exception {
+		eraseFlash(EnumSet.of(sector));
+	}
+
+	/**
+	 * Erases the given sectors. The status register is written only once before the first sector is erased.
+	 *
+	 * @param sectors
+	 * 		the sectors to erase
+	 */
+	public void eraseFlash(Set<Sector> sectors) throws Exception {
+
+		if (sectors.isEmpty()) {
+			return;
+		}
+
 		enableFlashErase();
-		log.trace("Erasing sector " + sector);
-		sendBootloaderMessage(Messages.sectorEraseRequestMessage(sector));
 
-		byte[] response = receiveBootloaderReply(Messages.SECTOR_ERASE_RESPONSE);
+		for (Sector sector : sectors) {
+			log.trace("Erasing sector " + sector);
+			boolean acknowledged = false;
+			try {
+
+				send(codec.begin(Messages.SECTOR_ERASE_REQUEST).putByte(sector.ordinal()));
+				receive(Messages.SECTOR_ERASE_RESPONSE);
+
+				if (codec.getReplyByte(1) != 0x0) {
+					log.error(String.format("Failed to erase flash sector."));
+					throw new SectorEraseException(sector);
+				}
+				acknowledged = true;
+
+			} finally {
+				if (acknowledged) {
+					flashContents.erased(sector);
+				} else {
+					flashContents.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns what is known about the flash memory of the connected device. The knowledge is kept in the session
+	 * cache, so it is dropped when the device is connected again and it is not kept at all if the cache is disabled.
+	 */
+	JennicFlashContents getFlashContents() {
+		// only checks that the contents are still valid, which is not a lookup worth counting
+		if (sessionCache.peek(FLASH_CONTENTS, JennicFlashContents.class) != flashContents) {
+			flashContents = new JennicFlashContents();
+			sessionCache.putTransient(FLASH_CONTENTS, flashContents);
+		}
+		return flashContents;
+	}
+
+	/**
+	 * Writes data into the RAM of the device.
+	 */
+	public void writeRam(int address, byte[] data) throws Exception {
+		for (int offset = 0; offset < data.length; offset += MAX_RAM_WRITE_LENGTH) {
+
+			final int length = Math.min(MAX_RAM_WRITE_LENGTH, data.length - offset);
+			send(codec.begin(Messages.RAM_WRITE_REQUEST).putAddress(address + offset).putBytes(data, offset, length));
+			receive(Messages.RAM_WRITE_RESPONSE);
+
+			if (codec.getReplyByte(1) != 0x0) {
+				throw new IOException(String.format("Failed to write %d bytes into RAM at 0x%x: status 0x%02x",
+						length, address + offset, codec.getReplyByte(1)
+				)
+				);
+			}
+		}
+	}
+
+	/**
+	 * Lets the boot loader jump to the given address.
+	 */
+	public void run(int address) throws Exception {
+		send(codec.begin(Messages.RUN_REQUEST).putAddress(address));
+		receive(Messages.RUN_RESPONSE);
 
-		if (response[1] != 0x0) {
-			log.error(String.format("Failed to erase flash sector."));
-			throw new SectorEraseException(sector);
+		if (codec.getReplyByte(1) != 0x0) {
+			throw new IOException(String.format("Failed to run code at 0x%x: status 0x%02x", address,
+					codec.getReplyByte(1)
+			)
+			);
 		}
+	}
 
+	/**
+	 * Loads a flash programmer stub into the RAM of the device and starts it. The boot loader does not answer until
+	 * {@link JennicRamProgrammer#exit()} has been called.
+	 *
+	 * @param stub
+	 * 		the code of the stub
+	 * @param address
+	 * 		the RAM address the stub is loaded to and started at
+	 *
+	 * @return the programmer that talks to the running stub
+	 */
+	JennicRamProgrammer startProgrammer(byte[] stub, int address) throws Exception {
+
+		log.debug("Loading programmer stub of {} bytes to 0x{}", stub.length, Integer.toHexString(address));
+		writeRam(address, stub);
+		run(address);
+
+		final JennicRamProgrammer programmer = new JennicRamProgrammer(connection, flashContents);
+		programmer.awaitReady(JennicRamProgrammer.MAX_WINDOW_SIZE);
+		return programmer;
 	}
 
 	public void configureFlash(ChipType chipType) throws Exception {
@@ -99,15 +454,17 @@ public class JennicHelper {
 			FlashType flashType = getFlashType();
 
 			// send flash configure request
-			sendBootloaderMessage(Messages.flashConfigureRequestMessage(flashType));
+			send(codec.begin(Messages.FLASH_CONFIGURE_REQUEST).putByte(flashType.getId()).putAddress(0));
 
 			// read flash configure response
-			byte[] response = receiveBootloaderReply(Messages.FLASH_CONFIGURE_RESPONSE);
+			receive(Messages.FLASH_CONFIGURE_RESPONSE);
 
 			// throw error if configuration failed
-			if (response[1] != 0x00) {
+			if (codec.getReplyByte(1) != 0x00) {
 				if (log.isErrorEnabled()) {
-					log.error("Failed to configure flash ROM: response should be 0x00, is: ", toHexString(response[1]));
+					log.error("Failed to configure flash ROM: response should be 0x00, is: ",
+							toHexString(codec.getReplyByte(1))
+					);
 				}
 				throw new FlashConfigurationFailedException();
 			}
@@ -117,134 +474,299 @@ public class JennicHelper {
 	}
 
 	public void sendBootloaderMessage(byte[] message) throws IOException {
-
-		if (log.isTraceEnabled()) {
-			log.trace("Sending bootloader request: {}", toHexString(message));
+		if (message[0] == Messages.FLASH_PROGRAM_REQUEST || message[0] == Messages.SECTOR_ERASE_REQUEST
+				|| message[0] == Messages.FLASH_ERASE_REQUEST) {
+			flashContents.clear();
 		}
-
-		// allocate buffer for length + message + checksum
-		byte[] data = new byte[message.length + 2];
-
-		// prepend length (of message + checksum)
-		data[0] = (byte) (message.length + 1);
-
-		// copy message into the buffer
-		System.arraycopy(message, 0, data, 1, message.length);
-
-		// calculate and append checksum
-		data[data.length - 1] = Messages.calculateChecksum(data, 0, data.length - 1);
-
-		// send message
-		final OutputStream outStream = connection.getOutputStream();
-		outStream.write(data);
-		outStream.flush();
+		send(codec.message(message));
 	}
 
 	public byte[] receiveBootloaderReply(int expectedType)
 			throws TimeoutException, UnexpectedResponseException, InvalidChecksumException, IOException,
 			NullPointerException {
+		receive(expectedType);
+		return codec.copyReply(0);
+	}
 
-		final InputStream inputStream = connection.getInputStream();
-
-		connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
+	private void send(final BootloaderCodec request) throws IOException {
+		if (log.isTraceEnabled()) {
+			log.trace("Sending bootloader request: {}", request.requestToString());
+		}
+		request.send(connection.getOutputStream());
+	}
 
-		int bootLoaderReplyLength = inputStream.read();
-		byte[] bootLoaderReply = new byte[bootLoaderReplyLength - 1];
+	private void receive(final int expectedType)
+			throws TimeoutException, UnexpectedResponseException, InvalidChecksumException, IOException {
+		receive(expectedType, TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
+	}
 
-		// read rest of the reply (except of the checksum)
-		for (int i = 0; i < (bootLoaderReplyLength - 1); ++i) {
-			connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
-			bootLoaderReply[i] = (byte) inputStream.read();
+	private void receive(final int expectedType, final int timeoutMillis)
+			throws TimeoutException, UnexpectedResponseException, InvalidChecksumException, IOException {
+		try {
+			codec.receive(connection, expectedType, timeoutMillis);
+		} finally {
+			if (log.isTraceEnabled()) {
+				log.trace("Received bootloader reply: {}", codec.replyToString());
+			}
 		}
+	}
 
-		if (log.isTraceEnabled()) {
-			log.trace("Received bootloader reply: {}", toHexString(bootLoaderReply));
+	/**
+	 * Waits up to {@link #TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS} for the boot loader to answer, see
+	 * {@link #synchronize(long)}.
+	 *
+	 * @return <code>true</code> if the boot loader has answered
+	 */
+	public boolean waitForConnection() {
+		try {
+			return synchronize(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
+	}
 
-		// read checksum
-		connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
-		byte checksumReceived = (byte) inputStream.read();
+	/**
+	 * Synchronises with the boot loader. A small flash read is sent with a short timeout that is doubled after every
+	 * unanswered probe, so that a boot loader that comes up late is noticed quickly. Every probe reads another number
+	 * of bytes. Replies to earlier probes that arrive late are discarded while waiting for the reply to the latest
+	 * one, which the boot loader sends last, so none of them is left over for the next request.
+	 *
+	 * @param timeoutMillis
+	 * 		the time the boot loader is given to answer
+	 *
+	 * @return <code>true</code> if the boot loader has answered, <code>false</code> if it has not answered in time or
+	 *         the thread has been interrupted
+	 */
+	public boolean synchronize(final long timeoutMillis) throws IOException {
+
+		final long startNanos = System.nanoTime();
+		final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		int probeTimeoutMillis = SYNC_PROBE_TIMEOUT_MILLIS;
+		int probes = 0;
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+			if (remainingMillis <= 0) {
+				break;
+			}
 
-		if (log.isTraceEnabled()) {
-			log.trace("Received bootloader reply checksum: {}", toHexString(checksumReceived));
+			probes++;
+			try {
+
+				// any message the boot loader answers would do, short flash reads have the shortest replies
+				final int probeLength = 1 + (probes - 1) % SYNC_PROBE_LENGTHS;
+				final long probeDeadlineNanos = System.nanoTime()
+						+ TimeUnit.MILLISECONDS.toNanos(Math.min(probeTimeoutMillis, remainingMillis));
+				send(codec.begin(Messages.FLASH_READ_REQUEST).putAddress(0).putShort(probeLength));
+
+				while (receiveProbeReply(probeDeadlineNanos) != probeLength + 2) {
+					log.trace("Discarding late reply to an earlier probe: {}", codec.replyToString());
+				}
+
+				recordSynchronization(System.nanoTime() - startNanos, probes);
+				return true;
+
+			} catch (TimeoutException e) {
+				log.trace("Boot loader did not answer probe {} within {} ms", probes, probeTimeoutMillis);
+			} catch (UnexpectedResponseException e) {
+				log.trace("Discarding unexpected reply while synchronising: {}", e.getMessage());
+			} catch (InvalidChecksumException e) {
+				log.trace("Discarding corrupted reply while synchronising: {}", e.getMessage());
+			}
+
+			connection.clear();
+			probeTimeoutMillis = Math.min(2 * probeTimeoutMillis, SYNC_MAX_PROBE_TIMEOUT_MILLIS);
 		}
 
-		// concatenate length field and actual reply for checksum calculation
-		byte[] fullBootLoaderReply = new byte[bootLoaderReply.length + 1];
-		fullBootLoaderReply[0] = (byte) bootLoaderReplyLength;
-		System.arraycopy(bootLoaderReply, 0, fullBootLoaderReply, 1, bootLoaderReply.length);
+		log.trace("Boot loader did not answer {} probes within {} ms", probes, timeoutMillis);
+		return false;
+	}
 
-		// throw exception if checksums differ
-		byte checksumCalculated = Messages.calculateChecksum(fullBootLoaderReply);
-		if (checksumCalculated != checksumReceived) {
-			String msg = "Bootloader reply checksum mismatch (received " + toHexString(checksumReceived) +
-					", calculated" + toHexString(checksumCalculated) + ")";
-			throw new InvalidChecksumException(msg);
+	private int receiveProbeReply(final long deadlineNanos)
+			throws TimeoutException, InvalidChecksumException, UnexpectedResponseException, IOException {
+		final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+		if (remainingMillis <= 0) {
+			throw new TimeoutException();
 		}
+		return codec.receive(connection, Messages.FLASH_READ_RESPONSE, (int) remainingMillis);
+	}
 
-		// check if the response type is unexpected
-		if (bootLoaderReply[0] != expectedType) {
-			throw new UnexpectedResponseException(expectedType, (int) bootLoaderReply[0]);
+	private synchronized void recordSynchronization(final long durationNanos, final int probes) {
+		synchronizations++;
+		synchronizationNanos += durationNanos;
+		if (log.isDebugEnabled()) {
+			log.debug("Synchronised with the boot loader after {} probes in {} ms, {} ms on average", new Object[]{
+					probes,
+					TimeUnit.NANOSECONDS.toMillis(durationNanos),
+					TimeUnit.NANOSECONDS.toMillis(synchronizationNanos / synchronizations)
+			}
+			);
 		}
+	}
 
-		return bootLoaderReply;
+	/**
+	 * Returns the average time it took to synchronise with the boot loader.
+	 *
+	 * @return the average time in milliseconds or <code>-1</code> if there has not been a synchronisation
+	 */
+	public synchronized long getAverageSynchronizationMillis() {
+		return synchronizations == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(synchronizationNanos / synchronizations);
 	}
 
-	public boolean waitForConnection() {
 
-		try {
+	public byte[] readFlash(int address, int len) throws Exception {
+		final byte[] data = new byte[len];
+		int read = 0;
+		while (read < len) {
+			read += readFlash(address + read, data, read, len - read);
+		}
+		return data;
+	}
 
-			// send flash read request (in fact, this could be any message to which the device is supposed to respond)
-			sendBootloaderMessage(Messages.flashReadRequestMessage(0x24, 0x20));
-			receiveBootloaderReply(Messages.FLASH_READ_RESPONSE);
-			log.trace("Device connection established");
-			return true;
+	/**
+	 * Reads up to <code>length</code> bytes of flash memory with a single request into the given buffer.
+	 * <p/>
+	 * The first read of a device probes the largest read length the boot loader accepts, starting at the protocol
+	 * limit of {@link #MAX_READ_LENGTH} bytes. A probe that is rejected, i.e. answered with an error status or less
+	 * data, is repeated with half the length. A probe that is not answered within the short synchronisation timeout
+	 * is repeated with the same length after discarding a late reply, as a lost reply says nothing about the length.
+	 * A lowered length is raised again after a number of successful reads. Replies with a wrong checksum are requested
+	 * again.
+	 *
+	 * @param address
+	 * 		the flash address to read from
+	 * @param buffer
+	 * 		the buffer to read into
+	 * @param offset
+	 * 		the position in the buffer
+	 * @param length
+	 * 		the maximum number of bytes to read
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws FlashReadFailedException
+	 * 		if the boot loader does not deliver the requested data
+	 */
+	public int readFlash(int address, byte[] buffer, int offset, int length) throws Exception {
+
+		int checksumErrors = 0;
+		boolean timedOut = false;
+
+		while (true) {
+
+			final int requested = Math.min(length, readLength);
+			final boolean probing = requested > confirmedReadLength;
 
-		} catch (TimeoutException e) {
 			try {
+
+				send(codec.begin(Messages.FLASH_READ_REQUEST).putAddress(address).putShort(requested));
+				receive(Messages.FLASH_READ_RESPONSE,
+						probing && !timedOut ? SYNC_PROBE_TIMEOUT_MILLIS : TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS
+				);
+
+				// remove type and success octet
+				final int received = codec.getReplyLength() - 2;
+				if (codec.getReplyByte(1) == 0x00 && received == requested) {
+					codec.copyReply(2, buffer, offset, received);
+					readSucceeded(requested);
+					return received;
+				}
+
+				if (!probing || requested <= MIN_READ_LENGTH) {
+					throw new FlashReadFailedException(String.format(
+							"Failed to read %d bytes of flash at 0x%x: status 0x%02x, %d bytes received",
+							requested, address, codec.getReplyByte(1), received
+					)
+					);
+				}
+
+			} catch (InvalidChecksumException e) {
+				if (++checksumErrors > MAX_CHECKSUM_ERRORS) {
+					throw e;
+				}
+				log.debug("Reading flash at 0x{} failed, retrying: {}", Integer.toHexString(address), e.getMessage());
 				connection.clear();
-			} catch (IOException e1) {
-				log.error("Exception while cleaning the stream.", e1);
+				continue;
+			} catch (TimeoutException e) {
+				if (!probing || timedOut) {
+					throw e;
+				}
+				// the boot loader answers in order, so a late reply to the probe is discarded by the synchronisation
+				log.debug("Boot loader did not answer a read of {} bytes in time, reading again", requested);
+				timedOut = true;
+				if (!synchronize(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS)) {
+					throw e;
+				}
+				continue;
 			}
-			log.trace("waitForConnection timed out!");
-			return false;
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+
+			readRejected(requested);
 		}
 	}
 
-	public byte[] readFlash(int address, int len) throws Exception {
-
-		// Send flash program request
-		sendBootloaderMessage(Messages.flashReadRequestMessage(address, len));
-
-		// Read flash program response
-		byte[] response = receiveBootloaderReply(Messages.FLASH_READ_RESPONSE);
-
-		// Remove type and success octet
-		byte[] data = new byte[response.length - 2];
-		System.arraycopy(response, 2, data, 0, response.length - 2);
+	private void readSucceeded(final int requested) {
+		confirmedReadLength = Math.max(confirmedReadLength, requested);
+		if (requested == readLength && readLength < MAX_READ_LENGTH && --readsUntilGrowth <= 0) {
+			readLength = Math.min(MAX_READ_LENGTH, 2 * readLength);
+			log.debug("Trying reads of {} bytes again", readLength);
+		}
+	}
 
-		// Return data
-		return data;
+	private void readRejected(final int requested) {
+		if (requested > confirmedReadLength && confirmedReadLength > 0) {
+			// a longer read has been rejected again, it is tried less often from now on
+			readLengthGrowthInterval *= 2;
+		}
+		readLength = Math.max(MIN_READ_LENGTH, Math.max(confirmedReadLength, Integer.highestOneBit(requested - 1)));
+		readsUntilGrowth = readLengthGrowthInterval;
+		log.debug("Boot loader does not accept reads of {} bytes, trying {} bytes", requested, readLength);
 	}
 
 	public void writeFlash(int address, byte[] data)
 			throws IOException, NullPointerException, TimeoutException, UnexpectedResponseException,
 			InvalidChecksumException, FlashProgramFailedException {
-		// Send flash program request
-		// log.debug("Sending program request for address " + address + " with " + data.length + " bytes");
-		sendBootloaderMessage(Messages.flashProgramRequestMessage(address, data));
+		boolean acknowledged = false;
+		try {
 
-		// Read flash program response
-		byte[] response = receiveBootloaderReply(Messages.FLASH_PROGRAM_RESPONSE);
+			// Send flash program request
+			send(codec.begin(Messages.FLASH_PROGRAM_REQUEST).putAddress(address).putBytes(data, 0, data.length));
 
-		// Throw error if writing failed
-		if (response[1] != 0x0) {
-			log.error(
-					String.format("Failed to write to flash: Response should be 0x00, yet it is: 0x%02x", response[1])
-			);
-			throw new FlashProgramFailedException();
+			// Read flash program response
+			receive(Messages.FLASH_PROGRAM_RESPONSE);
+
+			// Throw error if writing failed
+			if (codec.getReplyByte(1) != 0x0) {
+				log.error(String.format("Failed to write to flash: Response should be 0x00, yet it is: 0x%02x",
+						codec.getReplyByte(1)
+				)
+				);
+				throw new FlashProgramFailedException();
+			}
+			acknowledged = true;
+
+		} finally {
+			if (acknowledged) {
+				flashContents.written(address, data);
+			} else {
+				flashContents.clear();
+			}
 		}
 	}
+
+	/**
+	 * Checks whether a MAC address read from or written to the flash header may be kept in the session cache. Erased
+	 * (all 0xFF) and zeroed headers as well as {@link MacAddress#HIGHEST_MAC_ADDRESS} are not a valid address of the
+	 * device, they are read from the device again instead of being cached or persisted.
+	 *
+	 * @param macAddress
+	 * 		the MAC address
+	 *
+	 * @return <code>false</code> if the address is broken
+	 */
+	static boolean isCacheableMacAddress(final MacAddress macAddress) {
+		return macAddress.toLong() != -1L
+				&& !MacAddress.LOWEST_MAC_ADDRESS.equals(macAddress)
+				&& !MacAddress.HIGHEST_MAC_ADDRESS.equals(macAddress);
+	}
 }
@@ -57,6 +57,7 @@ public class JennicModule extends AbstractModule {
 				.implement(EraseFlashOperation.class, JennicEraseFlashOperation.class)
 				.implement(GetChipTypeOperation.class, JennicGetChipTypeOperation.class)
 				.implement(IsNodeAliveOperation.class, DefaultIsNodeAliveOperation.class)
+				.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
 				.implement(ProgramOperation.class, JennicProgramOperation.class)
 				.implement(ReadFlashOperation.class, JennicReadFlashOperation.class)
 				.implement(ReadMacAddressOperation.class, JennicReadMacAddressOperation.class)
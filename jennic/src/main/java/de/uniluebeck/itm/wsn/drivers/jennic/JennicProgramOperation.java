@@ -1,11 +1,22 @@
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceModule;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.exception.*;
+import de.uniluebeck.itm.wsn.drivers.core.image.CompressedImages;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
@@ -13,7 +24,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 public class JennicProgramOperation extends AbstractProgramOperation {
 
@@ -30,21 +47,84 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 
 	private static final float FRACTION_RESET = 0.03f;
 
+	static final String ATTRIBUTE_FLASH_HEADER = "jennic.flashHeader";
+
+	private static final int FLASH_SIZE = JennicFlashContents.FLASH_SIZE;
+
+	/**
+	 * Configuration option that enables differential programming, see {@link #writeChangedSectors}.
+	 */
+	public static final String OPTION_DIFFERENTIAL = "jennic.differential";
+
+	/**
+	 * Number of blocks that are read back at once while comparing the flash memory with the image.
+	 */
+	private static final int COMPARE_CHUNK_BLOCKS = 8;
+
+	private static final byte[] NO_DATA = new byte[0];
+
+	private static final int MAX_HEADER_REWRITES = 2;
+
+	/**
+	 * Configuration option with the file of a flash programmer stub, see {@link JennicRamProgrammer}. The blocks after
+	 * the flash header are written through the stub if this option and {@link #OPTION_PROGRAMMER_STUB_ADDRESS} are
+	 * set.
+	 */
+	public static final String OPTION_PROGRAMMER_STUB = "jennic.programmerStub";
+
+	/**
+	 * Configuration option with the RAM address the programmer stub is loaded to and started at.
+	 */
+	public static final String OPTION_PROGRAMMER_STUB_ADDRESS = "jennic.programmerStubAddress";
+
 	private final JennicHelper helper;
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceSessionCache sessionCache;
+
+	private final ProgramCheckpointStore checkpointStore;
+
+	private final ExecutorService prefetchExecutorService;
+
+	private final boolean differential;
+
+	@Nullable
+	private final File programmerStub;
+
+	private final int programmerStubAddress;
+
 	@Inject
 	public JennicProgramOperation(final TimeLimiter timeLimiter,
 								  final JennicHelper helper,
 								  final OperationFactory operationFactory,
-								  @Assisted byte[] binaryImage,
+								  final DeviceSessionCache sessionCache,
+								  final ProgramCheckpointStore checkpointStore,
+								  @Named(DeviceModule.PREFETCH_EXECUTOR_SERVICE)
+								  final ExecutorService prefetchExecutorService,
+								  @Named("configuration") final Map<String, String> configuration,
+								  @Assisted FirmwareImage binaryImage,
 								  @Assisted final long timeoutMillis,
 								  @Assisted @Nullable final OperationListener<Void> operationCallback) {
 
 		super(timeLimiter, binaryImage, timeoutMillis, operationCallback);
 		this.helper = helper;
 		this.operationFactory = operationFactory;
+		this.sessionCache = sessionCache;
+		this.checkpointStore = checkpointStore;
+		this.prefetchExecutorService = prefetchExecutorService;
+		this.differential = Boolean.parseBoolean(configuration.get(OPTION_DIFFERENTIAL));
+
+		final String stub = configuration.get(OPTION_PROGRAMMER_STUB);
+		final String stubAddress = configuration.get(OPTION_PROGRAMMER_STUB_ADDRESS);
+		this.programmerStub = stub != null && stubAddress != null ? new File(stub) : null;
+		this.programmerStubAddress = stubAddress != null ? Long.decode(stubAddress).intValue() : 0;
+	}
+
+	@Override
+	public boolean isErasingWholeFlash() {
+		// only the sectors of the image are erased, in differential mode only the changed ones
+		return false;
 	}
 
 	@Override
@@ -54,11 +134,72 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 		GetChipTypeOperation getChipTypeOperation = operationFactory.createGetChipTypeOperation(10000, null);
 		ChipType chipType = runSubOperation(getChipTypeOperation, FRACTION_GET_CHIP_TYPE);
 
-		JennicBinaryImage binaryImage = new JennicBinaryImage(getBinaryImage());
+		final ProgramCheckpoint checkpoint = checkpointStore.getResumableCheckpoint();
+		if (checkpoint != null && checkpoint.isFor(getFirmwareImage())) {
+			final JennicBinaryImage binaryImage = createBinaryImage();
+			try {
+				if (resume(chipType, binaryImage, checkpoint)) {
+					return null;
+				}
+			} finally {
+				binaryImage.close();
+			}
+		}
+
+		// the checkpoint is replaced as soon as the sectors have been erased again, until then the saved flash header
+		// may be the only copy of the MAC address left
+		final ProgramCheckpoint previousCheckpoint = checkpointStore.getCheckpoint();
+		final String savedFlashHeader = previousCheckpoint != null ?
+				previousCheckpoint.getAttribute(ATTRIBUTE_FLASH_HEADER) :
+				null;
+
+		final JennicBinaryImage binaryImage = createBinaryImage();
+		try {
+			program(chipType, binaryImage, savedFlashHeader);
+		} finally {
+			binaryImage.close();
+		}
+		return null;
+	}
+
+	private JennicBinaryImage createBinaryImage() throws IOException {
+		final FirmwareImage image = getFirmwareImage();
+		if (FlashPlan.isFlashPlan(image)) {
+			return new JennicBinaryImage(getVerifiedFlashPlan());
+		} else if (CompressedImages.isGzip(image)) {
+			return JennicBinaryImage.decompressing(image, prefetchExecutorService);
+		}
+		return new JennicBinaryImage(image);
+	}
+
+	/**
+	 * Programs the image from scratch.
+	 *
+	 * @param savedFlashHeader
+	 * 		the flash header saved by an interrupted program operation, it is used if the header on the device has
+	 * 		already been erased
+	 */
+	private void program(final ChipType chipType, final JennicBinaryImage binaryImage,
+						 @Nullable final String savedFlashHeader) throws Exception {
+
 		assertImageCompatible(binaryImage, chipType);
 
-		final byte[] macAddressBeforeBytes = readMacAddressBytes(chipType);
-		final MacAddress macAddressBefore = new MacAddress(macAddressBeforeBytes);
+		// the chip type may have been taken from the session cache, so this is the first request to the boot loader
+		waitForConnection();
+		if (isCanceled()) {
+			return;
+		}
+
+		byte[] macAddressBeforeBytes = readFlashHeader(chipType);
+		MacAddress macAddressBefore = new MacAddress(macAddressBeforeBytes);
+
+		if (savedFlashHeader != null && JennicFlashContents.isErased(macAddressBeforeBytes, 0,
+				macAddressBeforeBytes.length
+		)) {
+			log.info("Flash header has been erased by an interrupted program operation, using the saved one");
+			macAddressBeforeBytes = BaseEncoding.base16().decode(savedFlashHeader);
+			macAddressBefore = new MacAddress(macAddressBeforeBytes);
+		}
 
 		if (isBrokenMacAddress(macAddressBefore)) {
 			throw new MacAddressBrokenException("Device MAC address (" + macAddressBefore + ") is broken!");
@@ -66,71 +207,410 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 
 		writeMacAddressToImage(macAddressBeforeBytes, binaryImage);
 
-		while (!isCanceled() && !helper.waitForConnection()) {
-			log.debug("Waiting for a connection...");
+		sessionCache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+
+		if (differential) {
+			configureFlash(chipType);
+			writeChangedSectors(binaryImage, chipType, macAddressBeforeBytes);
+			finish(macAddressBefore);
+			return;
 		}
 
+		final Set<Sector> sectors = binaryImage.getSectors();
+		eraseSectors(chipType, sectors);
+
+		final ProgramCheckpoint checkpoint = ProgramCheckpoint.erased(getFirmwareImage(), getSectorNumbers(sectors))
+				.withAttribute(ATTRIBUTE_FLASH_HEADER, BaseEncoding.base16().encode(macAddressBeforeBytes));
+		checkpointStore.record(checkpoint);
+
+		writeBinaryImage(binaryImage, binaryImage.getNextBlock(), 0, checkpoint, chipType);
+		finish(macAddressBefore);
+	}
+
+	/**
+	 * Continues an interrupted program operation. The last acknowledged block is read back and the following block
+	 * is checked to be still erased before writing is continued. If no block has been acknowledged, writing starts
+	 * with the first block, using the flash header that has been saved before erasing.
+	 *
+	 * @return <code>true</code> if the operation has been continued, <code>false</code> if the device has to be
+	 *         programmed from scratch
+	 */
+	private boolean resume(final ChipType chipType, final JennicBinaryImage binaryImage,
+						   final ProgramCheckpoint checkpoint) throws Exception {
+
+		final String flashHeader = checkpoint.getAttribute(ATTRIBUTE_FLASH_HEADER);
+		if (flashHeader == null) {
+			return false;
+		}
+		for (Sector sector : binaryImage.getSectors()) {
+			if (!checkpoint.isErased(sector.ordinal())) {
+				return false;
+			}
+		}
+
+		assertImageCompatible(binaryImage, chipType);
+
+		final byte[] macAddressBeforeBytes = BaseEncoding.base16().decode(flashHeader);
+		writeMacAddressToImage(macAddressBeforeBytes, binaryImage);
+
+		waitForConnection();
 		if (isCanceled()) {
-			return null;
+			return true;
 		}
 
-		eraseSectors(chipType);
-		writeBinaryImage(binaryImage);
+		final OperationSpan verifySpan = startPhase("verifyCheckpoint");
+		final BinaryImageBlock nextBlock;
+		try {
+
+			BinaryImageBlock lastBlock = null;
+			for (int i = 0; i <= checkpoint.getLastAcknowledgedBlock(); i++) {
+				lastBlock = binaryImage.getNextBlock();
+			}
+			nextBlock = binaryImage.getNextBlock();
+
+			if (checkpoint.getLastAcknowledgedBlock() >= 0
+					&& (lastBlock == null || !isFlashEqual(lastBlock.getAddress(), lastBlock.getData()))) {
+				log.debug("Last acknowledged block of {} differs, programming from scratch", checkpoint);
+				return false;
+			}
+			if (nextBlock != null && !isFlashErased(nextBlock.getAddress(), nextBlock.getData().length)) {
+				log.debug("Block after {} is not erased, programming from scratch", checkpoint);
+				return false;
+			}
 
-		final MacAddress macAddressAfter = readMacAddress(chipType);
+		} finally {
+			verifySpan.end();
+		}
 
-		// if MAC address is broken after flashing try to rewrite the old MAC address that was there before
-		if (isBrokenMacAddress(macAddressAfter)) {
+		log.debug("Resuming from {}", checkpoint);
+		sessionCache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+		configureFlash(chipType);
 
-			// write old MAC address
-			runSubOperation(operationFactory.createWriteMacAddressOperation(macAddressBefore, 2000, null), 0f);
+		writeBinaryImage(binaryImage, nextBlock, checkpoint.getLastAcknowledgedBlock() + 1, checkpoint, chipType);
+		finish(new MacAddress(macAddressBeforeBytes));
+		return true;
+	}
 
-			// if MAC address is still broken, abort
-			if (isBrokenMacAddress(readMacAddress(chipType))) {
-				throw new MacAddressBrokenException(
-						"After flashing the MAC address seems to be " + macAddressAfter + " which may result in unexpected behavior!"
-				);
+	private void waitForConnection() throws Exception {
+		final OperationSpan waitForConnectionSpan = startPhase("waitForConnection");
+		try {
+			while (!isCanceled() && !helper.waitForConnection()) {
+				if (getRemainingMillis() == 0) {
+					throw new TimeoutException("Boot loader did not answer within " + getTimeoutMillis() + " ms");
+				}
+				log.debug("Waiting for a connection...");
+				waitForConnectionSpan.addRetry();
 			}
+		} finally {
+			waitForConnectionSpan.end();
+		}
+
+		if (isCanceled()) {
+			return;
 		}
 
+		final OperationSpan baudRateSpan = startPhase("negotiateBaudRate");
+		try {
+			helper.negotiateBaudRate();
+		} finally {
+			baudRateSpan.end();
+		}
+	}
+
+	private void finish(final MacAddress macAddress) throws Exception {
+
+		if (isCanceled()) {
+			// the image is incomplete, the checkpoint allows to resume it
+			return;
+		}
+
+		// the flash header has been verified right after it has been written
+		if (JennicHelper.isCacheableMacAddress(macAddress)) {
+			sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+		}
+
+		checkpointStore.clear();
+
 		runSubOperation(operationFactory.createResetOperation(1000, null), FRACTION_RESET);
+	}
 
-		return null;
+	private boolean isFlashEqual(final int address, final byte[] data) throws Exception {
+		return Arrays.equals(data, helper.readFlash(address, data.length));
+	}
+
+	private boolean isFlashErased(final int address, final int length) throws Exception {
+		for (byte b : helper.readFlash(address, length)) {
+			if (b != (byte) 0xFF) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private boolean isBrokenMacAddress(final MacAddress macAddress) throws Exception {
 		return MacAddress.HIGHEST_MAC_ADDRESS.equals(macAddress);
 	}
 
-	private void writeBinaryImage(final JennicBinaryImage binaryImage)
-			throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
-			FlashProgramFailedException {
+	private void writeBinaryImage(final JennicBinaryImage binaryImage, @Nullable final BinaryImageBlock firstBlock,
+								  final int firstBlockNr, final ProgramCheckpoint checkpoint, final ChipType chipType)
+			throws Exception {
 
-		BinaryImageBlock block;
+		final int blockCount = binaryImage.getBlockCount();
+		final int bytesTotal = binaryImage.getLength();
 
-		int blockNr = 0;
-		int blockCount = binaryImage.getBlockCount();
+		final OperationSpan span = startPhase("writeImage");
+		try {
 
-		while ((block = binaryImage.getNextBlock()) != null) {
+			final JennicRamProgrammer.Listener listener = new JennicRamProgrammer.Listener() {
 
-			blockNr++;
+				private int blockNr = firstBlockNr;
 
-			if (log.isTraceEnabled()) {
-				log.trace("Writing block {} of {}", blockNr, blockCount);
+				private int bytesWritten = Math.min(bytesTotal, firstBlockNr * JennicBinaryImage.BLOCK_SIZE);
+
+				{
+					transferProgress(bytesWritten, bytesTotal);
+				}
+
+				@Override
+				public boolean isCanceled() {
+					return JennicProgramOperation.this.isCanceled();
+				}
+
+				@Override
+				public void onBlockWritten(final BinaryImageBlock block) throws Exception {
+
+					checkpointStore.record(checkpoint.withAcknowledgedBlock(blockNr));
+
+					blockNr++;
+					span.addBytes(block.getData().length);
+					bytesWritten += block.getData().length;
+
+					final float progressBefore = FRACTION_GET_CHIP_TYPE + FRACTION_READ_MAC_FROM_DEVICE;
+					progress(progressBefore + (FRACTION_PROGRAM_WRITE_IMAGE * ((float) blockNr / (float) blockCount)));
+					transferProgress(bytesWritten, bytesTotal);
+				}
+			};
+
+			int blockNr = firstBlockNr;
+			for (BinaryImageBlock block = firstBlock; block != null && !isCanceled(); block = binaryImage.getNextBlock()) {
+
+				// the flash header is always written by the boot loader, so that it can be verified right away
+				if (programmerStub != null && blockNr > 0) {
+					writeWithProgrammerStub(binaryImage, block, listener);
+					break;
+				}
+
+				if (log.isTraceEnabled()) {
+					log.trace("Writing block {} of {}", blockNr + 1, blockCount);
+				}
+
+				helper.writeFlash(block.getAddress(), block.getData());
+				if (blockNr == 0) {
+					verifyFlashHeader(block, chipType);
+				}
+				listener.onBlockWritten(block);
+				blockNr++;
+
+				preemptionPoint();
 			}
 
-			helper.writeFlash(block.getAddress(), block.getData());
+		} finally {
+			span.end();
+		}
+	}
 
-			final float progressBefore = FRACTION_GET_CHIP_TYPE + FRACTION_READ_MAC_FROM_DEVICE;
-			progress(progressBefore + (FRACTION_PROGRAM_WRITE_IMAGE * ((float) blockNr / (float) blockCount)));
+	/**
+	 * Writes the remaining blocks of the image through the programmer stub. There are no preemption points while the
+	 * stub is running, as the boot loader does not answer other operations until the stub has exited.
+	 */
+	private void writeWithProgrammerStub(final JennicBinaryImage binaryImage, final BinaryImageBlock firstBlock,
+										 final JennicRamProgrammer.Listener listener) throws Exception {
+
+		final OperationSpan startSpan = startPhase("startProgrammerStub");
+		final JennicRamProgrammer programmer;
+		try {
+			programmer = helper.startProgrammer(Files.toByteArray(programmerStub), programmerStubAddress);
+			startSpan.addBytes(programmerStub.length());
+		} finally {
+			startSpan.end();
 		}
+
+		try {
+			programmer.write(binaryImage, firstBlock, listener);
+		} catch (Exception e) {
+			// the boot loader does not answer anything else while the stub is running
+			try {
+				programmer.exit();
+			} catch (Exception exitException) {
+				log.warn("Programmer stub did not exit after writing failed: {}", exitException.getMessage());
+			}
+			throw e;
+		}
+		programmer.exit();
+
+		log.debug("Programmer stub wrote the image with a window of {} blocks and {} retransmissions",
+				programmer.getWindowSize(), programmer.getRetransmissions()
+		);
 	}
 
-	private void eraseSectors(final ChipType chipType) throws Exception {
-		helper.configureFlash(chipType);
-		helper.eraseFlash(Sector.FIRST);
-		helper.eraseFlash(Sector.SECOND);
-		helper.eraseFlash(Sector.THIRD);
+	/**
+	 * Programs only the sectors whose content differs from the image. The flash memory is compared block by block,
+	 * using the contents known from earlier operations of this session and reading back the others. Sectors without
+	 * changes are skipped, the changed sectors are erased and only their blocks that are not erased in the image are
+	 * written. Unlike a full program operation, the checkpoint only keeps the flash header, it can not be resumed.
+	 */
+	private void writeChangedSectors(final JennicBinaryImage binaryImage, final ChipType chipType,
+									 final byte[] flashHeader) throws Exception {
+
+		final JennicFlashContents contents = helper.getFlashContents();
+		final Map<Sector, List<BinaryImageBlock>> changedSectors = Maps.newEnumMap(Sector.class);
+
+		final float progressBefore = FRACTION_GET_CHIP_TYPE + FRACTION_READ_MAC_FROM_DEVICE;
+		final int blockCount = binaryImage.getBlockCount();
+		final int bytesTotal = binaryImage.getLength();
+		int blocksDone = 0;
+
+		final OperationSpan compareSpan = startPhase("compareFlash");
+		try {
+
+			BinaryImageBlock block = binaryImage.getNextBlock();
+			while (block != null) {
+
+				final Sector sector = Sector.spanning(block.getAddress(), 1).iterator().next();
+				final List<BinaryImageBlock> sectorBlocks = Lists.newArrayList();
+				for (; block != null && block.getAddress() <= sector.getEnd(); block = binaryImage.getNextBlock()) {
+					sectorBlocks.add(block);
+				}
+
+				if (!isSectorUnchanged(contents, sector, sectorBlocks, compareSpan)) {
+					changedSectors.put(sector, sectorBlocks);
+				}
+
+				blocksDone += sectorBlocks.size();
+				progress(progressBefore + FRACTION_PROGRAM_WRITE_IMAGE * blocksDone / (2f * blockCount));
+				preemptionPoint();
+			}
+
+		} finally {
+			compareSpan.end();
+		}
+
+		log.debug("Sectors changed by the image: {}", changedSectors.keySet());
+
+		checkpointStore.record(ProgramCheckpoint.erased(getFirmwareImage(), ImmutableSet.<Integer>of())
+				.withAttribute(ATTRIBUTE_FLASH_HEADER, BaseEncoding.base16().encode(flashHeader))
+		);
+
+		final OperationSpan eraseSpan = startPhase("eraseSectors");
+		try {
+			helper.eraseFlash(changedSectors.keySet());
+		} finally {
+			eraseSpan.end();
+		}
+
+		int bytesDone = bytesTotal;
+		for (List<BinaryImageBlock> sectorBlocks : changedSectors.values()) {
+			for (BinaryImageBlock sectorBlock : sectorBlocks) {
+				bytesDone -= sectorBlock.getData().length;
+			}
+		}
+		int bytesWritten = 0;
+
+		final OperationSpan writeSpan = startPhase("writeImage");
+		try {
+
+			transferProgress(bytesDone, bytesTotal);
+
+			for (List<BinaryImageBlock> sectorBlocks : changedSectors.values()) {
+				for (BinaryImageBlock sectorBlock : sectorBlocks) {
+
+					final byte[] data = sectorBlock.getData();
+					if (!JennicFlashContents.isErased(data, 0, data.length)) {
+						helper.writeFlash(sectorBlock.getAddress(), data);
+						if (sectorBlock.getAddress() == 0) {
+							verifyFlashHeader(sectorBlock, chipType);
+						}
+						writeSpan.addBytes(data.length);
+						bytesWritten += data.length;
+					}
+
+					bytesDone += data.length;
+					progress(progressBefore + FRACTION_PROGRAM_WRITE_IMAGE * (bytesTotal + bytesDone) / (2f * bytesTotal));
+					transferProgress(bytesDone, bytesTotal);
+
+					preemptionPoint();
+				}
+			}
+
+		} finally {
+			writeSpan.end();
+		}
+
+		log.info("Differential programming wrote {} of {} bytes, {} bytes saved compared to a full program operation",
+				new Object[]{bytesWritten, bytesTotal, bytesTotal - bytesWritten}
+		);
+	}
+
+	/**
+	 * Compares a sector of the flash memory with the blocks of the image in this sector. The part of the sector
+	 * behind the image has to be erased.
+	 */
+	private boolean isSectorUnchanged(final JennicFlashContents contents, final Sector sector,
+									  final List<BinaryImageBlock> sectorBlocks, final OperationSpan span)
+			throws Exception {
+
+		final int sectorBlockCount = (sector.getEnd() + 1 - sector.getStart()) / JennicBinaryImage.BLOCK_SIZE;
+		final int chunkLength = COMPARE_CHUNK_BLOCKS * JennicBinaryImage.BLOCK_SIZE;
+
+		for (int chunk = 0; chunk < sectorBlockCount; chunk += COMPARE_CHUNK_BLOCKS) {
+
+			final int chunkAddress = sector.getStart() + chunk * JennicBinaryImage.BLOCK_SIZE;
+			if (!contents.isKnown(chunkAddress, chunkLength)) {
+				contents.read(chunkAddress, helper.readFlash(chunkAddress, chunkLength));
+				span.addBytes(chunkLength);
+			}
+
+			for (int i = chunk; i < chunk + COMPARE_CHUNK_BLOCKS; i++) {
+				final byte[] expected = i < sectorBlocks.size() ? sectorBlocks.get(i).getData() : NO_DATA;
+				if (!contents.contains(sector.getStart() + i * JennicBinaryImage.BLOCK_SIZE, expected, 0,
+						expected.length
+				)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private void configureFlash(final ChipType chipType) throws Exception {
+		final OperationSpan configureFlashSpan = startPhase("configureFlash");
+		try {
+			helper.configureFlash(chipType);
+		} finally {
+			configureFlashSpan.end();
+		}
+	}
+
+	private void eraseSectors(final ChipType chipType, final Set<Sector> sectors) throws Exception {
+
+		configureFlash(chipType);
+
+		final OperationSpan eraseSpan = startPhase("eraseSectors");
+		try {
+			log.debug("Erasing sectors {}", sectors);
+			helper.eraseFlash(sectors);
+		} finally {
+			eraseSpan.end();
+		}
+	}
+
+	private static Set<Integer> getSectorNumbers(final Set<Sector> sectors) {
+		final ImmutableSet.Builder<Integer> sectorNumbers = ImmutableSet.builder();
+		for (Sector sector : sectors) {
+			sectorNumbers.add(sector.ordinal());
+		}
+		return sectorNumbers.build();
 	}
 
 	private void writeMacAddressToImage(final byte[] macAddressBytes, final JennicBinaryImage binaryImage)
@@ -138,17 +618,65 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 		binaryImage.insertHeader(macAddressBytes);
 	}
 
-	private MacAddress readMacAddress(final ChipType chipType) throws Exception {
-		return new MacAddress(readMacAddressBytes(chipType));
-	}
+	/**
+	 * Reads the flash header that contains the MAC address of the device. The header is taken from the flash contents
+	 * if they are known from earlier operations of this session.
+	 */
+	private byte[] readFlashHeader(final ChipType chipType) throws Exception {
+
+		final int headerStart = chipType.getHeaderStart();
+		final int headerLength = chipType.getHeaderLength();
 
-	private byte[] readMacAddressBytes(final ChipType chipType) throws Exception {
-		return readDeviceFlashHeader(chipType.getHeaderStart(), chipType.getHeaderLength());
+		final OperationSpan span = startPhase("readFlashHeader");
+		try {
+
+			final byte[] firstBlock = helper.getFlashContents().getBlock(0);
+			final byte[] header = firstBlock != null && headerStart + headerLength <= firstBlock.length ?
+					Arrays.copyOfRange(firstBlock, headerStart, headerStart + headerLength) :
+					helper.readFlash(headerStart, headerLength);
+
+			span.addBytes(headerLength);
+			progress(FRACTION_GET_CHIP_TYPE + FRACTION_READ_MAC_FROM_DEVICE);
+			return header;
+
+		} finally {
+			span.end();
+		}
 	}
 
-	private byte[] readDeviceFlashHeader(final int address, final int length) throws Exception {
-		ReadFlashOperation subOperation = operationFactory.createReadFlashOperation(address, length, 120000, null);
-		return runSubOperation(subOperation, FRACTION_READ_MAC_FROM_DEVICE);
+	/**
+	 * Reads back the flash header right after the first block has been written, while the rest of the first sector
+	 * is still erased. A wrong header is written again in place and, if that does not help, after erasing the first
+	 * sector once more.
+	 */
+	private void verifyFlashHeader(final BinaryImageBlock firstBlock, final ChipType chipType) throws Exception {
+
+		final int headerStart = chipType.getHeaderStart();
+		final byte[] header = Arrays.copyOfRange(
+				firstBlock.getData(), headerStart, headerStart + chipType.getHeaderLength()
+		);
+
+		final OperationSpan span = startPhase("verifyFlashHeader");
+		try {
+			for (int attempt = 0; !isFlashEqual(headerStart, header); attempt++) {
+
+				if (attempt == MAX_HEADER_REWRITES) {
+					throw new MacAddressBrokenException(
+							"The flash header of the device could not be written, the MAC address is " +
+									new MacAddress(helper.readFlash(headerStart, header.length))
+					);
+				}
+
+				log.warn("Flash header has not been written correctly, writing it again");
+				span.addRetry();
+				if (attempt > 0) {
+					helper.eraseFlash(Sector.FIRST);
+				}
+				helper.writeFlash(firstBlock.getAddress(), firstBlock.getData());
+			}
+		} finally {
+			span.end();
+		}
 	}
 
 	private void assertImageCompatible(final JennicBinaryImage binaryImage, final ChipType chipType) throws Exception {
@@ -157,5 +685,13 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 			log.error("Device chip type ({}) and image chip type ({}) mismatch!", chipType, binaryImage.getChipType());
 			throw new ProgramChipMismatchException(chipType, binaryImage.getChipType());
 		}
+
+		if (binaryImage.getLength() > FLASH_SIZE) {
+			throw new FlashProgramFailedException(String.format(
+					"Image of %d bytes does not fit into the flash memory of %d bytes", binaryImage.getLength(),
+					FLASH_SIZE
+			)
+			);
+		}
 	}
 }
@@ -0,0 +1,254 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.exception.FlashProgramFailedException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
+import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+
+/**
+ * Host side of a flash programmer stub that has been loaded into the RAM of the device, see
+ * {@link JennicHelper#startProgrammer(byte[], int)}. Instead of waiting for the answer to every block like the boot
+ * loader, the stub accepts a window of blocks that are streamed back to back and acknowledges them cumulatively.
+ * <p/>
+ * The stub uses the frame format of the boot loader with the following messages:
+ * <ul>
+ * <li><code>READY</code> (stub): protocol version, window size. Sent once the stub is running.</li>
+ * <li><code>WRITE</code> (host): sequence number, address (little endian), data. The sequence number is incremented
+ * modulo 256 for every block.</li>
+ * <li><code>ACK</code> (stub): sequence number, status. Status <code>0x00</code> acknowledges all blocks up to and
+ * including the sequence number. Any other status reports that the block with the sequence number has not been
+ * programmed, e.g. because of a checksum error, while all blocks before it have. After such a report, the stub
+ * silently drops blocks until the reported one arrives again. Blocks that have been programmed already are answered
+ * with an acknowledgement of the last programmed block.</li>
+ * <li><code>EXIT</code> (host), <code>EXIT</code> response (stub): status. The stub returns to the boot loader.</li>
+ * </ul>
+ * Lost or rejected blocks are sent again starting with the first unacknowledged one.
+ * <p/>
+ * Instances are not thread safe.
+ */
+final class JennicRamProgrammer {
+
+	private static final Logger log = LoggerFactory.getLogger(JennicRamProgrammer.class);
+
+	static final int READY = 0x80;
+
+	static final int WRITE_REQUEST = 0x81;
+
+	static final int ACK = 0x82;
+
+	static final int EXIT_REQUEST = 0x83;
+
+	static final int EXIT_RESPONSE = 0x84;
+
+	static final int PROTOCOL_VERSION = 1;
+
+	/**
+	 * Largest window that keeps sequence numbers of sent and acknowledged blocks unambiguous.
+	 */
+	static final int MAX_WINDOW_SIZE = 128;
+
+	private static final int DEFAULT_ACK_TIMEOUT_MILLIS = 1000;
+
+	/**
+	 * Number of times the window may be sent again without any block being acknowledged.
+	 */
+	private static final int MAX_RETRANSMISSIONS = 5;
+
+	interface Listener {
+
+		/**
+		 * Called for every block that has been acknowledged by the stub, in the order of the blocks.
+		 */
+		void onBlockWritten(BinaryImageBlock block) throws Exception;
+
+		/**
+		 * Checked before further blocks are sent. Writing stops without waiting for the blocks that are on their way.
+		 */
+		boolean isCanceled();
+	}
+
+	private final Connection connection;
+
+	private final JennicFlashContents flashContents;
+
+	private final BootloaderCodec codec = new BootloaderCodec();
+
+	private final int ackTimeoutMillis;
+
+	private int windowSize;
+
+	private int retransmissions;
+
+	JennicRamProgrammer(final Connection connection, final JennicFlashContents flashContents) {
+		this(connection, flashContents, DEFAULT_ACK_TIMEOUT_MILLIS);
+	}
+
+	JennicRamProgrammer(final Connection connection, final JennicFlashContents flashContents,
+						final int ackTimeoutMillis) {
+		this.connection = connection;
+		this.flashContents = flashContents;
+		this.ackTimeoutMillis = ackTimeoutMillis;
+	}
+
+	/**
+	 * Waits for the stub to announce itself.
+	 *
+	 * @param maxWindowSize
+	 * 		the largest window the host wants to use
+	 */
+	void awaitReady(final int maxWindowSize) throws Exception {
+
+		codec.receive(connection, READY, ackTimeoutMillis);
+		if (codec.getReplyLength() < 3 || codec.getReplyByte(1) != PROTOCOL_VERSION) {
+			throw new FlashProgramFailedException("Unsupported programmer stub: " + codec.replyToString());
+		}
+
+		windowSize = Math.max(1, Math.min(Math.min(maxWindowSize, MAX_WINDOW_SIZE), codec.getReplyByte(2) & 0xFF));
+		log.debug("Programmer stub is ready, using a window of {} blocks", windowSize);
+	}
+
+	/**
+	 * Streams blocks to the stub until the image has no more blocks or the listener reports that writing has been
+	 * canceled.
+	 *
+	 * @param binaryImage
+	 * 		the image the blocks are taken from
+	 * @param firstBlock
+	 * 		the first block to write, the following ones are taken from the image
+	 * @param listener
+	 * 		listener that is called for every acknowledged block
+	 */
+	void write(final JennicBinaryImage binaryImage, @Nullable final BinaryImageBlock firstBlock,
+			   final Listener listener) throws Exception {
+
+		final LinkedList<BinaryImageBlock> pending = new LinkedList<BinaryImageBlock>();
+		final OutputStream outputStream = connection.getOutputStream();
+
+		BinaryImageBlock nextBlock = firstBlock;
+		int baseSequenceNumber = 0;
+		int sent = 0;
+		int failedAttempts = 0;
+
+		while (true) {
+
+			while (pending.size() < windowSize && nextBlock != null) {
+				pending.add(nextBlock);
+				nextBlock = binaryImage.getNextBlock();
+			}
+
+			if (pending.isEmpty()) {
+				return;
+			}
+
+			if (sent < pending.size()) {
+				if (listener.isCanceled()) {
+					log.debug("Writing has been canceled with {} blocks on their way", sent);
+					return;
+				}
+				for (; sent < pending.size(); sent++) {
+					final BinaryImageBlock block = pending.get(sent);
+					codec.begin(WRITE_REQUEST)
+							.putByte(baseSequenceNumber + sent)
+							.putAddress(block.getAddress())
+							.putBytes(block.getData(), 0, block.getData().length)
+							.write(outputStream);
+				}
+				outputStream.flush();
+			}
+
+			int acknowledged;
+			boolean rejected;
+			try {
+
+				codec.receive(connection, ACK, ackTimeoutMillis);
+				final int distance = (codec.getReplyByte(1) - baseSequenceNumber) & 0xFF;
+				rejected = codec.getReplyByte(2) != 0x00;
+				acknowledged = rejected ? distance : distance + 1;
+
+				if (acknowledged > sent) {
+					log.trace("Ignoring acknowledgement of a block that has not been sent: {}", codec.replyToString());
+					continue;
+				}
+
+			} catch (TimeoutException e) {
+				log.debug("Programmer stub did not acknowledge block {}", baseSequenceNumber);
+				acknowledged = 0;
+				rejected = true;
+				connection.clear();
+			} catch (InvalidChecksumException e) {
+				log.debug("Corrupted acknowledgement from the programmer stub: {}", e.getMessage());
+				continue;
+			} catch (UnexpectedResponseException e) {
+				log.debug("Unexpected message from the programmer stub: {}", e.getMessage());
+				continue;
+			}
+
+			for (int i = 0; i < acknowledged; i++) {
+				final BinaryImageBlock block = pending.removeFirst();
+				flashContents.written(block.getAddress(), block.getData());
+				listener.onBlockWritten(block);
+			}
+			baseSequenceNumber = (baseSequenceNumber + acknowledged) & 0xFF;
+			sent -= acknowledged;
+
+			if (acknowledged > 0) {
+				failedAttempts = 0;
+			}
+
+			if (rejected) {
+				if (++failedAttempts > MAX_RETRANSMISSIONS) {
+					flashContents.clear();
+					throw new FlashProgramFailedException(
+							"Programmer stub did not accept the block at 0x" + Integer.toHexString(
+									pending.getFirst().getAddress()
+							) + " after " + MAX_RETRANSMISSIONS + " retransmissions"
+					);
+				}
+				retransmissions++;
+				sent = 0;
+			}
+		}
+	}
+
+	/**
+	 * Stops the stub, which returns to the boot loader. Acknowledgements of blocks that were still on their way when
+	 * writing stopped are skipped.
+	 */
+	void exit() throws Exception {
+		codec.begin(EXIT_REQUEST).send(connection.getOutputStream());
+		for (int skipped = 0; ; skipped++) {
+			try {
+				codec.receive(connection, EXIT_RESPONSE, ackTimeoutMillis);
+				break;
+			} catch (UnexpectedResponseException e) {
+				if (skipped == windowSize) {
+					throw e;
+				}
+				log.trace("Skipping message from the programmer stub while exiting: {}", codec.replyToString());
+			}
+		}
+		if (codec.getReplyByte(1) != 0x00) {
+			throw new FlashProgramFailedException("Programmer stub failed to exit: " + codec.replyToString());
+		}
+	}
+
+	int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the number of times blocks had to be sent again.
+	 */
+	int getRetransmissions() {
+		return retransmissions;
+	}
+}
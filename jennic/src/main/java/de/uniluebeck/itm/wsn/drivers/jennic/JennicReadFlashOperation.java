@@ -4,8 +4,10 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.util.StringUtils;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractReadFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationSpan;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,8 +39,17 @@ public class JennicReadFlashOperation extends AbstractReadFlashOperation {
 	protected byte[] callInternal() throws Exception {
 
 		// Wait for a connection
-		while (!isCanceled() && !helper.waitForConnection()) {
-			log.debug("Still waiting for a connection");
+		final OperationSpan waitForConnectionSpan = startPhase("waitForConnection");
+		try {
+			while (!isCanceled() && !helper.waitForConnection()) {
+				if (getRemainingMillis() == 0) {
+					throw new TimeoutException("Boot loader did not answer within " + getTimeoutMillis() + " ms");
+				}
+				log.debug("Still waiting for a connection");
+				waitForConnectionSpan.addRetry();
+			}
+		} finally {
+			waitForConnectionSpan.end();
 		}
 
 		// Return with success if the user has requested to cancel this
@@ -51,27 +62,33 @@ public class JennicReadFlashOperation extends AbstractReadFlashOperation {
 		final int address = getAddress();
 		final int length = getLength();
 		final byte flashData[] = new byte[length];
-		final int sectorEnd = address + length;
-		final float worked = 32.0f / (length <= 32.0f ? 32.0f : length);
-		int sectorStart = address;
+		int bytesRead = 0;
 
-		while (sectorStart < sectorEnd) {
+		final OperationSpan readSpan = startPhase("readFlash");
+		try {
 
-			// Determine length of the data block to read
-			final int blockSize = sectorStart + 32 > sectorEnd ? length : 32;
+			transferProgress(0, length);
 
-			// Read data block
-			byte[] data = helper.readFlash(sectorStart, blockSize);
-			System.arraycopy(data, 0, flashData, sectorStart - address, data.length);
+			while (bytesRead < length) {
 
-			// Notify listeners
-			progress(worked);
+				// Read the largest data block the boot loader supports directly into the result
+				final int blockSize = helper.readFlash(address + bytesRead, flashData, bytesRead, length - bytesRead);
+				bytesRead += blockSize;
+				readSpan.addBytes(blockSize);
 
-			// Increment start address
-			sectorStart += blockSize;
+				// Notify listeners
+				progress((float) bytesRead / length);
+				transferProgress(bytesRead, length);
 
+				preemptionPoint();
+			}
+
+		} finally {
+			readSpan.end();
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("Done, result is: " + StringUtils.toHexString(flashData));
 		}
-		log.trace("Done, result is: " + StringUtils.toHexString(flashData));
 		return flashData;
 	}
 }
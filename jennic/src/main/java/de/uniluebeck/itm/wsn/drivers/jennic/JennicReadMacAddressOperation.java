@@ -4,6 +4,7 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
@@ -24,25 +25,49 @@ public class JennicReadMacAddressOperation extends TimeLimitedOperation<MacAddre
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceSessionCache sessionCache;
+
 	@Inject
 	public JennicReadMacAddressOperation(final TimeLimiter timeLimiter,
 										 final OperationFactory operationFactory,
+										 final DeviceSessionCache sessionCache,
 										 @Assisted final long timeoutMillis,
 										 @Assisted @Nullable final OperationListener<MacAddress> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.operationFactory = operationFactory;
+		this.sessionCache = sessionCache;
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected MacAddress callInternal() throws Exception {
 
+		final MacAddress cachedMacAddress = sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class);
+		if (cachedMacAddress != null) {
+			return cachedMacAddress;
+		}
+
+		final MacAddress macAddress = readMacAddress();
+		if (JennicHelper.isCacheableMacAddress(macAddress)) {
+			sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+		}
+		return macAddress;
+	}
+
+	@SerialPortProgrammingMode
+	protected MacAddress readMacAddress() throws Exception {
+
 		log.trace("Reading MAC address...");
 
 		// Connection established, determine chip type
 		final ChipType chipType = runSubOperation(operationFactory.createGetChipTypeOperation(1000, null), 0.8f);
 		log.trace("Chip type is {}", chipType);
 
+		// determining the chip type may have validated a persisted MAC address
+		final MacAddress persistedMacAddress = sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class);
+		if (persistedMacAddress != null) {
+			return persistedMacAddress;
+		}
+
 		// Connection established, read flash header
 		final int address = chipType.getMacInFlashStart();
 		final byte[] header = runSubOperation(operationFactory.createReadFlashOperation(address, 8, 120000, null), 0.2f);
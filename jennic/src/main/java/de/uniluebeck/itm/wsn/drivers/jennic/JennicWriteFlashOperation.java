@@ -3,23 +3,37 @@ package de.uniluebeck.itm.wsn.drivers.jennic;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractWriteFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 
 public class JennicWriteFlashOperation extends AbstractWriteFlashOperation {
 
 	private static final Logger log = LoggerFactory.getLogger(JennicWriteFlashOperation.class);
 
+	private static final ChipType[] JENNIC_CHIP_TYPES = {
+			ChipType.JN5121, ChipType.JN513X, ChipType.JN513XR1, ChipType.JN5148
+	};
+
 	private final JennicHelper helper;
 
+	private final DeviceSessionCache sessionCache;
+
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public JennicWriteFlashOperation(final TimeLimiter timeLimiter,
 									 final JennicHelper helper,
+									 final DeviceSessionCache sessionCache,
+									 final ProgramCheckpointStore checkpointStore,
 									 @Assisted("address") int address,
 									 @Assisted byte[] data,
 									 @Assisted("length") int length,
@@ -27,14 +41,33 @@ public class JennicWriteFlashOperation extends AbstractWriteFlashOperation {
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, address, data, length, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.sessionCache = sessionCache;
+		this.checkpointStore = checkpointStore;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 		log.trace("Writing to flash...");
-		helper.writeFlash(getAddress(), getData());
+		// only the first length bytes of the data are written
+		final byte[] data = getLength() < getData().length ? Arrays.copyOf(getData(), getLength()) : getData();
+		if (overlapsFlashHeader(getAddress(), data.length)) {
+			sessionCache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+		}
+		// an interrupted program operation can not be resumed, it expects the blocks it has not written to be erased
+		checkpointStore.clear();
+		helper.writeFlash(getAddress(), data);
 		log.trace("Flash written");
 		return null;
 	}
+
+	private static boolean overlapsFlashHeader(final int address, final int length) {
+		for (ChipType chipType : JENNIC_CHIP_TYPES) {
+			final int headerStart = chipType.getHeaderStart();
+			if (address < headerStart + chipType.getHeaderLength() && headerStart < address + length) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
@@ -4,15 +4,19 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractWriteMacAddressOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 
 import static de.uniluebeck.itm.util.StringUtils.toHexString;
 
@@ -20,7 +24,12 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 
 	private static final Logger log = LoggerFactory.getLogger(JennicWriteMacAddressOperation.class);
 
-	private static final int BLOCK_SIZE = 128;
+	private static final int BLOCK_SIZE = JennicBinaryImage.BLOCK_SIZE;
+
+	/**
+	 * Maximum number of blocks that are read with a single call, so that progress is reported regularly.
+	 */
+	private static final int READ_CHUNK_BLOCKS = 16;
 
 	private static final float FRACTION_READ_FIRST_SECTOR = 0.49f;
 
@@ -32,22 +41,33 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceSessionCache sessionCache;
+
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public JennicWriteMacAddressOperation(final TimeLimiter timeLimiter,
 										  final JennicHelper helper,
 										  final OperationFactory operationFactory,
+										  final DeviceSessionCache sessionCache,
+										  final ProgramCheckpointStore checkpointStore,
 										  @Assisted final MacAddress macAddress,
 										  @Assisted final long timeoutMillis,
 										  @Nullable @Assisted final OperationListener<Void> operationCallback) {
 		super(timeLimiter, macAddress, timeoutMillis, operationCallback);
 		this.helper = helper;
 		this.operationFactory = operationFactory;
+		this.sessionCache = sessionCache;
+		this.checkpointStore = checkpointStore;
 	}
 
 	private void writeMacAddress(ChipType chipType) throws Exception {
 
 		// Wait for a helper
 		while (!isCanceled() && !helper.waitForConnection()) {
+			if (getRemainingMillis() == 0) {
+				throw new TimeoutException("Boot loader did not answer within " + getTimeoutMillis() + " ms");
+			}
 			log.debug("Still waiting for a connection");
 		}
 
@@ -62,7 +82,7 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 		progress(FRACTION_GET_CHIP_TYPE + FRACTION_READ_FIRST_SECTOR);
 
 		// Check if this operation has been cancelled
-		if (isCanceled()) {
+		if (isCanceled() || blocksFirstSector == null) {
 			return;
 		}
 
@@ -80,34 +100,56 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 		System.arraycopy(macAddressBytes, 0, blocksFirstSector[0], chipType.getHeaderStart(), macAddressBytes.length);
 
 		helper.configureFlash(chipType);
+		sessionCache.invalidate(DeviceSessionCache.MAC_ADDRESS);
+		checkpointStore.clear();
 		helper.eraseFlash(Sector.FIRST);
 
 		writeSector(Sector.FIRST, blocksFirstSector);
+		if (JennicHelper.isCacheableMacAddress(macAddress)) {
+			sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+		}
 		progress(
 				FRACTION_GET_CHIP_TYPE + FRACTION_READ_FIRST_SECTOR + FRACTION_WRITE_FIRST_SECTOR
 		);
 	}
 
+	/**
+	 * Reads the blocks of a sector. Blocks whose content is known from earlier operations of this session are not
+	 * read again, consecutive unknown blocks are read with as few requests as possible.
+	 *
+	 * @return the blocks of the sector or <code>null</code> if the operation has been cancelled
+	 */
 	protected byte[][] readSector(final Sector index) throws Exception {
 
+		final JennicFlashContents contents = helper.getFlashContents();
 		final int start = index.getStart();
-		final int length = index.getEnd() - start;
-
-		// Calculate number of blocks to read
-		final int totalBlocks = length / BLOCK_SIZE;
-		final int residue = length - totalBlocks * BLOCK_SIZE;
+		final int totalBlocks = (index.getEnd() + 1 - start) / BLOCK_SIZE;
+		final byte[][] sector = new byte[totalBlocks][];
 
-		log.trace(String.format("length = %d, totalBlocks = %d, residue = %d", length, totalBlocks, residue));
+		int readBlocks = 0;
+		while (readBlocks < totalBlocks) {
 
-		// Prepare byte array
-		final byte[][] sector = new byte[totalBlocks + (residue > 0 ? 1 : 0)][BLOCK_SIZE];
+			sector[readBlocks] = contents.getBlock(start + readBlocks * BLOCK_SIZE);
+			if (sector[readBlocks] != null) {
+				readBlocks++;
+				continue;
+			}
 
-		// Read block after block
-		int address = start;
-		for (int readBlocks = 0; readBlocks < totalBlocks; readBlocks++) {
+			// Read all unknown blocks up to the next known one at once
+			int unknownBlocks = 1;
+			while (readBlocks + unknownBlocks < totalBlocks
+					&& contents.getBlock(start + (readBlocks + unknownBlocks) * BLOCK_SIZE) == null
+					&& unknownBlocks < READ_CHUNK_BLOCKS) {
+				unknownBlocks++;
+			}
 
-			sector[readBlocks] = helper.readFlash(address, BLOCK_SIZE);
-			address += BLOCK_SIZE;
+			final int address = start + readBlocks * BLOCK_SIZE;
+			final byte[] data = helper.readFlash(address, unknownBlocks * BLOCK_SIZE);
+			contents.read(address, data);
+			for (int i = 0; i < unknownBlocks; i++) {
+				sector[readBlocks + i] = Arrays.copyOfRange(data, i * BLOCK_SIZE, (i + 1) * BLOCK_SIZE);
+			}
+			readBlocks += unknownBlocks;
 
 			progress(
 					FRACTION_GET_CHIP_TYPE + (FRACTION_READ_FIRST_SECTOR * ((float) readBlocks / (float) totalBlocks))
@@ -120,23 +162,23 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 			}
 		}
 
-		// Read residue
-		if (residue > 0) {
-			sector[sector.length - 1] = helper.readFlash(address, residue);
-		}
-
 		return sector;
 	}
 
+	/**
+	 * Writes the blocks into the erased sector. Erased blocks are skipped, so only the used part of the sector is
+	 * written.
+	 */
 	private void writeSector(final Sector sector, final byte[][] blocks) throws Exception {
 
 		int address = sector.getStart();
 
 		for (int block = 0; block < blocks.length; ++block) {
 
-			log.trace("Writing {} sector, block {}", sector, block);
-
-			helper.writeFlash(address, blocks[block]);
+			if (!JennicFlashContents.isErased(blocks[block], 0, blocks[block].length)) {
+				log.trace("Writing {} sector, block {}", sector, block);
+				helper.writeFlash(address, blocks[block]);
+			}
 
 			address += blocks[block].length;
 
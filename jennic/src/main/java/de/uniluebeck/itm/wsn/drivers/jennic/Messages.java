@@ -23,7 +23,6 @@
 
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
-import java.nio.ByteBuffer;
 
 /**
  * @author Markus Class defining specific message types
@@ -104,12 +103,7 @@ public class Messages {
 
 	/**     */
 	public static byte[] addressToBytes(int value) {
-		byte[] array = ByteBuffer.allocate(4).putInt(value).array();
-		byte[] result = new byte[array.length];
-		for (int i = 0; i < result.length; ++i) {
-			result[i] = array[array.length - 1 - i];
-		}
-		return result;
+		return new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >>> 24)};
 	}
 
 	/**     */
@@ -151,7 +145,7 @@ public class Messages {
 	/**     */
 	public static byte calculateChecksum(byte[] message, int start, int length) {
 		byte checksum = 0;
-		for (int i = start; i < length; ++i) {
+		for (int i = start; i < start + length; ++i) {
 			checksum ^= message[i];
 		}
 		return checksum;
@@ -187,11 +181,21 @@ public class Messages {
 		return message;
 	}
 
+	/**
+	 * Clock of the boot loader UART. The baud rate is this clock divided by the divisor of a change baud rate request.
+	 */
+	public static final int BAUD_RATE_CLOCK = 1000000;
+
 	/** */
 	public static byte[] changeBaudRateMessage() {
+		return changeBaudRateMessage(9);
+	}
+
+	/** */
+	public static byte[] changeBaudRateMessage(int divisor) {
 		byte[] message = new byte[2];
 		message[0] = CHANGE_BAUD_RATE_REQUEST;
-		message[1] = 9;
+		message[1] = (byte) divisor;
 		return message;
 	}
 
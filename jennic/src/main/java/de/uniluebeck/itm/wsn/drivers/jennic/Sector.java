@@ -23,6 +23,9 @@
 
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * @author Markus Class defining sectors
  */
@@ -64,4 +67,24 @@ public enum Sector {
 	public int getEnd() {
 		return end;
 	}
+
+	/**
+	 * Returns the sectors that contain at least one byte of the given address range.
+	 *
+	 * @param address
+	 * 		the first address of the range
+	 * @param length
+	 * 		the number of bytes in the range
+	 *
+	 * @return the sectors overlapping the range
+	 */
+	public static Set<Sector> spanning(int address, int length) {
+		final Set<Sector> sectors = EnumSet.noneOf(Sector.class);
+		for (Sector sector : values()) {
+			if (sector.start < address + length && sector.end >= address) {
+				sectors.add(sector);
+			}
+		}
+		return sectors;
+	}
 }
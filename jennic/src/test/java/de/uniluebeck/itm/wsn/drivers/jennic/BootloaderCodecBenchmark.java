@@ -0,0 +1,211 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.ConnectionListener;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compares the round trip time of flash program requests sent with {@link JennicHelper} and its
+ * {@link BootloaderCodec} with the array based encoding and the byte by byte decoding that the helper used before.
+ * Both run against an in-memory connection that answers like the boot loader, so only the host side is measured.
+ * <p/>
+ * Usage: <code>BootloaderCodecBenchmark [roundTrips]</code>
+ */
+public class BootloaderCodecBenchmark {
+
+	private static final int DEFAULT_ROUND_TRIPS = 200000;
+
+	private static final int WARMUP_ROUND_TRIPS = 50000;
+
+	private static final int BLOCK_SIZE = 128;
+
+	public static void main(String[] args) throws Exception {
+
+		final int roundTrips = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUND_TRIPS;
+
+		final LoopbackConnection connection = new LoopbackConnection();
+		final JennicHelper helper = new JennicHelper(connection, new DeviceSessionCache(),
+				Maps.<String, String>newHashMap()
+		);
+		final byte[] block = new byte[BLOCK_SIZE];
+
+		for (int i = 0; i < WARMUP_ROUND_TRIPS; i++) {
+			legacyWriteFlash(connection, i * BLOCK_SIZE, block);
+			helper.writeFlash(i * BLOCK_SIZE, block);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < roundTrips; i++) {
+			legacyWriteFlash(connection, i * BLOCK_SIZE, block);
+		}
+		final double legacyNanos = (double) (System.nanoTime() - start) / roundTrips;
+
+		start = System.nanoTime();
+		for (int i = 0; i < roundTrips; i++) {
+			helper.writeFlash(i * BLOCK_SIZE, block);
+		}
+		final double codecNanos = (double) (System.nanoTime() - start) / roundTrips;
+
+		System.out.println(String.format("%d flash program round trips of %d bytes", roundTrips, BLOCK_SIZE));
+		System.out.println(String.format("legacy encoding: %8.1f ns per round trip", legacyNanos));
+		System.out.println(String.format("codec:           %8.1f ns per round trip", codecNanos));
+	}
+
+	private static void legacyWriteFlash(final Connection connection, final int address, final byte[] data)
+			throws Exception {
+
+		final byte[] message = new byte[1 + 4 + data.length];
+		message[0] = Messages.FLASH_PROGRAM_REQUEST;
+		System.arraycopy(legacyAddressToBytes(address), 0, message, 1, 4);
+		System.arraycopy(data, 0, message, 5, data.length);
+
+		final byte[] frame = new byte[message.length + 2];
+		frame[0] = (byte) (message.length + 1);
+		System.arraycopy(message, 0, frame, 1, message.length);
+		frame[frame.length - 1] = Messages.calculateChecksum(frame, 0, frame.length - 1);
+
+		final OutputStream outputStream = connection.getOutputStream();
+		outputStream.write(frame);
+		outputStream.flush();
+
+		final InputStream inputStream = connection.getInputStream();
+		connection.waitDataAvailable(1000);
+		final int replyLength = inputStream.read();
+		final byte[] reply = new byte[replyLength - 1];
+		for (int i = 0; i < reply.length; ++i) {
+			connection.waitDataAvailable(1000);
+			reply[i] = (byte) inputStream.read();
+		}
+		connection.waitDataAvailable(1000);
+		final byte checksum = (byte) inputStream.read();
+
+		final byte[] fullReply = new byte[reply.length + 1];
+		fullReply[0] = (byte) replyLength;
+		System.arraycopy(reply, 0, fullReply, 1, reply.length);
+		if (Messages.calculateChecksum(fullReply) != checksum || reply[0] != Messages.FLASH_PROGRAM_RESPONSE
+				|| reply[1] != 0) {
+			throw new IllegalStateException("Unexpected reply " + Arrays.toString(reply));
+		}
+	}
+
+	private static byte[] legacyAddressToBytes(final int value) {
+		final byte[] array = ByteBuffer.allocate(4).putInt(value).array();
+		final byte[] result = new byte[array.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = array[array.length - 1 - i];
+		}
+		return result;
+	}
+
+	/**
+	 * Answers every request with a successful flash program response.
+	 */
+	private static class LoopbackConnection implements Connection {
+
+		private final byte[] reply = new byte[4];
+
+		private int replyPosition = reply.length;
+
+		private final InputStream inputStream = new InputStream() {
+
+			@Override
+			public int read() {
+				return replyPosition < reply.length ? reply[replyPosition++] & 0xFF : -1;
+			}
+
+			@Override
+			public int read(final byte[] bytes, final int offset, final int length) {
+				final int count = Math.min(length, reply.length - replyPosition);
+				System.arraycopy(reply, replyPosition, bytes, offset, count);
+				replyPosition += count;
+				return count;
+			}
+
+			@Override
+			public int available() {
+				return reply.length - replyPosition;
+			}
+		};
+
+		private final OutputStream outputStream = new OutputStream() {
+
+			@Override
+			public void write(final int b) {
+			}
+
+			@Override
+			public void write(final byte[] bytes, final int offset, final int length) {
+			}
+
+			@Override
+			public void flush() {
+				reply[0] = 3;
+				reply[1] = Messages.FLASH_PROGRAM_RESPONSE;
+				reply[2] = 0;
+				reply[3] = Messages.calculateChecksum(reply, 0, 3);
+				replyPosition = 0;
+			}
+		};
+
+		@Override
+		public InputStream getInputStream() {
+			return inputStream;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return outputStream;
+		}
+
+		@Override
+		public int waitDataAvailable(final int timeoutMillis) throws TimeoutException {
+			if (replyPosition == reply.length) {
+				throw new TimeoutException();
+			}
+			return reply.length - replyPosition;
+		}
+
+		@Override
+		public void clear() {
+			replyPosition = reply.length;
+		}
+
+		@Override
+		public void addListener(final ConnectionListener listener) {
+		}
+
+		@Override
+		public void removeListener(final ConnectionListener listener) {
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+
+		@Override
+		public void connect(final String uri) {
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public boolean isClosed() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
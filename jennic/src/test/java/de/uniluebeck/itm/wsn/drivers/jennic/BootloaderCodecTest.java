@@ -0,0 +1,149 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BootloaderCodecTest {
+
+	/**
+	 * Connection that hands out the given bytes in chunks of at most <code>chunkLength</code> bytes, like a serial
+	 * port that delivers a reply in several parts.
+	 */
+	private static class ChunkedConnection extends AbstractConnection {
+
+		private ChunkedConnection(final byte[] bytes, final int chunkLength) {
+			setInputStream(new ByteArrayInputStream(bytes) {
+				@Override
+				public synchronized int read(final byte[] buffer, final int offset, final int length) {
+					return super.read(buffer, offset, Math.min(length, chunkLength));
+				}
+			}
+			);
+			setConnected();
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+	}
+
+	private final BootloaderCodec codec = new BootloaderCodec();
+
+	@Test
+	public void encodesRequestWithLengthAndChecksum() throws Exception {
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		codec.begin(Messages.FLASH_READ_REQUEST).putAddress(0x12345678).putShort(0x0102).send(outputStream);
+
+		assertArrayEquals(
+				frame(Messages.FLASH_READ_REQUEST, 0x78, 0x56, 0x34, 0x12, 0x02, 0x01),
+				outputStream.toByteArray()
+		);
+	}
+
+	@Test
+	public void reusesRequestBuffer() throws Exception {
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		codec.begin(Messages.FLASH_PROGRAM_REQUEST).putAddress(0).putBytes(new byte[128], 0, 128).write(outputStream);
+		outputStream.reset();
+
+		codec.begin(Messages.WRITE_SR_REQUEST).putByte(0x00).send(outputStream);
+
+		assertArrayEquals(frame(Messages.WRITE_SR_REQUEST, 0x00), outputStream.toByteArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOversizedRequest() throws Exception {
+		codec.begin(Messages.FLASH_PROGRAM_REQUEST).putAddress(0).putBytes(new byte[251], 0, 251);
+	}
+
+	@Test
+	public void receivesRepliesDeliveredInChunks() throws Exception {
+
+		final byte[] data = new byte[128];
+		new Random(42).nextBytes(data);
+		final byte[] bytes = concat(
+				frame(concat(new byte[]{Messages.FLASH_READ_RESPONSE, 0x00}, data)),
+				frame(Messages.WRITE_SR_RESPONSE, 0x00)
+		);
+		final ChunkedConnection connection = new ChunkedConnection(bytes, 7);
+
+		assertEquals(130, codec.receive(connection, Messages.FLASH_READ_RESPONSE, 100));
+		assertEquals(0x00, codec.getReplyByte(1));
+		assertArrayEquals(data, codec.copyReply(2));
+
+		// the second, shorter reply does not include anything of the first one
+		assertEquals(2, codec.receive(connection, Messages.WRITE_SR_RESPONSE, 100));
+		assertArrayEquals(new byte[]{0x00}, codec.copyReply(1));
+	}
+
+	@Test(expected = InvalidChecksumException.class)
+	public void rejectsReplyWithWrongChecksum() throws Exception {
+
+		final byte[] bytes = frame(Messages.WRITE_SR_RESPONSE, 0x00);
+		bytes[bytes.length - 1] ^= 0x01;
+
+		codec.receive(new ChunkedConnection(bytes, 256), Messages.WRITE_SR_RESPONSE, 100);
+	}
+
+	@Test
+	public void rejectsReplyOfOtherType() throws Exception {
+
+		final ChunkedConnection connection = new ChunkedConnection(frame(Messages.SECTOR_ERASE_RESPONSE, 0xFF), 256);
+		try {
+			codec.receive(connection, Messages.WRITE_SR_RESPONSE, 100);
+			fail();
+		} catch (UnexpectedResponseException e) {
+			// the reply is kept for logging
+			assertEquals(2, codec.getReplyLength());
+			assertEquals((byte) Messages.SECTOR_ERASE_RESPONSE, codec.getReplyByte(0));
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void timesOutOnIncompleteReply() throws Exception {
+
+		final byte[] bytes = frame(Messages.WRITE_SR_RESPONSE, 0x00);
+
+		codec.receive(new ChunkedConnection(Arrays.copyOf(bytes, 2), 256), Messages.WRITE_SR_RESPONSE, 100);
+	}
+
+	/**
+	 * Creates a frame of the given message type and payload.
+	 */
+	private static byte[] frame(final int... message) {
+		final byte[] bytes = new byte[message.length];
+		for (int i = 0; i < message.length; i++) {
+			bytes[i] = (byte) message[i];
+		}
+		return frame(bytes);
+	}
+
+	private static byte[] frame(final byte[] message) {
+		final byte[] frame = new byte[message.length + 2];
+		frame[0] = (byte) (message.length + 1);
+		System.arraycopy(message, 0, frame, 1, message.length);
+		frame[frame.length - 1] = Messages.calculateChecksum(frame, 0, frame.length - 1);
+		return frame;
+	}
+
+	private static byte[] concat(final byte[] head, final byte[] tail) {
+		final byte[] result = Arrays.copyOf(head, head.length + tail.length);
+		System.arraycopy(tail, 0, result, head.length, tail.length);
+		return result;
+	}
+}
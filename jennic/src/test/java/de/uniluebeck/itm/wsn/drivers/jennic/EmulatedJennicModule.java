@@ -0,0 +1,94 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.TypeLiteral;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceModule;
+import de.uniluebeck.itm.wsn.drivers.core.operation.*;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Binds the Jennic operations to a {@link JennicBootloaderEmulator} instead of a serial port device. There is no
+ * programming mode interceptor, resetting the device does nothing and checking if the node is alive is not
+ * supported.
+ */
+class EmulatedJennicModule extends AbstractModule {
+
+	static class EmulatedResetOperation extends TimeLimitedOperation<Void> implements ResetOperation {
+
+		@Inject
+		EmulatedResetOperation(final TimeLimiter timeLimiter,
+							   @Assisted final long timeoutMillis,
+							   @Assisted @Nullable final OperationListener<Void> operationListener) {
+			super(timeLimiter, timeoutMillis, operationListener);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			return null;
+		}
+	}
+
+	static class UnsupportedIsNodeAliveOperation extends AbstractUnsupportedOperation<Boolean>
+			implements IsNodeAliveOperation {
+
+		@Inject
+		UnsupportedIsNodeAliveOperation(final TimeLimiter timeLimiter,
+										@Assisted final long timeoutMillis,
+										@Assisted @Nullable final OperationListener<Boolean> operationListener) {
+			super(timeLimiter, timeoutMillis, operationListener);
+		}
+	}
+
+	private final JennicBootloaderEmulator emulator;
+
+	private final Map<String, String> configuration;
+
+	EmulatedJennicModule(final JennicBootloaderEmulator emulator, final Map<String, String> configuration) {
+		this.emulator = emulator;
+		this.configuration = configuration;
+	}
+
+	@Override
+	protected void configure() {
+
+		bind(new TypeLiteral<Map<String, String>>() {
+		}
+		)
+				.annotatedWith(Names.named("configuration"))
+				.toInstance(configuration);
+
+		bind(TimeLimiter.class).toInstance(new SimpleTimeLimiter());
+		bind(Connection.class).toInstance(emulator);
+		bind(ExecutorService.class)
+				.annotatedWith(Names.named(DeviceModule.PREFETCH_EXECUTOR_SERVICE))
+				.toInstance(Executors.newCachedThreadPool(
+						new ThreadFactoryBuilder().setNameFormat("Prefetch-Thread %d").setDaemon(true).build()
+				));
+
+		install(new FactoryModuleBuilder()
+				.implement(EraseFlashOperation.class, JennicEraseFlashOperation.class)
+				.implement(GetChipTypeOperation.class, JennicGetChipTypeOperation.class)
+				.implement(IsNodeAliveOperation.class, UnsupportedIsNodeAliveOperation.class)
+				.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
+				.implement(ProgramOperation.class, JennicProgramOperation.class)
+				.implement(ReadFlashOperation.class, JennicReadFlashOperation.class)
+				.implement(ReadMacAddressOperation.class, JennicReadMacAddressOperation.class)
+				.implement(ResetOperation.class, EmulatedResetOperation.class)
+				.implement(WriteFlashOperation.class, JennicWriteFlashOperation.class)
+				.implement(WriteMacAddressOperation.class, JennicWriteMacAddressOperation.class)
+				.build(OperationFactory.class)
+		);
+	}
+}
@@ -0,0 +1,248 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Sets;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.ConnectionListener;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * In-memory connection that answers like a flash programmer stub, see {@link JennicRamProgrammer}. The stub is
+ * "loaded" with the RAM write and run requests of the boot loader. Frames are processed when the output stream is
+ * flushed and the replies are available right away, so waiting for data that has not been sent times out immediately.
+ * <p/>
+ * Faults can be injected for the first transmission of a block: its frame can be corrupted or its acknowledgement
+ * dropped.
+ */
+class EmulatedProgrammerStub implements Connection {
+
+	private final int windowSize;
+
+	private final byte[] flash = new byte[JennicFlashContents.FLASH_SIZE];
+
+	private final Set<Integer> corruptedSequenceNumbers = Sets.newHashSet();
+
+	private final Set<Integer> droppedAcknowledgements = Sets.newHashSet();
+
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+	private byte[] replies = new byte[0];
+
+	private int replyPosition;
+
+	private boolean running;
+
+	private int expectedSequenceNumber;
+
+	private boolean gapReported;
+
+	private final InputStream inputStream = new InputStream() {
+
+		@Override
+		public int read() {
+			return replyPosition < replies.length ? replies[replyPosition++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			if (replyPosition == replies.length) {
+				return -1;
+			}
+			final int count = Math.min(length, replies.length - replyPosition);
+			System.arraycopy(replies, replyPosition, bytes, offset, count);
+			replyPosition += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return replies.length - replyPosition;
+		}
+	};
+
+	private final OutputStream outputStream = new OutputStream() {
+
+		@Override
+		public void write(final int b) {
+			received.write(b);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) {
+			received.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() {
+			processFrames();
+		}
+	};
+
+	EmulatedProgrammerStub(final int windowSize) {
+		this.windowSize = windowSize;
+		Arrays.fill(flash, (byte) 0xFF);
+	}
+
+	/**
+	 * Corrupts the checksum of the first frame carrying the given sequence number.
+	 */
+	void corruptFrame(final int sequenceNumber) {
+		corruptedSequenceNumbers.add(sequenceNumber);
+	}
+
+	/**
+	 * Drops the first acknowledgement of the block with the given sequence number.
+	 */
+	void dropAcknowledgement(final int sequenceNumber) {
+		droppedAcknowledgements.add(sequenceNumber);
+	}
+
+	byte[] getFlash() {
+		return flash;
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	private void processFrames() {
+
+		final byte[] bytes = received.toByteArray();
+		received.reset();
+
+		final ByteArrayOutputStream replyStream = new ByteArrayOutputStream();
+		replyStream.write(replies, replyPosition, replies.length - replyPosition);
+
+		int offset = 0;
+		while (offset < bytes.length) {
+
+			final int frameLength = bytes[offset] & 0xFF;
+			final byte[] frame = Arrays.copyOfRange(bytes, offset, offset + frameLength + 1);
+			offset += frame.length;
+
+			final boolean valid = Messages.calculateChecksum(frame, 0, frame.length - 1) == frame[frame.length - 1];
+			final int type = frame[1] & 0xFF;
+
+			if (type == JennicRamProgrammer.WRITE_REQUEST) {
+				onWrite(frame, valid && !corruptedSequenceNumbers.remove(frame[2] & 0xFF), replyStream);
+			} else if (type == Messages.RAM_WRITE_REQUEST && !running) {
+				reply(replyStream, Messages.RAM_WRITE_RESPONSE, 0x00);
+			} else if (type == Messages.RUN_REQUEST && !running) {
+				running = true;
+				expectedSequenceNumber = 0;
+				reply(replyStream, Messages.RUN_RESPONSE, 0x00);
+				reply(replyStream, JennicRamProgrammer.READY, JennicRamProgrammer.PROTOCOL_VERSION, windowSize);
+			} else if (type == JennicRamProgrammer.EXIT_REQUEST && running) {
+				running = false;
+				reply(replyStream, JennicRamProgrammer.EXIT_RESPONSE, 0x00);
+			}
+		}
+
+		replies = replyStream.toByteArray();
+		replyPosition = 0;
+	}
+
+	private void onWrite(final byte[] frame, final boolean valid, final ByteArrayOutputStream replyStream) {
+
+		final int sequenceNumber = frame[2] & 0xFF;
+
+		if (!valid) {
+			if (!gapReported) {
+				gapReported = true;
+				reply(replyStream, JennicRamProgrammer.ACK, expectedSequenceNumber, 0x01);
+			}
+			return;
+		}
+
+		if (sequenceNumber != expectedSequenceNumber) {
+			final boolean duplicate = ((expectedSequenceNumber - sequenceNumber) & 0xFF) <= windowSize;
+			if (duplicate) {
+				reply(replyStream, JennicRamProgrammer.ACK, (expectedSequenceNumber - 1) & 0xFF, 0x00);
+			} else if (!gapReported) {
+				gapReported = true;
+				reply(replyStream, JennicRamProgrammer.ACK, expectedSequenceNumber, 0x01);
+			}
+			return;
+		}
+
+		final int address = (frame[3] & 0xFF) | (frame[4] & 0xFF) << 8 | (frame[5] & 0xFF) << 16 | frame[6] << 24;
+		System.arraycopy(frame, 7, flash, address, frame.length - 8);
+
+		gapReported = false;
+		expectedSequenceNumber = (expectedSequenceNumber + 1) & 0xFF;
+
+		if (!droppedAcknowledgements.remove(sequenceNumber)) {
+			reply(replyStream, JennicRamProgrammer.ACK, sequenceNumber, 0x00);
+		}
+	}
+
+	private static void reply(final ByteArrayOutputStream replyStream, final int type, final int... payload) {
+		final byte[] frame = new byte[payload.length + 3];
+		frame[0] = (byte) (payload.length + 2);
+		frame[1] = (byte) type;
+		for (int i = 0; i < payload.length; i++) {
+			frame[i + 2] = (byte) payload[i];
+		}
+		frame[frame.length - 1] = Messages.calculateChecksum(frame, 0, frame.length - 1);
+		replyStream.write(frame, 0, frame.length);
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public int waitDataAvailable(final int timeoutMillis) throws TimeoutException {
+		if (replyPosition == replies.length) {
+			throw new TimeoutException();
+		}
+		return replies.length - replyPosition;
+	}
+
+	@Override
+	public void clear() {
+		replyPosition = replies.length;
+	}
+
+	@Override
+	public void addListener(final ConnectionListener listener) {
+	}
+
+	@Override
+	public void removeListener(final ConnectionListener listener) {
+	}
+
+	@Override
+	public int[] getChannels() {
+		return new int[0];
+	}
+
+	@Override
+	public void connect(final String uri) {
+	}
+
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return false;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,648 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.ConnectionListener;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process emulation of the Jennic boot loader that can be used in place of the serial port connection of a device.
+ * It answers the chip id, flash type, flash configure, status register write, sector and flash erase, flash program,
+ * flash read and RAM read and write requests on a simulated flash memory, so that the protocol implementation can be
+ * tested and benchmarked without hardware.
+ * <p/>
+ * Requests are processed when the output stream is flushed. The serial link is emulated with a rate in baud (ten bits
+ * per byte) and a latency that is added once per request, replies only become available once they would have been
+ * received over such a link. A rate of <code>0</code> emulates an unlimited link. Like the boot loader, the emulator
+ * does not answer frames with a wrong checksum or an unknown type. As waiting for such an answer would only slow down
+ * tests, {@link #waitDataAvailable(int)} times out immediately if no reply is pending.
+ * <p/>
+ * Like real flash memory, programming can only clear bits, so blocks that are written without being erased first are
+ * detected. Instances are not thread safe.
+ * <p/>
+ * The baud rate of the host side can be switched like the one of a serial port. The boot loader only understands
+ * frames that are sent at about its own baud rate and rejects all baud rate changes unless
+ * {@link #setMaxBaudRate(int)} has been called.
+ */
+class JennicBootloaderEmulator implements Connection, JennicHelper.BaudRateControl {
+
+	static final int FLASH_SIZE = JennicFlashContents.FLASH_SIZE;
+
+	/**
+	 * RAM address of the chip id register, which is read to identify chips that do not know the chip id request.
+	 */
+	static final int CHIP_ID_ADDRESS = 0x100000FC;
+
+	/**
+	 * Chip id of a JN5148.
+	 */
+	static final int JN5148_CHIP_ID = 0x10404686;
+
+	/**
+	 * Baud rate of the boot loader after a reset.
+	 */
+	static final int INITIAL_BAUD_RATE = 38400;
+
+	private static final int BITS_PER_BYTE = 10;
+
+	/**
+	 * Largest difference of the baud rates of host and boot loader in percent at which frames are still understood.
+	 */
+	private static final int BAUD_RATE_TOLERANCE_PERCENT = 2;
+
+	private static final int STATUS_OK = 0x00;
+
+	private static final int STATUS_FAILED = 0xFF;
+
+	private static class Reply {
+
+		private final long availableNanos;
+
+		private final byte[] bytes;
+
+		private int position;
+
+		private Reply(final long availableNanos, final byte[] bytes) {
+			this.availableNanos = availableNanos;
+			this.bytes = bytes;
+		}
+	}
+
+	private final FlashType flashType;
+
+	private final boolean linkLimited;
+
+	private final long latencyNanos;
+
+	private int baudRate;
+
+	private int hostBaudRate;
+
+	private int maxBaudRate;
+
+	private final Set<Integer> unreliableBaudRates = Sets.newHashSet();
+
+	private final Multiset<Integer> droppedPrograms = HashMultiset.create();
+
+	private int droppedReplies;
+
+	private final Multiset<Integer> corruptedPrograms = HashMultiset.create();
+
+	private final byte[] flash = new byte[FLASH_SIZE];
+
+	private final Map<Integer, Byte> ram = Maps.newHashMap();
+
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+	private final LinkedList<Reply> replies = new LinkedList<Reply>();
+
+	private int maxReadLength = BootloaderCodec.MAX_FRAME_LENGTH - 4;
+
+	private long startedUpNanos = System.nanoTime();
+
+	private boolean eraseEnabled;
+
+	private long uplinkFreeNanos;
+
+	private long downlinkFreeNanos;
+
+	private int requests;
+
+	private final Multiset<Integer> requestTypes = HashMultiset.create();
+
+	private long bytesSent;
+
+	private long bytesReceived;
+
+	private final InputStream inputStream = new InputStream() {
+
+		@Override
+		public int read() {
+			final Reply reply = getAvailableReply();
+			if (reply == null) {
+				return -1;
+			}
+			final int value = reply.bytes[reply.position++] & 0xFF;
+			removeIfConsumed(reply);
+			return value;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			final Reply reply = getAvailableReply();
+			if (reply == null) {
+				return -1;
+			}
+			final int count = Math.min(length, reply.bytes.length - reply.position);
+			System.arraycopy(reply.bytes, reply.position, bytes, offset, count);
+			reply.position += count;
+			removeIfConsumed(reply);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return JennicBootloaderEmulator.this.available();
+		}
+	};
+
+	private final OutputStream outputStream = new OutputStream() {
+
+		@Override
+		public void write(final int b) {
+			received.write(b);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) {
+			received.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() {
+			processFrames();
+		}
+	};
+
+	/**
+	 * Creates an emulator with an unlimited link.
+	 */
+	JennicBootloaderEmulator(final FlashType flashType) {
+		this(flashType, 0, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param flashType
+	 * 		the flash type that is reported to the host
+	 * @param baudRate
+	 * 		the initial rate of the emulated link or <code>0</code> for an unlimited link, which starts at
+	 * 		{@link #INITIAL_BAUD_RATE}
+	 * @param latencyMicros
+	 * 		the latency that is added to every request
+	 */
+	JennicBootloaderEmulator(final FlashType flashType, final int baudRate, final int latencyMicros) {
+		this.flashType = flashType;
+		this.linkLimited = baudRate != 0;
+		this.baudRate = linkLimited ? baudRate : INITIAL_BAUD_RATE;
+		this.hostBaudRate = this.baudRate;
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+		this.uplinkFreeNanos = System.nanoTime();
+		this.downlinkFreeNanos = uplinkFreeNanos;
+		Arrays.fill(flash, (byte) 0xFF);
+		writeRam(CHIP_ID_ADDRESS, new byte[]{
+				(byte) (JN5148_CHIP_ID >>> 24), (byte) (JN5148_CHIP_ID >> 16), (byte) (JN5148_CHIP_ID >> 8),
+				(byte) JN5148_CHIP_ID
+		}
+		);
+	}
+
+	/**
+	 * Lets the boot loader ignore all requests during the given time, as if the device was still starting up after a
+	 * reset.
+	 */
+	void startUp(final long delayMillis) {
+		startedUpNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+	}
+
+	/**
+	 * Sets the largest number of bytes a single flash read may request, larger reads are rejected.
+	 */
+	void setMaxReadLength(final int maxReadLength) {
+		this.maxReadLength = maxReadLength;
+	}
+
+	/**
+	 * Sets the highest baud rate the boot loader switches to, faster ones are rejected.
+	 */
+	void setMaxBaudRate(final int maxBaudRate) {
+		this.maxBaudRate = maxBaudRate;
+	}
+
+	/**
+	 * Makes the replies of the boot loader get lost while it uses the given baud rate, as if the serial port was not
+	 * able to receive at that rate. Requests still reach the boot loader.
+	 */
+	void addUnreliableBaudRate(final int baudRate) {
+		unreliableBaudRates.add(baudRate);
+	}
+
+	/**
+	 * Makes the replies to the next requests get lost. The requests still reach the boot loader.
+	 */
+	void dropReplies(final int count) {
+		droppedReplies += count;
+	}
+
+	/**
+	 * Makes the next flash program requests at the given address get lost. They are acknowledged, but the flash
+	 * memory is not changed.
+	 */
+	void dropFlashPrograms(final int address, final int count) {
+		droppedPrograms.add(address, count);
+	}
+
+	/**
+	 * Makes the next flash program requests at the given address go wrong. They are acknowledged, but all bits of the
+	 * programmed bytes are cleared.
+	 */
+	void corruptFlashPrograms(final int address, final int count) {
+		corruptedPrograms.add(address, count);
+	}
+
+	/**
+	 * Returns the baud rate the boot loader uses.
+	 */
+	int getBootloaderBaudRate() {
+		return baudRate;
+	}
+
+	@Override
+	public int getBaudRate() {
+		return hostBaudRate;
+	}
+
+	@Override
+	public void setBaudRate(final int baudRate) {
+		hostBaudRate = baudRate;
+	}
+
+	/**
+	 * Returns the simulated flash memory, changes to it are seen by the host.
+	 */
+	byte[] getFlash() {
+		return flash;
+	}
+
+	void writeRam(final int address, final byte[] data) {
+		for (int i = 0; i < data.length; i++) {
+			ram.put(address + i, data[i]);
+		}
+	}
+
+	byte[] readRam(final int address, final int length) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			final Byte value = ram.get(address + i);
+			data[i] = value != null ? value : 0;
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the number of requests that have been answered.
+	 */
+	int getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Returns the number of requests of the given type the boot loader has received, e.g.
+	 * {@link Messages#WRITE_SR_REQUEST}.
+	 */
+	int getRequests(final int type) {
+		return requestTypes.count(type);
+	}
+
+	/**
+	 * Returns the number of bytes the host has sent.
+	 */
+	long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Returns the number of bytes the emulator has answered with.
+	 */
+	long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the time it takes to transfer the given number of bytes over the emulated link.
+	 */
+	long getTransferNanos(final int bytes) {
+		return linkLimited ? TimeUnit.SECONDS.toNanos((long) bytes * BITS_PER_BYTE) / baudRate : 0;
+	}
+
+	private void processFrames() {
+
+		final byte[] bytes = received.toByteArray();
+		received.reset();
+		bytesSent += bytes.length;
+
+		int offset = 0;
+		while (offset < bytes.length) {
+
+			final int frameLength = Math.min(bytes[offset] & 0xFF, bytes.length - offset - 1);
+			final byte[] frame = Arrays.copyOfRange(bytes, offset, offset + frameLength + 1);
+			offset += frame.length;
+
+			final long now = System.nanoTime();
+			final long arrivalNanos = latest(now, uplinkFreeNanos) + getTransferNanos(frame.length);
+			uplinkFreeNanos = arrivalNanos;
+
+			if (frame.length < 3 || Messages.calculateChecksum(frame, 0, frame.length - 1) != frame[frame.length - 1]) {
+				continue;
+			}
+
+			if (arrivalNanos - startedUpNanos < 0) {
+				continue;
+			}
+
+			// garbled if host and boot loader do not use the same baud rate
+			if (Math.abs(hostBaudRate - baudRate) * 100 > baudRate * BAUD_RATE_TOLERANCE_PERCENT) {
+				continue;
+			}
+
+			// a new baud rate is used after answering the request that changes it
+			final int replyBaudRate = baudRate;
+			final byte[] reply = answer(frame[1] & 0xFF, Arrays.copyOfRange(frame, 2, frame.length - 1));
+			requestTypes.add(frame[1] & 0xFF);
+			if (reply == null || unreliableBaudRates.contains(replyBaudRate)) {
+				continue;
+			}
+			if (droppedReplies > 0) {
+				droppedReplies--;
+				continue;
+			}
+
+			final byte[] replyFrame = new byte[reply.length + 2];
+			replyFrame[0] = (byte) (reply.length + 1);
+			System.arraycopy(reply, 0, replyFrame, 1, reply.length);
+			replyFrame[replyFrame.length - 1] = Messages.calculateChecksum(replyFrame, 0, replyFrame.length - 1);
+
+			final long availableNanos = latest(arrivalNanos + latencyNanos, downlinkFreeNanos)
+					+ getTransferNanos(replyFrame.length);
+			downlinkFreeNanos = availableNanos;
+
+			replies.add(new Reply(availableNanos, replyFrame));
+			requests++;
+			bytesReceived += replyFrame.length;
+		}
+	}
+
+	private byte[] answer(final int type, final byte[] payload) {
+
+		switch (type) {
+
+			case Messages.CHIP_ID_REQUEST:
+				return concat(new byte[]{Messages.CHIP_ID_RESPONSE, STATUS_OK}, readRam(CHIP_ID_ADDRESS, 4));
+
+			case Messages.FLASH_TYPE_READ_REQUEST:
+				return concat(new byte[]{Messages.FLASH_TYPE_READ_RESPONSE, STATUS_OK}, getFlashTypeId());
+
+			case Messages.FLASH_CONFIGURE_REQUEST:
+				return status(Messages.FLASH_CONFIGURE_RESPONSE,
+						payload.length == 5 && payload[0] == flashType.getId()
+				);
+
+			case Messages.WRITE_SR_REQUEST:
+				eraseEnabled = payload.length == 1 && payload[0] == 0x00;
+				return status(Messages.WRITE_SR_RESPONSE, payload.length == 1);
+
+			case Messages.SECTOR_ERASE_REQUEST:
+				if (!eraseEnabled || payload.length != 1 || payload[0] < 0 || payload[0] >= Sector.values().length) {
+					return status(Messages.SECTOR_ERASE_RESPONSE, false);
+				}
+				erase(EnumSet.of(Sector.values()[payload[0]]));
+				return status(Messages.SECTOR_ERASE_RESPONSE, true);
+
+			case Messages.FLASH_ERASE_REQUEST:
+				if (eraseEnabled) {
+					erase(EnumSet.allOf(Sector.class));
+				}
+				return status(Messages.FLASH_ERASE_RESPONSE, eraseEnabled);
+
+			case Messages.FLASH_PROGRAM_REQUEST:
+				return status(Messages.FLASH_PROGRAM_RESPONSE, program(payload));
+
+			case Messages.FLASH_READ_REQUEST:
+				return read(Messages.FLASH_READ_RESPONSE, payload, true);
+
+			case Messages.RAM_READ_REQUEST:
+				return read(Messages.RAM_READ_RESPONSE, payload, false);
+
+			case Messages.RAM_WRITE_REQUEST:
+				if (payload.length < 4) {
+					return status(Messages.RAM_WRITE_RESPONSE, false);
+				}
+				writeRam(getAddress(payload), Arrays.copyOfRange(payload, 4, payload.length));
+				return status(Messages.RAM_WRITE_RESPONSE, true);
+
+			case Messages.RUN_REQUEST:
+				return status(Messages.RUN_RESPONSE, payload.length == 4);
+
+			case Messages.CHANGE_BAUD_RATE_REQUEST:
+				final int divisor = payload.length == 1 ? payload[0] & 0xFF : 0;
+				if (divisor == 0 || Messages.BAUD_RATE_CLOCK / divisor > maxBaudRate) {
+					return status(Messages.CHANGE_BAUD_RATE_RESPONSE, false);
+				}
+				baudRate = Messages.BAUD_RATE_CLOCK / divisor;
+				return status(Messages.CHANGE_BAUD_RATE_RESPONSE, true);
+
+			default:
+				return null;
+		}
+	}
+
+	private byte[] getFlashTypeId() {
+		switch (flashType) {
+			case SST25VF010A:
+				return new byte[]{(byte) 0xBF, (byte) 0x49};
+			case STM25P10A:
+				return new byte[]{(byte) 0x10, (byte) 0x10};
+			case Atmel25F512:
+				return new byte[]{(byte) 0x1F, (byte) 0x60};
+			case STM25P40:
+				return new byte[]{(byte) 0x12, (byte) 0x12};
+			default:
+				return new byte[]{(byte) 0xFF, (byte) 0xFF};
+		}
+	}
+
+	private void erase(final Set<Sector> sectors) {
+		for (Sector sector : sectors) {
+			Arrays.fill(flash, sector.getStart(), sector.getEnd() + 1, (byte) 0xFF);
+		}
+	}
+
+	private boolean program(final byte[] payload) {
+		if (payload.length < 4) {
+			return false;
+		}
+		final int address = getAddress(payload);
+		final int length = payload.length - 4;
+		if (address < 0 || address + length > FLASH_SIZE) {
+			return false;
+		}
+		if (droppedPrograms.remove(address)) {
+			return true;
+		}
+		final boolean corrupted = corruptedPrograms.remove(address);
+		for (int i = 0; i < length; i++) {
+			flash[address + i] &= corrupted ? 0x00 : payload[4 + i];
+		}
+		return true;
+	}
+
+	private byte[] read(final int responseType, final byte[] payload, final boolean fromFlash) {
+		if (payload.length != 6) {
+			return status(responseType, false);
+		}
+		final int address = getAddress(payload);
+		final int length = (payload[4] & 0xFF) | (payload[5] & 0xFF) << 8;
+		if (length > maxReadLength || (fromFlash && (address < 0 || address + length > FLASH_SIZE))) {
+			return status(responseType, false);
+		}
+		final byte[] data = fromFlash ? Arrays.copyOfRange(flash, address, address + length) : readRam(address, length);
+		return concat(new byte[]{(byte) responseType, STATUS_OK}, data);
+	}
+
+	/**
+	 * Returns the later of two {@link System#nanoTime()} values, which may overflow.
+	 */
+	private static long latest(final long a, final long b) {
+		return a - b > 0 ? a : b;
+	}
+
+	private static int getAddress(final byte[] payload) {
+		return (payload[0] & 0xFF) | (payload[1] & 0xFF) << 8 | (payload[2] & 0xFF) << 16 | payload[3] << 24;
+	}
+
+	private static byte[] status(final int responseType, final boolean ok) {
+		return new byte[]{(byte) responseType, (byte) (ok ? STATUS_OK : STATUS_FAILED)};
+	}
+
+	private static byte[] concat(final byte[] head, final byte[] tail) {
+		final byte[] result = Arrays.copyOf(head, head.length + tail.length);
+		System.arraycopy(tail, 0, result, head.length, tail.length);
+		return result;
+	}
+
+	private Reply getAvailableReply() {
+		final Reply reply = replies.peek();
+		return reply != null && reply.availableNanos - System.nanoTime() <= 0 ? reply : null;
+	}
+
+	private void removeIfConsumed(final Reply reply) {
+		if (reply.position == reply.bytes.length) {
+			replies.removeFirst();
+		}
+	}
+
+	private int available() {
+		final long now = System.nanoTime();
+		int available = 0;
+		for (Reply reply : replies) {
+			if (reply.availableNanos - now > 0) {
+				break;
+			}
+			available += reply.bytes.length - reply.position;
+		}
+		return available;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public int waitDataAvailable(final int timeoutMillis) throws TimeoutException {
+
+		final Reply reply = replies.peek();
+		if (reply == null) {
+			// the requests that have been ignored while starting up remain unanswered
+			final long startUpNanos = startedUpNanos - System.nanoTime();
+			if (startUpNanos > 0) {
+				sleep(Math.min(startUpNanos, TimeUnit.MILLISECONDS.toNanos(timeoutMillis)));
+			}
+			throw new TimeoutException();
+		}
+
+		final long waitNanos = reply.availableNanos - System.nanoTime();
+		if (waitNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+			sleep(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+			throw new TimeoutException();
+		}
+		sleep(waitNanos);
+
+		return available();
+	}
+
+	private static void sleep(final long nanos) {
+		final long deadline = System.nanoTime() + nanos;
+		long remaining = nanos;
+		while (remaining > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Drops the replies that have been received. Replies that are still on their way over the emulated link are kept,
+	 * like on a real serial port.
+	 */
+	@Override
+	public void clear() {
+		while (getAvailableReply() != null) {
+			replies.removeFirst();
+		}
+	}
+
+	@Override
+	public void addListener(final ConnectionListener listener) {
+	}
+
+	@Override
+	public void removeListener(final ConnectionListener listener) {
+	}
+
+	@Override
+	public int[] getChannels() {
+		return new int[0];
+	}
+
+	@Override
+	public void connect(final String uri) {
+	}
+
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return false;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,102 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JennicBootloaderEmulatorTest {
+
+	private static final int BLOCK_SIZE = 128;
+
+	private JennicBootloaderEmulator emulator;
+
+	private JennicHelper helper;
+
+	@Before
+	public void setUp() {
+		emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		helper = createHelper(emulator);
+	}
+
+	@Test
+	public void identifiesChipAndFlash() throws Exception {
+
+		helper.sendBootloaderMessage(Messages.chipIdMessage());
+		assertArrayEquals(new byte[]{Messages.CHIP_ID_RESPONSE, 0x00, 0x10, 0x40, 0x46, (byte) 0x86},
+				helper.receiveBootloaderReply(Messages.CHIP_ID_RESPONSE)
+		);
+
+		helper.sendBootloaderMessage(Messages.ramReadRequestMessage(JennicBootloaderEmulator.CHIP_ID_ADDRESS, 2));
+		assertArrayEquals(new byte[]{Messages.RAM_READ_RESPONSE, 0x00, 0x10, 0x40},
+				helper.receiveBootloaderReply(Messages.RAM_READ_RESPONSE)
+		);
+
+		assertEquals(FlashType.STM25P40, helper.getFlashType());
+		helper.configureFlash(ChipType.JN5148);
+	}
+
+	@Test
+	public void programsAndReadsBackImage() throws Exception {
+
+		final byte[] image = new byte[3000];
+		new Random(42).nextBytes(image);
+
+		// smaller than the read length the helper starts with
+		emulator.setMaxReadLength(64);
+
+		helper.eraseFlash(Sector.spanning(0, image.length));
+		for (int offset = 0; offset < image.length; offset += BLOCK_SIZE) {
+			helper.writeFlash(offset, Arrays.copyOfRange(image, offset, Math.min(image.length, offset + BLOCK_SIZE)));
+		}
+
+		assertArrayEquals(image, helper.readFlash(0, image.length));
+		assertArrayEquals(image, Arrays.copyOf(emulator.getFlash(), image.length));
+	}
+
+	@Test
+	public void programmingWithoutEraseOnlyClearsBits() throws Exception {
+
+		final byte[] low = new byte[BLOCK_SIZE];
+		Arrays.fill(low, (byte) 0x0F);
+		final byte[] high = new byte[BLOCK_SIZE];
+		Arrays.fill(high, (byte) 0xF0);
+
+		helper.writeFlash(0, low);
+		helper.writeFlash(0, high);
+		assertArrayEquals(new byte[BLOCK_SIZE], helper.readFlash(0, BLOCK_SIZE));
+
+		helper.eraseFlash(Sector.FIRST);
+		helper.writeFlash(0, high);
+		assertArrayEquals(high, helper.readFlash(0, BLOCK_SIZE));
+	}
+
+	@Test
+	public void emulatesLinkRate() throws Exception {
+
+		final JennicBootloaderEmulator slowEmulator = new JennicBootloaderEmulator(FlashType.STM25P40, 9600, 1000);
+		final JennicHelper slowHelper = createHelper(slowEmulator);
+
+		final long start = System.nanoTime();
+		slowHelper.writeFlash(0, new byte[BLOCK_SIZE]);
+		final long elapsed = System.nanoTime() - start;
+
+		// length, type, address, data and checksum are sent, length, type, status and checksum are received
+		final long linkNanos = slowEmulator.getTransferNanos(BLOCK_SIZE + 7) + slowEmulator.getTransferNanos(4);
+		assertTrue("Write took " + elapsed + " ns, link needs " + linkNanos + " ns", elapsed >= linkNanos);
+		assertEquals(BLOCK_SIZE + 7, slowEmulator.getBytesSent());
+		assertEquals(4, slowEmulator.getBytesReceived());
+	}
+
+	private static JennicHelper createHelper(final JennicBootloaderEmulator emulator) {
+		return new JennicHelper(emulator, new DeviceSessionCache(), Maps.<String, String>newHashMap());
+	}
+}
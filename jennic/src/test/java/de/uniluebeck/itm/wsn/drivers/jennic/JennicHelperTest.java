@@ -0,0 +1,182 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JennicHelperTest {
+
+	@Test
+	public void synchronizeDiscardsLateRepliesToEarlierProbes() throws Exception {
+
+		// answers arrive after the first probe has timed out
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40, 0, 80000);
+		new Random(42).nextBytes(emulator.getFlash());
+		final JennicHelper helper = createHelper(emulator);
+
+		assertTrue(helper.synchronize(2000));
+		assertEquals(2, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+
+		// a reply left over from synchronising would be taken as the reply to this read
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 64), helper.readFlash(0, 64));
+		assertEquals(0, emulator.getInputStream().available());
+	}
+
+	@Test
+	public void synchronizeFailsWithoutBootLoader() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40, 0, 1000000);
+		final JennicHelper helper = createHelper(emulator);
+
+		final long start = System.nanoTime();
+		assertTrue(!helper.synchronize(300));
+		assertTrue(System.nanoTime() - start < 1000000000L);
+	}
+
+	@Test
+	public void readsFlashInLargestChunks() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		new Random(42).nextBytes(emulator.getFlash());
+		final JennicHelper helper = createHelper(emulator);
+
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 1000), helper.readFlash(0, 1000));
+		assertEquals(4, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+	}
+
+	@Test
+	public void probesReadLengthOnlyOnce() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		new Random(42).nextBytes(emulator.getFlash());
+		emulator.setMaxReadLength(100);
+		final JennicHelper helper = createHelper(emulator);
+
+		// 252 and 128 bytes are rejected, the image is read in 16 chunks of 64 bytes
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 1000), helper.readFlash(0, 1000));
+		assertEquals(18, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+
+		// after 16 reads of 64 bytes 128 bytes are tried once more
+		assertArrayEquals(Arrays.copyOfRange(emulator.getFlash(), 1000, 2000), helper.readFlash(1000, 1000));
+		assertEquals(18 + 1 + 16, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+	}
+
+	@Test
+	public void raisesReadLengthAgainAfterSuccessfulReads() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		new Random(42).nextBytes(emulator.getFlash());
+		emulator.setMaxReadLength(200);
+		final JennicHelper helper = createHelper(emulator);
+
+		// 252 bytes are rejected, then 16 chunks of 128 bytes are read
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 2048), helper.readFlash(0, 2048));
+		assertEquals(17, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+
+		emulator.setMaxReadLength(JennicHelper.MAX_READ_LENGTH);
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 1008), helper.readFlash(0, 1008));
+		assertEquals(17 + 4, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+	}
+
+	@Test
+	public void keepsReadLengthIfReplyIsLost() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		new Random(42).nextBytes(emulator.getFlash());
+		emulator.dropReplies(1);
+		final JennicHelper helper = createHelper(emulator);
+
+		// the lost read is repeated after a synchronisation probe, all reads use the largest length
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 1000), helper.readFlash(0, 1000));
+		assertEquals(1 + 1 + 4, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 1000), helper.readFlash(0, 1000));
+		assertEquals(6 + 4, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+	}
+
+	@Test
+	public void erasesSectorsWithSingleStatusRegisterWrite() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		Arrays.fill(emulator.getFlash(), (byte) 0x00);
+		final JennicHelper helper = createHelper(emulator);
+
+		helper.eraseFlash(EnumSet.of(Sector.FIRST, Sector.SECOND, Sector.FOURTH));
+
+		assertEquals(1, emulator.getRequests(Messages.WRITE_SR_REQUEST));
+		assertEquals(3, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertErased(emulator, Sector.FIRST, true);
+		assertErased(emulator, Sector.SECOND, true);
+		assertErased(emulator, Sector.THIRD, false);
+		assertErased(emulator, Sector.FOURTH, true);
+
+		helper.eraseFlash(EnumSet.noneOf(Sector.class));
+		assertEquals(1, emulator.getRequests(Messages.WRITE_SR_REQUEST));
+	}
+
+	@Test
+	public void negotiatesFastestBaudRateTheBootLoaderAccepts() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		emulator.setMaxBaudRate(250000);
+		final JennicHelper helper = createHelper(emulator);
+
+		assertEquals(250000, helper.negotiateBaudRate());
+		assertEquals(250000, emulator.getBaudRate());
+		assertEquals(250000, emulator.getBootloaderBaudRate());
+		assertEquals(2, emulator.getRequests(Messages.CHANGE_BAUD_RATE_REQUEST));
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 64), helper.readFlash(0, 64));
+
+		// the boot loader keeps the baud rate and the rejected one is not tried again
+		assertEquals(250000, helper.negotiateBaudRate());
+		assertEquals(2, emulator.getRequests(Messages.CHANGE_BAUD_RATE_REQUEST));
+	}
+
+	@Test
+	public void fallsBackIfBootLoaderDoesNotAnswerAtNegotiatedBaudRate() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		emulator.setMaxBaudRate(1000000);
+		emulator.addUnreliableBaudRate(500000);
+		final JennicHelper helper = createHelper(emulator);
+
+		// switching to 500000 baud, back to the initial baud rate and to 250000 baud
+		assertEquals(250000, helper.negotiateBaudRate());
+		assertEquals(250000, emulator.getBaudRate());
+		assertEquals(250000, emulator.getBootloaderBaudRate());
+		assertEquals(3, emulator.getRequests(Messages.CHANGE_BAUD_RATE_REQUEST));
+		assertArrayEquals(Arrays.copyOf(emulator.getFlash(), 64), helper.readFlash(0, 64));
+	}
+
+	@Test
+	public void keepsInitialBaudRateIfBootLoaderRejectsChanges() throws Exception {
+
+		final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+		final JennicHelper helper = createHelper(emulator);
+
+		assertEquals(JennicBootloaderEmulator.INITIAL_BAUD_RATE, helper.negotiateBaudRate());
+		assertEquals(JennicBootloaderEmulator.INITIAL_BAUD_RATE, emulator.getBaudRate());
+		assertEquals(2, emulator.getRequests(Messages.CHANGE_BAUD_RATE_REQUEST));
+
+		assertEquals(JennicBootloaderEmulator.INITIAL_BAUD_RATE, helper.negotiateBaudRate());
+		assertEquals(2, emulator.getRequests(Messages.CHANGE_BAUD_RATE_REQUEST));
+	}
+
+	static void assertErased(final JennicBootloaderEmulator emulator, final Sector sector, final boolean erased) {
+		final byte[] expected = new byte[sector.getEnd() - sector.getStart() + 1];
+		Arrays.fill(expected, erased ? (byte) 0xFF : (byte) 0x00);
+		assertArrayEquals(expected, Arrays.copyOfRange(emulator.getFlash(), sector.getStart(), sector.getEnd() + 1));
+	}
+
+	static JennicHelper createHelper(final JennicBootloaderEmulator emulator) {
+		return new JennicHelper(emulator, new DeviceSessionCache(), Maps.<String, String>newHashMap());
+	}
+}
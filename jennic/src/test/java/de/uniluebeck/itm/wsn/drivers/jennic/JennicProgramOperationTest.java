@@ -0,0 +1,307 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.exception.MacAddressBrokenException;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpoint;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JennicProgramOperationTest {
+
+	private static final int TIMEOUT = 30000;
+
+	private static final int HEADER_START = ChipType.JN5148.getHeaderStart();
+
+	private static final int HEADER_LENGTH = ChipType.JN5148.getHeaderLength();
+
+	private JennicBootloaderEmulator emulator;
+
+	private Map<String, String> configuration;
+
+	private OperationFactory operationFactory;
+
+	private ProgramCheckpointStore checkpointStore;
+
+	private FirmwareImage image;
+
+	private byte[] flashHeader;
+
+	@Before
+	public void setUp() {
+
+		emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+
+		configuration = Maps.newHashMap();
+		configuration.put(ProgramCheckpointStore.OPTION_RESUME, "true");
+		final Injector injector = Guice.createInjector(new EmulatedJennicModule(emulator, configuration));
+		operationFactory = injector.getInstance(OperationFactory.class);
+		checkpointStore = injector.getInstance(ProgramCheckpointStore.class);
+
+		image = FirmwareImage.wrap(createImage(10 * JennicBinaryImage.BLOCK_SIZE + 17));
+
+		flashHeader = new byte[HEADER_LENGTH];
+		Arrays.fill(flashHeader, (byte) 0xFF);
+		System.arraycopy(new byte[]{0, 0, 0, 0, 0, 0, 0x12, 0x34}, 0, flashHeader, 0, 8);
+	}
+
+	@Test
+	public void erasesOnlySectorsOfImage() throws Exception {
+
+		Arrays.fill(emulator.getFlash(), Sector.THIRD.getStart(), JennicBootloaderEmulator.FLASH_SIZE, (byte) 0x00);
+		image = FirmwareImage.wrap(createImage(Sector.SECOND.getStart() + 17));
+
+		program();
+
+		assertEquals(1, emulator.getRequests(Messages.WRITE_SR_REQUEST));
+		assertEquals(2, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(0, emulator.getRequests(Messages.FLASH_ERASE_REQUEST));
+		assertArrayEquals(image.toByteArray(), Arrays.copyOf(emulator.getFlash(), image.getLength()));
+		JennicHelperTest.assertErased(emulator, Sector.THIRD, false);
+		JennicHelperTest.assertErased(emulator, Sector.FOURTH, false);
+	}
+
+	@Test
+	public void preservesFlashHeaderOfDevice() throws Exception {
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+
+		program();
+
+		assertProgrammed();
+		assertEquals(1, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(11, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+	}
+
+	@Test
+	public void waitsForBootloaderBeforeReadingFlashHeader() throws Exception {
+
+		configuration.put(DeviceSessionCache.OPTION_SESSION_CACHE, "true");
+		final Injector injector = Guice.createInjector(new EmulatedJennicModule(emulator, configuration));
+		operationFactory = injector.getInstance(OperationFactory.class);
+		injector.getInstance(DeviceSessionCache.class).put(DeviceSessionCache.CHIP_TYPE, ChipType.JN5148);
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+		emulator.startUp(500);
+
+		program();
+
+		assertProgrammed();
+		assertEquals(0, emulator.getRequests(Messages.CHIP_ID_REQUEST));
+	}
+
+	@Test
+	public void rewritesLostFlashHeaderInPlace() throws Exception {
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+		emulator.dropFlashPrograms(0, 1);
+
+		program();
+
+		assertProgrammed();
+		assertEquals(1, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(12, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+	}
+
+	@Test
+	public void erasesFirstSectorAgainForBrokenFlashHeader() throws Exception {
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+		// bits that have been cleared can not be set again by writing in place
+		emulator.corruptFlashPrograms(0, 2);
+
+		program();
+
+		assertProgrammed();
+		assertEquals(2, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(13, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+	}
+
+	@Test
+	public void failsIfFlashHeaderCanNotBeWritten() throws Exception {
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+		emulator.corruptFlashPrograms(0, 3);
+
+		try {
+			program();
+			fail();
+		} catch (MacAddressBrokenException e) {
+			// the header is checked before any other block is written
+			assertEquals(3, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+		}
+	}
+
+	@Test
+	public void differentialProgrammingSkipsErasedBlocks() throws Exception {
+
+		configuration.put(JennicProgramOperation.OPTION_DIFFERENTIAL, "true");
+		final byte[] bytes = createImage(Sector.SECOND.getStart() + 17);
+		Arrays.fill(bytes, 5 * JennicBinaryImage.BLOCK_SIZE, 7 * JennicBinaryImage.BLOCK_SIZE, (byte) 0xFF);
+		image = FirmwareImage.wrap(bytes);
+
+		program();
+
+		assertArrayEquals(bytes, Arrays.copyOf(emulator.getFlash(), bytes.length));
+		assertEquals(2, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(257 - 2, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+	}
+
+	@Test
+	public void differentialProgrammingWritesOnlyChangedSectors() throws Exception {
+
+		configuration.put(JennicProgramOperation.OPTION_DIFFERENTIAL, "true");
+		final byte[] bytes = createImage(Sector.SECOND.getStart() + 17);
+		image = FirmwareImage.wrap(bytes);
+		program();
+		final int erasesBefore = emulator.getRequests(Messages.SECTOR_ERASE_REQUEST);
+		final int writesBefore = emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST);
+
+		// the same image again
+		program();
+		assertEquals(erasesBefore, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(writesBefore, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+
+		// an image that only differs in the last block
+		bytes[bytes.length - 1] ^= 0x01;
+		image = FirmwareImage.wrap(bytes);
+		program();
+		assertEquals(erasesBefore + 1, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertEquals(writesBefore + 1, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+		assertArrayEquals(bytes, Arrays.copyOf(emulator.getFlash(), bytes.length));
+		JennicHelperTest.assertErased(emulator, Sector.THIRD, true);
+	}
+
+	@Test
+	public void resumesFromFirstBlockWithSavedFlashHeader() throws Exception {
+
+		// interrupted right after erasing, the flash header is gone
+		recordErasedCheckpoint();
+
+		program();
+
+		assertProgrammed();
+		assertEquals(0, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertNull(checkpointStore.getCheckpoint());
+	}
+
+	@Test
+	public void programsFromScratchWithSavedFlashHeader() throws Exception {
+
+		recordErasedCheckpoint();
+		// the first block has been changed after the checkpoint, so the operation can not be resumed
+		emulator.getFlash()[0] = 0x00;
+
+		program();
+
+		assertProgrammed();
+		assertEquals(1, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+		assertNull(checkpointStore.getCheckpoint());
+	}
+
+	@Test
+	public void otherFlashOperationsDropTheCheckpoint() throws Exception {
+
+		recordErasedCheckpoint();
+		operationFactory.createWriteFlashOperation(0x10000, new byte[16], 16, TIMEOUT, null).call();
+		assertNull(checkpointStore.getCheckpoint());
+
+		recordErasedCheckpoint();
+		operationFactory.createEraseFlashOperation(TIMEOUT, null).call();
+		assertNull(checkpointStore.getCheckpoint());
+	}
+
+	@Test
+	public void programsFromFlashPlan() throws Exception {
+
+		System.arraycopy(flashHeader, 0, emulator.getFlash(), HEADER_START, HEADER_LENGTH);
+		final FirmwareImage plan = toBytes(new JennicBinaryImage(image).toFlashPlan());
+
+		operationFactory.createProgramOperation(plan, TIMEOUT, null).call();
+
+		assertProgrammed();
+		assertEquals(1, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+	}
+
+	@Test
+	public void rejectsDamagedFlashPlanBeforeErasing() throws Exception {
+
+		final byte[] plan = toBytes(new JennicBinaryImage(image).toFlashPlan()).toByteArray();
+		plan[plan.length - 1] ^= 0x01;
+
+		assertRejectedBeforeErasing(FirmwareImage.wrap(plan));
+	}
+
+	@Test
+	public void rejectsFlashPlanOfOtherPlatform() throws Exception {
+		assertRejectedBeforeErasing(toBytes(FlashPlan.builder(ChipType.LPC2136).block(0, image.toByteArray()).build()));
+	}
+
+	private void assertRejectedBeforeErasing(final FirmwareImage plan) throws Exception {
+
+		Arrays.fill(emulator.getFlash(), (byte) 0x00);
+		try {
+			operationFactory.createProgramOperation(plan, TIMEOUT, null).call();
+			fail();
+		} catch (IOException e) {
+			assertEquals(0, emulator.getRequests(Messages.SECTOR_ERASE_REQUEST));
+			assertEquals(0, emulator.getRequests(Messages.FLASH_ERASE_REQUEST));
+			assertEquals(0, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+		}
+	}
+
+	private static FirmwareImage toBytes(final FlashPlan plan) throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		plan.writeTo(outputStream);
+		return FirmwareImage.wrap(outputStream.toByteArray());
+	}
+
+	private void recordErasedCheckpoint() {
+		checkpointStore.record(ProgramCheckpoint.erased(image, ImmutableSet.of(0))
+				.withAttribute(JennicProgramOperation.ATTRIBUTE_FLASH_HEADER, BaseEncoding.base16().encode(flashHeader))
+		);
+	}
+
+	private void program() throws Exception {
+		operationFactory.createProgramOperation(image, TIMEOUT, null).call();
+	}
+
+	private void assertProgrammed() {
+		final byte[] expected = image.withPatch(HEADER_START, flashHeader).toByteArray();
+		assertArrayEquals(expected, Arrays.copyOf(emulator.getFlash(), expected.length));
+	}
+
+	/**
+	 * Creates a JN5148 image with random contents and an empty flash header.
+	 */
+	static byte[] createImage(final int length) {
+		final byte[] image = new byte[length];
+		new Random(42).nextBytes(image);
+		image[0] = 0x00;
+		image[1] = 0x00;
+		image[2] = (byte) 0xE0;
+		image[3] = (byte) 0xE0;
+		Arrays.fill(image, HEADER_START, HEADER_START + HEADER_LENGTH, (byte) 0xFF);
+		return image;
+	}
+}
@@ -0,0 +1,68 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how long {@link JennicHelper} takes to erase, program and read back an image over the link of a
+ * {@link JennicBootloaderEmulator} at different baud rates. The results only depend on the protocol and the emulated
+ * link, so they can be compared between changes to the protocol implementation.
+ * <p/>
+ * Usage: <code>JennicProgrammingBenchmark [imageKiB] [latencyMicros]</code>
+ */
+public class JennicProgrammingBenchmark {
+
+	private static final int DEFAULT_IMAGE_KIB = 16;
+
+	private static final int DEFAULT_LATENCY_MICROS = 1000;
+
+	private static final int[] BAUD_RATES = {38400, 115200, 1000000};
+
+	private static final int BLOCK_SIZE = 128;
+
+	public static void main(String[] args) throws Exception {
+
+		final int imageLength = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_IMAGE_KIB) * 1024;
+		final int latencyMicros = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LATENCY_MICROS;
+
+		final byte[] image = new byte[imageLength];
+		new Random(42).nextBytes(image);
+
+		System.out.println(String.format("%d bytes, %d us latency per request", imageLength, latencyMicros));
+
+		for (int baudRate : BAUD_RATES) {
+
+			final JennicBootloaderEmulator emulator = new JennicBootloaderEmulator(FlashType.STM25P40, baudRate,
+					latencyMicros
+			);
+			final JennicHelper helper = new JennicHelper(emulator, new DeviceSessionCache(),
+					Maps.<String, String>newHashMap()
+			);
+
+			long start = System.nanoTime();
+			helper.eraseFlash(Sector.spanning(0, image.length));
+			for (int offset = 0; offset < image.length; offset += BLOCK_SIZE) {
+				helper.writeFlash(offset, Arrays.copyOfRange(image, offset, Math.min(image.length, offset + BLOCK_SIZE)));
+			}
+			final double programMillis = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			final byte[] readBack = helper.readFlash(0, image.length);
+			final double readMillis = (System.nanoTime() - start) / 1e6;
+
+			if (!Arrays.equals(image, readBack)) {
+				throw new IllegalStateException("Image read back at " + baudRate + " baud differs");
+			}
+
+			System.out.println(String.format(
+					"%7d baud: program %8.1f ms (%6.1f KiB/s), read %8.1f ms (%6.1f KiB/s), %d requests",
+					baudRate, programMillis, imageLength / 1.024 / programMillis, readMillis,
+					imageLength / 1.024 / readMillis, emulator.getRequests()
+			)
+			);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JennicRamProgrammerTest {
+
+	private static final int WINDOW_SIZE = 8;
+
+	private static final int IMAGE_LENGTH = 40 * JennicBinaryImage.BLOCK_SIZE + 17;
+
+	private static final int STUB_ADDRESS = 0x04001000;
+
+	private EmulatedProgrammerStub stub;
+
+	private JennicHelper helper;
+
+	private byte[] image;
+
+	private final List<Integer> writtenAddresses = Lists.newArrayList();
+
+	private int cancelAfterBlocks = Integer.MAX_VALUE;
+
+	private final JennicRamProgrammer.Listener listener = new JennicRamProgrammer.Listener() {
+		@Override
+		public void onBlockWritten(final BinaryImageBlock block) {
+			writtenAddresses.add(block.getAddress());
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return writtenAddresses.size() >= cancelAfterBlocks;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		stub = new EmulatedProgrammerStub(WINDOW_SIZE);
+		helper = new JennicHelper(stub, new DeviceSessionCache(), Maps.<String, String>newHashMap());
+		image = new byte[IMAGE_LENGTH];
+		new Random(42).nextBytes(image);
+	}
+
+	@Test
+	public void writesAllBlocksInOrder() throws Exception {
+
+		final JennicRamProgrammer programmer = write();
+
+		assertEquals(WINDOW_SIZE, programmer.getWindowSize());
+		assertEquals(0, programmer.getRetransmissions());
+	}
+
+	@Test
+	public void resendsBlocksAfterCorruptedFrame() throws Exception {
+
+		stub.corruptFrame(3);
+		stub.corruptFrame(20);
+
+		final JennicRamProgrammer programmer = write();
+
+		assertEquals(2, programmer.getRetransmissions());
+	}
+
+	@Test
+	public void resendsBlocksAfterLostAcknowledgement() throws Exception {
+
+		// acknowledgements within the image are covered by the following ones, the last one has to time out
+		stub.dropAcknowledgement(10);
+		stub.dropAcknowledgement(40);
+
+		final JennicRamProgrammer programmer = write();
+
+		assertEquals(1, programmer.getRetransmissions());
+	}
+
+	@Test
+	public void stopsSendingBlocksWhenCanceled() throws Exception {
+
+		cancelAfterBlocks = 10;
+
+		final JennicBinaryImage binaryImage = new JennicBinaryImage(image);
+		final JennicRamProgrammer programmer = helper.startProgrammer(new byte[200], STUB_ADDRESS);
+		programmer.write(binaryImage, binaryImage.getNextBlock(), listener);
+
+		// the acknowledgements of the blocks on their way are skipped
+		programmer.exit();
+
+		assertFalse(stub.isRunning());
+		assertTrue(writtenAddresses.size() >= cancelAfterBlocks);
+		assertTrue(writtenAddresses.size() < cancelAfterBlocks + WINDOW_SIZE);
+	}
+
+	private JennicRamProgrammer write() throws Exception {
+
+		final JennicBinaryImage binaryImage = new JennicBinaryImage(image);
+		final JennicRamProgrammer programmer = helper.startProgrammer(new byte[200], STUB_ADDRESS);
+		programmer.write(binaryImage, binaryImage.getNextBlock(), listener);
+		programmer.exit();
+
+		assertFalse(stub.isRunning());
+		assertArrayEquals(image, Arrays.copyOf(stub.getFlash(), IMAGE_LENGTH));
+		assertEquals(41, writtenAddresses.size());
+		for (int i = 0; i < writtenAddresses.size(); i++) {
+			assertEquals(i * JennicBinaryImage.BLOCK_SIZE, (int) writtenAddresses.get(i));
+		}
+		return programmer;
+	}
+}
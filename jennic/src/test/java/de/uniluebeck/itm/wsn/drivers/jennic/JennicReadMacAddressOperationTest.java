@@ -0,0 +1,75 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JennicReadMacAddressOperationTest {
+
+	private static final int TIMEOUT = 30000;
+
+	private static final int MAC_START = ChipType.JN5148.getMacInFlashStart();
+
+	private JennicBootloaderEmulator emulator;
+
+	private OperationFactory operationFactory;
+
+	private DeviceSessionCache sessionCache;
+
+	@Before
+	public void setUp() {
+
+		emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+
+		final Map<String, String> configuration = Maps.newHashMap();
+		configuration.put(DeviceSessionCache.OPTION_SESSION_CACHE, "true");
+		final Injector injector = Guice.createInjector(new EmulatedJennicModule(emulator, configuration));
+		operationFactory = injector.getInstance(OperationFactory.class);
+		sessionCache = injector.getInstance(DeviceSessionCache.class);
+
+		final byte[] image = JennicProgramOperationTest.createImage(JennicBinaryImage.BLOCK_SIZE);
+		System.arraycopy(image, 0, emulator.getFlash(), 0, image.length);
+	}
+
+	@Test
+	public void cachesValidMacAddress() throws Exception {
+
+		final MacAddress macAddress = new MacAddress(0x0000000000001234L);
+		System.arraycopy(macAddress.toByteArray(), 0, emulator.getFlash(), MAC_START, 8);
+
+		assertEquals(macAddress, readMacAddress());
+		assertEquals(macAddress, sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+	}
+
+	@Test
+	public void doesNotCacheErasedMacAddress() throws Exception {
+
+		assertEquals(new MacAddress(-1L), readMacAddress());
+		assertNull(sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+	}
+
+	@Test
+	public void doesNotCacheZeroedMacAddress() throws Exception {
+
+		Arrays.fill(emulator.getFlash(), MAC_START, MAC_START + 8, (byte) 0x00);
+
+		assertEquals(MacAddress.LOWEST_MAC_ADDRESS, readMacAddress());
+		assertNull(sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+	}
+
+	private MacAddress readMacAddress() throws Exception {
+		return operationFactory.createReadMacAddressOperation(TIMEOUT, null).call();
+	}
+}
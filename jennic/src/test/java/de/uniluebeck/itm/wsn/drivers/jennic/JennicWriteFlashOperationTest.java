@@ -0,0 +1,73 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JennicWriteFlashOperationTest {
+
+	private static final int TIMEOUT = 30000;
+
+	private static final MacAddress MAC_ADDRESS = new MacAddress(0x0000000000001234L);
+
+	private JennicBootloaderEmulator emulator;
+
+	private OperationFactory operationFactory;
+
+	private DeviceSessionCache sessionCache;
+
+	@Before
+	public void setUp() {
+
+		emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+
+		final Map<String, String> configuration = Maps.newHashMap();
+		configuration.put(DeviceSessionCache.OPTION_SESSION_CACHE, "true");
+		final Injector injector = Guice.createInjector(new EmulatedJennicModule(emulator, configuration));
+		operationFactory = injector.getInstance(OperationFactory.class);
+		sessionCache = injector.getInstance(DeviceSessionCache.class);
+
+		sessionCache.put(DeviceSessionCache.MAC_ADDRESS, MAC_ADDRESS);
+	}
+
+	@Test
+	public void keepsMacAddressIfWrittenRangeEndsBeforeFlashHeader() throws Exception {
+
+		final int headerStart = ChipType.JN5121.getHeaderStart();
+		final byte[] data = new byte[2 * headerStart];
+		Arrays.fill(data, (byte) 0x42);
+
+		writeFlash(0, data, headerStart);
+
+		assertEquals(MAC_ADDRESS, sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+		assertArrayEquals(Arrays.copyOf(data, headerStart), Arrays.copyOf(emulator.getFlash(), headerStart));
+		assertEquals((byte) 0xFF, emulator.getFlash()[headerStart]);
+	}
+
+	@Test
+	public void dropsMacAddressIfWrittenRangeOverlapsFlashHeader() throws Exception {
+
+		final int headerStart = ChipType.JN5121.getHeaderStart();
+
+		writeFlash(0, new byte[2 * headerStart], headerStart + 1);
+
+		assertNull(sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class));
+	}
+
+	private void writeFlash(final int address, final byte[] data, final int length) throws Exception {
+		operationFactory.createWriteFlashOperation(address, data, length, TIMEOUT, null).call();
+	}
+}
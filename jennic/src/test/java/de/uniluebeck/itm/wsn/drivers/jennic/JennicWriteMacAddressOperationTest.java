@@ -0,0 +1,85 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class JennicWriteMacAddressOperationTest {
+
+	private static final int TIMEOUT = 30000;
+
+	private static final MacAddress MAC_ADDRESS = new MacAddress(0x0000000000001234L);
+
+	private JennicBootloaderEmulator emulator;
+
+	private OperationFactory operationFactory;
+
+	private byte[] image;
+
+	@Before
+	public void setUp() {
+
+		emulator = new JennicBootloaderEmulator(FlashType.STM25P40);
+
+		final Map<String, String> configuration = Maps.newHashMap();
+		configuration.put(DeviceSessionCache.OPTION_SESSION_CACHE, "true");
+		operationFactory = Guice.createInjector(new EmulatedJennicModule(emulator, configuration))
+				.getInstance(OperationFactory.class);
+
+		image = JennicProgramOperationTest.createImage(40 * JennicBinaryImage.BLOCK_SIZE + 17);
+	}
+
+	@Test
+	public void reusesFlashContentsOfProgramOperation() throws Exception {
+
+		operationFactory.createProgramOperation(FirmwareImage.wrap(image), TIMEOUT, null).call();
+		final int readsBefore = emulator.getRequests(Messages.FLASH_READ_REQUEST);
+		final int writesBefore = emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST);
+
+		writeMacAddress();
+
+		// synchronising with the boot loader is the only read
+		assertEquals(readsBefore + 1, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+		assertEquals(writesBefore + 41, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+		assertWritten();
+	}
+
+	@Test
+	public void readsUnknownSectorInLargeChunks() throws Exception {
+
+		System.arraycopy(image, 0, emulator.getFlash(), 0, image.length);
+
+		writeMacAddress();
+
+		// 16 chunks of 2 KiB that take 9 reads each and the synchronisation
+		assertEquals(16 * 9 + 1, emulator.getRequests(Messages.FLASH_READ_REQUEST));
+		assertEquals(41, emulator.getRequests(Messages.FLASH_PROGRAM_REQUEST));
+		assertWritten();
+	}
+
+	private void writeMacAddress() throws Exception {
+		operationFactory.createWriteMacAddressOperation(MAC_ADDRESS, TIMEOUT, null).call();
+	}
+
+	private void assertWritten() throws Exception {
+
+		final byte[] expected = Arrays.copyOf(image, image.length);
+		final byte[] macAddressBytes = MAC_ADDRESS.toByteArray();
+		System.arraycopy(macAddressBytes, 0, expected, ChipType.JN5148.getHeaderStart(), macAddressBytes.length);
+		assertArrayEquals(expected, Arrays.copyOf(emulator.getFlash(), image.length));
+
+		assertEquals(MAC_ADDRESS, operationFactory.createReadMacAddressOperation(TIMEOUT, null).call());
+	}
+}
@@ -8,13 +8,17 @@ import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -142,6 +146,10 @@ public class MockDevice implements Device {
 
 	private final OperationFactory operationFactory;
 
+	private final OperationScheduler operationScheduler;
+
+	private final DeviceSessionCache sessionCache;
+
 	private final Map<String, String> configuration;
 
 	private ScheduledExecutorService scheduler;
@@ -162,6 +170,8 @@ public class MockDevice implements Device {
 					  @Named("pipedInputStreamFromDriverOutputStream")
 					  final PipedInputStream pipedInputStreamFromDriverOutputStream,
 					  final OperationFactory operationFactory,
+					  final OperationScheduler operationScheduler,
+					  final DeviceSessionCache sessionCache,
 					  @Named("configuration") final Map<String, String> configuration) {
 
 		this.driverInputStream = driverInputStream;
@@ -169,6 +179,8 @@ public class MockDevice implements Device {
 		this.pipedOutputStreamToDriverInputStream = pipedOutputStreamToDriverInputStream;
 		this.pipedInputStreamFromDriverOutputStream = pipedInputStreamFromDriverOutputStream;
 		this.operationFactory = operationFactory;
+		this.operationScheduler = operationScheduler;
+		this.sessionCache = sessionCache;
 		this.configuration = configuration;
 	}
 
@@ -193,8 +205,26 @@ public class MockDevice implements Device {
 
 	@Override
 	public OperationFuture<Void> program(byte[] data, long timeoutMillis, @Nullable OperationListener<Void> listener) {
+		return program(FirmwareImage.wrap(data), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(File file, long timeoutMillis, @Nullable OperationListener<Void> listener)
+			throws IOException {
+		return program(FirmwareImage.map(file), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(ByteBuffer data, long timeoutMillis,
+										 @Nullable OperationListener<Void> listener) {
+		return program(FirmwareImage.wrap(data), timeoutMillis, listener);
+	}
+
+	@Override
+	public OperationFuture<Void> program(FirmwareImage image, long timeoutMillis,
+										 @Nullable OperationListener<Void> listener) {
 		log.trace("Programming (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createProgramOperation(data, timeoutMillis, listener));
+		return executeOperation(operationFactory.createProgramOperation(image, timeoutMillis, listener));
 	}
 
 	@Override
@@ -238,6 +268,14 @@ public class MockDevice implements Device {
 		return executeOperation(operationFactory.createWriteMacAddressOperation(macAddress, timeoutMillis, listener));
 	}
 
+	@Override
+	public OperationFuture<List<Object>> execute(OperationPlan plan, long timeoutMillis,
+												 @Nullable OperationListener<List<Object>> listener) {
+		log.trace("Executing plan (plan: " + plan + ", timeout: " + timeoutMillis + "ms)");
+		checkNotNull(plan, "Null plan is not allowed.");
+		return executeOperation(operationFactory.createOperationPlanOperation(plan, timeoutMillis, listener));
+	}
+
 	@Override
 	public InputStream getInputStream() {
 		return driverInputStream;
@@ -259,6 +297,8 @@ public class MockDevice implements Device {
 
 			scheduler = Executors.newScheduledThreadPool(1, threadFactory);
 			echoExecutor = Executors.newSingleThreadExecutor(threadFactory);
+			operationScheduler.start();
+			sessionCache.connected(uri);
 
 			startHeartBeatIfConfigured();
 			startEchoIfConfigured();
@@ -278,6 +318,9 @@ public class MockDevice implements Device {
 			stopHeartBeatIfRunning();
 			stopEchoIfRunning();
 
+			operationScheduler.shutdown();
+			sessionCache.disconnected();
+
 			if (scheduler != null) {
 				ExecutorUtils.shutdown(scheduler, 1, TimeUnit.SECONDS);
 			}
@@ -315,6 +358,16 @@ public class MockDevice implements Device {
 		return !isConnected();
 	}
 
+	@Override
+	public OperationScheduler getOperationScheduler() {
+		return operationScheduler;
+	}
+
+	@Override
+	public DeviceSessionCache getSessionCache() {
+		return sessionCache;
+	}
+
 	void acquireLockOnDevice() {
 		stopHeartBeatIfRunning();
 		stopEchoIfRunning();
@@ -341,23 +394,7 @@ public class MockDevice implements Device {
 	}
 
 	private <T> OperationFuture<T> executeOperation(final Operation<T> operation) {
-		final OperationFutureImpl<T> operationFuture = new OperationFutureImpl<T>(operation);
-		operation.addListener(
-				new OperationAdapter<T>() {
-
-					@Override
-					public void onFailure(final Throwable throwable) {
-						operationFuture.setException(throwable);
-					}
-
-					@Override
-					public void onSuccess(final T result) {
-						operationFuture.set(result);
-					}
-				}
-		);
-		scheduler.submit(operation);
-		return operationFuture;
+		return operationScheduler.submit(operation);
 	}
 
 	private void sleep(final long millis) {
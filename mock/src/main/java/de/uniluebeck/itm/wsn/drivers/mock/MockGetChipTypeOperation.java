@@ -4,12 +4,15 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.GetChipTypeOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 
 import javax.annotation.Nullable;
+import java.util.Map;
 
 
 /**
@@ -25,18 +28,42 @@ public class MockGetChipTypeOperation extends TimeLimitedOperation<ChipType> imp
 	 */
 	private final MockConfiguration configuration;
 
+	private final DeviceSessionCache sessionCache;
+
 	@Inject
 	public MockGetChipTypeOperation(final TimeLimiter timeLimiter,
 									final MockConfiguration configuration,
+									final DeviceSessionCache sessionCache,
 									@Assisted final long timeoutMillis,
 									@Assisted @Nullable final OperationListener<ChipType> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.configuration = configuration;
+		this.sessionCache = sessionCache;
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected ChipType callInternal() throws Exception {
+
+		ChipType chipType = sessionCache.get(DeviceSessionCache.CHIP_TYPE, ChipType.class);
+		if (chipType == null) {
+			chipType = readChipType();
+			sessionCache.put(DeviceSessionCache.CHIP_TYPE, chipType);
+		}
+		return chipType;
+	}
+
+	@SerialPortProgrammingMode
+	protected ChipType readChipType() throws Exception {
+
+		// a matching MAC address confirms the persisted identification of the simulated device
+		final Map<String, String> metadata = sessionCache.takeUnvalidatedMetadata();
+		final MacAddress macAddress = configuration.getMacAddress();
+		if (metadata != null && metadata.containsKey(DeviceSessionCache.CHIP_TYPE)
+				&& macAddress.toString().equals(metadata.get(DeviceSessionCache.MAC_ADDRESS))) {
+			sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+			return ChipType.valueOf(metadata.get(DeviceSessionCache.CHIP_TYPE));
+		}
+
 		Thread.sleep(100);
 		progress(1f);
 		return configuration.getChipType();
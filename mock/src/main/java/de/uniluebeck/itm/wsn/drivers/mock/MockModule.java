@@ -51,6 +51,7 @@ public class MockModule extends AbstractModule {
 				.implement(EraseFlashOperation.class, MockEraseFlashOperation.class)
 				.implement(GetChipTypeOperation.class, MockGetChipTypeOperation.class)
 				.implement(IsNodeAliveOperation.class, DefaultIsNodeAliveOperation.class)
+				.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
 				.implement(ProgramOperation.class, MockProgramOperation.class)
 				.implement(ReadFlashOperation.class, MockReadFlashOperation.class)
 				.implement(ReadMacAddressOperation.class, MockReadMacAddressOperation.class)
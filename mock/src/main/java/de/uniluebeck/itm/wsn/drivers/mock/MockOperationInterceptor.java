@@ -9,12 +9,21 @@ public class MockOperationInterceptor implements MethodInterceptor {
 	@Inject
 	private MockDevice device;
 
+	private boolean alreadyInProgrammingMode;
+
 	@Override
 	public Object invoke(final MethodInvocation invocation) throws Throwable {
+
+		if (alreadyInProgrammingMode) {
+			return invocation.proceed();
+		}
+
 		try {
 			device.acquireLockOnDevice();
+			alreadyInProgrammingMode = true;
 			return invocation.proceed();
 		} finally {
+			alreadyInProgrammingMode = false;
 			device.releaseLockOnDevice();
 		}
 	}
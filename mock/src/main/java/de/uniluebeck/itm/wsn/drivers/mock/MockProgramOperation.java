@@ -3,13 +3,16 @@ package de.uniluebeck.itm.wsn.drivers.mock;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.drivers.core.image.CompressedImages;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
+import java.util.Map;
 
 
 /**
@@ -20,23 +23,38 @@ import java.util.Arrays;
  */
 public class MockProgramOperation extends TimeLimitedOperation<Void> implements ProgramOperation {
 
+	/**
+	 * Configuration key for the simulated duration of a program operation in milliseconds.
+	 */
+	public static final String OPTION_PROGRAM_DURATION = "PROGRAM_DURATION";
+
+	private static final long DEFAULT_PROGRAM_DURATION_MILLIS = 10000;
+
+	private static final int BLOCKS = 10;
+
 	private final MockDevice device;
 
 	/**
 	 * The binary image that has to be written to the device.
 	 */
-	private final byte[] binaryImage;
+	private final FirmwareImage binaryImage;
 
 	/**
 	 * The configuration that will store the binary image.
 	 */
 	private MockConfiguration configuration;
 
+	/**
+	 * The time it takes to write a single block.
+	 */
+	private final long blockDurationMillis;
+
 	@Inject
 	public MockProgramOperation(final TimeLimiter timeLimiter,
 								final MockConfiguration configuration,
 								final MockDevice device,
-								@Assisted byte[] binaryImage,
+								@Named("configuration") final Map<String, String> deviceConfiguration,
+								@Assisted FirmwareImage binaryImage,
 								@Assisted final long timeoutMillis,
 								@Assisted @Nullable final OperationListener<Void> operationCallback) {
 
@@ -45,18 +63,30 @@ public class MockProgramOperation extends TimeLimitedOperation<Void> implements
 		this.configuration = configuration;
 		this.device = device;
 		this.binaryImage = binaryImage;
+
+		final String programDuration = deviceConfiguration.get(OPTION_PROGRAM_DURATION);
+		this.blockDurationMillis = (programDuration == null ?
+				DEFAULT_PROGRAM_DURATION_MILLIS :
+				Long.parseLong(programDuration)) / BLOCKS;
+	}
+
+	@Override
+	public boolean isErasingWholeFlash() {
+		return true;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 
-		for (int i = 0; i < 10; i++) {
-			Thread.sleep(1000);
-			progress(i * 0.1f);
+		transferProgress(0, binaryImage.getLength());
+		for (int i = 0; i < BLOCKS; i++) {
+			Thread.sleep(blockDurationMillis);
+			progress((float) i / BLOCKS);
+			transferProgress(binaryImage.getLength() * (i + 1) / BLOCKS, binaryImage.getLength());
 		}
 
-		configuration.setFlashRom(Arrays.copyOf(binaryImage, binaryImage.length));
+		configuration.setFlashRom(CompressedImages.uncompressed(binaryImage).toByteArray());
 		device.reset();
 
 		return null;
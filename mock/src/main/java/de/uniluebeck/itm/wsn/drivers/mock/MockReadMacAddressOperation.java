@@ -3,6 +3,7 @@ package de.uniluebeck.itm.wsn.drivers.mock;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.ReadMacAddressOperation;
@@ -22,19 +23,33 @@ public class MockReadMacAddressOperation extends TimeLimitedOperation<MacAddress
 
 	private final MockConfiguration configuration;
 
+	private final DeviceSessionCache sessionCache;
+
 	@Inject
 	public MockReadMacAddressOperation(final TimeLimiter timeLimiter,
 									   final MockConfiguration configuration,
+									   final DeviceSessionCache sessionCache,
 									   @Assisted final long timeoutMillis,
 									   @Assisted @Nullable final OperationListener<MacAddress> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.configuration = configuration;
+		this.sessionCache = sessionCache;
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected MacAddress callInternal() throws Exception {
 
+		MacAddress macAddress = sessionCache.get(DeviceSessionCache.MAC_ADDRESS, MacAddress.class);
+		if (macAddress == null) {
+			macAddress = readMacAddress();
+			sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
+		}
+		return macAddress;
+	}
+
+	@SerialPortProgrammingMode
+	protected MacAddress readMacAddress() throws Exception {
+
 		for (int i = 0; i < 10; i++) {
 			Thread.sleep(100);
 			progress(i * 0.1f);
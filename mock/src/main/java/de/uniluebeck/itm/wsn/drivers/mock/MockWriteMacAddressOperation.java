@@ -3,6 +3,7 @@ package de.uniluebeck.itm.wsn.drivers.mock;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceSessionCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
@@ -11,6 +12,8 @@ import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 
 /**
  * Mock operation for writing a <code>MacAddress</code> in the given <code>MockConfiguration</code>.
@@ -32,15 +35,19 @@ public class MockWriteMacAddressOperation extends TimeLimitedOperation<Void> imp
 	 */
 	private final MacAddress macAddress;
 
+	private final DeviceSessionCache sessionCache;
+
 	@Inject
 	public MockWriteMacAddressOperation(final TimeLimiter timeLimiter,
 										final MockConfiguration configuration,
+										final DeviceSessionCache sessionCache,
 										@Assisted final MacAddress macAddress,
 										@Assisted final long timeoutMillis,
-										@Assisted final OperationListener<Void> operationCallback) {
+										@Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.macAddress = macAddress;
 		this.configuration = configuration;
+		this.sessionCache = sessionCache;
 	}
 
 	@Override
@@ -54,6 +61,7 @@ public class MockWriteMacAddressOperation extends TimeLimitedOperation<Void> imp
 
 		log.debug("Writing mac address: " + macAddress);
 		configuration.setMacAddress(macAddress);
+		sessionCache.put(DeviceSessionCache.MAC_ADDRESS, macAddress);
 		return null;
 	}
 }
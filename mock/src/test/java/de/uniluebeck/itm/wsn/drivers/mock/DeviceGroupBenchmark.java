@@ -0,0 +1,108 @@
+package de.uniluebeck.itm.wsn.drivers.mock;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Guice;
+import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceModule;
+import de.uniluebeck.itm.wsn.drivers.core.group.DeviceGroup;
+import de.uniluebeck.itm.wsn.drivers.core.group.DeviceGroupResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Programs a group of mock devices with increasing concurrency limits and checks that the throughput grows linearly
+ * with the limit.
+ * <p/>
+ * Usage: <code>DeviceGroupBenchmark [nodes] [programDurationMillis] [concurrency...]</code>
+ */
+public class DeviceGroupBenchmark {
+
+	private static final int DEFAULT_NODES = 500;
+
+	private static final String DEFAULT_PROGRAM_DURATION_MILLIS = "500";
+
+	private static final int[] DEFAULT_CONCURRENCY_LEVELS = {25, 50, 100, 250, 500};
+
+	private static final double MIN_SCALING_EFFICIENCY = 0.8;
+
+	public static void main(String[] args) throws Exception {
+
+		final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NODES;
+		final String programDuration = args.length > 1 ? args[1] : DEFAULT_PROGRAM_DURATION_MILLIS;
+
+		final int[] concurrencyLevels;
+		if (args.length > 2) {
+			concurrencyLevels = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				concurrencyLevels[i - 2] = Integer.parseInt(args[i]);
+			}
+		} else {
+			concurrencyLevels = DEFAULT_CONCURRENCY_LEVELS;
+		}
+
+		final ExecutorService deviceExecutor = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setNameFormat("Benchmark-Device %d").build()
+		);
+		final ScheduledExecutorService groupExecutor = Executors.newSingleThreadScheduledExecutor();
+
+		final Map<String, String> configuration = Maps.newHashMap();
+		configuration.put(MockProgramOperation.OPTION_PROGRAM_DURATION, programDuration);
+
+		final DeviceGroup group = new DeviceGroup(groupExecutor);
+		final List<Device> devices = Lists.newArrayList();
+		for (int i = 0; i < nodes; i++) {
+			final Device device = Guice.createInjector(new DeviceModule(deviceExecutor), new MockModule(configuration))
+					.getInstance(Device.class);
+			device.connect("MOCK" + i);
+			devices.add(device);
+			group.add("mock" + i, device);
+		}
+
+		final byte[] image = new byte[1024];
+		double baseThroughput = 0;
+		int baseConcurrency = 0;
+		boolean linear = true;
+
+		System.out.println("nodes=" + nodes + ", programDurationMillis=" + programDuration);
+		System.out.println("concurrency\tmillis\tnodes/s\tefficiency");
+
+		for (int concurrency : concurrencyLevels) {
+
+			group.setConcurrency(concurrency);
+			final DeviceGroupResult result = group.program(image, 60000, null).get();
+			if (!result.isSuccess()) {
+				throw new IllegalStateException("Programming failed: " + result.getFailed());
+			}
+
+			final double throughput = nodes * 1000.0 / result.getDurationMillis();
+			if (baseConcurrency == 0) {
+				baseThroughput = throughput;
+				baseConcurrency = concurrency;
+			}
+
+			final double efficiency = throughput / (baseThroughput * concurrency / baseConcurrency);
+			linear &= efficiency >= MIN_SCALING_EFFICIENCY;
+
+			System.out.println(concurrency + "\t" + result.getDurationMillis() + "\t"
+					+ Math.round(throughput * 10) / 10.0 + "\t" + Math.round(efficiency * 100) / 100.0
+			);
+		}
+
+		for (Device device : devices) {
+			device.close();
+		}
+		ExecutorUtils.shutdown(groupExecutor, 1, TimeUnit.SECONDS);
+		ExecutorUtils.shutdown(deviceExecutor, 1, TimeUnit.SECONDS);
+
+		System.out.println(linear ? "Throughput scales linearly up to the concurrency limit" : "Scaling is sublinear");
+		System.exit(linear ? 0 : 1);
+	}
+}
@@ -24,6 +24,8 @@
 package de.uniluebeck.itm.wsn.drivers.pacemate;
 
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +47,8 @@ public class PacemateBinaryImage {
 	 */
 	public final static int LINESIZE = 45;
 
+	private static final String FLASH_CRC_ATTRIBUTE = "pacemate.flashCrc";
+
 	private final int blockSize = 4096;
 
 	/**
@@ -59,10 +63,15 @@ public class PacemateBinaryImage {
 	 */
 	public long crc = 0;
 
-	private byte[] bytes = null;
+	private FirmwareImage image;
 
 	private int length = -1;
 
+	/**
+	 * The flash CRC taken from a flash plan or <code>null</code> if it has to be calculated.
+	 */
+	private final Long plannedFlashCrc;
+
 	/**
 	 * Constructor.
 	 *
@@ -76,15 +85,43 @@ public class PacemateBinaryImage {
 	 */
 	public PacemateBinaryImage(int address, byte[] data) throws IOException {
 		this.address = address;
+		this.plannedFlashCrc = null;
 		load(data);
 	}
 
+	/**
+	 * Creates the image from a precompiled plan. The blocks are already padded and the flash CRC is taken from the
+	 * plan.
+	 *
+	 * @param plan
+	 * 		a plan created by {@link #toFlashPlan()}
+	 *
+	 * @throws IOException
+	 * 		if the plan has not been created for a Pacemate device
+	 */
+	public PacemateBinaryImage(FlashPlan plan) throws IOException {
+
+		if (plan.getPlatform() != ChipType.LPC2136 || plan.getAttribute(FLASH_CRC_ATTRIBUTE) == null
+				|| plan.getBlocks().isEmpty()) {
+			throw new IOException("Flash plan has not been created for a Pacemate device: " + plan);
+		}
+
+		this.address = plan.getBlocks().get(0).getAddress();
+		this.image = plan.getData();
+		this.length = image.getLength();
+		this.plannedFlashCrc = plan.getAttribute(FLASH_CRC_ATTRIBUTE);
+
+		if (length % blockSize != 0) {
+			throw new IOException("Flash plan is not padded to full blocks");
+		}
+	}
+
 	public PacemateBinaryImage(byte[] data) throws IOException {
 		this(0x3000, data);
 	}
 
 	/**
-	 * Loads {@code data} into {@code bytes} and fills up the last block with 0xff's.
+	 * Loads {@code data} into the image and fills up the last block with 0xff's.
 	 *
 	 * @param data
 	 * 		the data to load
@@ -102,15 +139,17 @@ public class PacemateBinaryImage {
 			length = (int) data.length;
 		}
 
-		bytes = new byte[length];
+		byte[] bytes = new byte[length];
 		System.arraycopy(data, 0, bytes, 0, data.length);
 
 		for (int i = data.length; i < length; i++) {
 			bytes[i] = (byte) 0xff;
 		}
 
+		image = FirmwareImage.wrap(bytes);
+
 		log.debug("Extending file 2 to " + this.length);
-		log.debug("Last bytes: " + this.bytes[this.length - 2] + " " + this.bytes[this.length - 1]);
+		log.debug("Last bytes: " + bytes[this.length - 2] + " " + bytes[this.length - 1]);
 	}
 
 	/**
@@ -119,13 +158,22 @@ public class PacemateBinaryImage {
 	 * @return crc the computed CRC value
 	 */
 	public int calcCRC() {
+
+		if (plannedFlashCrc != null) {
+			return plannedFlashCrc.intValue();
+		}
+
 		int crc = 0;
 
-		for (int i = 0; i < bytes.length; i++) {
-			crc = SYS_Crc(crc, bytes[i]);
+		final byte[] chunk = new byte[blockSize];
+		for (int offset = 0; offset < length; offset += blockSize) {
+			image.copyTo(offset, chunk, 0, blockSize);
+			for (int i = 0; i < blockSize; i++) {
+				crc = SYS_Crc(crc, chunk[i]);
+			}
 		}
 
-		for (int i = bytes.length; i < (0x3FFFE - 0x3000); i++) {
+		for (int i = length; i < (0x3FFFE - 0x3000); i++) {
 			crc = SYS_Crc(crc, (byte) 0xFF);
 		}
 
@@ -190,7 +238,7 @@ public class PacemateBinaryImage {
 		b[b.length - 2] = 0;
 		b[b.length - 3] = 0;
 		// log.debug("Returning block #" + block + " (" + length + " bytes at position " + offset);
-		System.arraycopy(bytes, offset, b, 0, length);
+		image.copyTo(offset, b, 0, length);
 		return b;
 	}
 
@@ -284,8 +332,18 @@ public class PacemateBinaryImage {
 		return outbuf;
 	}
 
-	private void insertAt(int address, int len, byte[] b) {
-		System.arraycopy(b, 0, bytes, address, len);
+	/**
+	 * Creates a plan containing the padded blocks of the image and the flash CRC.
+	 *
+	 * @return the plan
+	 */
+	public FlashPlan toFlashPlan() {
+		final FlashPlan.Builder builder = FlashPlan.builder(getChipType())
+				.attribute(FLASH_CRC_ATTRIBUTE, calcCRC());
+		for (int block = 0; block < getBlockCount(); block++) {
+			builder.block(address + getBlockOffset(block), getBlock(block));
+		}
+		return builder.build();
 	}
 
 	public ChipType getChipType() {
@@ -324,7 +382,7 @@ public class PacemateBinaryImage {
 				", startAddress=" + address +
 				", blockIterator=" + blockIterator +
 				", crc=" + crc +
-				", bytes=" + bytes +
+				", image=" + image +
 				", length=" + length +
 				'}';
 	}
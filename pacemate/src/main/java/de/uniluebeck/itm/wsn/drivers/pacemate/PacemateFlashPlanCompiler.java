@@ -0,0 +1,21 @@
+package de.uniluebeck.itm.wsn.drivers.pacemate;
+
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlanCompiler;
+
+/**
+ * Compiles raw Pacemate images into {@link FlashPlan}s.
+ */
+public class PacemateFlashPlanCompiler implements FlashPlanCompiler {
+
+	@Override
+	public String getName() {
+		return "pacemate";
+	}
+
+	@Override
+	public FlashPlan compile(final FirmwareImage image) throws Exception {
+		return new PacemateBinaryImage(image.toByteArray()).toFlashPlan();
+	}
+}
@@ -52,6 +52,7 @@ public class PacemateModule extends AbstractModule {
 				.implement(EraseFlashOperation.class, PacemateEraseFlashOperation.class)
 				.implement(GetChipTypeOperation.class, PacemateGetChipTypeOperation.class)
 				.implement(IsNodeAliveOperation.class, DefaultIsNodeAliveOperation.class)
+				.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
 				.implement(ProgramOperation.class, PacemateProgramOperation.class)
 				.implement(ReadFlashOperation.class, PacemateReadFlashOperation.class)
 				.implement(ReadMacAddressOperation.class, PacemateReadMacAddressOperation.class)
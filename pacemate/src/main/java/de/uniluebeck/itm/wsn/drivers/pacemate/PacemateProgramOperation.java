@@ -4,9 +4,12 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractProgramOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationSpan;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
@@ -26,7 +29,7 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 	public PacemateProgramOperation(final TimeLimiter timeLimiter,
 									final PacemateHelper helper,
 									final OperationFactory operationFactory,
-									@Assisted byte[] binaryImage,
+									@Assisted FirmwareImage binaryImage,
 									@Assisted final long timeoutMillis,
 									@Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, binaryImage, timeoutMillis, operationCallback);
@@ -36,25 +39,30 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 
 	private static final float PROGRESS_FRACTION_PROGRAM = 0.875f;
 
-	private void program() throws Exception {
+	private void program(final PacemateBinaryImage binaryImage, final OperationSpan span) throws Exception {
 
 		// Return with success if the user has requested to cancel this operation
 		if (isCanceled()) {
 			return;
 		}
 
-		// Create pacemate image
-		final PacemateBinaryImage binaryImage = new PacemateBinaryImage(getBinaryImage());
 		// Calc CRC and write it to the flash
 		final int flashCRC = binaryImage.calcCRC();
 		log.debug("CRC: " + flashCRC);
-		helper.writeCRCtoFlash(flashCRC);
+		final OperationSpan writeCrcSpan = startPhase("writeCRC");
+		try {
+			helper.writeCRCtoFlash(flashCRC);
+		} finally {
+			writeCrcSpan.end();
+		}
 
 		// Write program to flash
 		BinaryImageBlock block;
 		int blockCount = 3;
 		int blockNumber = 3; // blockNumber != blockCount because block 8 & 9 ==
 		int blocksWritten = 0;
+		int bytesWritten = 0;
+		transferProgress(bytesWritten, binaryImage.getLength());
 
 		// 32 kb all other 4 kb
 		while ((block = binaryImage.getNextBlock()) != null) {
@@ -111,6 +119,7 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 						helper.sendChecksum(binaryImage.crc);
 					} catch (InvalidChecksumException e) {
 						log.debug("Invalid Checksum - resend last part");
+						span.addRetry();
 						// so resending the last 20 lines
 						counter = counter - bytesNotYetApproved;
 					} catch (Exception e) {
@@ -141,8 +150,11 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 			}
 
 			// Notify listeners of the new status
+			span.addBytes(data.length);
 			blocksWritten++;
 			progress(0.125f + PROGRESS_FRACTION_PROGRAM * (1.0f / binaryImage.getBlockCount()) * blocksWritten);
+			bytesWritten += data.length;
+			transferProgress(bytesWritten, binaryImage.getLength());
 
 			// Return with success if the user has requested to cancel this
 			// operation
@@ -150,6 +162,8 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 				return;
 			}
 
+			preemptionPoint();
+
 			blockCount++;
 			if ((blockCount > 0) && (8 >= blockCount)) // Sector 0-7 4kb
 			{
@@ -181,14 +195,30 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 		progress(0.125f + PROGRESS_FRACTION_PROGRAM * 1.0f);
 	}
 
+	@Override
+	public boolean isErasingWholeFlash() {
+		return true;
+	}
+
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 
 		log.trace("Program operation executing...");
 
+		// Create pacemate image, a flash plan is verified before the flash memory is erased
+		final PacemateBinaryImage binaryImage = FlashPlan.isFlashPlan(getFirmwareImage()) ?
+				new PacemateBinaryImage(getVerifiedFlashPlan()) :
+				new PacemateBinaryImage(getBinaryImage());
+
 		runSubOperation(operationFactory.createEraseFlashOperation(120000, null), 0.125f);
-		program();
+
+		final OperationSpan span = startPhase("writeImage");
+		try {
+			program(binaryImage, span);
+		} finally {
+			span.end();
+		}
 
 		log.trace("Program operation finished");
 
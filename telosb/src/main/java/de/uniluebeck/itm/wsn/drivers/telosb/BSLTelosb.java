@@ -915,6 +915,24 @@ public class BSLTelosb {
 		bslBaudRateSet = false;
 	}
 
+	/**
+	 * Erases the whole flash memory. This also resets the boot loader password to the default password.
+	 *
+	 * @throws FlashEraseFailedException
+	 * 		if the boot loader does not acknowledge the erase
+	 */
+	public void massErase()
+			throws IOException, FlashEraseFailedException, TimeoutException, InvalidChecksumException,
+			ReceivedIncorrectDataException, UnexpectedResponseException {
+		sendBSLCommand(CMD_MASSERASE, 0xFFFF, 0xA506, null, false);
+		final byte[] reply = receiveBSLReply();
+		if ((reply[0] & 0xff) == DATA_NACK) {
+			throw new FlashEraseFailedException("Failed to perform mass erase, NACK received.");
+		} else if (reply.length > 1) {
+			throw new FlashEraseFailedException("Failed to perform mass erase, reply length unexpected.");
+		}
+	}
+
 	public void writeFlash(int address, byte[] bytes, int len)
 			throws IOException, FlashProgramFailedException, TimeoutException, InvalidChecksumException,
 			ReceivedIncorrectDataException, UnexpectedResponseException {
@@ -23,28 +23,28 @@
 
 package de.uniluebeck.itm.wsn.drivers.telosb;
 
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.image.ImageLoaders;
+import de.uniluebeck.itm.wsn.drivers.core.image.ImageSegment;
+import de.uniluebeck.itm.wsn.drivers.core.image.IntelHexImageLoader;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
- * Binary file used to program a Telos B device. The file is assumed to be in intel hex format.
+ * Binary file used to program a Telos B device. The file is assumed to be in intel hex format and is parsed by the
+ * {@link IntelHexImageLoader}.
  *
  * @author Friedemann Wesner
  * @author Malte Legenhausen
  */
 public class TelosbBinData {
 
-	private static final Logger log = LoggerFactory.getLogger(TelosbBinData.class);
-
 	private final int maxBlockSize = 240 - 16;
 
 	private BlockIterator blockIterator = new BlockIterator();
@@ -52,7 +52,40 @@ public class TelosbBinData {
 	private final List<Segment> segments = new ArrayList<Segment>();
 
 	public TelosbBinData(byte[] binaryData) throws IOException {
-		reload(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(binaryData))));
+		reload(new ByteArrayInputStream(binaryData));
+	}
+
+	/**
+	 * Creates the data from a precompiled plan. Every block of the plan is a segment.
+	 *
+	 * @param plan
+	 * 		a plan created by {@link #toFlashPlan()}
+	 *
+	 * @throws IOException
+	 * 		if the plan has not been created for a Telos B device
+	 */
+	public TelosbBinData(FlashPlan plan) throws IOException {
+
+		if (plan.getPlatform() != ChipType.TelosB) {
+			throw new IOException("Flash plan has not been created for a Telos B device: " + plan);
+		}
+
+		for (FlashPlan.Block block : plan.getBlocks()) {
+			segments.add(new Segment(block.getAddress(), plan.getBlockData(block)));
+		}
+	}
+
+	/**
+	 * Creates a plan containing the segments of the image.
+	 *
+	 * @return the plan
+	 */
+	public FlashPlan toFlashPlan() {
+		final FlashPlan.Builder builder = FlashPlan.builder(ChipType.TelosB);
+		for (Segment segment : segments) {
+			builder.block(segment.startAddress, segment.data);
+		}
+		return builder.build();
 	}
 
 	public int getBlockCount() {
@@ -122,64 +155,12 @@ public class TelosbBinData {
 		return true;
 	}
 
-	private void reload(BufferedReader reader) throws IOException {
-		String line;
-		StringTokenizer sTokenizer;
-		int lineAddress;
-		int currentAddress = 0;
-		int segmentStartAddress = 0;
-		int dataLength;
-		int dataType;
-		byte segmentData[] = new byte[0];
-		byte tempData[];
+	private void reload(final InputStream inputStream) throws IOException {
 
 		segments.clear();
 
-		while ((line = reader.readLine()) != null) {
-
-			// check for correct ihex format
-			if (line.charAt(0) != ':') {
-				log.error("File is not in correct intel hex format.");
-				throw new IOException(
-						"File is not in correct intel hex format."
-				);
-			}
-
-			// remove spaces
-			sTokenizer = new StringTokenizer(line, " ", false);
-			line = "";
-			while (sTokenizer.hasMoreElements()) {
-				line += sTokenizer.nextElement();
-			}
-
-			// read data segments
-			dataLength = Integer.parseInt(line.substring(1, 3), 16);
-			lineAddress = Integer.parseInt(line.substring(3, 7), 16);
-			dataType = Integer.parseInt(line.substring(7, 9), 16);
-
-			if (dataType == 0x00) {
-				if (currentAddress != lineAddress) {
-					if (segmentData.length > 0) {
-						segments.add(new Segment(segmentStartAddress,
-								segmentData
-						)
-						);
-					}
-					currentAddress = lineAddress;
-					segmentStartAddress = lineAddress;
-					segmentData = new byte[0];
-				}
-				tempData = new byte[segmentData.length + dataLength];
-				System.arraycopy(segmentData, 0, tempData, 0, segmentData.length);
-				for (int i = 0; i < dataLength; i++) {
-					tempData[segmentData.length + i] = (byte) Integer.parseInt(line.substring(9 + 2 * i, 9 + 2 * i + 2), 16);
-				}
-				segmentData = tempData;
-				currentAddress += tempData.length;
-			}
-		}
-		if (segmentData.length > 0) {
-			segments.add(new Segment(segmentStartAddress, segmentData));
+		for (ImageSegment segment : ImageLoaders.forName(IntelHexImageLoader.NAME).load(inputStream)) {
+			segments.add(new Segment(segment.getAddress(), segment.getData()));
 		}
 	}
 
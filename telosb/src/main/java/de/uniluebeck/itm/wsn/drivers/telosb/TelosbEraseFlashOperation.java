@@ -6,6 +6,7 @@ import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.exception.FlashEraseFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.EraseFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,13 +19,17 @@ public class TelosbEraseFlashOperation extends TimeLimitedOperation<Void> implem
 
 	private final BSLTelosb bsl;
 
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public TelosbEraseFlashOperation(final TimeLimiter timeLimiter,
 									 final BSLTelosb bsl,
+									 final ProgramCheckpointStore checkpointStore,
 									 @Assisted final long timeoutMillis,
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.bsl = bsl;
+		this.checkpointStore = checkpointStore;
 	}
 
 	@Override
@@ -45,6 +50,9 @@ public class TelosbEraseFlashOperation extends TimeLimitedOperation<Void> implem
 			throw new FlashEraseFailedException("Mass erase failed: failed to invoke boot loader");
 		}
 
+		// an interrupted program operation can not be continued on an erased flash memory
+		checkpointStore.clear();
+
 		try {
 			// send bsl command 'mass erase'
 			bsl.sendBSLCommand(BSLTelosb.CMD_MASSERASE, 0xFFFF, 0xA506, null,
@@ -0,0 +1,21 @@
+package de.uniluebeck.itm.wsn.drivers.telosb;
+
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlanCompiler;
+
+/**
+ * Compiles Intel HEX images for Telos B devices into {@link FlashPlan}s.
+ */
+public class TelosbFlashPlanCompiler implements FlashPlanCompiler {
+
+	@Override
+	public String getName() {
+		return "telosb";
+	}
+
+	@Override
+	public FlashPlan compile(final FirmwareImage image) throws Exception {
+		return new TelosbBinData(image.toByteArray()).toFlashPlan();
+	}
+}
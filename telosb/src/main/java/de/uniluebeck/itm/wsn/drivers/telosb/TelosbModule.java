@@ -51,6 +51,7 @@ public class TelosbModule extends AbstractModule {
 				.implement(EraseFlashOperation.class, TelosbEraseFlashOperation.class)
 				.implement(GetChipTypeOperation.class, TelosbGetChipTypeOperation.class)
 				.implement(IsNodeAliveOperation.class, DefaultIsNodeAliveOperation.class)
+				.implement(OperationPlanOperation.class, DefaultOperationPlanOperation.class)
 				.implement(ProgramOperation.class, TelosbProgramOperation.class)
 				.implement(ReadFlashOperation.class, TelosbReadFlashOperation.class)
 				.implement(ReadMacAddressOperation.class, TelosbReadMacAddressOperation.class)
@@ -1,12 +1,19 @@
 package de.uniluebeck.itm.wsn.drivers.telosb;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.exception.FlashProgramFailedException;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
+import de.uniluebeck.itm.wsn.drivers.core.image.FlashPlan;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractProgramOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationSpan;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpoint;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
@@ -14,69 +21,209 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class TelosbProgramOperation extends AbstractProgramOperation {
 
 	private static final Logger log = LoggerFactory.getLogger(TelosbProgramOperation.class);
 
+	/**
+	 * Checkpoint attribute holding the boot loader password, i.e. the interrupt vector table that has been written.
+	 */
+	static final String ATTRIBUTE_PASSWORD = "telosb.password";
+
+	private static final int PASSWORD_ADDRESS = 0xFFE0;
+
+	private static final int PASSWORD_LENGTH = 32;
+
 	private final BSLTelosb bsl;
 
 	private final OperationFactory operationFactory;
 
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public TelosbProgramOperation(final TimeLimiter timeLimiter,
 								  final BSLTelosb bsl,
 								  final OperationFactory operationFactory,
-								  @Assisted byte[] binaryImage,
+								  final ProgramCheckpointStore checkpointStore,
+								  @Assisted FirmwareImage binaryImage,
 								  @Assisted final long timeoutMillis,
 								  @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, binaryImage, timeoutMillis, operationCallback);
 		this.bsl = bsl;
 		this.operationFactory = operationFactory;
+		this.checkpointStore = checkpointStore;
+	}
+
+	@Override
+	public boolean isErasingWholeFlash() {
+		// the programming mode is entered with a mass erase, see TelosbProgrammingModeInterceptor
+		return true;
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 
-		final TelosbBinData binData = new TelosbBinData(getBinaryImage());
+		// the image is parsed before the programming mode is entered, as entering it erases the flash memory
+		final OperationSpan parseSpan = startPhase("parseImage");
+		final TelosbBinData binData;
+		try {
+			binData = FlashPlan.isFlashPlan(getFirmwareImage()) ?
+					new TelosbBinData(getVerifiedFlashPlan()) :
+					new TelosbBinData(getBinaryImage());
+		} finally {
+			parseSpan.end();
+		}
 
-		log.trace("Starting to write program into flash memory...");
+		return program(binData);
+	}
+
+	@SerialPortProgrammingMode
+	protected Void program(final TelosbBinData binData) throws Exception {
+
+		final byte[] password = new byte[PASSWORD_LENGTH];
+		Arrays.fill(password, (byte) 0xFF);
 
 		final float workedFraction = 0.95f / binData.getBlockCount();
 		int bytesProgrammed = 0;
 		int blocksWritten = 0;
 
-		for (BinaryImageBlock block = binData.getNextBlock(); block != null; block = binData.getNextBlock()) {
-
-			final byte[] data = block.getData();
-			final int address = block.getAddress();
-
-			// write single block
-			try {
-				bsl.writeFlash(address, data, data.length);
-			} catch (FlashProgramFailedException e) {
-				log.error(String.format("Error writing %d bytes into flash " +
-						"at address 0x%02x: " + e + ". Programmed " + bytesProgrammed + " bytes so far. " +
-						". OperationRunnable will be canceled.", data.length, address
-				), e
-				);
-				throw e;
-			} catch (final IOException e) {
-				log.error("I/O error while writing flash. Programmed " + bytesProgrammed + " bytes so far.", e);
-				throw e;
+		ProgramCheckpoint checkpoint = checkpointStore.getResumableCheckpoint();
+		final int resumeBlocks = checkpoint == null ? 0 : getResumableBlockCount(binData, checkpoint);
+		BinaryImageBlock block = binData.getNextBlock();
+
+		if (resumeBlocks > 0) {
+
+			log.debug("Resuming from {}", checkpoint);
+			for (; blocksWritten < resumeBlocks; blocksWritten++) {
+				bytesProgrammed += block.getData().length;
+				updatePassword(password, block);
+				block = binData.getNextBlock();
 			}
 
-			bytesProgrammed += data.length;
-			blocksWritten++;
+		} else {
 
-			progress(workedFraction * blocksWritten);
+			if (checkpoint != null) {
+				// the boot loader has been unlocked without erasing the flash memory
+				bsl.massErase();
+				if (!bsl.transmitPassword(null, false)) {
+					throw new FlashProgramFailedException("Failed to transmit password, received NACK.");
+				}
+			}
+
+			checkpoint = ProgramCheckpoint.erased(getFirmwareImage(), ImmutableSet.of(ProgramCheckpoint.ALL_SECTORS));
+			checkpointStore.record(checkpoint);
+		}
+
+		log.trace("Starting to write program into flash memory...");
+
+		final int bytesTotal = binData.getLength();
+
+		final OperationSpan span = startPhase("writeImage");
+		try {
+
+			transferProgress(bytesProgrammed, bytesTotal);
+
+			for (; block != null; block = binData.getNextBlock()) {
+
+				final byte[] data = block.getData();
+				final int address = block.getAddress();
+
+				// write single block
+				try {
+					bsl.writeFlash(address, data, data.length);
+				} catch (FlashProgramFailedException e) {
+					log.error(String.format("Error writing %d bytes into flash " +
+							"at address 0x%02x: " + e + ". Programmed " + bytesProgrammed + " bytes so far. " +
+							". OperationRunnable will be canceled.", data.length, address
+					), e
+					);
+					throw e;
+				} catch (final IOException e) {
+					log.error("I/O error while writing flash. Programmed " + bytesProgrammed + " bytes so far.", e);
+					throw e;
+				}
+
+				if (updatePassword(password, block)) {
+					checkpoint = checkpoint.withAttribute(ATTRIBUTE_PASSWORD, BaseEncoding.base16().encode(password));
+				}
+				checkpointStore.record(checkpoint.withAcknowledgedBlock(blocksWritten));
+
+				bytesProgrammed += data.length;
+				span.addBytes(data.length);
+				blocksWritten++;
+
+				progress(workedFraction * blocksWritten);
+				transferProgress(bytesProgrammed, bytesTotal);
+
+				preemptionPoint();
+			}
+
+		} finally {
+			span.end();
 		}
 
 		log.trace("Programmed {} bytes", bytesProgrammed);
+		checkpointStore.clear();
 
 		runSubOperation(operationFactory.createResetOperation(1000, null), 0.05f);
 
 		return null;
 	}
+
+	/**
+	 * Returns the number of blocks that do not have to be written again. The last acknowledged block is verified
+	 * against the image and the following block has to be still erased.
+	 */
+	private int getResumableBlockCount(final TelosbBinData binData, final ProgramCheckpoint checkpoint)
+			throws Exception {
+
+		if (!checkpoint.isFor(getFirmwareImage()) || !checkpoint.isErased(ProgramCheckpoint.ALL_SECTORS)
+				|| checkpoint.getLastAcknowledgedBlock() < 0) {
+			return 0;
+		}
+
+		final OperationSpan span = startPhase("verifyCheckpoint");
+		try {
+
+			BinaryImageBlock lastBlock = null;
+			for (int i = 0; i <= checkpoint.getLastAcknowledgedBlock(); i++) {
+				lastBlock = binData.getNextBlock();
+			}
+			final BinaryImageBlock nextBlock = binData.getNextBlock();
+
+			if (lastBlock == null || !bsl.verifyBlock(lastBlock.getAddress(), lastBlock.getData().length,
+					lastBlock.getData()
+			)) {
+				log.debug("Last acknowledged block of {} differs, programming from scratch", checkpoint);
+				return 0;
+			}
+			if (nextBlock != null && !bsl.verifyBlock(nextBlock.getAddress(), nextBlock.getData().length, null)) {
+				log.debug("Block after {} is not erased, programming from scratch", checkpoint);
+				return 0;
+			}
+
+			return checkpoint.getLastAcknowledgedBlock() + 1;
+
+		} finally {
+			binData.resetBlockIterator();
+			span.end();
+		}
+	}
+
+	/**
+	 * Copies the part of the block that overlaps the interrupt vector table into the password.
+	 *
+	 * @return <code>true</code> if the password has been changed
+	 */
+	private static boolean updatePassword(final byte[] password, final BinaryImageBlock block) {
+		final int start = Math.max(block.getAddress(), PASSWORD_ADDRESS);
+		final int end = Math.min(block.getAddress() + block.getData().length, PASSWORD_ADDRESS + PASSWORD_LENGTH);
+		if (start >= end) {
+			return false;
+		}
+		System.arraycopy(block.getData(), start - block.getAddress(), password, start - PASSWORD_ADDRESS, end - start);
+		return true;
+	}
 }
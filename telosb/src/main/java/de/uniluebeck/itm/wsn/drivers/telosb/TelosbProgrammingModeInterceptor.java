@@ -1,11 +1,14 @@
 package de.uniluebeck.itm.wsn.drivers.telosb;
 
+import com.google.common.io.BaseEncoding;
 import com.google.inject.Inject;
-import de.uniluebeck.itm.wsn.drivers.core.exception.FlashEraseFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.FlashProgramFailedException;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpoint;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection.SerialPortMode;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingModeInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +22,20 @@ public class TelosbProgrammingModeInterceptor extends SerialPortProgrammingModeI
 	@Inject
 	private SerialPortConnection connection;
 
+	@Inject
+	private ProgramCheckpointStore checkpointStore;
+
+	/**
+	 * The operation that enters the programming mode.
+	 */
+	private Object invokingOperation;
+
+	@Override
+	public Object invoke(final MethodInvocation invocation) throws Throwable {
+		invokingOperation = invocation.getThis();
+		return super.invoke(invocation);
+	}
+
 	@Override
 	public void enterProgrammingMode() throws Exception {
 
@@ -27,7 +44,7 @@ public class TelosbProgrammingModeInterceptor extends SerialPortProgrammingModeI
 		// invoke boot loader
 		startBootLoader(bsl);
 
-		// perform mass erase to reset the password to default password
+		// perform mass erase to reset the password to default password, unless a program operation is resumed
 		resetPassword(bsl);
 
 		// read boot loader version
@@ -51,15 +68,24 @@ public class TelosbProgrammingModeInterceptor extends SerialPortProgrammingModeI
 	}
 
 	private void resetPassword(BSLTelosb bsl) throws Exception {
-		LOG.trace("Erasing flash memory...");
-		bsl.sendBSLCommand(BSLTelosb.CMD_MASSERASE, 0xFFFF, 0xA506, null, false);
-		final byte[] reply = bsl.receiveBSLReply();
-		if ((reply[0] & 0xff) == BSLTelosb.DATA_NACK) {
-			throw new FlashEraseFailedException("Failed to perform mass erase, NACK received.");
-		} else if (reply.length > 1) {
-			throw new FlashEraseFailedException("Failed to perform mass erase, reply length unexpected.");
+
+		// keep the flash contents only if a program operation is about to continue writing the same image, any other
+		// operation works on a freshly erased flash memory
+		final ProgramCheckpoint checkpoint = checkpointStore.getResumableCheckpoint();
+		if (checkpoint != null && invokingOperation instanceof TelosbProgramOperation
+				&& checkpoint.isFor(((TelosbProgramOperation) invokingOperation).getFirmwareImage())) {
+			final String password = checkpoint.getAttribute(TelosbProgramOperation.ATTRIBUTE_PASSWORD);
+			LOG.trace("Transmitting password of {}...", checkpoint);
+			if (bsl.transmitPassword(password == null ? null : BaseEncoding.base16().decode(password), false)) {
+				return;
+			}
+			LOG.debug("Password of {} has not been accepted, erasing flash memory", checkpoint);
 		}
 
+		LOG.trace("Erasing flash memory...");
+		checkpointStore.clear();
+		bsl.massErase();
+
 		// send default password
 		LOG.trace("Transmitting password...");
 		if (!bsl.transmitPassword(null, false)) {
@@ -5,6 +5,7 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractWriteFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramCheckpointStore;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 
 import javax.annotation.Nullable;
@@ -13,9 +14,12 @@ public class TelosbWriteFlashOperation extends AbstractWriteFlashOperation {
 
 	private final BSLTelosb bsl;
 
+	private final ProgramCheckpointStore checkpointStore;
+
 	@Inject
 	public TelosbWriteFlashOperation(final TimeLimiter timeLimiter,
 									 final BSLTelosb bsl,
+									 final ProgramCheckpointStore checkpointStore,
 									 @Assisted("address") int address,
 									 @Assisted byte[] data,
 									 @Assisted("length") int length,
@@ -23,11 +27,14 @@ public class TelosbWriteFlashOperation extends AbstractWriteFlashOperation {
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, address, data, length, timeoutMillis, operationCallback);
 		this.bsl = bsl;
+		this.checkpointStore = checkpointStore;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
+		// the written data may overlap an interrupted program operation, which therefore can not be continued
+		checkpointStore.clear();
 		bsl.writeFlash(getAddress(), getData(), getData().length);
 		return null;
 	}
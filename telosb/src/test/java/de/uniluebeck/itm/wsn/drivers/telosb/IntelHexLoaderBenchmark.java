@@ -0,0 +1,122 @@
+package de.uniluebeck.itm.wsn.drivers.telosb;
+
+import de.uniluebeck.itm.wsn.drivers.core.image.ImageLoader;
+import de.uniluebeck.itm.wsn.drivers.core.image.ImageLoaders;
+import de.uniluebeck.itm.wsn.drivers.core.image.ImageSegment;
+import de.uniluebeck.itm.wsn.drivers.core.image.IntelHexImageLoader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Compares the {@link IntelHexImageLoader} with the string based parser that {@link TelosbBinData} used before.
+ * <p/>
+ * Usage: <code>IntelHexLoaderBenchmark [imageBytes] [iterations]</code>
+ */
+public class IntelHexLoaderBenchmark {
+
+	private static final int DEFAULT_IMAGE_BYTES = 48 * 1024;
+
+	private static final int DEFAULT_ITERATIONS = 50;
+
+	private static final int WARMUP_ITERATIONS = 10;
+
+	private static final int RECORD_LENGTH = 16;
+
+	public static void main(String[] args) throws Exception {
+
+		final int imageBytes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_IMAGE_BYTES;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		final byte[] image = createImage(imageBytes);
+		final ImageLoader loader = ImageLoaders.forName(IntelHexImageLoader.NAME);
+
+		final List<ImageSegment> segments = loader.load(new ByteArrayInputStream(image));
+		if (segments.size() != 1 || legacyParse(image) != segments.get(0).getLength()) {
+			throw new IllegalStateException("Parsers disagree");
+		}
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			legacyParse(image);
+			loader.load(new ByteArrayInputStream(image));
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			legacyParse(image);
+		}
+		final double legacyMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			loader.load(new ByteArrayInputStream(image));
+		}
+		final double loaderMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+		System.out.println(String.format("image: %d bytes in %d records", imageBytes, imageBytes / RECORD_LENGTH));
+		System.out.println(String.format("legacy parser: %8.3f ms", legacyMillis));
+		System.out.println(String.format("image loader:  %8.3f ms (%.1fx)", loaderMillis, legacyMillis / loaderMillis));
+	}
+
+	private static byte[] createImage(final int length) {
+
+		final StringBuilder builder = new StringBuilder();
+
+		for (int address = 0; address < length; address += RECORD_LENGTH) {
+			final int recordLength = Math.min(RECORD_LENGTH, length - address);
+			int checksum = recordLength + (address >> 8) + (address & 0xFF);
+			builder.append(String.format(":%02X%04X00", recordLength, address & 0xFFFF));
+			for (int i = 0; i < recordLength; i++) {
+				final int value = (address + i) * 31 & 0xFF;
+				checksum += value;
+				builder.append(String.format("%02X", value));
+			}
+			builder.append(String.format("%02X\n", -checksum & 0xFF));
+		}
+		builder.append(":00000001FF\n");
+
+		return builder.toString().getBytes();
+	}
+
+	/**
+	 * The parser that has been used by {@link TelosbBinData} before, reduced to a single segment.
+	 */
+	private static int legacyParse(final byte[] image) throws IOException {
+
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(image)));
+		String line;
+		StringTokenizer sTokenizer;
+		int dataLength;
+		int dataType;
+		byte segmentData[] = new byte[0];
+		byte tempData[];
+
+		while ((line = reader.readLine()) != null) {
+
+			sTokenizer = new StringTokenizer(line, " ", false);
+			line = "";
+			while (sTokenizer.hasMoreElements()) {
+				line += sTokenizer.nextElement();
+			}
+
+			dataLength = Integer.parseInt(line.substring(1, 3), 16);
+			Integer.parseInt(line.substring(3, 7), 16);
+			dataType = Integer.parseInt(line.substring(7, 9), 16);
+
+			if (dataType == 0x00) {
+				tempData = new byte[segmentData.length + dataLength];
+				System.arraycopy(segmentData, 0, tempData, 0, segmentData.length);
+				for (int i = 0; i < dataLength; i++) {
+					tempData[segmentData.length + i] = (byte) Integer.parseInt(line.substring(9 + 2 * i, 9 + 2 * i + 2), 16);
+				}
+				segmentData = tempData;
+			}
+		}
+
+		return segmentData.length;
+	}
+}
@@ -1,8 +1,11 @@
 package de.uniluebeck.itm.wsn.drivers.trisos;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.image.CompressedImages;
+import de.uniluebeck.itm.wsn.drivers.core.image.FirmwareImage;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractProgramOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
@@ -13,6 +16,7 @@ import javax.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 
@@ -29,7 +33,7 @@ public class TriSOSProgramOperation extends AbstractProgramOperation {
 
 	@Inject
 	public TriSOSProgramOperation(final TimeLimiter timeLimiter, 
-                                        @Assisted final byte[] binaryImage,
+                                        @Assisted final FirmwareImage binaryImage,
                                         @Assisted final long timeoutMillis,
 					@Assisted @Nullable final OperationListener<Void> operationCallback,
 					final TriSOSConfiguration configuration) {
@@ -37,6 +41,12 @@ public class TriSOSProgramOperation extends AbstractProgramOperation {
 		this.configuration = configuration;
 	}
 
+	@Override
+	public boolean isErasingWholeFlash() {
+		// the external programmer decides which parts of the flash memory are erased
+		return false;
+	}
+
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
@@ -50,13 +60,29 @@ public class TriSOSProgramOperation extends AbstractProgramOperation {
 		// File object for binary file
 		File binFile = new File(completePath);
 
-		// Fetch binary file
-		byte binData[] = getBinaryImage();
-
-		// Write bin file to disk ...
-		FileOutputStream os = new FileOutputStream(binFile);
-		os.write(binData);
-		os.close();
+		// Write bin file to disk unless the image has been mapped from that file ...
+		final FirmwareImage image = getFirmwareImage();
+		if (!image.isPatched() && image.getFile() != null
+				&& image.getFile().getCanonicalFile().equals(binFile.getCanonicalFile())) {
+			log.debug("Image is already stored in {}", binFile);
+		} else {
+			FileOutputStream os = new FileOutputStream(binFile);
+			try {
+				if (CompressedImages.isGzip(image)) {
+					// ... decompressing it on the way
+					InputStream is = CompressedImages.openStream(image);
+					try {
+						ByteStreams.copy(is, os);
+					} finally {
+						is.close();
+					}
+				} else {
+					image.writeTo(os);
+				}
+			} finally {
+				os.close();
+			}
+		}
 
 		// Fetching programming command string ...
 		String programmingCommand = configuration.getProgramCommandString();